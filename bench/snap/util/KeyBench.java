@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.util;
+import java.util.concurrent.*;
+
+/**
+ * A microbenchmark for Key.getValue/setValue: Compares Key (cached accessor with generated getter/setter) to the
+ * baseline Key lookup (synchronized accessor map and reflective invoke), on one thread and on several threads (to check
+ * accessor cache contention).
+ *
+ * Run with: gradle runKeyBench
+ */
+public class KeyBench {
+
+    // Constants for iteration count and thread count
+    private static final int ITERATIONS = 5_000_000;
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * Sample bean.
+     */
+    public static class Bean {
+        private String  _name = "Bean";
+        private double  _width = 1;
+        public String getName()  { return _name; }
+        public void setName(String aValue)  { _name = aValue; }
+        public double getWidth()  { return _width; }
+        public void setWidth(double aValue)  { _width = aValue; }
+    }
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        for (int run = 0; run < 5; run++) {
+
+            // Time Key and baseline Key lookup (synchronized accessor map and reflective invoke) on one thread
+            long time0 = System.nanoTime();
+            runKey(new Bean());
+            long time1 = System.nanoTime();
+            Key.setBaselineLookup(true);
+            runKey(new Bean());
+            long time2 = System.nanoTime();
+
+            // Time baseline Key and Key on several threads
+            runKeyThreads();
+            long time3 = System.nanoTime();
+            Key.setBaselineLookup(false);
+            runKeyThreads();
+            long time4 = System.nanoTime();
+
+            // Print
+            System.out.printf("Key: %dms, Baseline Key: %dms, Key x %d threads: %dms, Baseline Key x %d threads: %dms%n",
+                (time1 - time0) / 1000000, (time2 - time1) / 1000000, THREAD_COUNT, (time4 - time3) / 1000000,
+                THREAD_COUNT, (time3 - time2) / 1000000);
+        }
+    }
+
+    /**
+     * Gets and sets Name and Width with Key on several threads.
+     */
+    private static void runKeyThreads() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        for (int i = 0; i < THREAD_COUNT; i++)
+            executor.submit(() -> runKey(new Bean()));
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Gets and sets Name and Width with Key.
+     */
+    private static Object runKey(Bean aBean)
+    {
+        Object value = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            value = Key.getValue(aBean, "Name");
+            value = Key.getValue(aBean, "Width");
+            if (i % 16 == 0)
+                Key.setValueSafe(aBean, "Width", (double) i);
+        }
+        return value;
+    }
+}
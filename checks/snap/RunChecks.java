@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap;
+
+/**
+ * Runs the regression checks (each check throws on failure).
+ *
+ * Run with: gradle runChecks (or gradle check)
+ */
+public class RunChecks {
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        snap.props.UndoerCheck.main(args);
+        snap.props.PropArchiverBinCheck.main(args);
+        snap.util.KeyChainCheck.main(args);
+        snap.parse.TokenScannerCheck.main(args);
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Throws if given condition is false.
+     */
+    public static void check(boolean aCondition, String aMsg)
+    {
+        if (!aCondition)
+            throw new AssertionError(aMsg);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.parse;
+import java.util.Random;
+import java.util.regex.Matcher;
+import static snap.RunChecks.check;
+
+/**
+ * Checks TokenScanner DFA matches the same as java.util.regex lookingAt() for each regex, and picks the same regex as
+ * matching all regexes with java.util.regex (longest match, then longest literal, then first added).
+ */
+public class TokenScannerCheck {
+
+    // Patterns to check (alternations and repeats where first match isn't longest match, plus typical token regexes)
+    private static final String[] PATTERNS = {
+        "[a]|[a][b]", "([a]|[a][b])[c]?", "([a]|[a][b])*", "[a]?([a][b])?", "([a][b]|[a])([b][c]|[c])?",
+        "([a]|[b])*[a][b][b]", "[a-c]*[b]", "[x]{2,3}", "[a]+?", "[a-z]+", "[0-9]+([.][0-9]*)?",
+        "\"([^\"\\\\]|\\\\.)*\"", "[a-z_][a-z0-9_]*", "[\\s]+", "abc", "ab"
+    };
+
+    // Chars for random inputs
+    private static final String INPUT_CHARS = "abcx019._\" \\";
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args)
+    {
+        // Check each regex alone against java.util.regex
+        Random random = new Random(1);
+        for (String pattern : PATTERNS) {
+            Regex regex = new Regex("Check", pattern);
+            TokenScanner scanner = new TokenScanner(new Regex[] { regex });
+            for (int i = 0; i < 2000; i++) {
+                String input = getRandomInput(random);
+                int end = scanner.match(input, 0, input.length()) >= 0 ? scanner.getMatchEnd() : -1;
+                int regexEnd = getRegexMatchEnd(regex, input);
+                check(end == regexEnd, "TokenScanner: Pattern " + pattern + " on '" + input + "' matched to " + end +
+                    " (java.util.regex: " + regexEnd + ")");
+            }
+        }
+
+        // Check all regexes together against java.util.regex
+        Regex[] regexes = new Regex[PATTERNS.length];
+        for (int i = 0; i < regexes.length; i++)
+            regexes[i] = new Regex("Check" + i, PATTERNS[i]);
+        TokenScanner scanner = new TokenScanner(regexes);
+        for (int i = 0; i < 5000; i++) {
+            String input = getRandomInput(random);
+            int index = scanner.match(input, 0, input.length());
+            int regexIndex = getRegexesMatchIndex(regexes, input);
+            check(index == regexIndex, "TokenScanner: All patterns on '" + input + "' matched regex " + index +
+                " (java.util.regex: " + regexIndex + ")");
+        }
+
+        System.out.println("TokenScannerCheck passed");
+    }
+
+    /**
+     * Returns the index of best regex match for given input with java.util.regex (same rules as Tokenizer).
+     */
+    private static int getRegexesMatchIndex(Regex[] theRegexes, String anInput)
+    {
+        int matchIndex = -1, matchEnd = 0;
+        for (int i = 0; i < theRegexes.length; i++) {
+            int end = getRegexMatchEnd(theRegexes[i], anInput);
+            if (end > matchEnd || end == matchEnd && matchIndex >= 0 &&
+                theRegexes[i].getLiteralLength() > theRegexes[matchIndex].getLiteralLength()) {
+                matchIndex = i;
+                matchEnd = end;
+            }
+        }
+        return matchIndex;
+    }
+
+    /**
+     * Returns the java.util.regex lookingAt() end for given regex and input (or -1 if no match of at least one char).
+     */
+    private static int getRegexMatchEnd(Regex aRegex, String anInput)
+    {
+        Matcher matcher = aRegex.getPatternCompiled().matcher(anInput);
+        return matcher.lookingAt() && matcher.end() > 0 ? matcher.end() : -1;
+    }
+
+    /**
+     * Returns a random input string.
+     */
+    private static String getRandomInput(Random aRandom)
+    {
+        int length = aRandom.nextInt(8);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append(INPUT_CHARS.charAt(aRandom.nextInt(INPUT_CHARS.length())));
+        return sb.toString();
+    }
+}
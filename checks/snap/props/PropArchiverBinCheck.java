@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.props;
+import snap.gfx.Color;
+import snap.gfx.ShadowEffect;
+import java.util.*;
+import static snap.RunChecks.check;
+
+/**
+ * Checks PropArchiverBin: Binary round trip (eager and lazy) gives same XML as original, and version 1 archives read.
+ */
+public class PropArchiverBinCheck {
+
+    // A version 1 archive of createDoc(2) with resource "Image1" of createImageBytes(16)
+    private static final String VERSION_1_ARCHIVE =
+        "534e504201010106496d6167653110000102030405060708090a0b0c0d0e0f0103446f630201044e616d650101064d792044" +
+        "6f63010550616765730302010450616765050105436f756e7406e7070105526174696f0800000000010756697369626c6505" +
+        "0105436f6c6f720200010b010107236666303030300106506f696e74730c040a020b402000000a000b800000000706010557" +
+        "6964746809405946666666666608069d0709083e0000000b0200010b010107233030666630300d0c040a020b40200000093f" +
+        "d55555555555550b800000000106456666656374020000";
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args)
+    {
+        checkRoundTrip(false);
+        checkRoundTrip(true);
+        checkVersion1();
+        checkLazyResources();
+        System.out.println("PropArchiverBinCheck passed");
+    }
+
+    /**
+     * Checks that doc archived to binary and read back (eager or lazy) archives to same XML as original.
+     */
+    private static void checkRoundTrip(boolean isLazy)
+    {
+        // Archive doc to XML and binary
+        Doc doc = createDoc(50);
+        byte[] imageBytes = createImageBytes(1000);
+        byte[] xmlBytes = getXMLBytes(doc, imageBytes);
+        CheckBinArchiver binArchiver = new CheckBinArchiver();
+        binArchiver.addResource("Image1", imageBytes);
+        byte[] binBytes = binArchiver.convertPropObjectToBinBytes(doc);
+        check(PropArchiverBin.isBinBytes(binBytes), "Binary archive should have binary header");
+        check(!PropArchiverBin.isBinBytes(xmlBytes), "XML archive should not have binary header");
+
+        // Read binary
+        CheckBinArchiver binArchiver2 = new CheckBinArchiver();
+        binArchiver2.setLazy(isLazy);
+        Doc doc2 = (Doc) binArchiver2.readPropObjectFromBinBytes(binBytes);
+        PropArchiver.Resource resource = binArchiver2.getResourceForName("Image1");
+
+        // If lazy, check pages and resource are unresolved, then resolve one page
+        if (isLazy) {
+            check(doc2._lazyPages != null, "Lazy read should set LazyPropValue for Lazy relation");
+            check(!resource.isLoaded(), "Lazy read should not load resource bytes");
+            Page page = (Page) doc2._lazyPages.getItem(7);
+            check(page._count == doc._pages[7]._count, "Lazy page item should resolve to archived page");
+        }
+
+        // Check XML of read doc matches original
+        byte[] xmlBytes2 = getXMLBytes(doc2, resource.getBytes());
+        check(Arrays.equals(xmlBytes, xmlBytes2), "Binary round trip (lazy=" + isLazy + ") should give same XML");
+        check(doc2.getPages()[4]._width == doc._pages[4]._width, "Binary round trip should keep double values exactly");
+    }
+
+    /**
+     * Checks that a version 1 archive (inline strings) reads to same XML as archived doc.
+     */
+    private static void checkVersion1()
+    {
+        // Read version 1 archive
+        byte[] binBytes = hexToBytes(VERSION_1_ARCHIVE);
+        CheckBinArchiver binArchiver = new CheckBinArchiver();
+        Doc doc = (Doc) binArchiver.readPropObjectFromBinBytes(binBytes);
+
+        // Check XML matches original doc
+        byte[] imageBytes = createImageBytes(16);
+        PropArchiver.Resource resource = binArchiver.getResourceForName("Image1");
+        check(resource != null && Arrays.equals(resource.getBytes(), imageBytes), "Version 1 resource should read");
+        byte[] xmlBytes = getXMLBytes(createDoc(2), imageBytes);
+        check(Arrays.equals(xmlBytes, getXMLBytes(doc, imageBytes)), "Version 1 archive should read same doc");
+    }
+
+    /**
+     * Checks that adding resources to lazy archiver only loads lazy resources with same length, and finds duplicates.
+     */
+    private static void checkLazyResources()
+    {
+        // Archive doc with two resources and read lazy
+        CheckBinArchiver binArchiver = new CheckBinArchiver();
+        binArchiver.addResource("Image1", createImageBytes(1000));
+        binArchiver.addResource("Image2", createImageBytes(16));
+        byte[] binBytes = binArchiver.convertPropObjectToBinBytes(createDoc(2));
+        CheckBinArchiver binArchiver2 = new CheckBinArchiver();
+        binArchiver2.setLazy(true);
+        binArchiver2.readPropObjectFromBinBytes(binBytes);
+        PropArchiver.Resource resource1 = binArchiver2.getResourceForName("Image1");
+        PropArchiver.Resource resource2 = binArchiver2.getResourceForName("Image2");
+
+        // Add resource with new length and check lazy resources not loaded
+        check(binArchiver2.addResource("Image3", createImageBytes(50)).equals("Image3"), "New resource should be added");
+        check(!resource1.isLoaded() && !resource2.isLoaded(), "Adding resource should not load lazy resources of other length");
+
+        // Add duplicate of lazy resource and check only resource with same length loaded
+        check(binArchiver2.addResource("Image4", createImageBytes(16)).equals("Image2"), "Duplicate resource should return existing name");
+        check(!resource1.isLoaded() && resource2.isLoaded(), "Adding resource should only load lazy resources of same length");
+        check(binArchiver2.getResources().length == 3, "Duplicate resource should not be added");
+    }
+
+    /**
+     * Returns XML bytes for given doc and image resource.
+     */
+    private static byte[] getXMLBytes(Doc aDoc, byte[] imageBytes)
+    {
+        CheckXMLArchiver xmlArchiver = new CheckXMLArchiver();
+        xmlArchiver.addResource("Image1", imageBytes);
+        return xmlArchiver.convertPropObjectToXMLBytes(aDoc);
+    }
+
+    /**
+     * Creates a doc with given number of pages.
+     */
+    static Doc createDoc(int aCount)
+    {
+        Doc doc = new Doc();
+        doc._name = "My Doc";
+        doc._pages = new Page[aCount];
+        Color[] colors = { Color.RED, Color.GREEN, null };
+        for (int i = 0; i < aCount; i++) {
+            Page page = doc._pages[i] = new Page();
+            page._width = i % 3 == 0 ? 612 : 100.1 + i;
+            page._count = i * 37 - 500;
+            page._ratio = i / 8f;
+            page._visible = i % 5 != 0;
+            page._color = colors[i % 3];
+            page._points = new double[] { 1, 2.5, i / 3d, -0d };
+            page._effect = i % 4 == 1 ? new ShadowEffect() : null;
+        }
+        return doc;
+    }
+
+    /**
+     * Creates image resource bytes.
+     */
+    static byte[] createImageBytes(int aLength)
+    {
+        byte[] bytes = new byte[aLength];
+        for (int i = 0; i < aLength; i++)
+            bytes[i] = (byte) i;
+        return bytes;
+    }
+
+    /**
+     * Returns bytes for hex string.
+     */
+    private static byte[] hexToBytes(String aString)
+    {
+        byte[] bytes = new byte[aString.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(aString.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
+
+    /**
+     * Returns the class map for check classes.
+     */
+    private static Map<String,Class<?>> createCheckClassMap()
+    {
+        Map<String,Class<?>> classMap = new HashMap<>();
+        classMap.put("Doc", Doc.class);
+        classMap.put("Page", Page.class);
+        classMap.put("ShadowEffect", ShadowEffect.class);
+        return classMap;
+    }
+
+    /**
+     * A PropArchiverXML for check classes.
+     */
+    static class CheckXMLArchiver extends PropArchiverXML {
+        protected Map<String,Class<?>> createClassMap()  { return createCheckClassMap(); }
+    }
+
+    /**
+     * A PropArchiverBin for check classes.
+     */
+    static class CheckBinArchiver extends PropArchiverBin {
+        protected Map<String,Class<?>> createClassMap()  { return createCheckClassMap(); }
+    }
+
+    /**
+     * A doc with pages (Pages relation opts in to lazy unarchive).
+     */
+    public static class Doc extends PropObject {
+
+        // The name, pages and lazy pages
+        private String  _name = "Untitled";
+        private Page[]  _pages = new Page[0];
+        private LazyPropValue  _lazyPages;
+
+        /** Returns pages (resolving lazy pages). */
+        public Page[] getPages()
+        {
+            if (_lazyPages != null) {
+                _pages = (Page[]) _lazyPages.getValue();
+                _lazyPages = null;
+            }
+            return _pages;
+        }
+
+        protected void initProps(PropSet aPropSet)
+        {
+            aPropSet.addPropNamed("Name", String.class, "Untitled");
+            aPropSet.addPropNamed("Pages", Page[].class, EMPTY_OBJECT).setLazy(true);
+        }
+
+        public Object getPropValue(String aPropName)
+        {
+            switch (aPropName) {
+                case "Name": return _name;
+                case "Pages": return _lazyPages != null ? _lazyPages : _pages;
+                default: return null;
+            }
+        }
+
+        public void setPropValue(String aPropName, Object aValue)
+        {
+            switch (aPropName) {
+                case "Name": _name = (String) aValue; break;
+                case "Pages":
+                    if (aValue instanceof LazyPropValue)
+                        _lazyPages = (LazyPropValue) aValue;
+                    else _pages = (Page[]) aValue;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A page with simple props of each archived kind.
+     */
+    public static class Page extends PropObject {
+
+        // Simple props
+        private double  _width = 612;
+        private int  _count;
+        private float  _ratio = 1;
+        private boolean  _visible = true;
+        private Color  _color;
+        private double[]  _points;
+        private ShadowEffect  _effect;
+
+        protected void initProps(PropSet aPropSet)
+        {
+            aPropSet.addPropNamed("Width", double.class, 612d);
+            aPropSet.addPropNamed("Count", int.class, 0);
+            aPropSet.addPropNamed("Ratio", float.class, 1f);
+            aPropSet.addPropNamed("Visible", boolean.class, true);
+            aPropSet.addPropNamed("Color", Color.class, null);
+            aPropSet.addPropNamed("Points", double[].class, null);
+            aPropSet.addPropNamed("Effect", ShadowEffect.class, null);
+        }
+
+        public Object getPropValue(String aPropName)
+        {
+            switch (aPropName) {
+                case "Width": return _width;
+                case "Count": return _count;
+                case "Ratio": return _ratio;
+                case "Visible": return _visible;
+                case "Color": return _color;
+                case "Points": return _points;
+                case "Effect": return _effect;
+                default: return null;
+            }
+        }
+
+        public void setPropValue(String aPropName, Object aValue)
+        {
+            switch (aPropName) {
+                case "Width": _width = (Double) aValue; break;
+                case "Count": _count = (Integer) aValue; break;
+                case "Ratio": _ratio = (Float) aValue; break;
+                case "Visible": _visible = (Boolean) aValue; break;
+                case "Color": _color = (Color) aValue; break;
+                case "Points": _points = (double[]) aValue; break;
+                case "Effect": _effect = (ShadowEffect) aValue; break;
+            }
+        }
+    }
+}
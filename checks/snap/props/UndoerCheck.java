@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.props;
+import java.util.Arrays;
+import static snap.RunChecks.check;
+
+/**
+ * Checks Undoer memory budget: Coalesced undo sets keep their values stored and undo to the right values.
+ */
+public class UndoerCheck {
+
+    // Constant for size of large values
+    private static final int VALUE_SIZE = 40 * 1024;
+
+    /**
+     * A source that records the last value set by undo/redo.
+     */
+    private static class Source implements PropChange.DoChange {
+        private Object  _value;
+        public void processPropChange(PropChange aPC, Object oldVal, Object newVal)  { _value = newVal; }
+    }
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args)
+    {
+        checkBudgetOff();
+        checkCoalesce(Undoer.LargeValueMode.Compress);
+        checkCoalesce(Undoer.LargeValueMode.Spill);
+        System.out.println("UndoerCheck passed");
+    }
+
+    /**
+     * Checks that memory budget is off by default (no undo sets coalesced or dropped).
+     */
+    private static void checkBudgetOff()
+    {
+        Undoer undoer = new Undoer();
+        check(undoer.getMaxMemory() == 0, "Undoer memory budget should be off by default");
+        addEdits(undoer, new Source(), 0, 60);
+        check(undoer.getUndoSets().size() == 60, "Undoer without budget should keep all undo sets");
+    }
+
+    /**
+     * Checks that edits coalesced under budget don't restore stored values and undo to original value.
+     */
+    private static void checkCoalesce(Undoer.LargeValueMode aMode)
+    {
+        // Create undoer with budget smaller than one edit and add edit, so its values get stored
+        Undoer undoer = new Undoer();
+        undoer.setLargeValueMode(aMode);
+        undoer.setMaxMemory(VALUE_SIZE);
+        Source source = new Source();
+        addEdits(undoer, source, 0, 1);
+        check(undoer.getUndoSets().get(0).getChange(0).isValueStored(), aMode + ": Value over budget should be stored");
+
+        // Raise budget to fit a few edits and add more edits that merge
+        undoer.setMaxMemory(VALUE_SIZE * 8);
+        addEdits(undoer, source, 1, 60);
+
+        // Check edits were coalesced, within budget and stored value wasn't restored by merge
+        check(undoer.getUndoSets().size() < 60, aMode + ": Undo sets should be coalesced");
+        check(undoer.getMemorySize() <= VALUE_SIZE * 8, aMode + ": Undoer should be within budget");
+        check(undoer.getUndoSets().get(0).getChange(0).isValueStored(), aMode + ": Stored value should stay stored");
+        check(undoer.getUndoSets().get(1).isCoalesced(), aMode + ": Following undo sets should be coalesced");
+
+        // Undo everything and check source has original value
+        while (undoer.hasUndos())
+            undoer.undo();
+        check(Arrays.equals((byte[]) source._value, getValue(0)), aMode + ": Undo should restore original value");
+
+        // Redo everything and check source has last value
+        while (undoer.hasRedos())
+            undoer.redo();
+        check(Arrays.equals((byte[]) source._value, getValue(60)), aMode + ": Redo should restore last value");
+        undoer.reset();
+    }
+
+    /**
+     * Adds edits for given range of edit numbers (each in its own undo set and merging with previous).
+     */
+    private static void addEdits(Undoer anUndoer, Source aSource, int aStart, int anEnd)
+    {
+        for (int i = aStart; i < anEnd; i++) {
+            anUndoer.addPropChange(new PropChange(aSource, "Value", getValue(i), getValue(i + 1)));
+            anUndoer.saveChanges();
+        }
+    }
+
+    /**
+     * Returns a large value for given edit number.
+     */
+    private static byte[] getValue(int anIndex)
+    {
+        byte[] bytes = new byte[VALUE_SIZE];
+        Arrays.fill(bytes, (byte) anIndex);
+        return bytes;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.util;
+import java.util.*;
+import static snap.RunChecks.check;
+
+/**
+ * Checks that compiled KeyChain evaluators give the same values as the interpreter.
+ */
+public class KeyChainCheck {
+
+    // The key chains to check
+    private static final String[] KEY_CHAINS = {
+        "name", "age", "score", "active", "missing", "\"text\"", "12.5",
+        "age + 5", "age * 2 - score / 4", "age % 7", "-age", "-score", "name + \" Smith\"",
+        "age > 30", "age >= 42 && active", "!active || score < 10", "score == 42.5", "name == \"Bob\"",
+        "name != \"Bob\"", "age <= score", "missing == null",
+        "friends[1].name", "friends[0].age + friends[1].age", "friend.friend.name", "friend.score * 2",
+        "age > 40 ? name : \"young\"", "active ? friend.name : missing", "info.color", "info.size + 1"
+    };
+
+    /**
+     * A bean to evaluate key chains on.
+     */
+    public static class Person {
+
+        // Values
+        private String  _name;
+        private int  _age;
+        private double  _score;
+        private boolean  _active;
+        private Person  _friend;
+        private List<Person>  _friends = new ArrayList<>();
+        private Map<String,Object>  _info = new HashMap<>();
+
+        /** Constructor. */
+        public Person(String aName, int anAge, double aScore, boolean isActive)
+        {
+            _name = aName; _age = anAge; _score = aScore; _active = isActive;
+        }
+
+        public String getName()  { return _name; }
+        public int getAge()  { return _age; }
+        public double getScore()  { return _score; }
+        public boolean isActive()  { return _active; }
+        public Person getFriend()  { return _friend; }
+        public List<Person> getFriends()  { return _friends; }
+        public Map<String,Object> getInfo()  { return _info; }
+    }
+
+    /**
+     * Main method.
+     */
+    public static void main(String[] args)
+    {
+        boolean compileEnabled = KeyChain.isCompileEnabled();
+        try {
+            checkCompiledMatchesInterpreted();
+            checkCompileDisabledAfterCompile();
+        }
+        finally { KeyChain.setCompileEnabled(compileEnabled); }
+        System.out.println("KeyChainCheck passed");
+    }
+
+    /**
+     * Checks each key chain gives same value and bool value compiled and interpreted, for different object classes.
+     */
+    private static void checkCompiledMatchesInterpreted()
+    {
+        // Get objects: Two people and a map (so compiled links see different classes)
+        Object[] objects = { createPerson(42, true), createPerson(17, false), createMap() };
+
+        // Iterate over key chains and objects and compare interpreted and compiled values
+        for (String keyChain : KEY_CHAINS) {
+            for (Object obj : objects) {
+                KeyChain.setCompileEnabled(false);
+                Object value = KeyChain.getValue(obj, keyChain);
+                boolean boolValue = KeyChain.getBoolValue(obj, keyChain);
+                KeyChain.setCompileEnabled(true);
+                for (int i = 0; i < 4; i++) {
+                    Object compiledValue = KeyChain.getValue(obj, keyChain);
+                    boolean compiledBoolValue = KeyChain.getBoolValue(obj, keyChain);
+                    check(Objects.equals(value, compiledValue),
+                        "KeyChain " + keyChain + ": compiled value " + compiledValue + " != interpreted " + value);
+                    check(boolValue == compiledBoolValue, "KeyChain " + keyChain + ": compiled bool value differs");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that key chains compiled before compile is disabled are interpreted after (for value and bool value).
+     */
+    private static void checkCompileDisabledAfterCompile()
+    {
+        // Compile key chain for person
+        Person person = createPerson(42, true);
+        KeyChain.setCompileEnabled(true);
+        for (int i = 0; i < 4; i++)
+            KeyChain.getValue(person, "age * 3");
+
+        // Disable compile and check value and bool value still match interpreter for other class
+        KeyChain.setCompileEnabled(false);
+        Map<String,Object> map = createMap();
+        check(KeyChain.getIntValue(map, "age * 3") == 33, "KeyChain with compile disabled should interpret");
+        check(KeyChain.getBoolValue(map, "age > 10"), "KeyChain bool with compile disabled should interpret");
+    }
+
+    /**
+     * Creates a person with friends.
+     */
+    private static Person createPerson(int anAge, boolean isActive)
+    {
+        Person person = new Person("Bob", anAge, 42.5, isActive);
+        Person friend = new Person("Ann", 30, 7.25, true);
+        friend._friend = new Person("Cy", 5, 1, false);
+        person._friend = friend;
+        person._friends.add(friend);
+        person._friends.add(new Person("Dee", 61, 99.5, false));
+        person._info.put("color", "red");
+        person._info.put("size", 3);
+        return person;
+    }
+
+    /**
+     * Creates a map with person keys.
+     */
+    private static Map<String,Object> createMap()
+    {
+        Map<String,Object> map = new HashMap<>();
+        map.put("name", "Map");
+        map.put("age", 11);
+        map.put("score", 2.5);
+        map.put("active", true);
+        return map;
+    }
+}
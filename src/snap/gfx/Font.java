@@ -5,6 +5,9 @@ package snap.gfx;
 import snap.geom.Rect;
 import snap.geom.Shape;
 import snap.util.*;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * This class represents a font for use in rich text. Currently this is necessary because Java fonts are missing
@@ -24,9 +27,15 @@ public class Font implements XMLArchiver.Archivable {
     // The system native version of this font
     private Object  _native;
 
+    // Whether this font is the shared instance from the intern table
+    private boolean  _interned;
+
     // Whether font not found error has already been printed
     private static boolean  _fontNotFoundErrorPrinted = false;
 
+    // The table of interned fonts
+    private static final Map<Font,WeakReference<Font>>  _internTable = new WeakHashMap<>();
+
     // Constants for properties
     public static final String Name_Prop = "Name";
     public static final String Size_Prop = "Size";
@@ -42,7 +51,7 @@ public class Font implements XMLArchiver.Archivable {
     // Moved class initialization here because we were getting some odd init errors with bogus stacktraces
     static {
         try {
-            Arial10 = new Font("Arial",10d);
+            Arial10 = new Font("Arial",10d).intern();
             Arial11 = Arial10.deriveFont(11d);
             Arial12 = Arial10.deriveFont(12d);
             Arial13 = Arial10.deriveFont(13d);
@@ -132,6 +141,23 @@ public class Font implements XMLArchiver.Archivable {
      */
     public double charAdvance(char aChar)  { return _fontFile.charAdvance(aChar)*_size; }
 
+    /**
+     * Returns the char advance for the char at given index (surrogate pair advance goes to high surrogate).
+     */
+    public double charAdvance(CharSequence theChars, int anIndex)  { return _fontFile.charAdvance(theChars, anIndex)*_size; }
+
+    /**
+     * Returns the total advance for chars in given range, optionally filling given array with advance for each char.
+     */
+    public double measureRun(CharSequence theChars, int aStart, int anEnd, float[] theAdvances)
+    {
+        double total = _fontFile.measureRun(theChars, aStart, anEnd, theAdvances);
+        if (theAdvances != null)
+            for (int i = 0, iMax = anEnd - aStart; i < iMax; i++)
+                theAdvances[i] *= _size;
+        return total * _size;
+    }
+
     /**
      * Returns the char advance for a given character.
      */
@@ -167,10 +193,7 @@ public class Font implements XMLArchiver.Archivable {
      */
     public double getStringAdvance(String aString)
     {
-        double w = 0;
-        for (int i=0, iMax=aString.length(); i<iMax; i++)
-            w += charAdvance(aString.charAt(i));
-        return w;
+        return measureRun(aString, 0, aString.length(), null);
     }
 
     /**
@@ -269,7 +292,7 @@ public class Font implements XMLArchiver.Archivable {
     public Font getBold()
     {
         FontFile ff = _fontFile.getBold();
-        return ff!=null ? new Font(ff, _size) : null;
+        return ff!=null ? getFont(ff, _size) : null;
     }
 
     /**
@@ -278,7 +301,7 @@ public class Font implements XMLArchiver.Archivable {
     public Font getItalic()
     {
         FontFile ff =_fontFile.getItalic();
-        return ff!=null ? new Font(ff, _size) : null;
+        return ff!=null ? getFont(ff, _size) : null;
     }
 
     /**
@@ -286,7 +309,7 @@ public class Font implements XMLArchiver.Archivable {
      */
     public Font deriveFont(double aPointSize)
     {
-        return aPointSize==_size ? this : new Font(_fontFile, aPointSize);
+        return aPointSize==_size ? this : getFont(_fontFile, aPointSize);
     }
 
     /**
@@ -294,7 +317,7 @@ public class Font implements XMLArchiver.Archivable {
      */
     public Font scaleFont(double aScale)
     {
-        return aScale==1 ? this : new Font(_fontFile, _size*aScale);
+        return aScale==1 ? this : getFont(_fontFile, _size*aScale);
     }
 
     /**
@@ -307,6 +330,9 @@ public class Font implements XMLArchiver.Archivable {
         if (!(anObj instanceof Font)) return false;
         Font font = (Font)anObj;
 
+        // If both interned, they're different
+        if (_interned && font._interned) return false;
+
         // Check FontFile, Size
         if (font._fontFile!=_fontFile) return false;
         if (font._size!=_size) return false;
@@ -337,7 +363,7 @@ public class Font implements XMLArchiver.Archivable {
         String name = anElement.getAttributeValue("name");
         _fontFile = FontFile.getFontFile(name);
         _size = anElement.getAttributeFloatValue("size");
-        return this;
+        return _fontFile!=null ? intern() : this;
     }
 
     /**
@@ -350,11 +376,50 @@ public class Font implements XMLArchiver.Archivable {
      */
     public Object getNative()
     {
+        // If already set, just return
         if (_native!=null) return _native;
-        _native = _fontFile.getNative(_size);
+
+        // If interned, get from font file, otherwise share native of interned instance
+        if (_interned || _substitute)
+            _native = _fontFile.getNative(_size);
+        else _native = intern().getNative();
         return _native;
     }
 
+    /**
+     * Returns whether this font is the shared instance for its font file and size.
+     */
+    public boolean isInterned()  { return _interned; }
+
+    /**
+     * Returns the shared instance for this font's font file and size, so equal fonts share natives and can be
+     * compared by identity.
+     */
+    public Font intern()
+    {
+        // If already interned or substitute (keep substitute flag off shared instances), just return
+        if (_interned || _substitute) return this;
+
+        // Get shared instance from table (or make this the shared instance)
+        synchronized (_internTable) {
+            WeakReference<Font> ref = _internTable.get(this);
+            Font font = ref != null ? ref.get() : null;
+            if (font != null)
+                return font;
+            _interned = true;
+            _internTable.put(this, new WeakReference<>(this));
+            return this;
+        }
+    }
+
+    /**
+     * Returns the shared font for given font file and size.
+     */
+    protected static Font getFont(FontFile aFontFile, double aSize)
+    {
+        return new Font(aFontFile, aSize).intern();
+    }
+
     /**
      * Returns the font for the given name and size.
      */
@@ -369,7 +434,7 @@ public class Font implements XMLArchiver.Archivable {
     public static Font getFont(String aName, double aSize)
     {
         FontFile ffile = FontFile.getFontFile(aName);
-        return ffile!=null ? new Font(ffile, aSize) : null;
+        return ffile!=null ? getFont(ffile, aSize) : null;
     }
 
     /**
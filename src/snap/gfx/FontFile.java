@@ -23,8 +23,9 @@ public abstract class FontFile {
     // Cached reference to italic version of font
     private FontFile  _italicVersion = null;
     
-    // Cache of char widths
-    private float  _charWidths[] = new float[0];
+    // Cache of char advances by plane/page (256 code points per page), created on demand.
+    // Advances are stored plus one, so that the array default of zero marks an advance not yet loaded.
+    private float[][][]  _advancePlanes = new float[(Character.MAX_CODE_POINT >> 16) + 1][][];
     
     // Cached glyph paths
     private Map<Character, Shape>  _glyphPaths = new Hashtable<>();
@@ -71,27 +72,106 @@ public abstract class FontFile {
     /**
      * Returns the char advance for the given char.
      */
-    public double charAdvance(char aChar)
+    public double charAdvance(char aChar)  { return codePointAdvance(aChar); }
+
+    /**
+     * Returns the advance for the char at given index: For surrogate pairs, the high surrogate gets the code point
+     * advance and the low surrogate gets zero (same as measureRun).
+     */
+    public double charAdvance(CharSequence theChars, int anIndex)
     {
-        // If char in cache range, load from cache (might have to load cache too)
-        if (aChar<_charWidths.length) {
-            double cwidth = _charWidths[aChar];
-            if (cwidth<0)
-                cwidth = _charWidths[aChar] = (float)charAdvanceImpl(aChar);
-            return cwidth;
+        char c = theChars.charAt(anIndex);
+        if (Character.isHighSurrogate(c) && anIndex + 1 < theChars.length()) {
+            char lowChar = theChars.charAt(anIndex + 1);
+            if (Character.isLowSurrogate(lowChar))
+                return codePointAdvance(Character.toCodePoint(c, lowChar));
         }
+        else if (Character.isLowSurrogate(c) && anIndex > 0 && Character.isHighSurrogate(theChars.charAt(anIndex - 1)))
+            return 0;
+        return codePointAdvance(c);
+    }
+
+    /**
+     * Returns the advance for the given code point (loaded from paged cache).
+     */
+    public double codePointAdvance(int aCodePoint)
+    {
+        float[] page = getAdvancePage(aCodePoint);
+        int pageIndex = aCodePoint & 0xFF;
+        float adv = page[pageIndex];
+        if (adv == 0)
+            adv = page[pageIndex] = (float) codePointAdvanceImpl(aCodePoint) + 1;
+        return adv - 1;
+    }
+
+    /**
+     * Returns the total advance for chars in given range, optionally filling given array with advance for each char.
+     * For surrogate pairs, the high surrogate gets the code point advance and the low surrogate gets zero.
+     */
+    public double measureRun(CharSequence theChars, int aStart, int anEnd, float[] theAdvances)
+    {
+        // Iterate over chars
+        float[] page = null;
+        int pageStart = -1;
+        double total = 0;
+        for (int i = aStart; i < anEnd; i++) {
+
+            // Get code point (combine surrogate pair)
+            int codePoint = theChars.charAt(i);
+            boolean isPair = false;
+            if (Character.isHighSurrogate((char) codePoint) && i + 1 < anEnd) {
+                char lowChar = theChars.charAt(i + 1);
+                if (Character.isLowSurrogate(lowChar)) {
+                    codePoint = Character.toCodePoint((char) codePoint, lowChar);
+                    isPair = true;
+                }
+            }
+
+            // Get page for code point (reuse last page if same)
+            if ((codePoint & ~0xFF) != pageStart) {
+                page = getAdvancePage(codePoint);
+                pageStart = codePoint & ~0xFF;
+            }
 
-        // Extend cache if less than CharWidthsLength (1200 + 256, 1456)
-        if (aChar<1456) synchronized (this) {
-            int oldLen = _charWidths.length;
-            int newLen = oldLen==0 && aChar<256 ? 256 : 1456;
-            _charWidths = Arrays.copyOf(_charWidths, newLen);
-            Arrays.fill(_charWidths, oldLen, newLen, -1);
-            return charAdvance(aChar);
+            // Get advance (load if needed)
+            int pageIndex = codePoint & 0xFF;
+            float adv = page[pageIndex];
+            if (adv == 0)
+                adv = page[pageIndex] = (float) codePointAdvanceImpl(codePoint) + 1;
+            adv -= 1;
+            total += adv;
+
+            // Set in advances array
+            if (theAdvances != null) {
+                theAdvances[i - aStart] = adv;
+                if (isPair)
+                    theAdvances[i + 1 - aStart] = 0;
+            }
+            if (isPair)
+                i++;
         }
 
-        // Get value straight from FontMetrics
-        return charAdvanceImpl(aChar);
+        // Return
+        return total;
+    }
+
+    /**
+     * Returns the advance cache page for given code point.
+     */
+    private float[] getAdvancePage(int aCodePoint)
+    {
+        // Get plane (create if missing)
+        int planeIndex = aCodePoint >> 16;
+        float[][] plane = _advancePlanes[planeIndex];
+        if (plane == null)
+            plane = _advancePlanes[planeIndex] = new float[256][];
+
+        // Get page (create if missing)
+        int pageIndex = (aCodePoint >> 8) & 0xFF;
+        float[] page = plane[pageIndex];
+        if (page == null)
+            page = plane[pageIndex] = new float[256];
+        return page;
     }
 
     /**
@@ -99,6 +179,16 @@ public abstract class FontFile {
      */
     protected abstract double charAdvanceImpl(char aChar);
 
+    /**
+     * Returns the advance for the given code point. Subclasses should override to support supplementary code points.
+     */
+    protected double codePointAdvanceImpl(int aCodePoint)
+    {
+        if (Character.isBmpCodePoint(aCodePoint))
+            return charAdvanceImpl((char) aCodePoint);
+        return charAdvanceImpl('\uFFFD');
+    }
+
     /**
      * Returns the bounds rect for glyphs in given string.
      */
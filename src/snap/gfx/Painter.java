@@ -25,6 +25,9 @@ public abstract class Painter {
 
     // Whether painting is being done for static output
     private boolean  _printing;
+
+    // Whether text is drawn from cached glyph images (if supported)
+    private boolean  _glyphCache;
     
     // A shared rect for draw/fill/clipRect calls
     private Rect  _rect = new Rect();
@@ -382,6 +385,16 @@ public abstract class Painter {
      */
     public void setPrinting(boolean aValue)  { _printing = aValue; }
 
+    /**
+     * Returns whether text is drawn from cached glyph images, if supported (ignored when printing).
+     */
+    public boolean isGlyphCache()  { return _glyphCache; }
+
+    /**
+     * Sets whether text is drawn from cached glyph images, if supported (ignored when printing).
+     */
+    public void setGlyphCache(boolean aValue)  { _glyphCache = aValue; }
+
     /**
      * Returns the object that provides extra painter properties.
      */
@@ -21,6 +21,9 @@ public class PainterDVR extends PainterImpl {
     // The Painter (for EffectPntr)
     private Painter  _pntr;
 
+    // The font of last recorded SetFont (cleared on restore, since replay target state may differ)
+    private Font  _recordedFont;
+
     /**
      * Constructor.
      */
@@ -47,7 +50,7 @@ public class PainterDVR extends PainterImpl {
     /**
      * Clears the instructions stored in this PainterDVR.
      */
-    public void clear()  { _instrs.clear(); }
+    public void clear()  { _instrs.clear(); _recordedFont = null; }
 
     /**
      * Returns image of given shape inside a gutter of given inset (maybe should be insets one day).
@@ -71,8 +74,13 @@ public class PainterDVR extends PainterImpl {
     /** Sets the font. */
     public void setFont(Font aFont)
     {
+        // If same font already recorded, just return
+        if (aFont == _recordedFont && aFont == getFont()) return;
+
+        // Set and record
         super.setFont(aFont);
         add(new SetFont(aFont));
+        _recordedFont = aFont;
     }
 
     /** Sets the paint. */
@@ -166,6 +174,7 @@ public class PainterDVR extends PainterImpl {
     {
         super.restore();
         add(new Restore());
+        _recordedFont = null;
     }
 
     /** Override to forward to real painter. */
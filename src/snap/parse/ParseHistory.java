@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.parse;
+import java.util.Arrays;
+
+/**
+ * A class to let Parser reparse input after an edit, reusing tokens and rule results of the previous parse.
+ *
+ * History keeps the tokens read in last parse (with how far the tokenizer looked to find each) and the custom nodes
+ * of named rules with handlers (with how many tokens each looked at). After an edit, tokens before the damaged region
+ * are kept, tokens are read again from there until one lines up with an old token (old tokens from there on are just
+ * shifted) and rule results are reused when all the tokens they looked at are unchanged.
+ */
+class ParseHistory {
+
+    // The tokens and the scan end of each (index after last char tokenizer looked at to find token)
+    private ParseToken[]  _tokens = new ParseToken[INITIAL_CAPACITY];
+    private int[]  _scanEnds = new int[INITIAL_CAPACITY];
+
+    // The number of tokens
+    private int  _tokenCount;
+
+    // The rule results for each start token index
+    private Result[]  _results = new Result[INITIAL_CAPACITY];
+
+    // The number of tokens read in current parse and the index of last token read (token count for input end)
+    private int  _readCount, _maxReadIndex = -1;
+
+    // The number of tokens the tokenizer is positioned after (-1 if tokenizer needs to be positioned)
+    private int  _lexCount = -1;
+
+    // The tokenizer char index after last token (to detect tokenizer being moved by others)
+    private int  _lexCharIndex;
+
+    // Whether history is valid (false if tokenizer was moved outside of history)
+    private boolean  _valid = true;
+
+    // The old tokens, scan ends, results and count after edit (waiting to line up with new tokens)
+    private ParseToken[]  _oldTokens;
+    private int[]  _oldScanEnds;
+    private Result[]  _oldResults;
+    private int  _oldCount;
+
+    // The index of next old token that could line up with new tokens
+    private int  _oldIndex;
+
+    // The edit char delta and the end of inserted chars
+    private int  _editDelta, _editEnd;
+
+    // The number of results reused in current parse
+    private int  _reuseCount;
+
+    // Constant for initial array capacity
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Returns whether history is valid.
+     */
+    public boolean isValid()  { return _valid; }
+
+    /**
+     * Returns whether history has a valid previous parse to reuse.
+     */
+    public boolean isReusable()  { return _valid && _tokenCount > 0; }
+
+    /**
+     * Returns the number of tokens read in current parse.
+     */
+    public int getReadCount()  { return _readCount; }
+
+    /**
+     * Returns the token at given index.
+     */
+    public ParseToken getToken(int anIndex)  { return _tokens[anIndex]; }
+
+    /**
+     * Returns the number of rule results reused in current parse.
+     */
+    public int getReuseCount()  { return _reuseCount; }
+
+    /**
+     * Clears history for new input.
+     */
+    public void reset()
+    {
+        _tokens = new ParseToken[INITIAL_CAPACITY];
+        _scanEnds = new int[INITIAL_CAPACITY];
+        _results = new Result[INITIAL_CAPACITY];
+        _tokenCount = 0;
+        _valid = true;
+        clearOldTokens();
+        restart();
+    }
+
+    /**
+     * Called when parser char index is set: Restarts reading if zero, otherwise stops tracking (tokens no longer
+     * follow in order).
+     */
+    public void setCharIndex(int aValue)
+    {
+        if (aValue == 0)
+            restart();
+        else invalidate();
+    }
+
+    /**
+     * Restarts reading from first token.
+     */
+    private void restart()
+    {
+        _readCount = _reuseCount = 0;
+        _maxReadIndex = -1;
+        _lexCount = -1;
+    }
+
+    /**
+     * Stops tracking tokens and results.
+     */
+    private void invalidate()
+    {
+        _valid = false;
+        clearOldTokens();
+    }
+
+    /**
+     * Updates history for edit that replaced given number of chars at given offset with given number of new chars.
+     */
+    public void applyEdit(CharSequence anInput, int anOffset, int aRemoveLength, int anInsertLength)
+    {
+        // Get first damaged token: First token where tokenizer looked at edited chars
+        int damageIndex = 0;
+        while (damageIndex < _tokenCount && _scanEnds[damageIndex] <= anOffset)
+            damageIndex++;
+
+        // Move tokens to old arrays
+        _oldTokens = _tokens;
+        _oldScanEnds = _scanEnds;
+        _oldResults = _results;
+        _oldCount = _tokenCount;
+
+        // Keep tokens before damage (and results that only looked at them)
+        int capacity = _oldTokens.length;
+        _tokens = Arrays.copyOf(_oldTokens, capacity);
+        _scanEnds = Arrays.copyOf(_oldScanEnds, capacity);
+        _results = new Result[capacity];
+        Arrays.fill(_tokens, damageIndex, capacity, null);
+        for (int i = 0; i < damageIndex; i++) {
+            ((ParseToken.BasicToken) _tokens[i])._text = anInput;
+            Result validResults = null;
+            for (Result result = _oldResults[i], next; result != null; result = next) {
+                next = result.next;
+                if (i + result.readCount <= damageIndex) {
+                    result.next = validResults;
+                    validResults = result;
+                }
+            }
+            _results[i] = validResults;
+        }
+        _tokenCount = damageIndex;
+
+        // Get first old token after removed chars (tokens up to it can't line up)
+        _oldIndex = damageIndex;
+        while (_oldIndex < _oldCount && _oldTokens[_oldIndex].getStartCharIndex() < anOffset + aRemoveLength)
+            _oldIndex++;
+        if (_oldIndex >= _oldCount)
+            clearOldTokens();
+
+        // Set edit values and restart
+        _editDelta = anInsertLength - aRemoveLength;
+        _editEnd = anOffset + anInsertLength;
+        restart();
+    }
+
+    /**
+     * Returns the next token, reading it from tokenizer if needed.
+     */
+    public ParseToken readToken(Tokenizer aTokenizer)
+    {
+        // If token available, just return it
+        int index = _readCount++;
+        if (index < _tokenCount) {
+            if (index > _maxReadIndex)
+                _maxReadIndex = index;
+            return _tokens[index];
+        }
+
+        // Read next token from tokenizer (if none, mark input end read and return)
+        int tokenIndex = _tokenCount;
+        ParseToken token = lexToken(aTokenizer);
+        if (token == null || !_valid) {
+            _maxReadIndex = Math.max(_maxReadIndex, tokenIndex);
+            return token;
+        }
+
+        // Update read count and max read
+        _readCount = tokenIndex + 1;
+        _maxReadIndex = Math.max(_maxReadIndex, tokenIndex);
+        return token;
+    }
+
+    /**
+     * Reads the next token from tokenizer and adds it. If it lines up with an old token, adds old tokens instead.
+     */
+    private ParseToken lexToken(Tokenizer aTokenizer)
+    {
+        // If tokenizer not after last token, position it
+        if (_lexCount != _tokenCount) {
+            ParseToken lastToken = _tokenCount > 0 ? _tokens[_tokenCount - 1] : null;
+            if (lastToken != null)
+                aTokenizer.setCharIndex(lastToken.getEndCharIndex(), lastToken.getLineIndex(), lastToken.getStartCharIndexInLine());
+            else aTokenizer.setCharIndex(0, 0, 0);
+        }
+
+        // If tokenizer was moved by someone else, stop tracking
+        else if (aTokenizer.getCharIndex() != _lexCharIndex) {
+            invalidate();
+            return aTokenizer.getNextToken();
+        }
+
+        // Get next token (just return if none)
+        ParseToken token = aTokenizer.getNextToken();
+        _lexCount = _tokenCount;
+        _lexCharIndex = aTokenizer.getCharIndex();
+        if (token == null)
+            return null;
+
+        // If token can't be shifted, stop tracking
+        if (!(token instanceof ParseToken.BasicToken)) {
+            invalidate();
+            return token;
+        }
+
+        // If token after edit, check whether it lines up with an old token: If so, add old tokens from there instead
+        if (_oldTokens != null && token.getStartCharIndex() >= _editEnd) {
+            int oldStart = token.getStartCharIndex() - _editDelta;
+            while (_oldIndex < _oldCount && _oldTokens[_oldIndex].getStartCharIndex() < oldStart)
+                _oldIndex++;
+            ParseToken oldToken = _oldIndex < _oldCount ? _oldTokens[_oldIndex] : null;
+            if (oldToken != null && oldToken.getStartCharIndex() == oldStart && oldToken.getPattern() == token.getPattern() &&
+                oldToken.getEndCharIndex() + _editDelta == token.getEndCharIndex()) {
+                int tokenIndex = _tokenCount;
+                addOldTokens(token, aTokenizer.getInput());
+                return _tokens[tokenIndex];
+            }
+            if (oldToken == null)
+                clearOldTokens();
+        }
+
+        // Add token
+        addToken(token, aTokenizer.getScanEnd(token), null);
+        _lexCount = _tokenCount;
+        return token;
+    }
+
+    /**
+     * Adds old tokens (and their results), starting with the one that lines up with given new token, shifted for edit.
+     */
+    private void addOldTokens(ParseToken aNewToken, CharSequence anInput)
+    {
+        // Get line shift for lined up token
+        ParseToken firstToken = _oldTokens[_oldIndex];
+        int lineDelta = aNewToken.getLineIndex() - firstToken.getLineIndex();
+        int firstLineStart = firstToken.getStartCharIndexInLine();
+        int newFirstLineStart = aNewToken.getStartCharIndexInLine();
+
+        // Shift and add old tokens
+        for (int i = _oldIndex; i < _oldCount; i++) {
+            ParseToken.BasicToken token = (ParseToken.BasicToken) _oldTokens[i];
+            token._text = anInput;
+            token._startCharIndex += _editDelta;
+            token._endCharIndex += _editDelta;
+            token._lineIndex += lineDelta;
+            if (token._startCharIndexInLine == firstLineStart)
+                token._startCharIndexInLine = newFirstLineStart;
+            else token._startCharIndexInLine += _editDelta;
+            addToken(token, _oldScanEnds[i] + _editDelta, _oldResults[i]);
+        }
+
+        // Clear old tokens
+        clearOldTokens();
+    }
+
+    /**
+     * Adds a token.
+     */
+    private void addToken(ParseToken aToken, int aScanEnd, Result theResults)
+    {
+        // Make sure arrays have room
+        if (_tokenCount == _tokens.length) {
+            int capacity = _tokenCount * 2;
+            _tokens = Arrays.copyOf(_tokens, capacity);
+            _scanEnds = Arrays.copyOf(_scanEnds, capacity);
+            _results = Arrays.copyOf(_results, capacity);
+        }
+
+        // Add token
+        _tokens[_tokenCount] = aToken;
+        _scanEnds[_tokenCount] = aScanEnd;
+        _results[_tokenCount] = theResults;
+        _tokenCount++;
+    }
+
+    /**
+     * Clears old tokens.
+     */
+    private void clearOldTokens()
+    {
+        _oldTokens = null;
+        _oldScanEnds = null;
+        _oldResults = null;
+        _oldCount = _oldIndex = 0;
+    }
+
+    /**
+     * Returns the result for given rule at given token index (or null).
+     */
+    public Result getResult(ParseRule aRule, int anIndex)
+    {
+        if (anIndex >= _tokenCount) return null;
+        for (Result result = _results[anIndex]; result != null; result = result.next)
+            if (result.rule == aRule)
+                return result;
+        return null;
+    }
+
+    /**
+     * Adds a result for given rule, start token index, token count and custom node (looked at tokens up to last read).
+     */
+    public void addResult(ParseRule aRule, int anIndex, int aTokenCount, Object aCustomNode)
+    {
+        // Remove old result for rule
+        Result results = null;
+        for (Result result = _results[anIndex], next; result != null; result = next) {
+            next = result.next;
+            if (result.rule != aRule) {
+                result.next = results;
+                results = result;
+            }
+        }
+
+        // Add new result
+        Result result = new Result();
+        result.rule = aRule;
+        result.tokenCount = aTokenCount;
+        result.readCount = _maxReadIndex - anIndex + 1;
+        result.customNode = aCustomNode;
+        result.next = results;
+        _results[anIndex] = result;
+    }
+
+    /**
+     * Skips tokens for given result at given token index.
+     */
+    public void skipResult(int anIndex, Result aResult)
+    {
+        _readCount = Math.max(_readCount, anIndex + aResult.tokenCount);
+        _maxReadIndex = Math.max(_maxReadIndex, anIndex + aResult.readCount - 1);
+        _reuseCount++;
+    }
+
+    /**
+     * The result of a rule parsed at a token.
+     */
+    static class Result {
+
+        // The rule
+        ParseRule  rule;
+
+        // The number of tokens parsed and the number of tokens looked at (from start token)
+        int  tokenCount, readCount;
+
+        // The custom node
+        Object  customNode;
+
+        // The next result for same start token
+        Result  next;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.parse;
+
+/**
+ * A memo table for packrat parsing: Records (rule, token index) parse failures and look ahead results, so Parser
+ * doesn't re-run the same rules at the same tokens when trying alternatives.
+ *
+ * Entries live in flat arrays (an open addressing table of packed long keys and int values). Since Parser never goes
+ * back to tokens before the current token, entries form a sliding window from the current token forward: Entries
+ * behind it are dropped as the table fills, so memory stays bounded for long (streaming) input.
+ */
+public class ParseMemo {
+
+    // The packed keys (zero is empty)
+    private long[]  _keys;
+
+    // The values
+    private int[]  _values;
+
+    // The number of entries
+    private int  _count;
+
+    // The max capacity
+    private int  _maxCapacity;
+
+    // The first token index in window (entries before this are stale)
+    private int  _windowStart;
+
+    // The max token index used in a key
+    private int  _maxTokenIndex = -1;
+
+    // The stats
+    private Stats  _stats = new Stats();
+
+    // Constant for value returned for no look ahead entry
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    // Constant for default max capacity
+    public static final int DEFAULT_MAX_CAPACITY = 1 << 18;
+
+    // Constants for key packing
+    private static final int MAX_RULE_ID = (1 << 20) - 1;
+    private static final int MAX_COUNT = (1 << 11) - 2;
+    private static final long KEY_USED_BIT = 1L << 63;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Constructor.
+     */
+    public ParseMemo()
+    {
+        this(DEFAULT_MAX_CAPACITY);
+    }
+
+    /**
+     * Constructor for given max capacity (in entries, rounded up to power of two).
+     */
+    public ParseMemo(int aMaxCapacity)
+    {
+        _maxCapacity = Math.max(Integer.highestOneBit(Math.max(aMaxCapacity - 1, 1)) << 1, INITIAL_CAPACITY);
+        _keys = new long[INITIAL_CAPACITY];
+        _values = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the stats.
+     */
+    public Stats getStats()  { return _stats; }
+
+    /**
+     * Returns whether given rule is known to fail at given token index.
+     */
+    public boolean isParseFailed(ParseRule aRule, int aTokenIndex)
+    {
+        long key = getKey(aRule, aTokenIndex, -1);
+        return key != 0 && get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Records that given rule fails at given token index.
+     */
+    public void setParseFailed(ParseRule aRule, int aTokenIndex)
+    {
+        long key = getKey(aRule, aTokenIndex, -1);
+        if (key != 0)
+            put(key, aTokenIndex, 0);
+    }
+
+    /**
+     * Returns the look ahead result for given rule, token index and token count (or NOT_FOUND).
+     */
+    public int getLookAhead(ParseRule aRule, int aTokenIndex, int aTokenCount)
+    {
+        long key = getKey(aRule, aTokenIndex, aTokenCount);
+        return key != 0 ? get(key) : NOT_FOUND;
+    }
+
+    /**
+     * Records the look ahead result for given rule, token index and token count.
+     */
+    public void setLookAhead(ParseRule aRule, int aTokenIndex, int aTokenCount, int aValue)
+    {
+        long key = getKey(aRule, aTokenIndex, aTokenCount);
+        if (key != 0)
+            put(key, aTokenIndex, aValue);
+    }
+
+    /**
+     * Returns a token index after all token indexes in use (for when input is repositioned and old entries are void).
+     */
+    public int getNextFreeTokenIndex()  { return _maxTokenIndex + 1; }
+
+    /**
+     * Moves window start forward to given token index (entries before window become stale).
+     */
+    public void setCurrentTokenIndex(int aTokenIndex)
+    {
+        if (aTokenIndex > _windowStart)
+            _windowStart = aTokenIndex;
+    }
+
+    /**
+     * Clears all entries.
+     */
+    public void clear()
+    {
+        _keys = new long[INITIAL_CAPACITY];
+        _values = new int[INITIAL_CAPACITY];
+        _count = 0;
+        _windowStart = 0;
+        _maxTokenIndex = -1;
+    }
+
+    /**
+     * Returns the packed key for given values (or 0 if values can't be packed).
+     */
+    private long getKey(ParseRule aRule, int aTokenIndex, int aTokenCount)
+    {
+        int ruleId = aRule.getMemoId();
+        if (ruleId > MAX_RULE_ID || aTokenCount > MAX_COUNT || aTokenIndex < 0)
+            return 0;
+        return KEY_USED_BIT | (long) aTokenIndex << 32 | (long) ruleId << 11 | (aTokenCount + 1);
+    }
+
+    /**
+     * Returns the token index for given key.
+     */
+    private static int getTokenIndex(long aKey)  { return (int) (aKey >>> 32) & Integer.MAX_VALUE; }
+
+    /**
+     * Returns the value for given key (or NOT_FOUND).
+     */
+    private int get(long aKey)
+    {
+        // If key token before window, return not found
+        _stats._lookupCount++;
+        if (getTokenIndex(aKey) < _windowStart)
+            return NOT_FOUND;
+
+        // Probe for key
+        int mask = _keys.length - 1;
+        for (int slot = hash(aKey) & mask; _keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (_keys[slot] == aKey) {
+                _stats._hitCount++;
+                return _values[slot];
+            }
+        }
+
+        // Return not found
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds given key and value.
+     */
+    private void put(long aKey, int aTokenIndex, int aValue)
+    {
+        // If key token before window, just return
+        if (aTokenIndex < _windowStart) return;
+
+        // If table half full, drop stale entries (and grow or shrink window if needed)
+        if (_count * 2 >= _keys.length)
+            compact();
+
+        // Probe for key or empty slot and set
+        int mask = _keys.length - 1;
+        int slot = hash(aKey) & mask;
+        while (_keys[slot] != 0 && _keys[slot] != aKey)
+            slot = (slot + 1) & mask;
+        if (_keys[slot] == 0)
+            _count++;
+        _keys[slot] = aKey;
+        _values[slot] = aValue;
+        _stats._storeCount++;
+        if (aTokenIndex > _maxTokenIndex)
+            _maxTokenIndex = aTokenIndex;
+    }
+
+    /**
+     * Rebuilds table without stale entries. If still too full, grows table (up to max capacity) or drops all entries.
+     */
+    private void compact()
+    {
+        // Count live entries
+        int liveCount = 0;
+        for (long key : _keys)
+            if (key != 0 && getTokenIndex(key) >= _windowStart)
+                liveCount++;
+
+        // If live entries would still fill over a quarter of table, grow table or (at max capacity) drop all entries
+        int capacity = _keys.length;
+        if (liveCount * 4 >= capacity) {
+            if (capacity < _maxCapacity)
+                capacity *= 2;
+            else {
+                _windowStart = _maxTokenIndex + 1;
+                _stats._overflowCount++;
+            }
+        }
+
+        // Rehash live entries into new arrays
+        long[] oldKeys = _keys;
+        int[] oldValues = _values;
+        _keys = new long[capacity];
+        _values = new int[capacity];
+        _count = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == 0) continue;
+            if (getTokenIndex(key) < _windowStart) {
+                _stats._evictCount++;
+                continue;
+            }
+            int slot = hash(key) & mask;
+            while (_keys[slot] != 0)
+                slot = (slot + 1) & mask;
+            _keys[slot] = key;
+            _values[slot] = oldValues[i];
+            _count++;
+        }
+    }
+
+    /**
+     * Returns hash for key.
+     */
+    private static int hash(long aKey)
+    {
+        long hash = aKey * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Standard toString implementation.
+     */
+    public String toString()
+    {
+        return getClass().getSimpleName() + " { Entries=" + _count + ", Capacity=" + _keys.length + ", " +
+            _stats.toStringProps() + " }";
+    }
+
+    /**
+     * A class to report memo usage.
+     */
+    public static class Stats {
+
+        // The number of lookups, hits, stores and evictions
+        private long  _lookupCount, _hitCount, _storeCount, _evictCount;
+
+        // The number of times all entries were dropped to stay within capacity
+        private long  _overflowCount;
+
+        /** Returns the number of lookups. */
+        public long getLookupCount()  { return _lookupCount; }
+
+        /** Returns the number of lookups that found an entry. */
+        public long getHitCount()  { return _hitCount; }
+
+        /** Returns the hit rate (0 - 1). */
+        public double getHitRate()  { return _lookupCount > 0 ? _hitCount / (double) _lookupCount : 0; }
+
+        /** Returns the number of entries stored. */
+        public long getStoreCount()  { return _storeCount; }
+
+        /** Returns the number of entries evicted (fell out of window). */
+        public long getEvictCount()  { return _evictCount; }
+
+        /** Returns the number of times all entries were dropped to stay within capacity. */
+        public long getOverflowCount()  { return _overflowCount; }
+
+        /** Resets the counts. */
+        public void reset()
+        {
+            _lookupCount = _hitCount = _storeCount = _evictCount = _overflowCount = 0;
+        }
+
+        /** Standard toStringProps implementation. */
+        public String toStringProps()
+        {
+            return "Lookups=" + _lookupCount + ", Hits=" + _hitCount + String.format(" (%.1f%%)", getHitRate() * 100) +
+                ", Stores=" + _storeCount + ", Evicts=" + _evictCount + ", Overflows=" + _overflowCount;
+        }
+
+        /** Standard toString implementation. */
+        public String toString()  { return getClass().getSimpleName() + " { " + toStringProps() + " }"; }
+    }
+}
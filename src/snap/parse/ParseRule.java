@@ -4,6 +4,7 @@
 package snap.parse;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class to represent a parse rule.
@@ -31,6 +32,12 @@ public class ParseRule {
     // The named rules
     private Map<String, ParseRule>  _namedRules;
 
+    // The unique id of this rule (for packrat memo keys)
+    private final int  _memoId = _memoIdCount.getAndIncrement();
+
+    // The count of rules created (for unique ids)
+    private static final AtomicInteger  _memoIdCount = new AtomicInteger();
+
     // Constants for booleans operators
     public enum Op {Or, And, ZeroOrOne, ZeroOrMore, OneOrMore, LookAhead, Pattern}
 
@@ -106,6 +113,11 @@ public class ParseRule {
         return _name != null ? _name : _pattern != null ? _pattern : null;
     }
 
+    /**
+     * Returns the unique id of this rule (for packrat memo keys).
+     */
+    int getMemoId()  { return _memoId; }
+
     /**
      * Returns the op.
      */
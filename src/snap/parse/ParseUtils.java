@@ -7,10 +7,9 @@ import snap.util.ListUtils;
 import snap.util.SnapUtils;
 import snap.web.WebFile;
 import snap.web.WebURL;
+import java.io.*;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Stream;
 
 /**
@@ -21,6 +20,9 @@ public class ParseUtils {
     // Written rules
     List<ParseRule> _rules = new ArrayList<>();
 
+    // The compiled grammar magic number
+    private static final int COMPILED_MAGIC = 0x50525345;
+
     /**
      * Writes a rule to a file.
      */
@@ -206,12 +208,122 @@ public class ParseUtils {
     }
 
     /**
-     * Loads a rule for a class.
+     * Writes compiled form of a rule (rule graph and tokenizer tables) to given stream.
+     */
+    public void writeCompiled(ParseRule aRule, OutputStream anOS) throws IOException
+    {
+        // Get rules (top level rule first) and indexes
+        addRule(aRule);
+        Map<ParseRule,Integer> indexes = new IdentityHashMap<>();
+        for (ParseRule rule : _rules)
+            indexes.put(rule, indexes.size());
+
+        // Write rules
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(anOS));
+        out.writeInt(COMPILED_MAGIC);
+        out.writeInt(_rules.size());
+        for (ParseRule rule : _rules) {
+            out.writeByte(rule.getOp().ordinal());
+            writeString(out, rule.getName());
+            writeString(out, rule.getPattern());
+            out.writeInt(rule.getChild0() != null ? indexes.get(rule.getChild0()) : -1);
+            out.writeInt(rule.getChild1() != null ? indexes.get(rule.getChild1()) : -1);
+            out.writeInt(rule.getLookAhead());
+        }
+
+        // Write tokenizer regexes and scanner tables
+        Tokenizer tokenizer = new Tokenizer();
+        tokenizer.addPatternsForRule(aRule);
+        Regex[] regexes = tokenizer.getRegexes();
+        out.writeInt(regexes.length);
+        for (Regex regex : regexes) {
+            writeString(out, regex.getName());
+            writeString(out, regex.getPattern());
+        }
+        tokenizer.getScanner().writeTables(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a rule from compiled bytes (and adds tokenizer tables to scanner cache).
+     */
+    public static ParseRule readCompiled(byte[] theBytes) throws IOException
+    {
+        // Check magic number
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(theBytes));
+        if (in.readInt() != COMPILED_MAGIC)
+            throw new IOException("ParseUtils: Invalid compiled grammar");
+
+        // Read rules
+        int ruleCount = in.readInt();
+        ParseRule[] rules = new ParseRule[ruleCount];
+        int[] childIndexes = new int[ruleCount * 2];
+        Op[] ops = Op.values();
+        for (int i = 0; i < ruleCount; i++) {
+            Op op = ops[in.readByte()];
+            ParseRule rule = rules[i] = new ParseRule(readString(in));
+            rule._op = op;
+            String pattern = readString(in);
+            rule._pattern = pattern != null ? pattern.intern() : null;
+            childIndexes[i * 2] = in.readInt();
+            childIndexes[i * 2 + 1] = in.readInt();
+            rule._lookAhead = in.readInt();
+        }
+
+        // Connect child rules
+        for (int i = 0; i < ruleCount; i++) {
+            int child0 = childIndexes[i * 2], child1 = childIndexes[i * 2 + 1];
+            rules[i]._child0 = child0 >= 0 ? rules[child0] : null;
+            rules[i]._child1 = child1 >= 0 ? rules[child1] : null;
+        }
+
+        // Read tokenizer regexes and scanner tables
+        Regex[] regexes = new Regex[in.readInt()];
+        for (int i = 0; i < regexes.length; i++)
+            regexes[i] = new Regex(readString(in), readString(in));
+        TokenScanner.readTables(regexes, in);
+
+        // Return top level rule
+        return rules[0];
+    }
+
+    /**
+     * Writes a string that can be null.
+     */
+    private static void writeString(DataOutputStream anOut, String aStr) throws IOException
+    {
+        anOut.writeBoolean(aStr != null);
+        if (aStr != null)
+            anOut.writeUTF(aStr);
+    }
+
+    /**
+     * Reads a string that can be null.
+     */
+    private static String readString(DataInputStream anIn) throws IOException
+    {
+        return anIn.readBoolean() ? anIn.readUTF() : null;
+    }
+
+    /**
+     * Loads a rule for a class. Loads compiled grammar (ClassName.bin) if available, otherwise parses text grammar.
      */
     public static ParseRule loadRule(Class<?> aClass, String aName)
     {
-        // Get resource for rule
+        // Get grammar name
         String name = aName != null ? aName : aClass.getSimpleName() + ".txt";
+
+        // If compiled grammar available, read it
+        if (name.endsWith(".txt")) {
+            WebURL binURL = WebURL.getURL(aClass, name.substring(0, name.length() - 4) + ".bin");
+            byte[] bytes = binURL != null ? SnapUtils.getBytes(binURL) : null;
+            if (bytes != null) {
+                try { return readCompiled(bytes); }
+                catch (IOException e) { System.err.println("ParseUtils.loadRule: Error reading compiled grammar: " + e); }
+            }
+        }
+
+        // Get resource for rule
         WebURL url = WebURL.getURL(aClass, name); //java.net.URL url = aClass.getResource(name);
         if (url == null) {
             System.err.println("ParseUtils.loadRule: Couldn't find " + name);
@@ -311,15 +423,24 @@ public class ParseUtils {
     }
 
     /**
-     * Test.
+     * Compiles given text grammar resources (e.g. snap/util/JSParser.txt) into compiled grammars in given directory
+     * (run at build time to generate compiled grammar resources).
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
-        //WebFile file = WebURL.getURL("/tmp/KeyChain.txt").createFile(false);
-        //new ParseUtils().write(new snap.util.KeyChainParser().getRule(), file);
-        //System.out.println(KeyChain.getValue(new Object(), "1+1*2+3"));
-        //System.out.println(KeyChain.getValue(new Object(), "1+2"));
-        //new ParseUtils().write(new ParseRuleParser().getRule(), WebURL.getURL("/tmp/ParseRuleParser.txt").createFile(false));
+        for (int i = 1; i < args.length; i++) {
+
+            // Parse text grammar
+            String grammarStr = SnapUtils.getText(ParseUtils.class.getClassLoader().getResourceAsStream(args[i]));
+            ParseRule rule;
+            try { rule = new ParseRuleParser().parse(grammarStr).getCustomNode(ParseRule.class); }
+            catch (ParseException e) { throw new IOException(e); }
+
+            // Write compiled grammar
+            File file = new File(args[0], args[i].substring(0, args[i].length() - 4) + ".bin");
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(file)) { new ParseUtils().writeCompiled(rule, out); }
+        }
     }
 
 }
\ No newline at end of file
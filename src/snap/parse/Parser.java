@@ -29,6 +29,15 @@ public class Parser {
     // The shared node used to report parse success
     private ParseNode _sharedNode = new ParseNode();
 
+    // The memo table for packrat parsing (null if packrat parsing not enabled)
+    private ParseMemo  _memo;
+
+    // The index of current token in input since parse start (used for memo keys)
+    private int  _tokenIndex;
+
+    // The history of last parse for incremental reparse (null if incremental parsing not enabled)
+    private ParseHistory  _history;
+
     /**
      * Constructor.
      */
@@ -85,6 +94,49 @@ public class Parser {
         return getRule().getRule(aName);
     }
 
+    /**
+     * Returns whether parser memoizes rule failures and look ahead results per token (packrat parsing).
+     */
+    public boolean isPackrat()  { return _memo != null; }
+
+    /**
+     * Sets whether parser memoizes rule failures and look ahead results per token (packrat parsing).
+     * This can make grammars with many alternatives/look aheads much faster at the cost of some memory (bounded).
+     * Handlers are unaffected, since they are only called for rules that succeed (which are never retried).
+     */
+    public void setPackrat(boolean aValue)
+    {
+        if (aValue == isPackrat()) return;
+        _memo = aValue ? new ParseMemo() : null;
+        _tokenIndex = 0;
+    }
+
+    /**
+     * Returns the packrat memo stats (or null if packrat parsing not enabled).
+     */
+    public ParseMemo.Stats getPackratStats()  { return _memo != null ? _memo.getStats() : null; }
+
+    /**
+     * Returns whether parser keeps tokens and handler results of last parse, so reparse() can reuse them.
+     */
+    public boolean isIncremental()  { return _history != null; }
+
+    /**
+     * Sets whether parser keeps tokens and handler results of last parse, so reparse() can reuse them.
+     * Results are reused for named rules with handlers, so handlers should treat child custom nodes as values (reused
+     * custom nodes are given to new parents). Parsers with handlers that move the tokenizer just do full parses.
+     */
+    public void setIncremental(boolean aValue)
+    {
+        if (aValue == isIncremental()) return;
+        _history = aValue ? new ParseHistory() : null;
+    }
+
+    /**
+     * Returns the number of rule results reused by last parse (if incremental).
+     */
+    public int getIncrementalReuseCount()  { return _history != null ? _history.getReuseCount() : 0; }
+
     /**
      * Returns the current parse character input.
      */
@@ -97,11 +149,23 @@ public class Parser {
      * Sets the current parse string.
      */
     public Parser setInput(CharSequence aSequence)
+    {
+        if (_history != null)
+            _history.reset();
+        setInputImpl(aSequence);
+        return this;
+    }
+
+    /**
+     * Sets the current parse string (keeping history).
+     */
+    private void setInputImpl(CharSequence aSequence)
     {
         _input = aSequence;
         getTokenizer().setInput(_input);
+        if (_memo != null)
+            _memo.clear();
         setCharIndex(0);
-        return this;
     }
 
     /**
@@ -166,8 +230,9 @@ public class Parser {
     public void setCharIndex(int aLoc)
     {
         getTokenizer().setCharIndex(aLoc);
-        _lookAheadTokens.clear();
-        _token = null;
+        clearTokens();
+        if (_history != null)
+            _history.setCharIndex(aLoc);
     }
 
     /**
@@ -221,7 +286,7 @@ public class Parser {
     {
         if (_lookAheadTokens.size() > 0)
             return _lookAheadTokens.remove(0);
-        return getTokenizer().getNextToken();
+        return readToken();
     }
 
     /**
@@ -232,10 +297,28 @@ public class Parser {
         if (anIndex == 0)
             return getToken();
         while (anIndex > _lookAheadTokens.size())
-            _lookAheadTokens.add(getTokenizer().getNextToken());
+            _lookAheadTokens.add(readToken());
         return _lookAheadTokens.get(anIndex - 1);
     }
 
+    /**
+     * Reads the next token from tokenizer (or history, if incremental).
+     */
+    private ParseToken readToken()
+    {
+        if (_history != null && _history.isValid())
+            return _history.readToken(getTokenizer());
+        return getTokenizer().getNextToken();
+    }
+
+    /**
+     * Returns the index of the current token in history (if incremental).
+     */
+    private int getTokenIndex()
+    {
+        return _history.getReadCount() - _lookAheadTokens.size() - (_token != null ? 1 : 0);
+    }
+
     /**
      * Clears any currently set tokens.
      */
@@ -243,6 +326,12 @@ public class Parser {
     {
         _lookAheadTokens.clear();
         _token = null;
+
+        // If packrat, move token index past memo entries, since they are for tokens that will be read again
+        if (_memo != null) {
+            _tokenIndex = _memo.getNextFreeTokenIndex();
+            _memo.setCurrentTokenIndex(_tokenIndex);
+        }
     }
 
     /**
@@ -271,6 +360,32 @@ public class Parser {
         return node != null && node.getCustomNode() instanceof ParseNode ? (ParseNode) node.getCustomNode() : node;
     }
 
+    /**
+     * Reparses input after an edit that replaced given number of chars at given offset of last input with given number
+     * of new chars. If incremental, only re-reads tokens around edit and reuses results of rules that only looked at
+     * unchanged tokens. Otherwise (or if last parse can't be reused), just parses input.
+     */
+    public ParseNode reparse(CharSequence anInput, int anOffset, int aRemoveLength, int anInsertLength)
+    {
+        // If no previous parse to reuse, just parse
+        if (_history == null || !_history.isReusable())
+            return parse(anInput);
+
+        // Update history for edit, set input (keeping history) and parse
+        _history.applyEdit(anInput, anOffset, aRemoveLength, anInsertLength);
+        setInputImpl(anInput);
+        return parse();
+    }
+
+    /**
+     * Reparses input after an edit and returns custom parse tree node (convenience).
+     */
+    public <T> T reparseCustom(CharSequence anInput, int anOffset, int aRemoveLength, int anInsertLength, Class<T> aClass)
+    {
+        ParseNode node = reparse(anInput, anOffset, aRemoveLength, anInsertLength);
+        return node != null ? node.getCustomNode(aClass) : null;
+    }
+
     /**
      * Parses input and returns custom parse tree node.
      */
@@ -292,6 +407,81 @@ public class Parser {
      * Returns a parse node if this rule matches string.
      */
     protected ParseNode parse(ParseRule aRule, HandlerRef aHRef)
+    {
+        // If incremental and rule has own handler (so result is just custom node), reuse or record result
+        if (_history != null && aRule.getHandler() != null && aRule.getOp() != ParseRule.Op.Pattern && _history.isValid())
+            return parseWithHistory(aRule, aHRef);
+        return parseWithMemo(aRule, aHRef);
+    }
+
+    /**
+     * Returns a parse node if this rule matches string, reusing result from history if available.
+     */
+    private ParseNode parseWithHistory(ParseRule aRule, HandlerRef aHRef)
+    {
+        // Get current token (if no token, just return null)
+        ParseToken token = getToken();
+        if (token == null) return null;
+        int tokenIndex = getTokenIndex();
+
+        // If rule was parsed at this token before (and looked only at unchanged tokens), skip tokens and reuse result
+        ParseHistory.Result result = _history.getResult(aRule, tokenIndex);
+        if (result != null) {
+
+            // Skip tokens (including look ahead tokens already read)
+            int dropCount = Math.min(_lookAheadTokens.size(), result.tokenCount - 1);
+            _lookAheadTokens.subList(0, dropCount).clear();
+            _token = null;
+            _history.skipResult(tokenIndex, result);
+            _tokenIndex += result.tokenCount - 1;
+            tokenConsumed();
+
+            // Create node for result and return
+            ParseToken endToken = _history.getToken(tokenIndex + result.tokenCount - 1);
+            ParseNode node = createNode(aRule, token, endToken);
+            node._customNode = result.customNode;
+            return node;
+        }
+
+        // Parse rule and record result
+        ParseNode node = parseWithMemo(aRule, aHRef);
+        if (node != null && _history.isValid()) {
+            int tokenCount = getTokenIndex() - tokenIndex;
+            if (tokenCount > 0)
+                _history.addResult(aRule, tokenIndex, tokenCount, node.getCustomNode());
+        }
+
+        // Return
+        return node;
+    }
+
+    /**
+     * Returns a parse node if this rule matches string, using memo if packrat.
+     */
+    private ParseNode parseWithMemo(ParseRule aRule, HandlerRef aHRef)
+    {
+        // If not packrat or rule is anonymous or pattern (cheaper to just parse), just parse
+        if (_memo == null || aRule.getName() == null || aRule.getOp() == ParseRule.Op.Pattern)
+            return parseRule(aRule, aHRef);
+
+        // If rule already failed at current token, just return
+        int tokenIndex = _tokenIndex;
+        if (_memo.isParseFailed(aRule, tokenIndex))
+            return null;
+
+        // Parse rule - if failed (which never consumes tokens or calls handlers), record failure
+        ParseNode node = parseRule(aRule, aHRef);
+        if (node == null && _tokenIndex == tokenIndex)
+            _memo.setParseFailed(aRule, tokenIndex);
+
+        // Return
+        return node;
+    }
+
+    /**
+     * Returns a parse node if this rule matches string (does real work for parse(rule, handler)).
+     */
+    private ParseNode parseRule(ParseRule aRule, HandlerRef aHRef)
     {
         // Get current token (if no token, just return null)
         ParseToken token = getToken();
@@ -381,6 +571,7 @@ public class Parser {
 
                 // Clear token and return
                 _token = null; //getNextToken();
+                tokenConsumed();
                 return node;
             }
 
@@ -437,10 +628,41 @@ public class Parser {
         return true;
     }
 
+    /**
+     * Called when current token is consumed.
+     */
+    private void tokenConsumed()
+    {
+        _tokenIndex++;
+        if (_memo != null)
+            _memo.setCurrentTokenIndex(_tokenIndex);
+    }
+
     /**
      * Looks ahead given number of tokens and returns the remainder or -1 if it fails.
      */
     protected int lookAhead(ParseRule aRule, int aTokenCount, int aTokenIndex)
+    {
+        // If not packrat or rule is anonymous or pattern (cheaper to just look ahead), just look ahead
+        if (_memo == null || aRule.getName() == null || aRule.getOp() == ParseRule.Op.Pattern)
+            return lookAheadRule(aRule, aTokenCount, aTokenIndex);
+
+        // If result already known for rule at token, just return it
+        int tokenIndex = _tokenIndex + aTokenIndex;
+        int remainder = _memo.getLookAhead(aRule, tokenIndex, aTokenCount);
+        if (remainder != ParseMemo.NOT_FOUND)
+            return remainder;
+
+        // Look ahead and record result
+        remainder = lookAheadRule(aRule, aTokenCount, aTokenIndex);
+        _memo.setLookAhead(aRule, tokenIndex, aTokenCount, remainder);
+        return remainder;
+    }
+
+    /**
+     * Looks ahead given number of tokens and returns the remainder or -1 if it fails (does real work for lookAhead()).
+     */
+    private int lookAheadRule(ParseRule aRule, int aTokenCount, int aTokenIndex)
     {
         // Handle ops
         switch (aRule.getOp()) {
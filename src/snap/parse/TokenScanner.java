@@ -0,0 +1,1016 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.parse;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class to find the next token for a set of Tokenizer regexes in a single pass: The regexes are compiled into one
+ * table driven DFA that matches all regexes at once. Each regex matches what java.util.regex lookingAt() would (the
+ * first alternative and the most repeats that lead to a match win, not the longest match), then the regex with the
+ * longest match wins. When more than one regex matches the same run of chars, the one with the longest literal prefix
+ * wins, then the first one added (same as Tokenizer rules).
+ *
+ * The DFA handles literals and the regex subset grammars use (chars, escapes, classes, groups, alternation, greedy
+ * quantifiers). Regexes with other constructs (anchors, lookaround, back references, lazy quantifiers, flags, etc.)
+ * are matched with java.util.regex as before. Compiled DFAs are cached by patterns and flags, since parsers are often
+ * created per read.
+ */
+public class TokenScanner {
+
+    // The regexes
+    private Regex[]  _regexes;
+
+    // The compiled DFA
+    private DFA  _dfa;
+
+    // The end of last match
+    private int  _matchEnd;
+
+    // The index after the last char examined by last match
+    private int  _scanEnd;
+
+    // A cache of compiled DFAs for pattern lists
+    private static Map<List<Object>,DFA>  _dfaCache = new LinkedHashMap<List<Object>,DFA>(16, .75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<List<Object>,DFA> anEntry)  { return size() > MAX_CACHED_DFAS; }
+    };
+
+    // Constants for limits on compiled regexes, DFA size and cache size
+    private static final int MAX_REPEAT = 64;
+    private static final int MAX_NFA_NODES = 1 << 14;
+    private static final int MAX_DFA_CELLS = 1 << 20;
+    private static final int MAX_CACHED_DFAS = 32;
+
+    /**
+     * Constructor for given regexes.
+     */
+    public TokenScanner(Regex[] theRegexes)
+    {
+        _regexes = theRegexes;
+
+        // Get cached DFA for patterns (or create and add)
+        synchronized (_dfaCache) {
+            List<Object> patterns = getPatterns(theRegexes);
+            _dfa = _dfaCache.get(patterns);
+            if (_dfa == null)
+                _dfaCache.put(patterns, _dfa = new DFA(theRegexes));
+        }
+    }
+
+    /**
+     * Returns the regexes.
+     */
+    public Regex[] getRegexes()  { return _regexes; }
+
+    /**
+     * Writes the compiled tables to given stream (for precompiled grammars).
+     */
+    public void writeTables(DataOutputStream anOut) throws IOException
+    {
+        _dfa.write(anOut);
+    }
+
+    /**
+     * Reads compiled tables for given regexes from given stream and adds them to cache, so scanners for the same
+     * patterns don't compile them again.
+     */
+    public static void readTables(Regex[] theRegexes, DataInputStream anIn) throws IOException
+    {
+        DFA dfa = new DFA(anIn, theRegexes.length);
+        List<Object> patterns = getPatterns(theRegexes);
+        synchronized (_dfaCache) {
+            if (!_dfaCache.containsKey(patterns))
+                _dfaCache.put(patterns, dfa);
+        }
+    }
+
+    /**
+     * Returns the number of regexes matched with java.util.regex instead of DFA.
+     */
+    public int getFallbackCount()  { return _dfa._fallbackIndexes.length; }
+
+    /**
+     * Returns the number of DFA states.
+     */
+    public int getStateCount()  { return _dfa._accepts.length; }
+
+    /**
+     * Returns the index of the regex with the best match at given start index (or -1 if no regex matches at least
+     * one char).
+     */
+    public int match(CharSequence anInput, int aStart, int anEnd)
+    {
+        // Run DFA: Remember last accept state
+        DFA dfa = _dfa;
+        int[] transitions = dfa._transitions, accepts = dfa._accepts, asciiClasses = dfa._asciiClasses;
+        int classCount = dfa._classCount;
+        int matchIndex = -1;
+        int matchEnd = aStart;
+        int scanEnd = anEnd + 1;
+        for (int charIndex = aStart, state = 0; charIndex < anEnd; ) {
+            char c = anInput.charAt(charIndex++);
+            int charClass = c < 128 ? asciiClasses[c] : dfa.getCharClass(c);
+            state = transitions[state * classCount + charClass];
+            if (state < 0) {
+                scanEnd = charIndex;
+                break;
+            }
+            int accept = accepts[state];
+            if (accept >= 0) {
+                matchIndex = accept;
+                matchEnd = charIndex;
+            }
+        }
+
+        // If match splits surrogate pair, use java.util.regex for all (it matches by code point)
+        if (matchIndex >= 0 && matchEnd < anEnd && Character.isHighSurrogate(anInput.charAt(matchEnd - 1)) &&
+            Character.isLowSurrogate(anInput.charAt(matchEnd))) {
+            scanEnd = anEnd + 1;
+            matchIndex = -1;
+            matchEnd = aStart;
+            for (int i = 0; i < _regexes.length; i++) {
+                int end = getFallbackMatchEnd(i, anInput, aStart, anEnd);
+                if (isBetterMatch(i, end, matchIndex, matchEnd)) {
+                    matchIndex = i;
+                    matchEnd = end;
+                }
+            }
+        }
+
+        // Otherwise, check regexes that aren't in DFA (they could look at any char)
+        else {
+            if (dfa._fallbackIndexes.length > 0)
+                scanEnd = anEnd + 1;
+            for (int i : dfa._fallbackIndexes) {
+                int end = getFallbackMatchEnd(i, anInput, aStart, anEnd);
+                if (isBetterMatch(i, end, matchIndex, matchEnd)) {
+                    matchIndex = i;
+                    matchEnd = end;
+                }
+            }
+        }
+
+        // Set match end and scan end and return index
+        _matchEnd = matchEnd;
+        _scanEnd = scanEnd;
+        return matchIndex;
+    }
+
+    /**
+     * Returns the end of last match.
+     */
+    public int getMatchEnd()  { return _matchEnd; }
+
+    /**
+     * Returns the index after the last char examined by last match (or input end + 1 if match could have used more).
+     * Edits at or after this index can't change the match.
+     */
+    public int getScanEnd()  { return _scanEnd; }
+
+    /**
+     * Returns the match end for regex at given index using java.util.regex (or -1 if no match).
+     */
+    private int getFallbackMatchEnd(int anIndex, CharSequence anInput, int aStart, int anEnd)
+    {
+        Matcher matcher = _regexes[anIndex].getMatcher().reset(anInput);
+        matcher.region(aStart, anEnd);
+        return matcher.lookingAt() ? matcher.end() : -1;
+    }
+
+    /**
+     * Returns whether given regex match is better than current match.
+     */
+    private boolean isBetterMatch(int anIndex, int anEnd, int aMatchIndex, int aMatchEnd)
+    {
+        if (anEnd <= aMatchEnd)
+            return anEnd == aMatchEnd && aMatchIndex >= 0 && _dfa._ranks[anIndex] < _dfa._ranks[aMatchIndex];
+        return true;
+    }
+
+    /**
+     * Standard toString implementation.
+     */
+    public String toString()
+    {
+        return getClass().getSimpleName() + " { Regexes=" + _regexes.length + ", Fallbacks=" + getFallbackCount() +
+            ", States=" + getStateCount() + ", CharClasses=" + _dfa._classCount + " }";
+    }
+
+    /**
+     * Returns the patterns and compile flags for given regexes (the DFA cache key).
+     */
+    private static List<Object> getPatterns(Regex[] theRegexes)
+    {
+        List<Object> patterns = new ArrayList<>(theRegexes.length * 2);
+        for (Regex regex : theRegexes) {
+            patterns.add(regex.getPattern());
+            patterns.add(regex.getPatternCompileFlags());
+        }
+        return patterns;
+    }
+
+    /**
+     * The compiled tables for a list of regex patterns (immutable, so shared by scanners with same patterns).
+     */
+    private static class DFA {
+
+        // The priority rank of each regex for matches of same length (lower wins)
+        private int[]  _ranks;
+
+        // The indexes of regexes not compiled into DFA
+        private int[]  _fallbackIndexes;
+
+        // The char class for ASCII chars
+        private int[]  _asciiClasses = new int[128];
+
+        // The start char of each char interval and its char class (for non-ASCII chars)
+        private int[]  _intervalStarts, _intervalClasses;
+
+        // The number of char classes
+        private int  _classCount;
+
+        // The transitions (state * classCount + class) to next state (or -1)
+        private int[]  _transitions;
+
+        // The regex index accepted by each state (or -1)
+        private int[]  _accepts;
+
+        /**
+         * Constructor for given regexes.
+         */
+        DFA(Regex[] theRegexes)
+        {
+            // Get rank of each regex: Longest literal first, then by order
+            int regexCount = theRegexes.length;
+            Integer[] order = new Integer[regexCount];
+            for (int i = 0; i < regexCount; i++)
+                order[i] = i;
+            Arrays.sort(order, (i1, i2) -> {
+                int len1 = theRegexes[i1].getLiteralLength(), len2 = theRegexes[i2].getLiteralLength();
+                return len1 != len2 ? len2 - len1 : i1 - i2;
+            });
+            _ranks = new int[regexCount];
+            for (int i = 0; i < regexCount; i++)
+                _ranks[order[i]] = i;
+
+            // Build NFA for supported regexes (others go to fallback)
+            List<Node> nodes = new ArrayList<>();
+            Node startNode = new Node(nodes);
+            List<Integer> fallbackIndexes = new ArrayList<>();
+            for (int i = 0; i < regexCount; i++) {
+                int nodeCount = nodes.size();
+                Frag frag = getFrag(theRegexes[i], nodes);
+                if (frag == null) {
+                    fallbackIndexes.add(i);
+                    continue;
+                }
+                startNode.addEpsilon(frag.start);
+                frag.end.acceptIndex = i;
+                for (Node node : nodes.subList(nodeCount, nodes.size()))
+                    node.regexIndex = i;
+            }
+
+            // Build DFA (if too big, just use fallback for all)
+            if (nodes.size() > MAX_NFA_NODES || !buildDFA(startNode, nodes)) {
+                fallbackIndexes.clear();
+                for (int i = 0; i < regexCount; i++)
+                    fallbackIndexes.add(i);
+                List<Node> emptyNodes = new ArrayList<>();
+                buildDFA(new Node(emptyNodes), emptyNodes);
+            }
+
+            // Set fallback indexes
+            _fallbackIndexes = new int[fallbackIndexes.size()];
+            for (int i = 0; i < _fallbackIndexes.length; i++)
+                _fallbackIndexes[i] = fallbackIndexes.get(i);
+        }
+
+        /**
+         * Constructor to read tables written for given number of regexes from given stream.
+         */
+        DFA(DataInputStream anIn, int aRegexCount) throws IOException
+        {
+            if (anIn.readInt() != aRegexCount)
+                throw new IOException("TokenScanner: Compiled tables don't match regexes");
+            _ranks = readInts(anIn);
+            _fallbackIndexes = readInts(anIn);
+            _asciiClasses = readInts(anIn);
+            _intervalStarts = readInts(anIn);
+            _intervalClasses = readInts(anIn);
+            _classCount = anIn.readInt();
+            _transitions = readInts(anIn);
+            _accepts = readInts(anIn);
+        }
+
+        /**
+         * Writes tables to given stream.
+         */
+        void write(DataOutputStream anOut) throws IOException
+        {
+            anOut.writeInt(_ranks.length);
+            writeInts(anOut, _ranks);
+            writeInts(anOut, _fallbackIndexes);
+            writeInts(anOut, _asciiClasses);
+            writeInts(anOut, _intervalStarts);
+            writeInts(anOut, _intervalClasses);
+            anOut.writeInt(_classCount);
+            writeInts(anOut, _transitions);
+            writeInts(anOut, _accepts);
+        }
+
+        /**
+         * Returns the char class for given char.
+         */
+        int getCharClass(char aChar)
+        {
+            int index = Arrays.binarySearch(_intervalStarts, aChar);
+            if (index < 0)
+                index = -index - 2;
+            return _intervalClasses[index];
+        }
+
+        /**
+         * Builds the DFA for given NFA start node by subset construction. Returns false if DFA exceeds max size.
+         */
+        private boolean buildDFA(Node startNode, List<Node> theNodes)
+        {
+            // Get char nodes
+            List<Node> charNodes = new ArrayList<>();
+            for (Node node : theNodes)
+                if (node.ranges != null)
+                    charNodes.add(node);
+
+            // Get char interval starts from all char node range boundaries
+            TreeSet<Integer> bounds = new TreeSet<>(Arrays.asList(0, 128));
+            for (Node node : charNodes) {
+                for (int i = 0; i < node.ranges.length; i += 2) {
+                    bounds.add(node.ranges[i]);
+                    if (node.ranges[i + 1] < Character.MAX_VALUE)
+                        bounds.add(node.ranges[i + 1] + 1);
+                }
+            }
+            int intervalCount = bounds.size();
+            _intervalStarts = new int[intervalCount];
+            int intervalIndex = 0;
+            for (int bound : bounds)
+                _intervalStarts[intervalIndex++] = bound;
+
+            // Get char class for each interval: Intervals with same char nodes share class
+            Map<BitSet,Integer> classes = new HashMap<>();
+            List<Integer> classReps = new ArrayList<>();
+            _intervalClasses = new int[intervalCount];
+            for (int i = 0; i < intervalCount; i++) {
+                int rep = _intervalStarts[i];
+                BitSet sig = new BitSet();
+                for (int j = 0, jMax = charNodes.size(); j < jMax; j++)
+                    if (charNodes.get(j).containsChar(rep))
+                        sig.set(j);
+                Integer charClass = classes.get(sig);
+                if (charClass == null) {
+                    classes.put(sig, charClass = classes.size());
+                    classReps.add(rep);
+                }
+                _intervalClasses[i] = charClass;
+            }
+            _classCount = classes.size();
+            for (int c = 0; c < 128; c++)
+                _asciiClasses[c] = getCharClass((char) c);
+
+            // Create DFA states for ordered closures of NFA nodes (ordered by match priority, so each regex matches
+            // like java.util.regex)
+            Map<List<Integer>,Integer> stateIds = new HashMap<>();
+            List<List<Integer>> states = new ArrayList<>();
+            List<Integer> startState = new ArrayList<>();
+            addClosure(startNode, theNodes, startState, new BitSet(), new BitSet());
+            stateIds.put(startState, 0);
+            states.add(startState);
+            int[] transitions = new int[Math.max(_classCount * 16, 16)];
+            BitSet visited = new BitSet(), acceptedRegexes = new BitSet();
+            for (int stateId = 0; stateId < states.size(); stateId++) {
+                List<Integer> state = states.get(stateId);
+                for (int charClass = 0; charClass < _classCount; charClass++) {
+
+                    // Get nodes reached on char (in priority order)
+                    int rep = classReps.get(charClass);
+                    List<Integer> nextState = new ArrayList<>();
+                    visited.clear();
+                    acceptedRegexes.clear();
+                    for (int nodeId : state) {
+                        Node node = theNodes.get(nodeId);
+                        if (node.ranges != null && node.containsChar(rep))
+                            addClosure(node.out, theNodes, nextState, visited, acceptedRegexes);
+                    }
+
+                    // Get next state (create if needed)
+                    int nextId = -1;
+                    if (!nextState.isEmpty()) {
+                        Integer id = stateIds.get(nextState);
+                        if (id == null) {
+                            if ((states.size() + 1) * _classCount > MAX_DFA_CELLS)
+                                return false;
+                            stateIds.put(nextState, id = states.size());
+                            states.add(nextState);
+                        }
+                        nextId = id;
+                    }
+
+                    // Set transition
+                    int cell = stateId * _classCount + charClass;
+                    if (cell >= transitions.length)
+                        transitions = Arrays.copyOf(transitions, Math.max(transitions.length * 2, cell + 1));
+                    transitions[cell] = nextId;
+                }
+            }
+            _transitions = Arrays.copyOf(transitions, Math.max(states.size() * _classCount, 1));
+
+            // Set accept for each state: Best ranked regex accepted by any NFA node
+            _accepts = new int[states.size()];
+            for (int stateId = 0; stateId < states.size(); stateId++) {
+                int accept = -1;
+                for (int nodeId : states.get(stateId)) {
+                    int acceptIndex = theNodes.get(nodeId).acceptIndex;
+                    if (acceptIndex >= 0 && (accept < 0 || _ranks[acceptIndex] < _ranks[accept]))
+                        accept = acceptIndex;
+                }
+                _accepts[stateId] = accept;
+            }
+
+            // Return true
+            return true;
+        }
+    }
+
+    /**
+     * Writes given ints (with count) to given stream.
+     */
+    private static void writeInts(DataOutputStream anOut, int[] theInts) throws IOException
+    {
+        anOut.writeInt(theInts.length);
+        for (int value : theInts)
+            anOut.writeInt(value);
+    }
+
+    /**
+     * Reads ints (with count) from given stream.
+     */
+    private static int[] readInts(DataInputStream anIn) throws IOException
+    {
+        int[] ints = new int[anIn.readInt()];
+        for (int i = 0; i < ints.length; i++)
+            ints[i] = anIn.readInt();
+        return ints;
+    }
+
+    /**
+     * Adds the char and accept nodes reachable from given node by epsilon moves to given state, in priority order
+     * (depth first, following epsilons in order). Once a regex accepts, its lower priority nodes are dropped, since
+     * java.util.regex would never try them.
+     */
+    private static void addClosure(Node aNode, List<Node> theNodes, List<Integer> theState, BitSet theVisited,
+        BitSet theAcceptedRegexes)
+    {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(aNode);
+        while (!stack.isEmpty()) {
+
+            // Get next node (skip if visited or regex already accepted)
+            Node node = stack.pop();
+            if (theVisited.get(node.id)) continue;
+            theVisited.set(node.id);
+            if (node.regexIndex >= 0 && theAcceptedRegexes.get(node.regexIndex)) continue;
+
+            // If char node, add to state
+            if (node.ranges != null)
+                theState.add(node.id);
+
+            // If accept node, add to state and drop rest of regex
+            else if (node.acceptIndex >= 0) {
+                theState.add(node.id);
+                theAcceptedRegexes.set(node.acceptIndex);
+            }
+
+            // Otherwise push epsilons (in reverse, so first is visited first)
+            else if (node.epsilons != null) {
+                for (int i = node.epsilons.size() - 1; i >= 0; i--)
+                    stack.push(node.epsilons.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the NFA fragment for given regex (or null if regex uses unsupported constructs).
+     */
+    private static Frag getFrag(Regex aRegex, List<Node> theNodes)
+    {
+        String pattern = aRegex.getPattern();
+        if (pattern == null || pattern.length() == 0)
+            return null;
+
+        // Regexes with compile flags (other than literal) aren't supported
+        int flags = aRegex.getPatternCompileFlags();
+        if (flags != (aRegex.isLiteral() ? Pattern.LITERAL : 0))
+            return null;
+
+        // Handle literal: Just chars
+        if (aRegex.isLiteral()) {
+            List<Term> terms = new ArrayList<>();
+            for (int i = 0; i < pattern.length(); i++)
+                terms.add(Term.chars(pattern.charAt(i), pattern.charAt(i)));
+            try { return new Term(Term.CONCAT, terms).toFrag(theNodes); }
+            catch (UnsupportedPatternException e) { return null; }
+        }
+
+        // Parse pattern and build fragment (bail if too big)
+        try {
+            PatternParser patternParser = new PatternParser(pattern);
+            Term term = patternParser.parse();
+            int nodeCount = theNodes.size();
+            Frag frag = term.toFrag(theNodes);
+            if (theNodes.size() > MAX_NFA_NODES) {
+                theNodes.subList(nodeCount, theNodes.size()).clear();
+                return null;
+            }
+            return frag;
+        }
+        catch (UnsupportedPatternException e) { return null; }
+    }
+
+    /**
+     * An NFA node: Either a char node (with ranges and out) or an epsilon node.
+     */
+    private static class Node {
+
+        // The node id
+        int  id;
+
+        // The char ranges as inclusive start/end pairs (null for epsilon node)
+        int[]  ranges;
+
+        // The next node for char node
+        Node  out;
+
+        // The next nodes for epsilon node
+        List<Node>  epsilons;
+
+        // The index of regex accepted at this node (or -1)
+        int  acceptIndex = -1;
+
+        // The index of regex this node belongs to (or -1)
+        int  regexIndex = -1;
+
+        /** Constructor. */
+        Node(List<Node> theNodes)
+        {
+            id = theNodes.size();
+            theNodes.add(this);
+        }
+
+        /** Adds an epsilon move. */
+        void addEpsilon(Node aNode)
+        {
+            if (epsilons == null) epsilons = new ArrayList<>(2);
+            epsilons.add(aNode);
+        }
+
+        /** Returns whether char node contains given char. */
+        boolean containsChar(int aChar)
+        {
+            for (int i = 0; i < ranges.length; i += 2)
+                if (aChar >= ranges[i] && aChar <= ranges[i + 1])
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * An NFA fragment with start and end (epsilon) node.
+     */
+    private static class Frag {
+
+        // The start and end nodes
+        Node  start, end;
+
+        /** Constructor. */
+        Frag(Node aStart, Node anEnd)  { start = aStart; end = anEnd; }
+    }
+
+    /**
+     * A parsed regex term.
+     */
+    private static class Term {
+
+        // The term type
+        int  type;
+
+        // The char ranges for chars term
+        int[]  ranges;
+
+        // The child terms for concat/alternation, or single child for repeat
+        List<Term>  children;
+
+        // The min/max counts for repeat (max -1 for unbounded)
+        int  min, max;
+
+        // Constants for type
+        static final int CHARS = 0, CONCAT = 1, ALT = 2, REPEAT = 3;
+
+        /** Constructor. */
+        Term(int aType, List<Term> theChildren)  { type = aType; children = theChildren; }
+
+        /** Builds NFA fragment for this term. */
+        Frag toFrag(List<Node> theNodes) throws UnsupportedPatternException
+        {
+            // Bail if NFA too big
+            if (theNodes.size() > MAX_NFA_NODES)
+                throw new UnsupportedPatternException();
+
+            Node start = new Node(theNodes);
+            Node end = new Node(theNodes);
+            switch (type) {
+
+                // Handle chars: Char node from start to end
+                case CHARS:
+                    start.ranges = ranges;
+                    start.out = end;
+                    break;
+
+                // Handle concat: Chain children
+                case CONCAT: {
+                    Node last = start;
+                    for (Term child : children) {
+                        Frag frag = child.toFrag(theNodes);
+                        last.addEpsilon(frag.start);
+                        last = frag.end;
+                    }
+                    last.addEpsilon(end);
+                    break;
+                }
+
+                // Handle alternation: Branch to each child
+                case ALT:
+                    for (Term child : children) {
+                        Frag frag = child.toFrag(theNodes);
+                        start.addEpsilon(frag.start);
+                        frag.end.addEpsilon(end);
+                    }
+                    break;
+
+                // Handle repeat: Chain required copies, then optional copies (or loop if unbounded)
+                case REPEAT: {
+                    Term child = children.get(0);
+                    Node last = start;
+                    for (int i = 0; i < min; i++) {
+                        Frag frag = child.toFrag(theNodes);
+                        last.addEpsilon(frag.start);
+                        last = frag.end;
+                    }
+                    if (max < 0) {
+                        Frag frag = child.toFrag(theNodes);
+                        last.addEpsilon(frag.start);
+                        frag.end.addEpsilon(frag.start);
+                        frag.end.addEpsilon(end);
+                    }
+                    else {
+                        for (int i = min; i < max; i++) {
+                            Frag frag = child.toFrag(theNodes);
+                            last.addEpsilon(frag.start);
+                            last.addEpsilon(end);
+                            last = frag.end;
+                        }
+                    }
+                    last.addEpsilon(end);
+                    break;
+                }
+            }
+
+            // Return
+            return new Frag(start, end);
+        }
+
+        /** Returns a chars term for given inclusive range. */
+        static Term chars(int aStart, int anEnd)  { return chars(new int[] { aStart, anEnd }); }
+
+        /** Returns a chars term for given ranges. */
+        static Term chars(int[] theRanges)
+        {
+            Term term = new Term(CHARS, null);
+            term.ranges = theRanges;
+            return term;
+        }
+    }
+
+    /**
+     * A class to parse the supported java.util.regex subset into terms (throws UnsupportedPatternException for
+     * anything else).
+     */
+    private static class PatternParser {
+
+        // The pattern and parse index
+        String  _pattern;
+        int  _index;
+
+        // Constants for predefined char classes
+        static final int[] DIGIT = { '0', '9' };
+        static final int[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+        static final int[] SPACE = { '\t', '\r', ' ', ' ' };
+        static final int[] DOT = { 0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, 0x84, 0x86, 0x2027, 0x202A, 0xFFFF };
+
+        /** Constructor. */
+        PatternParser(String aPattern)  { _pattern = aPattern; }
+
+        /** Parses the pattern. */
+        Term parse() throws UnsupportedPatternException
+        {
+            Term term = parseAlt();
+            if (_index < _pattern.length())
+                throw new UnsupportedPatternException();
+            return term;
+        }
+
+        /** Parses alternation: Concat ('|' Concat)* */
+        Term parseAlt() throws UnsupportedPatternException
+        {
+            List<Term> terms = new ArrayList<>();
+            terms.add(parseConcat());
+            while (hasChar() && peek() == '|') {
+                _index++;
+                terms.add(parseConcat());
+            }
+            return terms.size() == 1 ? terms.get(0) : new Term(Term.ALT, terms);
+        }
+
+        /** Parses concatenation of repeats. */
+        Term parseConcat() throws UnsupportedPatternException
+        {
+            List<Term> terms = new ArrayList<>();
+            while (hasChar() && peek() != '|' && peek() != ')')
+                terms.add(parseRepeat());
+            return new Term(Term.CONCAT, terms);
+        }
+
+        /** Parses atom with optional greedy quantifier. */
+        Term parseRepeat() throws UnsupportedPatternException
+        {
+            Term term = parseAtom();
+            while (hasChar()) {
+                char c = peek();
+                int min, max;
+                if (c == '*') { min = 0; max = -1; _index++; }
+                else if (c == '+') { min = 1; max = -1; _index++; }
+                else if (c == '?') { min = 0; max = 1; _index++; }
+                else if (c == '{') {
+                    _index++;
+                    min = max = parseInt();
+                    if (hasChar() && peek() == ',') {
+                        _index++;
+                        max = hasChar() && peek() == '}' ? -1 : parseInt();
+                    }
+                    expect('}');
+                    if (max >= 0 && max < min || Math.max(min, max) > MAX_REPEAT)
+                        throw new UnsupportedPatternException();
+                }
+                else break;
+
+                // Lazy and possessive quantifiers not supported
+                if (hasChar() && (peek() == '?' || peek() == '+'))
+                    throw new UnsupportedPatternException();
+
+                // Wrap term
+                Term repeat = new Term(Term.REPEAT, Collections.singletonList(term));
+                repeat.min = min;
+                repeat.max = max;
+                term = repeat;
+            }
+            return term;
+        }
+
+        /** Parses atom: group, class, dot, escape or char. */
+        Term parseAtom() throws UnsupportedPatternException
+        {
+            char c = next();
+            switch (c) {
+
+                // Handle group (only plain or non-capturing)
+                case '(': {
+                    if (hasChar() && peek() == '?') {
+                        if (_index + 1 >= _pattern.length() || _pattern.charAt(_index + 1) != ':')
+                            throw new UnsupportedPatternException();
+                        _index += 2;
+                    }
+                    Term term = parseAlt();
+                    expect(')');
+                    return term;
+                }
+
+                // Handle char class
+                case '[': return Term.chars(parseClass());
+
+                // Handle any char (except line terminators)
+                case '.': return Term.chars(DOT);
+
+                // Handle escape
+                case '\\': {
+                    int[] ranges = parseEscape(false);
+                    return Term.chars(ranges);
+                }
+
+                // Handle anchors and misplaced quantifiers
+                case '^': case '$': case '*': case '+': case '?': case '{': case ')':
+                    throw new UnsupportedPatternException();
+
+                // Handle plain char
+                default: return Term.chars(c, c);
+            }
+        }
+
+        /** Parses char class (after '[') and returns ranges. */
+        int[] parseClass() throws UnsupportedPatternException
+        {
+            // Check for negation
+            boolean negate = hasChar() && peek() == '^';
+            if (negate)
+                _index++;
+
+            // Leading ']' not supported
+            if (hasChar() && peek() == ']')
+                throw new UnsupportedPatternException();
+
+            // Parse items until close
+            List<int[]> rangesList = new ArrayList<>();
+            while (true) {
+                char c = next();
+                if (c == ']')
+                    break;
+
+                // Nested classes and intersections not supported
+                if (c == '[' || c == '&' && hasChar() && peek() == '&')
+                    throw new UnsupportedPatternException();
+
+                // Get item start char (or predefined class)
+                int lo = c;
+                if (c == '\\') {
+                    int[] ranges = parseEscape(true);
+                    if (ranges.length > 2 || ranges[0] != ranges[1]) {
+                        rangesList.add(ranges);
+                        continue;
+                    }
+                    lo = ranges[0];
+                }
+
+                // Handle range
+                int hi = lo;
+                if (hasChar() && peek() == '-' && _index + 1 < _pattern.length() && _pattern.charAt(_index + 1) != ']') {
+                    _index++;
+                    char c2 = next();
+                    if (c2 == '[')
+                        throw new UnsupportedPatternException();
+                    if (c2 == '\\') {
+                        int[] ranges = parseEscape(true);
+                        if (ranges.length > 2 || ranges[0] != ranges[1])
+                            throw new UnsupportedPatternException();
+                        hi = ranges[0];
+                    }
+                    else hi = c2;
+                    if (hi < lo)
+                        throw new UnsupportedPatternException();
+                }
+                rangesList.add(new int[] { lo, hi });
+            }
+
+            // Merge ranges and negate if needed
+            int[] ranges = mergeRanges(rangesList);
+            return negate ? negateRanges(ranges) : ranges;
+        }
+
+        /** Parses escape (after '\') and returns ranges. */
+        int[] parseEscape(boolean inClass) throws UnsupportedPatternException
+        {
+            char c = next();
+            switch (c) {
+                case 'd': return DIGIT;
+                case 'D': return negateRanges(DIGIT);
+                case 'w': return WORD;
+                case 'W': return negateRanges(WORD);
+                case 's': return SPACE;
+                case 'S': return negateRanges(SPACE);
+                case 't': return new int[] { '\t', '\t' };
+                case 'n': return new int[] { '\n', '\n' };
+                case 'r': return new int[] { '\r', '\r' };
+                case 'f': return new int[] { '\f', '\f' };
+                case 'a': return new int[] { 7, 7 };
+                case 'e': return new int[] { 27, 27 };
+                case 'x': { int v = parseHex(2); return new int[] { v, v }; }
+                case 'u': { int v = parseHex(4); return new int[] { v, v }; }
+                default:
+                    // Escaped letters and digits are other classes, anchors, back references, etc.
+                    if (Character.isLetterOrDigit(c))
+                        throw new UnsupportedPatternException();
+                    return new int[] { c, c };
+            }
+        }
+
+        /** Parses a decimal int. */
+        int parseInt() throws UnsupportedPatternException
+        {
+            int start = _index;
+            while (hasChar() && peek() >= '0' && peek() <= '9')
+                _index++;
+            if (_index == start || _index - start > 4)
+                throw new UnsupportedPatternException();
+            return Integer.parseInt(_pattern.substring(start, _index));
+        }
+
+        /** Parses given number of hex digits. */
+        int parseHex(int aCount) throws UnsupportedPatternException
+        {
+            if (_index + aCount > _pattern.length())
+                throw new UnsupportedPatternException();
+            int value = 0;
+            for (int i = 0; i < aCount; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0)
+                    throw new UnsupportedPatternException();
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        /** Returns whether more chars. */
+        boolean hasChar()  { return _index < _pattern.length(); }
+
+        /** Returns next char without advancing. */
+        char peek()  { return _pattern.charAt(_index); }
+
+        /** Returns next char and advances. */
+        char next() throws UnsupportedPatternException
+        {
+            if (!hasChar())
+                throw new UnsupportedPatternException();
+            return _pattern.charAt(_index++);
+        }
+
+        /** Advances past given char. */
+        void expect(char aChar) throws UnsupportedPatternException
+        {
+            if (next() != aChar)
+                throw new UnsupportedPatternException();
+        }
+
+        /** Returns sorted, merged ranges for given list of ranges. */
+        static int[] mergeRanges(List<int[]> theRanges)
+        {
+            // Get all ranges as pairs and sort by start
+            List<int[]> pairs = new ArrayList<>();
+            for (int[] ranges : theRanges)
+                for (int i = 0; i < ranges.length; i += 2)
+                    pairs.add(new int[] { ranges[i], ranges[i + 1] });
+            pairs.sort((p1, p2) -> p1[0] - p2[0]);
+
+            // Merge overlapping/adjacent pairs
+            int[] merged = new int[pairs.size() * 2];
+            int count = 0;
+            for (int[] pair : pairs) {
+                if (count > 0 && pair[0] <= merged[count - 1] + 1)
+                    merged[count - 1] = Math.max(merged[count - 1], pair[1]);
+                else {
+                    merged[count++] = pair[0];
+                    merged[count++] = pair[1];
+                }
+            }
+            return Arrays.copyOf(merged, count);
+        }
+
+        /** Returns the complement of given sorted ranges. */
+        static int[] negateRanges(int[] theRanges)
+        {
+            int[] negated = new int[theRanges.length + 2];
+            int count = 0, next = 0;
+            for (int i = 0; i < theRanges.length; i += 2) {
+                if (theRanges[i] > next) {
+                    negated[count++] = next;
+                    negated[count++] = theRanges[i] - 1;
+                }
+                next = theRanges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                negated[count++] = next;
+                negated[count++] = Character.MAX_VALUE;
+            }
+            return Arrays.copyOf(negated, count);
+        }
+    }
+
+    /**
+     * An exception thrown for NFA terms and patterns the DFA doesn't support (so regex is matched with java.util.regex).
+     */
+    private static class UnsupportedPatternException extends Exception {
+
+        /** Constructor. */
+        UnsupportedPatternException()  { super(null, null, false, false); }
+    }
+}
\ No newline at end of file
@@ -31,9 +31,15 @@ public class Tokenizer {
     // An array of regexes
     private Regex[]  _regexes;
 
-    // A map of char to matchers
+    // A map of char to matchers (for deprecated getRegexesForStartChar)
     private Regex[][]  _charMatchers = new Regex[128][];
 
+    // The scanner that matches all regexes in one pass
+    private TokenScanner  _scanner;
+
+    // The start of last token and the index after last char examined to find it
+    private int  _scanStart = -1, _scanEnd;
+
     // Constants for common special token names
     public static final String SINGLE_LINE_COMMENT = "SingleLineComment";
     public static final String MULTI_LINE_COMMENT = "MultiLineComment";
@@ -62,10 +68,7 @@ public class Tokenizer {
         _input = anInput;
         _length = _input.length();
         _charIndex = _lineIndex = _lineStart = 0;
-
-        // Reset matchers
-        for (Regex regex : _regexList)
-            regex.getMatcher().reset(_input);
+        _scanStart = -1;
     }
 
     /**
@@ -166,6 +169,27 @@ public class Tokenizer {
         _lineStart = aValue;
     }
 
+    /**
+     * Sets the current parse char location with line index and line start (to resume after a previously read token).
+     */
+    public void setCharIndex(int aValue, int aLineIndex, int aLineStart)
+    {
+        _charIndex = aValue;
+        _lineIndex = aLineIndex;
+        _lineStart = aLineStart;
+    }
+
+    /**
+     * Returns the index after the last char examined to find given token (edits at or after this index can't change
+     * token). Returns input length + 1 if not known.
+     */
+    public int getScanEnd(ParseToken aToken)
+    {
+        if (aToken != null && aToken.getStartCharIndex() == _scanStart)
+            return _scanEnd;
+        return length() + 1;
+    }
+
     /**
      * Adds a pattern.
      */
@@ -181,6 +205,8 @@ public class Tokenizer {
         Regex regex = new Regex(aName, pattern);
         _regexList.add(regex);
         _regexes = null;
+        _scanner = null;
+        _charMatchers = new Regex[128][];
     }
 
     /**
@@ -218,6 +244,15 @@ public class Tokenizer {
         return _regexes = _regexList.toArray(new Regex[0]);
     }
 
+    /**
+     * Returns the scanner for regexes (creating it if missing).
+     */
+    protected TokenScanner getScanner()
+    {
+        if (_scanner != null) return _scanner;
+        return _scanner = new TokenScanner(getRegexes());
+    }
+
     /**
      * Returns the current line index.
      */
@@ -249,28 +284,13 @@ public class Tokenizer {
         // Get next special token
         ParseToken specialToken = getNextSpecialToken();
 
-        // Get list of matchers for next char
-        char nextChar = hasChar() ? getChar() : 0;
-        Regex[] regexes = nextChar < 128 ? getRegexesForStartChar(nextChar) : getRegexes();
-
-        // Iterate over regular expressions to find best match
-        Regex match = null;
-        int matchEnd = _charIndex;
-        for (Regex regex : regexes) {
-
-            // Get matcher
-            Matcher matcher = regex.getMatcher();
-            matcher.region(_charIndex, _input.length());
-
-            // Find pattern
-            if (matcher.lookingAt()) {
-                if (match == null || matcher.end() > matchEnd ||
-                        (matcher.end() == matchEnd && regex.getLiteralLength() > match.getLiteralLength())) {
-                    match = regex;
-                    matchEnd = matcher.end();
-                }
-            }
-        }
+        // Find longest match for all regexes with scanner
+        TokenScanner scanner = getScanner();
+        int matchIndex = scanner.match(_input, _charIndex, _length);
+        Regex match = matchIndex >= 0 ? getRegexes()[matchIndex] : null;
+        int matchEnd = scanner.getMatchEnd();
+        _scanStart = _charIndex;
+        _scanEnd = scanner.getScanEnd();
 
         // If no match, return null
         if (match == null) {
@@ -291,7 +311,10 @@ public class Tokenizer {
 
     /**
      * Returns list of Regex for a starting char.
+     *
+     * @deprecated Token matching uses TokenScanner, which matches all regexes at once.
      */
+    @Deprecated
     public Regex[] getRegexesForStartChar(char aChar)
     {
         // Get cached regex array for char, just return if found
@@ -2,6 +2,7 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.props;
+import java.util.List;
 
 /**
  * A listener to get property changes and nested property changes.
@@ -12,4 +13,14 @@ public interface DeepChangeListener {
      * Deep property changes (as well as normal property changes).
      */
     void deepChange(Object aSource, PropChange anEvent);
+
+    /**
+     * A DeepChangeListener that gets the changes of a batch (see PropChangeSupport.beginPropChanges()) in one call
+     * for each source.
+     */
+    public interface Batch extends DeepChangeListener {
+
+        /** Called with the deep changes of a batch for given source (in order). */
+        void deepChanges(Object aSource, List<PropChange> theChanges);
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.props;
+import java.lang.reflect.Array;
+
+/**
+ * A placeholder for a relation value (PropObject or PropObject array) that is unarchived on first access.
+ *
+ * PropArchiver sets this as value for Prop.Lazy relations when archiver is lazy. The PropObject should hold on to it
+ * and call getValue() when value is first needed (or getItem() to resolve array items individually). The PropObject
+ * can return it from getPropValue() until then (PropArchiver resolves it when archiving).
+ */
+public abstract class LazyPropValue {
+
+    // The prop
+    private Prop  _prop;
+
+    // The resolved value (null until resolved)
+    private Object  _value;
+
+    // The resolved items
+    private Object[]  _items;
+
+    /**
+     * Constructor.
+     */
+    public LazyPropValue(Prop aProp)
+    {
+        _prop = aProp;
+    }
+
+    /**
+     * Returns the prop.
+     */
+    public Prop getProp()  { return _prop; }
+
+    /**
+     * Returns the number of items (1 if prop isn't array).
+     */
+    public abstract int getItemCount();
+
+    /**
+     * Returns the resolved value (native PropObject or array of prop component class).
+     */
+    public synchronized Object getValue()
+    {
+        // If already resolved, just return
+        if (_value != null) return _value;
+
+        // Handle non-array
+        if (!_prop.isArray())
+            return _value = getItem(0);
+
+        // Create native array for prop and fill with items
+        Class<?> compClass = _prop.getPropClass().getComponentType();
+        int itemCount = getItemCount();
+        Object array = Array.newInstance(compClass, itemCount);
+        for (int i = 0; i < itemCount; i++)
+            Array.set(array, i, getItem(i));
+
+        // Set, return
+        return _value = array;
+    }
+
+    /**
+     * Returns the resolved item at given index.
+     */
+    public synchronized Object getItem(int anIndex)
+    {
+        // Create items array
+        if (_items == null)
+            _items = new Object[getItemCount()];
+
+        // If already resolved, just return
+        Object item = _items[anIndex];
+        if (item != null)
+            return item;
+
+        // Resolve item (if PropObjectProxy, swap for real)
+        item = resolveItem(anIndex);
+        if (item instanceof PropObjectProxy)
+            item = ((PropObjectProxy) item).getReal();
+
+        // Set, return
+        return _items[anIndex] = item;
+    }
+
+    /**
+     * Returns whether item at given index is resolved.
+     */
+    public synchronized boolean isItemResolved(int anIndex)
+    {
+        return _items != null && _items[anIndex] != null;
+    }
+
+    /**
+     * Unarchives the item at given index.
+     */
+    protected abstract Object resolveItem(int anIndex);
+
+    /**
+     * Returns given value, or resolved value if given value is LazyPropValue.
+     */
+    public static Object resolve(Object aValue)
+    {
+        return aValue instanceof LazyPropValue ? ((LazyPropValue) aValue).getValue() : aValue;
+    }
+
+    /**
+     * Standard toString implementation.
+     */
+    public String toString()
+    {
+        return getClass().getSimpleName() + " { Prop=" + _prop.getName() + ", ItemCount=" + getItemCount() + " }";
+    }
+}
@@ -38,6 +38,9 @@ public class Prop {
     // Whether this prop can change an object's props (ArchivalPropsExtra)
     private boolean  _propChanger;
 
+    // Whether relation value can be unarchived on demand (PropObject.setPropValue must accept LazyPropValue)
+    private boolean  _lazy;
+
     // The getter/setter
     //private Callable<?>  _getter;
     //private Consumer<?>  _setter;
@@ -167,6 +170,19 @@ public class Prop {
         _propChanger = aValue;
     }
 
+    /**
+     * Returns whether relation value can be unarchived on demand (PropObject.setPropValue must accept LazyPropValue).
+     */
+    public boolean isLazy()  { return _lazy; }
+
+    /**
+     * Sets whether relation value can be unarchived on demand (PropObject.setPropValue must accept LazyPropValue).
+     */
+    public void setLazy(boolean aValue)
+    {
+        _lazy = aValue;
+    }
+
     /**
      * Standard toString implementation.
      */
@@ -4,8 +4,10 @@
 package snap.props;
 import snap.util.ArrayUtils;
 import java.lang.reflect.Array;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * This class primarily converts a PropObject (graph) to/from a PropNode (graph).
@@ -23,6 +25,15 @@ public class PropArchiver {
     // Resources
     private Resource[]  _resources = new Resource[0];
 
+    // A map of content hash to resource (resources with same hash are linked by Resource.NextSameHash)
+    private Map<Long,Resource>  _resourceIndex = new HashMap<>();
+
+    // A map of length to lazy resources not yet in content hash index (linked by Resource.NextSameHash)
+    private Map<Integer,Resource>  _lazyResourceIndex = new HashMap<>();
+
+    // Whether to unarchive Prop.Lazy relations and resources on demand
+    private boolean  _lazy;
+
     /**
      * Constructor.
      */
@@ -31,6 +42,19 @@ public class PropArchiver {
         _helper = new PropArchiverHpr(this);
     }
 
+    /**
+     * Returns whether to unarchive Prop.Lazy relations (as LazyPropValue) and resources on demand.
+     */
+    public boolean isLazy()  { return _lazy; }
+
+    /**
+     * Sets whether to unarchive Prop.Lazy relations (as LazyPropValue) and resources on demand.
+     */
+    public void setLazy(boolean aValue)
+    {
+        _lazy = aValue;
+    }
+
     /**
      * Returns a PropNode for given PropObject.
      */
@@ -72,8 +96,8 @@ public class PropArchiver {
             if (aPropObj.isPropDefault(propName))
                 continue;
 
-            // Get object value from PropObject.PropName
-            Object nativeValue = aPropObj.getPropValue(propName);
+            // Get object value from PropObject.PropName (resolved, if PropObject is still holding lazy value)
+            Object nativeValue = LazyPropValue.resolve(aPropObj.getPropValue(propName));
             boolean isSimple = !prop.isRelation();
 
             // Get node value
@@ -190,6 +214,18 @@ public class PropArchiver {
         // Get PropObject
         PropObject propObject = propNode.getPropObject();
 
+        // Set native values for node props (batched, so any listeners get one batch for loaded object)
+        propObject.runBatched(() -> setNativeValuesForNode(propNode, propObject));
+
+        // Return
+        return propObject;
+    }
+
+    /**
+     * Converts the node values of given PropNode to native and sets them in given PropObject.
+     */
+    protected void setNativeValuesForNode(PropNode propNode, PropObject propObject)
+    {
         // Get PropNode props
         List<Prop> props = propNode.getProps();
 
@@ -202,8 +238,16 @@ public class PropArchiver {
             // Get native value
             Object nativeValue = null;
 
+            // Handle lazy value (already created by archiver): Just pass along
+            if (nodeValue instanceof LazyPropValue)
+                nativeValue = nodeValue;
+
+            // Handle lazy relation: Create lazy value to convert node(s) on demand
+            else if (_lazy && prop.isLazy() && (nodeValue instanceof PropNode || nodeValue instanceof PropNode[]))
+                nativeValue = new NodeLazyValue(prop, nodeValue);
+
             // Handle simple
-            if (nodeValue instanceof String)
+            else if (nodeValue instanceof String)
                 nativeValue = convertNodeToNativeForPropSimple(propNode, prop, (String) nodeValue);
 
             // Handle Relation
@@ -239,16 +283,17 @@ public class PropArchiver {
                 }
             }
 
+            // Handle simple value already in native form (binary archives store numbers and booleans natively)
+            else if (nodeValue != null && !prop.isRelation())
+                nativeValue = nodeValue;
+
             // Complain
-            else System.err.println("PropArchiver: convertNodeToNative: Illegal node value: " + nodeValue.getClass());
+            else System.err.println("PropArchiver: convertNodeToNative: Illegal node value: " + nodeValue);
 
             // Set value in prop object
             if (!prop.isPreexisting())
                 propObject.setPropValue(prop.getName(), nativeValue);
         }
-
-        // Return
-        return propObject;
     }
 
     /**
@@ -273,10 +318,11 @@ public class PropArchiver {
         propNode.addNodeValueForProp(prop, nodeValue);
 
         // If Prop.PropChanger, push to propObject
-        if (prop.isPropChanger() && (nodeValue instanceof String || nodeValue == null)) {
+        if (prop.isPropChanger() && !(nodeValue instanceof PropNode || nodeValue instanceof PropNode[])) {
 
-            // Convert node value to native
-            Object nativeValue = convertNodeToNativeForPropSimple(propNode, prop, (String) nodeValue);
+            // Convert node value to native (if not already native)
+            Object nativeValue = nodeValue instanceof String || nodeValue == null ?
+                    convertNodeToNativeForPropSimple(propNode, prop, (String) nodeValue) : nodeValue;
 
             // Set native value in PropObject
             PropObject propObject = propNode.getPropObject();
@@ -332,23 +378,77 @@ public class PropArchiver {
         return null;
     }
 
+    /**
+     * Adds a resource whose bytes are provided on first access (for unarchival - archived resources are already unique).
+     * Length should be the bytes length, or -1 if not known before bytes are loaded.
+     */
+    protected void addLazyResource(String aName, int aLength, Supplier<byte[]> aBytesSource)
+    {
+        // Add resource and add to lazy index by length (bytes are loaded for content hash only if same length added)
+        Resource resource = new Resource(aName, aBytesSource);
+        _resources = ArrayUtils.add(_resources, resource);
+        resource._nextSameHash = _lazyResourceIndex.put(aLength, resource);
+    }
+
     /**
      * Adds a byte array resource to this archiver (only if absent).
      */
     public String addResource(String aName, byte[] theBytes)
     {
         // If resource has already been added, just return its name
-        for (Resource resource : _resources)
-            if (resource.equalsBytes(theBytes))
-                return resource.getName();
+        long hash = ArrayUtils.getContentHash(theBytes);
+        Resource resource = getResourceForBytes(theBytes, hash);
+        if (resource != null)
+            return resource.getName();
 
-        // Add new resource
-        _resources = ArrayUtils.add(_resources, new Resource(aName, theBytes));
+        // Add new resource and add to index
+        Resource newResource = new Resource(aName, theBytes);
+        _resources = ArrayUtils.add(_resources, newResource);
+        addResourceToIndex(newResource, hash);
 
         // Return name
         return aName;
     }
 
+    /**
+     * Returns the resource with given bytes and content hash (or null).
+     */
+    private Resource getResourceForBytes(byte[] theBytes, long aHash)
+    {
+        // Move lazy resources with same (or unknown) length to content hash index (loads their bytes)
+        if (!_lazyResourceIndex.isEmpty()) {
+            addLazyResourcesToIndex(theBytes.length);
+            addLazyResourcesToIndex(-1);
+        }
+
+        // Iterate over resources with same hash and return first with same bytes
+        for (Resource resource = _resourceIndex.get(aHash); resource != null; resource = resource._nextSameHash)
+            if (resource.equalsBytes(theBytes))
+                return resource;
+        return null;
+    }
+
+    /**
+     * Moves lazy resources for given length to content hash index (loads their bytes).
+     */
+    private void addLazyResourcesToIndex(int aLength)
+    {
+        Resource lazyResource = _lazyResourceIndex.remove(aLength);
+        while (lazyResource != null) {
+            Resource nextResource = lazyResource._nextSameHash;
+            addResourceToIndex(lazyResource, ArrayUtils.getContentHash(lazyResource.getBytes()));
+            lazyResource = nextResource;
+        }
+    }
+
+    /**
+     * Adds a resource to index for given content hash.
+     */
+    private void addResourceToIndex(Resource aResource, long aHash)
+    {
+        aResource._nextSameHash = _resourceIndex.put(aHash, aResource);
+    }
+
     /**
      * This inner class represents a named resource associated with an archiver.
      */
@@ -360,6 +460,12 @@ public class PropArchiver {
         // The resource bytes
         private byte[]  _bytes;
 
+        // The source of resource bytes (if not yet loaded)
+        private Supplier<byte[]>  _bytesSource;
+
+        // The next resource in archiver index with same content hash (or same length, if lazy and not yet hashed)
+        private Resource  _nextSameHash;
+
         // Creates new resource for given bytes and name
         public Resource(String aName, byte[] theBytes)
         {
@@ -367,6 +473,13 @@ public class PropArchiver {
             _bytes = theBytes;
         }
 
+        // Creates new resource for given name and source of bytes (called on first access)
+        public Resource(String aName, Supplier<byte[]> aBytesSource)
+        {
+            _name = aName;
+            _bytesSource = aBytesSource;
+        }
+
         // Returns resource name
         public String getName()
         {
@@ -374,19 +487,62 @@ public class PropArchiver {
         }
 
         // Returns resource bytes
-        public byte[] getBytes()
+        public synchronized byte[] getBytes()
         {
+            if (_bytes == null && _bytesSource != null) {
+                _bytes = _bytesSource.get();
+                _bytesSource = null;
+            }
             return _bytes;
         }
 
+        // Returns whether resource bytes are loaded
+        public synchronized boolean isLoaded()  { return _bytesSource == null; }
+
         // Standard equals implementation
         public boolean equalsBytes(byte[] bytes)
         {
-            if (bytes.length != _bytes.length) return false;
+            byte[] bytes2 = getBytes();
+            if (bytes.length != bytes2.length) return false;
             for (int i = 0, iMax = bytes.length; i < iMax; i++)
-                if (bytes[i] != _bytes[i])
+                if (bytes[i] != bytes2[i])
                     return false;
             return true;
         }
     }
+
+    /**
+     * A LazyPropValue to convert relation PropNode(s) to native on demand.
+     */
+    private class NodeLazyValue extends LazyPropValue {
+
+        // The PropNode or PropNode[]
+        private Object  _nodeValue;
+
+        /**
+         * Constructor.
+         */
+        public NodeLazyValue(Prop aProp, Object aNodeValue)
+        {
+            super(aProp);
+            _nodeValue = aNodeValue;
+        }
+
+        /**
+         * Override to return node count.
+         */
+        public int getItemCount()
+        {
+            return _nodeValue instanceof PropNode[] ? ((PropNode[]) _nodeValue).length : 1;
+        }
+
+        /**
+         * Override to convert node at index.
+         */
+        protected Object resolveItem(int anIndex)
+        {
+            PropNode propNode = _nodeValue instanceof PropNode[] ? ((PropNode[]) _nodeValue)[anIndex] : (PropNode) _nodeValue;
+            return convertNodeToNative(propNode);
+        }
+    }
 }
@@ -0,0 +1,892 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.props;
+import snap.util.SnapUtils;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A PropArchiver subclass to convert to/from a compact binary format.
+ *
+ * The format is a header, a string table (class names, prop names and string values, referenced by index), the
+ * resources (as raw byte blocks) and the root node. Numbers are written as varints (or raw floats/doubles) and
+ * booleans and double arrays are written natively, so they don't go through StringCodec.
+ *
+ * Relations for Prop.Lazy props are written with byte lengths, so they can be skipped when reading and unarchived
+ * on demand (as LazyPropValue) when archiver is lazy. Resources are then also copied from buffer on first access.
+ *
+ * Since the string table precedes the nodes (and lazy node lengths are patched in), the node body is built in memory
+ * before anything is written. Version 1 archives (strings defined inline on first use, no lazy nodes) can still be read.
+ */
+public class PropArchiverBin extends PropArchiver {
+
+    // The output stream (null while writing body to buffer)
+    private OutputStream  _out;
+
+    // The write buffer and buffer length
+    private byte[]  _buf;
+    private int  _bufLen;
+
+    // The map of written strings to string table index and the list of strings (when writing)
+    private Map<String,Integer>  _stringIds;
+    private List<String>  _strings;
+
+    // Constant for header bytes and format version (written as varint after header bytes)
+    private static final byte[] MAGIC = { 'S', 'N', 'P', 'B' };
+    private static final int VERSION = 2;
+
+    // Constants for version 1 inline string references (other values are string index + STRING_INDEX_V1)
+    private static final int STRING_NEW_V1 = 1, STRING_INDEX_V1 = 2;
+
+    // Constants for value tags
+    private static final int TAG_STRING = 1, TAG_NODE = 2, TAG_NODE_ARRAY = 3;
+    private static final int TAG_TRUE = 4, TAG_FALSE = 5, TAG_INT = 6, TAG_LONG = 7, TAG_FLOAT = 8;
+    private static final int TAG_DOUBLE = 9, TAG_DOUBLE_INT = 10, TAG_DOUBLE_FLOAT = 11, TAG_DOUBLE_ARRAY = 12;
+    private static final int TAG_LAZY_NODE = 13, TAG_LAZY_NODE_ARRAY = 14;
+
+    // Constant for write buffer size
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Converts a PropObject to binary archive bytes.
+     */
+    public byte[] convertPropObjectToBinBytes(PropObject aPropObject)
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try { writePropObject(aPropObject, outputStream); }
+        catch (IOException e) { throw new RuntimeException(e); }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes a PropObject to given output stream in binary archive format (node body is built in memory first).
+     */
+    public void writePropObject(PropObject aPropObject, OutputStream anOut) throws IOException
+    {
+        // Convert native to node
+        PropNode propNode = convertNativeToNode(null, aPropObject);
+
+        // Initialize write state
+        _buf = new byte[BUFFER_SIZE];
+        _bufLen = 0;
+        _stringIds = new HashMap<>();
+        _strings = new ArrayList<>();
+
+        // Write root node to buffer (collects string table)
+        try {
+            writeNode(propNode, true);
+            byte[] body = _buf;
+            int bodyLength = _bufLen;
+
+            // Add resource names to string table (before it is written)
+            Resource[] resources = getResources();
+            for (Resource resource : resources)
+                getStringId(resource.getName());
+
+            // Write header to output stream
+            _out = anOut;
+            _buf = new byte[BUFFER_SIZE];
+            _bufLen = 0;
+            writeBytes(MAGIC, 0, MAGIC.length);
+            writeVarInt(VERSION);
+
+            // Write string table
+            writeVarInt(_strings.size());
+            for (String string : _strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            }
+
+            // Write resources (before nodes, so they are available when nodes are converted to native)
+            writeVarInt(resources.length);
+            for (Resource resource : resources) {
+                byte[] bytes = resource.getBytes();
+                writeString(resource.getName());
+                writeVarInt(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            }
+
+            // Write body and flush
+            writeBytes(body, 0, bodyLength);
+            flushBuffer();
+        }
+
+        // Clear write state
+        finally { _out = null; _buf = null; _stringIds = null; _strings = null; }
+    }
+
+    /**
+     * Writes a PropNode. Class name is written if node needs class declaration or if named by class (root/array item).
+     */
+    protected void writeNode(PropNode aPropNode, boolean isNamedByClass) throws IOException
+    {
+        // Write class name
+        boolean writeClassName = isNamedByClass || aPropNode.isNeedsClassDeclaration();
+        writeString(writeClassName ? aPropNode.getClassName() : null);
+
+        // Write prop count
+        List<Prop> props = aPropNode.getProps();
+        writeVarInt(props.size());
+
+        // Iterate over props and write name and value for each
+        for (Prop prop : props) {
+
+            // Write prop name
+            String propName = prop.getName();
+            Object nodeValue = aPropNode.getNodeValueForPropName(propName);
+            writeString(propName);
+
+            // Handle Relation array
+            if (nodeValue instanceof PropNode[]) {
+                PropNode[] nodeArray = (PropNode[]) nodeValue;
+                boolean isLazy = prop.isLazy();
+                writeByte(isLazy ? TAG_LAZY_NODE_ARRAY : TAG_NODE_ARRAY);
+                writeVarInt(nodeArray.length);
+                for (PropNode childNode : nodeArray) {
+                    if (isLazy)
+                        writeLazyNode(childNode, true);
+                    else writeNode(childNode, true);
+                }
+            }
+
+            // Handle Relation
+            else if (nodeValue instanceof PropNode) {
+                if (prop.isLazy()) {
+                    writeByte(TAG_LAZY_NODE);
+                    writeLazyNode((PropNode) nodeValue, false);
+                }
+                else {
+                    writeByte(TAG_NODE);
+                    writeNode((PropNode) nodeValue, false);
+                }
+            }
+
+            // Handle simple
+            else writeNodeSimple(aPropNode, prop, (String) nodeValue);
+        }
+    }
+
+    /**
+     * Writes a PropNode preceded by its byte length (so it can be skipped when reading).
+     */
+    private void writeLazyNode(PropNode aPropNode, boolean isNamedByClass) throws IOException
+    {
+        // Reserve length, write node, set length
+        int lengthIndex = _bufLen;
+        writeInt(0);
+        writeNode(aPropNode, isNamedByClass);
+        int length = _bufLen - lengthIndex - 4;
+        _buf[lengthIndex] = (byte) (length >>> 24);
+        _buf[lengthIndex + 1] = (byte) (length >>> 16);
+        _buf[lengthIndex + 2] = (byte) (length >>> 8);
+        _buf[lengthIndex + 3] = (byte) length;
+    }
+
+    /**
+     * Writes a simple prop value: Numbers, Booleans and double arrays natively, otherwise node string.
+     */
+    protected void writeNodeSimple(PropNode aPropNode, Prop aProp, String nodeValue) throws IOException
+    {
+        // Get native value
+        Object nativeValue = aPropNode.getPropObject().getPropValue(aProp.getName());
+
+        // Handle Boolean
+        if (nativeValue instanceof Boolean)
+            writeByte((Boolean) nativeValue ? TAG_TRUE : TAG_FALSE);
+
+        // Handle Integer, Short, Byte
+        else if (nativeValue instanceof Integer || nativeValue instanceof Short || nativeValue instanceof Byte) {
+            writeByte(TAG_INT);
+            writeVarLong(zigZag(((Number) nativeValue).intValue()));
+        }
+
+        // Handle Long
+        else if (nativeValue instanceof Long) {
+            writeByte(TAG_LONG);
+            writeVarLong(zigZag((Long) nativeValue));
+        }
+
+        // Handle Float
+        else if (nativeValue instanceof Float) {
+            writeByte(TAG_FLOAT);
+            writeInt(Float.floatToIntBits((Float) nativeValue));
+        }
+
+        // Handle Double
+        else if (nativeValue instanceof Double)
+            writeDouble((Double) nativeValue);
+
+        // Handle double[]
+        else if (nativeValue instanceof double[]) {
+            double[] doubles = (double[]) nativeValue;
+            writeByte(TAG_DOUBLE_ARRAY);
+            writeVarInt(doubles.length);
+            for (double value : doubles)
+                writeDouble(value);
+        }
+
+        // Handle anything else: Write node string
+        else {
+            writeByte(TAG_STRING);
+            writeString(nodeValue);
+        }
+    }
+
+    /**
+     * Writes a tagged double: As varint if whole number, as float if exact, otherwise as full double.
+     */
+    private void writeDouble(double aValue) throws IOException
+    {
+        // Handle whole number (but not negative zero)
+        int intValue = (int) aValue;
+        if (intValue == aValue && (intValue != 0 || Double.doubleToRawLongBits(aValue) == 0)) {
+            writeByte(TAG_DOUBLE_INT);
+            writeVarLong(zigZag(intValue));
+        }
+
+        // Handle exact float
+        else if ((float) aValue == aValue) {
+            writeByte(TAG_DOUBLE_FLOAT);
+            writeInt(Float.floatToIntBits((float) aValue));
+        }
+
+        // Handle full double
+        else {
+            writeByte(TAG_DOUBLE);
+            writeInt((int) (Double.doubleToRawLongBits(aValue) >>> 32));
+            writeInt((int) Double.doubleToRawLongBits(aValue));
+        }
+    }
+
+    /**
+     * Writes a string reference (0 for null, otherwise string table index + 1).
+     */
+    private void writeString(String aString) throws IOException
+    {
+        writeVarInt(aString != null ? getStringId(aString) + 1 : 0);
+    }
+
+    /**
+     * Returns the string table index for given string (adds to table if absent).
+     */
+    private int getStringId(String aString)
+    {
+        Integer index = _stringIds.get(aString);
+        if (index == null) {
+            _stringIds.put(aString, index = _strings.size());
+            _strings.add(aString);
+        }
+        return index;
+    }
+
+    /**
+     * Writes an unsigned varint.
+     */
+    private void writeVarInt(int aValue) throws IOException
+    {
+        writeVarLong(aValue & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes an unsigned varint (7 bits per byte, high bit set if more bytes follow).
+     */
+    private void writeVarLong(long aValue) throws IOException
+    {
+        ensureCapacity(10);
+        while ((aValue & ~0x7FL) != 0) {
+            _buf[_bufLen++] = (byte) ((aValue & 0x7F) | 0x80);
+            aValue >>>= 7;
+        }
+        _buf[_bufLen++] = (byte) aValue;
+    }
+
+    /**
+     * Writes a big-endian int.
+     */
+    private void writeInt(int aValue) throws IOException
+    {
+        ensureCapacity(4);
+        _buf[_bufLen++] = (byte) (aValue >>> 24);
+        _buf[_bufLen++] = (byte) (aValue >>> 16);
+        _buf[_bufLen++] = (byte) (aValue >>> 8);
+        _buf[_bufLen++] = (byte) aValue;
+    }
+
+    /**
+     * Writes a byte.
+     */
+    private void writeByte(int aValue) throws IOException
+    {
+        ensureCapacity(1);
+        _buf[_bufLen++] = (byte) aValue;
+    }
+
+    /**
+     * Writes given bytes (large blocks go straight to output stream).
+     */
+    private void writeBytes(byte[] theBytes, int anOffset, int aLength) throws IOException
+    {
+        // If writing to output stream and bytes don't fit in buffer, flush and write directly
+        if (_out != null && _bufLen + aLength > _buf.length) {
+            flushBuffer();
+            if (aLength > _buf.length) {
+                _out.write(theBytes, anOffset, aLength);
+                return;
+            }
+        }
+
+        // Copy to buffer
+        ensureCapacity(aLength);
+        System.arraycopy(theBytes, anOffset, _buf, _bufLen, aLength);
+        _bufLen += aLength;
+    }
+
+    /**
+     * Makes sure buffer has room for given number of bytes (flushes to output stream or grows buffer).
+     */
+    private void ensureCapacity(int aLength) throws IOException
+    {
+        if (_bufLen + aLength <= _buf.length) return;
+        if (_out != null)
+            flushBuffer();
+        if (_bufLen + aLength > _buf.length)
+            _buf = Arrays.copyOf(_buf, Math.max(_buf.length * 2, _bufLen + aLength));
+    }
+
+    /**
+     * Writes buffered bytes to output stream.
+     */
+    private void flushBuffer() throws IOException
+    {
+        _out.write(_buf, 0, _bufLen);
+        _bufLen = 0;
+    }
+
+    /**
+     * Reads a PropObject from binary archive source.
+     */
+    public Object readPropObjectFromBinSource(Object aSource)
+    {
+        // Get bytes from source - if not found or empty, complain
+        byte[] bytes = SnapUtils.getBytes(aSource);
+        if (bytes == null || bytes.length == 0)
+            throw new RuntimeException("PropArchiverBin.readPropObjectFromBinSource: Cannot read source: " + aSource);
+
+        // Read from bytes and return
+        return readPropObjectFromBinBytes(bytes);
+    }
+
+    /**
+     * Reads a PropObject from binary archive bytes.
+     */
+    public PropObject readPropObjectFromBinBytes(byte[] theBytes)
+    {
+        return readPropObject(ByteBuffer.wrap(theBytes));
+    }
+
+    /**
+     * Reads a PropObject from binary archive in given buffer (from buffer position to limit). If archiver is lazy,
+     * buffer contents must not change while lazy values and resources are unresolved.
+     */
+    public PropObject readPropObject(ByteBuffer aBuffer)
+    {
+        // Check header (slice is always big-endian and leaves given buffer untouched)
+        ByteBuffer buffer = aBuffer.slice();
+        if (!isBinHeader(buffer))
+            throw new RuntimeException("PropArchiverBin.readPropObject: Not a binary archive");
+        buffer.position(MAGIC.length);
+        BinReader reader = new BinReader(buffer, null);
+        int version = reader.readVarInt();
+        if (version < 1 || version > VERSION)
+            throw new RuntimeException("PropArchiverBin.readPropObject: Unsupported version: " + version);
+
+        // If version 1, strings are defined inline
+        if (version == 1)
+            reader._inlineStrings = new ArrayList<>();
+
+        // Otherwise, read string table
+        else {
+            String[] strings = new String[reader.readVarInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = reader.readStringBytes();
+            reader._strings = strings;
+        }
+
+        // Read resources
+        reader.readResources();
+
+        // Read PropNode
+        PropNode propNode = reader.readNode(null, null);
+
+        // Convert PropNode (graph) to PropObject
+        PropObject propObject = convertNodeToNative(propNode);
+
+        // Return
+        return propObject;
+    }
+
+    /**
+     * Converts a native simple value to given prop class (if needed).
+     */
+    private Object convertSimpleValueToPropClass(Object aValue, Class<?> aClass)
+    {
+        // Handle Number to primitive/wrapper of different type
+        if (aValue instanceof Number) {
+            Number number = (Number) aValue;
+            if (aClass == double.class || aClass == Double.class) return number.doubleValue();
+            if (aClass == int.class || aClass == Integer.class) return number.intValue();
+            if (aClass == float.class || aClass == Float.class) return number.floatValue();
+            if (aClass == long.class || aClass == Long.class) return number.longValue();
+            if (aClass == short.class || aClass == Short.class) return number.shortValue();
+            if (aClass == byte.class || aClass == Byte.class) return number.byteValue();
+        }
+
+        // If already right class, just return
+        if (aClass == null || aClass.isInstance(aValue) || aClass == boolean.class && aValue instanceof Boolean)
+            return aValue;
+
+        // Otherwise, convert via StringCodec
+        String stringValue = StringCodec.SHARED.codeString(aValue);
+        return StringCodec.SHARED.decodeString(stringValue, aClass);
+    }
+
+    /**
+     * Creates a PropObject for binary node with given class name (null if not declared).
+     */
+    protected PropObject createPropObjectForBin(PropNode aParent, Prop aProp, String aClassName)
+    {
+        // If Prop.Preexisting, just instance from PropObject instead
+        if (aProp != null && aProp.isPreexisting() && aParent != null) {
+            PropObject propObject = aParent.getPropObject();
+            Object existingInstance = propObject.getPropValue(aProp.getName());
+            if (existingInstance instanceof PropObject)
+                return (PropObject) existingInstance;
+        }
+
+        // If class name set, try that
+        if (aClassName != null) {
+            Class<?> cls = getClassForName(aClassName);
+            if (cls != null)
+                return createPropObjectForClass(cls);
+        }
+
+        // Try Prop class attribute
+        Class<?> propClass = aProp != null ? aProp.getDefaultPropClass() : null;
+        if (propClass != null) {
+
+            // If array, swap for component class
+            if (propClass.isArray())
+                propClass = propClass.getComponentType();
+
+            return createPropObjectForClass(propClass);
+        }
+
+        // Try PropName as ClassMap name
+        String propName = aProp != null ? aProp.getName() : null;
+        propClass = getClassForName(propName);
+        if (propClass != null)
+            return createPropObjectForClass(propClass);
+
+        // Complain and return
+        System.err.println("PropArchiverBin.createPropObjectForBin: Undetermined class for node: " + aClassName);
+        return null;
+    }
+
+    /**
+     * Convenience newInstance.
+     */
+    private PropObject createPropObjectForClass(Class<?> aClass)
+    {
+        // See if we have proxy
+        PropObject proxyObject = _helper.getProxyForClass(aClass);
+        if (proxyObject != null)
+            return proxyObject;
+
+        Object propObject;
+        try { propObject = aClass.newInstance(); }
+        catch (Exception e) { throw new RuntimeException(e + " for class: " + aClass); }
+
+        // See if we need proxy
+        PropObject proxyObject1 = _helper.getProxyForObject(propObject);
+        if (proxyObject1 != null)
+            propObject = proxyObject1;
+
+        // Return
+        return (PropObject) propObject;
+    }
+
+    /**
+     * Returns whether given bytes start with binary archive header.
+     */
+    public static boolean isBinBytes(byte[] theBytes)
+    {
+        return theBytes != null && isBinHeader(ByteBuffer.wrap(theBytes));
+    }
+
+    /**
+     * Returns whether given buffer starts with binary archive header (at buffer position).
+     */
+    private static boolean isBinHeader(ByteBuffer aBuffer)
+    {
+        if (aBuffer.remaining() < MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++)
+            if (aBuffer.get(aBuffer.position() + i) != MAGIC[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns zig-zag encoding of signed long (so small negative numbers are small varints).
+     */
+    private static long zigZag(long aValue)  { return (aValue << 1) ^ (aValue >> 63); }
+
+    /**
+     * Returns signed long for zig-zag encoded value.
+     */
+    private static long unZigZag(long aValue)  { return (aValue >>> 1) ^ -(aValue & 1); }
+
+    /**
+     * A class to read nodes from a buffer (lazy values keep one to read their nodes later).
+     */
+    private class BinReader {
+
+        // The input buffer
+        private ByteBuffer  _in;
+
+        // The string table
+        private String[]  _strings;
+
+        // The strings defined so far (version 1 archives only, which define strings inline on first use)
+        private List<String>  _inlineStrings;
+
+        /**
+         * Constructor.
+         */
+        BinReader(ByteBuffer aBuffer, String[] theStrings)
+        {
+            _in = aBuffer;
+            _strings = theStrings;
+        }
+
+        /**
+         * Reads resources and adds to archiver (if lazy, bytes are copied from buffer on first access).
+         */
+        void readResources()
+        {
+            int resourceCount = readVarInt();
+            for (int i = 0; i < resourceCount; i++) {
+
+                // Read name and length
+                String name = readString();
+                int length = readVarInt();
+
+                // If lazy, add resource that copies bytes on first access
+                if (isLazy()) {
+                    ByteBuffer bytesBuffer = _in.duplicate();
+                    bytesBuffer.limit(_in.position() + length);
+                    _in.position(_in.position() + length);
+                    addLazyResource(name, length, () -> {
+                        byte[] bytes = new byte[length];
+                        bytesBuffer.duplicate().get(bytes);
+                        return bytes;
+                    });
+                }
+
+                // Otherwise read bytes and add resource
+                else {
+                    byte[] bytes = new byte[length];
+                    _in.get(bytes);
+                    addResource(name, bytes);
+                }
+            }
+        }
+
+        /**
+         * Reads a PropNode.
+         */
+        PropNode readNode(PropNode aParent, Prop aProp)
+        {
+            // Create PropObject for class name
+            String className = readString();
+            PropObject propObject = createPropObjectForBin(aParent, aProp, className);
+
+            // Create PropNode for propObject
+            PropNode propNode = new PropNode(propObject, PropArchiverBin.this);
+
+            // Iterate over props and add node/native value for each
+            int propCount = readVarInt();
+            for (int i = 0; i < propCount; i++) {
+
+                // Get prop (if not found, just skip value)
+                String propName = readString();
+                Prop prop = propObject != null ? propObject.getPropForName(propName) : null;
+                if (prop == null) {
+                    skipValue();
+                    continue;
+                }
+
+                // Handle tag
+                int tag = _in.get();
+                switch (tag) {
+
+                    // Handle Relation: Read node and add to PropNode
+                    case TAG_NODE: {
+                        PropNode nodeValue = readNode(propNode, prop);
+                        propNode.addNodeValueForProp(prop, nodeValue);
+                        break;
+                    }
+
+                    // Handle Relation array: Read nodes and add to PropNode
+                    case TAG_NODE_ARRAY: {
+                        PropNode[] nodeValue = new PropNode[readVarInt()];
+                        for (int j = 0; j < nodeValue.length; j++)
+                            nodeValue[j] = readNode(propNode, prop);
+                        propNode.addNodeValueForProp(prop, nodeValue);
+                        break;
+                    }
+
+                    // Handle lazy Relation or Relation array: Read nodes or add lazy value
+                    case TAG_LAZY_NODE: case TAG_LAZY_NODE_ARRAY: {
+                        Object nodeValue = readLazyNodes(propNode, prop, tag == TAG_LAZY_NODE_ARRAY);
+                        propNode.addNodeValueForProp(prop, nodeValue);
+                        break;
+                    }
+
+                    // Handle String: Read string and add to PropNode
+                    case TAG_STRING: {
+                        String nodeValue = readString();
+                        addNodeValueForProp(propNode, prop, nodeValue);
+                        break;
+                    }
+
+                    // Handle native simple value: Read value, convert to prop class and add to PropNode
+                    default: {
+                        Object value = readSimpleValue(tag);
+                        Object nodeValue = convertSimpleValueToPropClass(value, prop.getPropClass());
+                        addNodeValueForProp(propNode, prop, nodeValue);
+                    }
+                }
+            }
+
+            // Return
+            return propNode;
+        }
+
+        /**
+         * Reads length-prefixed nodes: If lazy, returns LazyPropValue with node offsets, otherwise PropNode/PropNode[].
+         */
+        private Object readLazyNodes(PropNode aParent, Prop aProp, boolean isArray)
+        {
+            // Get node count
+            int count = isArray ? readVarInt() : 1;
+
+            // If not lazy, just read nodes
+            if (!isLazy() || !aProp.isLazy()) {
+                PropNode[] propNodes = new PropNode[count];
+                for (int i = 0; i < count; i++) {
+                    _in.getInt();
+                    propNodes[i] = readNode(aParent, aProp);
+                }
+                return isArray ? propNodes : propNodes[0];
+            }
+
+            // Get node offsets and skip nodes
+            int[] offsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                int length = _in.getInt();
+                offsets[i] = _in.position();
+                _in.position(offsets[i] + length);
+            }
+
+            // Return lazy value
+            return new BinLazyValue(aParent, aProp, this, offsets);
+        }
+
+        /**
+         * Reads a native simple value (Boolean, Number, double[]) for given tag.
+         */
+        private Object readSimpleValue(int aTag)
+        {
+            switch (aTag) {
+                case TAG_TRUE: return Boolean.TRUE;
+                case TAG_FALSE: return Boolean.FALSE;
+                case TAG_INT: return (int) unZigZag(readVarLong());
+                case TAG_LONG: return unZigZag(readVarLong());
+                case TAG_FLOAT: return Float.intBitsToFloat(_in.getInt());
+                case TAG_DOUBLE: case TAG_DOUBLE_INT: case TAG_DOUBLE_FLOAT: return readDouble(aTag);
+                case TAG_DOUBLE_ARRAY: {
+                    double[] doubles = new double[readVarInt()];
+                    for (int i = 0; i < doubles.length; i++)
+                        doubles[i] = readDouble(_in.get());
+                    return doubles;
+                }
+                default: throw new RuntimeException("PropArchiverBin.readSimpleValue: Invalid tag: " + aTag);
+            }
+        }
+
+        /**
+         * Reads a double for given tag.
+         */
+        private double readDouble(int aTag)
+        {
+            switch (aTag) {
+                case TAG_DOUBLE_INT: return (int) unZigZag(readVarLong());
+                case TAG_DOUBLE_FLOAT: return Float.intBitsToFloat(_in.getInt());
+                case TAG_DOUBLE: return _in.getDouble();
+                default: throw new RuntimeException("PropArchiverBin.readDouble: Invalid tag: " + aTag);
+            }
+        }
+
+        /**
+         * Skips a tagged value.
+         */
+        private void skipValue()
+        {
+            int tag = _in.get();
+            switch (tag) {
+                case TAG_STRING: readString(); break;
+                case TAG_NODE: skipNode(); break;
+                case TAG_NODE_ARRAY: for (int i = 0, iMax = readVarInt(); i < iMax; i++) skipNode(); break;
+                case TAG_LAZY_NODE: _in.position(_in.getInt() + _in.position()); break;
+                case TAG_LAZY_NODE_ARRAY:
+                    for (int i = 0, iMax = readVarInt(); i < iMax; i++)
+                        _in.position(_in.getInt() + _in.position());
+                    break;
+                default: readSimpleValue(tag);
+            }
+        }
+
+        /**
+         * Skips a node.
+         */
+        private void skipNode()
+        {
+            readString();
+            for (int i = 0, iMax = readVarInt(); i < iMax; i++) {
+                readString();
+                skipValue();
+            }
+        }
+
+        /**
+         * Reads a string reference.
+         */
+        private String readString()
+        {
+            // If version 1, read inline string reference
+            int ref = readVarInt();
+            if (_inlineStrings != null)
+                return readInlineString(ref);
+
+            // Return string for table index + 1 (or null)
+            return ref != 0 ? _strings[ref - 1] : null;
+        }
+
+        /**
+         * Reads a version 1 string for given reference: Null, new string (added to inline strings) or string index.
+         */
+        private String readInlineString(int aRef)
+        {
+            // Handle null or index
+            if (aRef == 0)
+                return null;
+            if (aRef != STRING_NEW_V1)
+                return _inlineStrings.get(aRef - STRING_INDEX_V1);
+
+            // Read new string and add
+            String string = readStringBytes();
+            _inlineStrings.add(string);
+            return string;
+        }
+
+        /**
+         * Reads string bytes (length and UTF-8 bytes).
+         */
+        private String readStringBytes()
+        {
+            // If buffer has array, create string directly from array
+            int length = readVarInt();
+            if (_in.hasArray()) {
+                String string = new String(_in.array(), _in.arrayOffset() + _in.position(), length, StandardCharsets.UTF_8);
+                _in.position(_in.position() + length);
+                return string;
+            }
+
+            // Otherwise, copy bytes
+            byte[] bytes = new byte[length];
+            _in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads an unsigned varint.
+         */
+        private int readVarInt()
+        {
+            return (int) readVarLong();
+        }
+
+        /**
+         * Reads an unsigned varint (7 bits per byte, high bit set if more bytes follow).
+         */
+        private long readVarLong()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = _in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new RuntimeException("PropArchiverBin.readVarLong: Invalid varint");
+        }
+    }
+
+    /**
+     * A LazyPropValue to read and convert nodes from buffer on demand.
+     */
+    private class BinLazyValue extends LazyPropValue {
+
+        // The parent PropNode
+        private PropNode  _parent;
+
+        // The reader (for buffer and string table)
+        private BinReader  _reader;
+
+        // The buffer offset of each node
+        private int[]  _offsets;
+
+        /**
+         * Constructor.
+         */
+        BinLazyValue(PropNode aParent, Prop aProp, BinReader aReader, int[] theOffsets)
+        {
+            super(aProp);
+            _parent = aParent;
+            _reader = aReader;
+            _offsets = theOffsets;
+        }
+
+        /**
+         * Override to return node count.
+         */
+        public int getItemCount()  { return _offsets.length; }
+
+        /**
+         * Override to read node at index and convert to native.
+         */
+        protected Object resolveItem(int anIndex)
+        {
+            ByteBuffer buffer = _reader._in.duplicate();
+            buffer.position(_offsets[anIndex]);
+            BinReader reader = new BinReader(buffer, _reader._strings);
+            PropNode propNode = reader.readNode(_parent, getProp());
+            return convertNodeToNative(propNode);
+        }
+    }
+}
@@ -3,6 +3,7 @@
  */
 package snap.props;
 import snap.util.*;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -40,9 +41,10 @@ public class PropArchiverJS extends PropArchiver {
     public byte[] convertPropObjectToJSONBytes(PropObject aPropObject)
     {
         JSObject json = convertPropObjectToJSON(aPropObject);
-        String jsonStr = json.toString();
-        byte[] jsonBytes = jsonStr.getBytes();
-        return jsonBytes;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(outputStream)) { new JSWriter().write(json, writer); }
+        catch (IOException e) { throw new RuntimeException(e); }
+        return outputStream.toByteArray();
     }
 
     /**
@@ -168,8 +170,8 @@ public class PropArchiverJS extends PropArchiver {
     public Object readPropObjectFromJSONString(String jsonString)
     {
         try {
-            JSParser parser = new JSParser();
-            JSObject json = (JSObject) parser.readString(jsonString);
+            JSReader reader = new JSReader(jsonString);
+            JSObject json = (JSObject) reader.readValue();
             return readPropObjectFromJSON(json);
         }
 
@@ -181,8 +183,13 @@ public class PropArchiverJS extends PropArchiver {
      */
     public Object readPropObjectFromJSONBytes(byte[] theBytes)
     {
-        String string = new String(theBytes);
-        return readPropObjectFromJSONString(string);
+        try {
+            JSReader reader = new JSReader(new InputStreamReader(new ByteArrayInputStream(theBytes)));
+            JSObject json = (JSObject) reader.readValue();
+            return readPropObjectFromJSON(json);
+        }
+
+        catch (Exception e) { throw new RuntimeException(e); }
     }
 
     /**
@@ -167,13 +167,8 @@ public class PropArchiverXML extends PropArchiver {
      */
     public Object readPropObjectFromXMLString(String xmlString)
     {
-        try {
-            XMLParser xmlParser = new XMLParser();
-            XMLElement xml = xmlParser.parseXMLFromString(xmlString);
-            return readPropObjectFromXML(xml);
-        }
-
-        catch (Exception e) { throw new RuntimeException(e); }
+        XMLElement xml = XMLElement.readFromXMLString(xmlString);
+        return readPropObjectFromXML(xml);
     }
 
     /**
@@ -393,11 +388,17 @@ public class PropArchiverXML extends PropArchiver {
             // Get/remove current resource element
             XMLElement e = anElement.removeElement(i);
 
-            // Get resource name and bytes
+            // Get resource name
             String name = e.getAttributeValue("name");
-            byte[] bytes = e.getValueBytes();
 
-            // Add resource bytes for name
+            // If lazy, add resource that decodes bytes on first access (length not known until decoded)
+            if (isLazy()) {
+                addLazyResource(name, -1, e::getValueBytes);
+                continue;
+            }
+
+            // Get resource bytes and add for name
+            byte[] bytes = e.getValueBytes();
             addResource(name, bytes);
         }
     }
@@ -57,12 +57,43 @@ public class PropChange {
     /**
      * Returns the old value.
      */
-    public Object getOldValue()  { return _oval; }
+    public Object getOldValue()
+    {
+        return _oval instanceof Undoer.StoredValue ? ((Undoer.StoredValue) _oval).getValue() : _oval;
+    }
 
     /**
      * Returns the new value.
      */
-    public Object getNewValue()  { return _nval; }
+    public Object getNewValue()
+    {
+        return _nval instanceof Undoer.StoredValue ? ((Undoer.StoredValue) _nval).getValue() : _nval;
+    }
+
+    /**
+     * Returns the old value as held (could be Undoer.StoredValue).
+     */
+    Object getOldValueRaw()  { return _oval; }
+
+    /**
+     * Sets the old value as held (for Undoer to compress or spill large value).
+     */
+    void setOldValueRaw(Object aValue)  { _oval = aValue; }
+
+    /**
+     * Returns the new value as held (could be Undoer.StoredValue).
+     */
+    Object getNewValueRaw()  { return _nval; }
+
+    /**
+     * Sets the new value as held (for Undoer to compress or spill large value).
+     */
+    void setNewValueRaw(Object aValue)  { _nval = aValue; }
+
+    /**
+     * Returns whether old or new value is held as Undoer.StoredValue (so merging would have to restore it).
+     */
+    boolean isValueStored()  { return _oval instanceof Undoer.StoredValue || _nval instanceof Undoer.StoredValue; }
 
     /**
      * Returns the index.
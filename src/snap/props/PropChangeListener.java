@@ -2,6 +2,7 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.props;
+import java.util.List;
 
 /**
  * An interface to respond to PropChange objects.
@@ -26,6 +27,15 @@ public interface PropChangeListener {
         public void propertyChange(PropChange aPC)  { _lsnr.propertyChange(aPC); }
     }
 
+    /**
+     * A PropChangeListener that gets the changes of a batch (see PropChangeSupport.beginPropChanges()) in one call.
+     */
+    public interface Batch extends PropChangeListener {
+
+        /** Called with the changes of a batch (in order). */
+        void propertyChanges(List<PropChange> theChanges);
+    }
+
     /**
      * Returns a OneShot.
      */
@@ -4,10 +4,14 @@
 package snap.props;
 import snap.util.ArrayUtils;
 
-import java.util.Objects;
+import java.util.*;
 
 /**
  * A class to easily add propery change support to a class (and DeepChange support).
+ *
+ * Changes can be batched with runBatched() or beginPropChanges()/commitPropChanges(): Changes fired in between are
+ * buffered, repeated changes to the same source and prop are collapsed into one (old to new) change, and the batch is
+ * sent to listeners on commit (in one call for PropChangeListener.Batch and DeepChangeListener.Batch listeners).
  */
 public class PropChangeSupport {
     
@@ -22,6 +26,19 @@ public class PropChangeSupport {
     
     // The DeepChangeListener
     private DeepChangeListener[]  _deepLsnrs = EMPTY_DEEP_ARRAY;
+
+    // The number of open batches (changes are buffered while greater than zero)
+    private int  _batchDepth;
+
+    // The changes buffered in current batch (null slots for changes that collapsed to nothing)
+    private List<PropChange>  _batchChanges;
+
+    // The deep changes buffered in current batch and their sources
+    private List<PropChange>  _batchDeepChanges;
+    private List<Object>  _batchDeepSources;
+
+    // A map of change index in batch for each (deep source, source, prop) key
+    private Map<BatchKey,Integer>  _batchIndexes;
     
     // Constants
     private static final PropChangeListener[] EMPTY_LISTENER_ARRAY = new PropChangeListener[0];
@@ -144,6 +161,14 @@ public class PropChangeSupport {
      */
     public void firePropChange(PropChange aPC)
     {
+        // If in batch, add change and return
+        if (_batchDepth > 0) {
+            if (_lsnrs.length > 0)
+                addBatchChange(_batchChanges, null, null, aPC);
+            return;
+        }
+
+        // Send change to listeners
         String propName = aPC.getPropName();
         boolean hasOneShot = false;
         for (int i = 0; i < _lsnrs.length; i++) {
@@ -198,7 +223,195 @@ public class PropChangeSupport {
      */
     public void fireDeepChange(Object aSrc, PropChange aPC)
     {
+        // If in batch, add change and return
+        if (_batchDepth > 0) {
+            if (_deepLsnrs.length > 0)
+                addBatchChange(_batchDeepChanges, _batchDeepSources, aSrc, aPC);
+            return;
+        }
+
+        // Send change to listeners
         for (DeepChangeListener lsnr : _deepLsnrs)
             lsnr.deepChange(aSrc, aPC);
     }
+
+    /**
+     * Returns whether changes are currently being batched.
+     */
+    public boolean isBatchingPropChanges()  { return _batchDepth > 0; }
+
+    /**
+     * Begins a batch of changes: Changes are buffered until matching commitPropChanges() (batches can be nested).
+     */
+    public void beginPropChanges()
+    {
+        // If first batch, create buffers
+        if (_batchDepth++ == 0) {
+            _batchChanges = new ArrayList<>();
+            _batchDeepChanges = new ArrayList<>();
+            _batchDeepSources = new ArrayList<>();
+            _batchIndexes = new HashMap<>();
+        }
+    }
+
+    /**
+     * Runs given runnable in a batch (committed even if runnable throws).
+     */
+    public void runBatched(Runnable aRun)
+    {
+        beginPropChanges();
+        try { aRun.run(); }
+        finally { commitPropChanges(); }
+    }
+
+    /**
+     * Commits a batch of changes: If outermost batch, sends buffered changes to listeners.
+     */
+    public void commitPropChanges()
+    {
+        // If no batch, complain
+        if (_batchDepth == 0)
+            throw new IllegalStateException("PropChangeSupport.commitPropChanges: No batch to commit");
+
+        // If nested batch, just return
+        if (--_batchDepth > 0) return;
+
+        // Get buffered changes and clear buffers (so listeners can fire new changes)
+        List<PropChange> changes = _batchChanges;
+        List<PropChange> deepChanges = _batchDeepChanges;
+        List<Object> deepSources = _batchDeepSources;
+        _batchChanges = _batchDeepChanges = null;
+        _batchDeepSources = null;
+        _batchIndexes = null;
+
+        // Send changes
+        fireBatchChanges(changes);
+        fireBatchDeepChanges(deepSources, deepChanges);
+    }
+
+    /**
+     * Adds a change to batch: Collapses into previous change for same deep source, source and prop (if mergeable).
+     */
+    private void addBatchChange(List<PropChange> theChanges, List<Object> theSources, Object aSrc, PropChange aPC)
+    {
+        // If change for same key already in batch, merge
+        BatchKey key = new BatchKey(theSources != null, aSrc, aPC);
+        Integer index = _batchIndexes.get(key);
+        if (index != null) {
+
+            // If merged, replace previous change (or if merged change does nothing, clear it) and return
+            PropChange merged = theChanges.get(index).merge(aPC);
+            if (merged != null) {
+                if (Objects.equals(merged.getOldValue(), merged.getNewValue())) {
+                    theChanges.set(index, null);
+                    _batchIndexes.remove(key);
+                }
+                else theChanges.set(index, merged);
+                return;
+            }
+
+            // Otherwise, stop merging for key (so later changes stay after this one)
+            _batchIndexes.remove(key);
+        }
+
+        // Add change (and source, if deep) and add key if change can be merged
+        if (aPC.getIndex() < 0)
+            _batchIndexes.put(key, theChanges.size());
+        theChanges.add(aPC);
+        if (theSources != null)
+            theSources.add(aSrc);
+    }
+
+    /**
+     * Sends batch changes to listeners.
+     */
+    private void fireBatchChanges(List<PropChange> theChanges)
+    {
+        // Iterate over listeners
+        PropChangeListener[] lsnrs = _lsnrs;
+        String[] lsnrProps = _lsnrProps;
+        for (int i = 0; i < lsnrs.length; i++) {
+
+            // Get changes for listener prop
+            PropChangeListener lsnr = lsnrs[i];
+            String prop = lsnrProps[i];
+            List<PropChange> changes = new ArrayList<>();
+            for (PropChange pc : theChanges)
+                if (pc != null && (prop == null || prop.equals(pc.getPropName())))
+                    changes.add(pc);
+            if (changes.isEmpty())
+                continue;
+
+            // Send changes in one call if batch listener, otherwise one at a time
+            if (lsnr instanceof PropChangeListener.Batch)
+                ((PropChangeListener.Batch) lsnr).propertyChanges(changes);
+            else for (PropChange pc : changes)
+                lsnr.propertyChange(pc);
+            if (lsnr instanceof PropChangeListener.OneShot)
+                removePropChangeListener(lsnr, prop);
+        }
+    }
+
+    /**
+     * Sends batch deep changes to listeners.
+     */
+    private void fireBatchDeepChanges(List<Object> theSources, List<PropChange> theChanges)
+    {
+        for (DeepChangeListener lsnr : _deepLsnrs) {
+
+            // If batch listener, send changes in one call for each source (in order of first change)
+            if (lsnr instanceof DeepChangeListener.Batch) {
+                Map<Object,List<PropChange>> sourceChanges = new LinkedHashMap<>();
+                for (int i = 0; i < theChanges.size(); i++) {
+                    PropChange pc = theChanges.get(i);
+                    if (pc != null)
+                        sourceChanges.computeIfAbsent(theSources.get(i), k -> new ArrayList<>()).add(pc);
+                }
+                for (Map.Entry<Object,List<PropChange>> entry : sourceChanges.entrySet())
+                    ((DeepChangeListener.Batch) lsnr).deepChanges(entry.getKey(), entry.getValue());
+            }
+
+            // Otherwise send changes one at a time
+            else for (int i = 0; i < theChanges.size(); i++) {
+                PropChange pc = theChanges.get(i);
+                if (pc != null)
+                    lsnr.deepChange(theSources.get(i), pc);
+            }
+        }
+    }
+
+    /**
+     * A key for batched changes: Deep source, change source and prop name.
+     */
+    private static class BatchKey {
+
+        // Whether deep, the deep source, change source and prop name
+        private boolean  _deep;
+        private Object  _deepSrc, _src;
+        private String  _prop;
+
+        /** Constructor. */
+        BatchKey(boolean isDeep, Object aDeepSrc, PropChange aPC)
+        {
+            _deep = isDeep;
+            _deepSrc = aDeepSrc;
+            _src = aPC.getSource();
+            _prop = aPC.getPropName();
+        }
+
+        /** Standard equals implementation (sources by identity). */
+        public boolean equals(Object anObj)
+        {
+            if (!(anObj instanceof BatchKey)) return false;
+            BatchKey other = (BatchKey) anObj;
+            return other._deep == _deep && other._deepSrc == _deepSrc && other._src == _src &&
+                Objects.equals(other._prop, _prop);
+        }
+
+        /** Standard hashCode implementation. */
+        public int hashCode()
+        {
+            return System.identityHashCode(_deepSrc) * 31 + System.identityHashCode(_src) * 17 + Objects.hashCode(_prop);
+        }
+    }
 }
\ No newline at end of file
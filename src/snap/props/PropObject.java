@@ -90,6 +90,9 @@ public class PropObject implements PropChange.DoChange {
     {
         // super.initProps(aPropSet);
         // aPropSet.addPropNamed(Something_Prop, double.class, DEFAULT_SOMETHING_VALUE);
+
+        // Relations can opt in to lazy unarchive if setPropValue() accepts LazyPropValue (see PropArchiver.setLazy())
+        // aPropSet.addPropNamed(Items_Prop, Item[].class, EMPTY_OBJECT).setLazy(true);
     }
 
     /**
@@ -241,6 +244,34 @@ public class PropObject implements PropChange.DoChange {
         _pcs.firePropChange(aPC);
     }
 
+    /**
+     * Begins a batch of prop changes: Changes are buffered (and repeated changes to a prop collapsed) until matching
+     * commitPropChanges(), then sent to listeners as one batch.
+     */
+    public void beginPropChanges()
+    {
+        if (_pcs == PropChangeSupport.EMPTY) _pcs = new PropChangeSupport(this);
+        _pcs.beginPropChanges();
+    }
+
+    /**
+     * Commits a batch of prop changes (sends buffered changes to listeners if outermost batch).
+     */
+    public void commitPropChanges()
+    {
+        _pcs.commitPropChanges();
+    }
+
+    /**
+     * Runs given runnable with prop changes batched (see beginPropChanges()). If no listeners, just runs it.
+     */
+    public void runBatched(Runnable aRun)
+    {
+        if (_pcs == PropChangeSupport.EMPTY)
+            aRun.run();
+        else _pcs.runBatched(aRun);
+    }
+
     /**
      * Add DeepChange listener.
      */
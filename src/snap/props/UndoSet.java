@@ -26,6 +26,9 @@ public class UndoSet {
     // Whether this event has been coalesced
     private boolean _coalesced;
 
+    // The estimated memory size (cached by Undoer, -1 if not yet estimated)
+    long  _memorySize = -1;
+
     /**
      * Creates a new empty undo set.
      */
@@ -127,10 +130,15 @@ public class UndoSet {
      */
     public void addPropChange(PropChange anEvent)
     {
+        // Clear memory size
+        _memorySize = -1;
+
         // Iterate over changes and if duplicate exists, coalesce (go backward so we only check last same prop name event)
         for (int i = _changes.size() - 1; i >= 0; i--) {
             PropChange e = _changes.get(i);
             if (e.getSource() == anEvent.getSource() && e.getPropName().equals(anEvent.getPropName())) {
+                if (e.isValueStored() || anEvent.isValueStored())
+                    break;
                 PropChange event = e.merge(anEvent);
                 if (event != null) {
                     anEvent = event;
@@ -140,14 +148,47 @@ public class UndoSet {
             }
         }
 
-        // If values are equal, just return
-        if (SnapUtils.equals(anEvent.getOldValue(), anEvent.getNewValue()))
+        // If values are equal, just return (stored values are only created for changes already added, so skip them)
+        if (!anEvent.isValueStored() && SnapUtils.equals(anEvent.getOldValue(), anEvent.getNewValue()))
             return;
 
         // Add change
         _changes.add(anEvent);
     }
 
+    /**
+     * Returns whether this undo set has had following undo sets coalesced into it.
+     */
+    public boolean isCoalesced()  { return _coalesced; }
+
+    /**
+     * Returns whether given (following) undo set can be coalesced into this one: First change merges with last change
+     * of this undo set (like a run of typing). Changes with compressed or spilled values don't merge (so they stay
+     * stored).
+     */
+    public boolean canCoalesce(UndoSet anUndoSet)
+    {
+        PropChange last = getChangeLast();
+        PropChange first = anUndoSet.getChangeCount() > 0 ? anUndoSet.getChange(0) : null;
+        return last != null && first != null && last.getSource() == first.getSource() &&
+            last.getPropName().equals(first.getPropName()) && !last.isValueStored() && !first.isValueStored() &&
+            last.merge(first) != null;
+    }
+
+    /**
+     * Coalesces given (following) undo set into this one (adds changes and takes redo selection). Changes with
+     * compressed or spilled values are added as is (never merged), so no stored value is replaced.
+     */
+    public void coalesce(UndoSet anUndoSet)
+    {
+        for (PropChange change : anUndoSet.getChanges())
+            addPropChange(change);
+        if (_undoTitle == null)
+            _undoTitle = anUndoSet._undoTitle;
+        _redoSelection = anUndoSet.getRedoSelection();
+        _coalesced = true;
+    }
+
     /**
      * Executes undo for this event.
      */
@@ -189,6 +230,8 @@ public class UndoSet {
         _undoTitle = null;
         _undoSelection = _redoSelection = null;
         _changes.clear();
+        _memorySize = -1;
+        _coalesced = false;
     }
 
     /**
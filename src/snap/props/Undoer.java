@@ -2,15 +2,27 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.props;
+import snap.gfx.Image;
 import snap.util.ListUtils;
+import snap.util.SnapUtils;
 import snap.util.StringUtils;
-
+import java.io.*;
 import java.util.*;
+import java.util.zip.*;
 
 /**
  * Undoer - this object manages undo by keeping lists of property changes.
+ *
+ * Undoer can also be added as a prop change or deep change listener to record changes directly (and gets batched
+ * changes in one call).
+ *
+ * Undo history can be kept within a memory budget (MaxMemory, off by default): When saved undo sets go over budget,
+ * runs of undo sets that merge (like typing) are coalesced into one undo (so history loses those steps), large values
+ * (byte[] and long char sequences) of oldest undo sets can be compressed or spilled to a temp file (LargeValueMode)
+ * and then oldest undo sets are dropped. The spill file is rewritten with just the values in use when most of it
+ * belongs to dropped undo sets.
  */
-public class Undoer {
+public class Undoer implements PropChangeListener.Batch, DeepChangeListener.Batch {
 
     // The current undo set to add new property changes to
     UndoSet _activeUndoSet = new UndoSet();
@@ -24,6 +36,24 @@ public class Undoer {
     // Whether undoer is disabled
     int _disabled = 0;
 
+    // The max memory for saved undo/redo sets in bytes (0 for no limit)
+    private long  _maxMemory;
+
+    // What to do with large values when over memory budget
+    private LargeValueMode  _largeValueMode = LargeValueMode.Keep;
+
+    // The file to spill large values to (created when needed)
+    private SpillFile  _spillFile;
+
+    // Constants for how large values are handled when over memory budget
+    public enum LargeValueMode { Keep, Compress, Spill }
+
+    // Constant for min size of value (in bytes) to compress or spill
+    public static final int LARGE_VALUE_SIZE = 16 * 1024;
+
+    // Constants for estimated memory sizes of objects
+    private static final int OBJECT_SIZE = 16, CHANGE_SIZE = 48, UNDO_SET_SIZE = 64;
+
     /**
      * Returns the active undo set.
      */
@@ -127,6 +157,40 @@ public class Undoer {
         _activeUndoSet.addPropChange(anEvent);
     }
 
+    /**
+     * Adds a list of property changes.
+     */
+    public void addPropChanges(List<PropChange> theChanges)
+    {
+        // If undoer is disabled, just return
+        if (!isEnabled())
+            return;
+
+        // Add changes
+        for (PropChange change : theChanges)
+            _activeUndoSet.addPropChange(change);
+    }
+
+    /**
+     * PropChangeListener method: Adds change.
+     */
+    public void propertyChange(PropChange aPC)  { addPropChange(aPC); }
+
+    /**
+     * PropChangeListener.Batch method: Adds changes.
+     */
+    public void propertyChanges(List<PropChange> theChanges)  { addPropChanges(theChanges); }
+
+    /**
+     * DeepChangeListener method: Adds change.
+     */
+    public void deepChange(Object aSource, PropChange aPC)  { addPropChange(aPC); }
+
+    /**
+     * DeepChangeListener.Batch method: Adds changes.
+     */
+    public void deepChanges(Object aSource, List<PropChange> theChanges)  { addPropChanges(theChanges); }
+
     /**
      * Pushes current undo record on the stack and opens new one.
      */
@@ -142,7 +206,13 @@ public class Undoer {
             _activeUndoSet = new UndoSet();
 
             // Clear redos
+            for (UndoSet redoSet : _redoSets)
+                releaseValues(redoSet);
             _redoSets.clear();
+
+            // Make sure undo history is within memory budget
+            trimToMaxMemory();
+            compactSpillFile();
         }
 
         // If no changed objects, just reset current undo
@@ -229,6 +299,273 @@ public class Undoer {
         _activeUndoSet.reset();
         _undoSets.clear();
         _redoSets.clear();
+
+        // Delete spill file
+        if (_spillFile != null) {
+            _spillFile.delete();
+            _spillFile = null;
+        }
+    }
+
+    /**
+     * Returns the max memory for saved undo/redo sets in bytes (0 for no limit).
+     */
+    public long getMaxMemory()  { return _maxMemory; }
+
+    /**
+     * Sets the max memory for saved undo/redo sets in bytes (0 for no limit). When over budget, undo sets that merge
+     * are coalesced and oldest undo sets are dropped.
+     */
+    public void setMaxMemory(long aValue)
+    {
+        _maxMemory = aValue;
+        trimToMaxMemory();
+        compactSpillFile();
+    }
+
+    /**
+     * Returns what to do with large values when over memory budget.
+     */
+    public LargeValueMode getLargeValueMode()  { return _largeValueMode; }
+
+    /**
+     * Sets what to do with large values when over memory budget.
+     */
+    public void setLargeValueMode(LargeValueMode aMode)
+    {
+        _largeValueMode = aMode;
+    }
+
+    /**
+     * Returns the estimated memory size of undo history in bytes (saved undo/redo sets and active undo set).
+     */
+    public long getMemorySize()
+    {
+        return getMemorySize(_undoSets) + getMemorySize(_redoSets) + getMemorySize(_activeUndoSet);
+    }
+
+    /**
+     * Returns the estimated memory size of given undo sets.
+     */
+    private long getMemorySize(List<UndoSet> theUndoSets)
+    {
+        long size = 0;
+        for (UndoSet undoSet : theUndoSets)
+            size += getMemorySize(undoSet);
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory size of given undo set (cached in undo set until it changes).
+     */
+    protected long getMemorySize(UndoSet anUndoSet)
+    {
+        // If already set, just return
+        if (anUndoSet._memorySize >= 0) return anUndoSet._memorySize;
+
+        // Add sizes of changes and values
+        long size = UNDO_SET_SIZE;
+        for (PropChange change : anUndoSet.getChanges())
+            size += CHANGE_SIZE + getValueSize(change.getOldValueRaw()) + getValueSize(change.getNewValueRaw());
+
+        // Set and return
+        return anUndoSet._memorySize = size;
+    }
+
+    /**
+     * Returns the estimated memory size of given change value in bytes (shallow for arbitrary objects).
+     */
+    protected long getValueSize(Object aValue)
+    {
+        if (aValue == null) return 0;
+        if (aValue instanceof StoredValue) return ((StoredValue) aValue).getMemorySize();
+        if (aValue instanceof CharSequence) return OBJECT_SIZE * 2 + ((CharSequence) aValue).length() * 2L;
+        if (aValue instanceof byte[]) return OBJECT_SIZE + ((byte[]) aValue).length;
+        if (aValue instanceof char[]) return OBJECT_SIZE + ((char[]) aValue).length * 2L;
+        if (aValue instanceof int[]) return OBJECT_SIZE + ((int[]) aValue).length * 4L;
+        if (aValue instanceof double[]) return OBJECT_SIZE + ((double[]) aValue).length * 8L;
+        if (aValue instanceof Object[]) {
+            long size = OBJECT_SIZE;
+            for (Object item : (Object[]) aValue)
+                size += 8 + getValueSize(item);
+            return size;
+        }
+        if (aValue instanceof Image) {
+            Image image = (Image) aValue;
+            return image.isLoaded() ? OBJECT_SIZE * 4 + image.getPixWidth() * (long) image.getPixHeight() * 4 : OBJECT_SIZE * 4;
+        }
+        return OBJECT_SIZE * 2;
+    }
+
+    /**
+     * Makes sure saved undo/redo sets are within memory budget: Coalesces undo sets that merge, stores large values of
+     * oldest undo sets (if enabled), then drops oldest undo sets (and oldest redo sets), always keeping last undo set.
+     */
+    protected void trimToMaxMemory()
+    {
+        // If no limit or within limit, just return
+        if (_maxMemory <= 0) return;
+        long size = getMemorySize(_undoSets) + getMemorySize(_redoSets);
+        if (size <= _maxMemory) return;
+
+        // Coalesce runs of undo sets that merge, oldest first (before storing, so merged values are stored only once)
+        for (int i = 0; i < _undoSets.size() - 1 && size > _maxMemory; ) {
+            UndoSet undoSet = _undoSets.get(i);
+            UndoSet nextSet = _undoSets.get(i + 1);
+            if (undoSet.canCoalesce(nextSet)) {
+                long oldSize = getMemorySize(undoSet) + getMemorySize(nextSet);
+                undoSet.coalesce(nextSet);
+                _undoSets.remove(i + 1);
+                size += getMemorySize(undoSet) - oldSize;
+            }
+            else i++;
+        }
+
+        // Compress or spill large values of undo sets, oldest first
+        if (_largeValueMode != LargeValueMode.Keep && !SnapUtils.isTeaVM) {
+            for (int i = 0, iMax = _undoSets.size(); i < iMax && size > _maxMemory; i++) {
+                UndoSet undoSet = _undoSets.get(i);
+                long oldSize = getMemorySize(undoSet);
+                storeLargeValues(undoSet);
+                size += getMemorySize(undoSet) - oldSize;
+            }
+        }
+
+        // Drop oldest redo sets (last to be redone), then oldest undo sets (keeping last undo set)
+        while (size > _maxMemory && _redoSets.size() > 0) {
+            UndoSet redoSet = _redoSets.remove(0);
+            releaseValues(redoSet);
+            size -= getMemorySize(redoSet);
+        }
+        while (size > _maxMemory && _undoSets.size() > 1) {
+            UndoSet undoSet = _undoSets.remove(0);
+            releaseValues(undoSet);
+            size -= getMemorySize(undoSet);
+        }
+    }
+
+    /**
+     * Compresses or spills large values of given undo set.
+     */
+    private void storeLargeValues(UndoSet anUndoSet)
+    {
+        for (PropChange change : anUndoSet.getChanges()) {
+            StoredValue oldValue = storeValue(change.getOldValueRaw());
+            if (oldValue != null)
+                change.setOldValueRaw(oldValue);
+            StoredValue newValue = storeValue(change.getNewValueRaw());
+            if (newValue != null)
+                change.setNewValueRaw(newValue);
+        }
+        anUndoSet._memorySize = -1;
+    }
+
+    /**
+     * Returns a stored value for given value if large CharSequence or byte[] (or null).
+     */
+    private StoredValue storeValue(Object aValue)
+    {
+        // If not large CharSequence or byte[], just return
+        if (!(aValue instanceof CharSequence || aValue instanceof byte[]) || getValueSize(aValue) < LARGE_VALUE_SIZE)
+            return null;
+
+        // Get spill file (if spilling)
+        SpillFile spillFile = null;
+        if (_largeValueMode == LargeValueMode.Spill) {
+            if (_spillFile == null)
+                _spillFile = new SpillFile();
+            spillFile = _spillFile;
+        }
+
+        // Create stored value (if it fails, complain and just keep value)
+        try { return new StoredValue(aValue, spillFile); }
+        catch (IOException e) {
+            System.err.println("Undoer.storeValue: Can't store value: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Tells spill file that spilled values of given dropped undo set are no longer used.
+     */
+    private void releaseValues(UndoSet anUndoSet)
+    {
+        // If no spill file, just return
+        if (_spillFile == null) return;
+
+        // Iterate over changes and release spilled values
+        for (PropChange change : anUndoSet.getChanges()) {
+            Object oldValue = change.getOldValueRaw(), newValue = change.getNewValueRaw();
+            if (oldValue instanceof StoredValue)
+                ((StoredValue) oldValue).release();
+            if (newValue instanceof StoredValue)
+                ((StoredValue) newValue).release();
+        }
+    }
+
+    /**
+     * Rewrites spill file with just the values still in use, if mostly dead (or deletes it if no values are in use).
+     */
+    private void compactSpillFile()
+    {
+        // If no spill file or not mostly dead, just return
+        if (_spillFile == null || !_spillFile.isCompactNeeded()) return;
+
+        // Get spilled values still in undo/redo sets
+        List<StoredValue> spilledValues = new ArrayList<>();
+        for (UndoSet undoSet : _undoSets)
+            addSpilledValues(undoSet, spilledValues);
+        for (UndoSet redoSet : _redoSets)
+            addSpilledValues(redoSet, spilledValues);
+        addSpilledValues(_activeUndoSet, spilledValues);
+
+        // If none, just delete file
+        SpillFile oldFile = _spillFile;
+        if (spilledValues.size() == 0) {
+            oldFile.delete();
+            _spillFile = null;
+            return;
+        }
+
+        // Copy values to new spill file
+        SpillFile newFile = new SpillFile();
+        long[] newOffsets = new long[spilledValues.size()];
+        try {
+            for (int i = 0; i < newOffsets.length; i++) {
+                StoredValue value = spilledValues.get(i);
+                newOffsets[i] = newFile.write(oldFile.read(value._offset, value._length));
+            }
+        }
+
+        // If it fails, complain, delete new file and keep old
+        catch (IOException e) {
+            System.err.println("Undoer.compactSpillFile: Can't compact spill file: " + e);
+            newFile.delete();
+            return;
+        }
+
+        // Point values to new file and swap files
+        for (int i = 0; i < newOffsets.length; i++) {
+            StoredValue value = spilledValues.get(i);
+            value._spillFile = newFile;
+            value._offset = newOffsets[i];
+        }
+        oldFile.delete();
+        _spillFile = newFile;
+    }
+
+    /**
+     * Adds the spilled values of given undo set to given list.
+     */
+    private void addSpilledValues(UndoSet anUndoSet, List<StoredValue> theValues)
+    {
+        for (PropChange change : anUndoSet.getChanges()) {
+            Object oldValue = change.getOldValueRaw(), newValue = change.getNewValueRaw();
+            if (oldValue instanceof StoredValue && ((StoredValue) oldValue)._spillFile != null)
+                theValues.add((StoredValue) oldValue);
+            if (newValue instanceof StoredValue && ((StoredValue) newValue)._spillFile != null)
+                theValues.add((StoredValue) newValue);
+        }
     }
 
     /**
@@ -262,4 +599,164 @@ public class Undoer {
         return String.format("Undoer { UndoCount=%d, RedoCount=%d }", getUndoSets().size(), getRedoSets().size());
     }
 
+    /**
+     * A large CharSequence or byte[] change value stored compressed in memory or in spill file.
+     */
+    static class StoredValue {
+
+        // Whether value is CharSequence (restored as String, otherwise byte[])
+        private boolean  _string;
+
+        // The compressed bytes (if in memory)
+        private byte[]  _bytes;
+
+        // The spill file and the offset and length of compressed bytes in it (if spilled)
+        private SpillFile  _spillFile;
+        private long  _offset;
+        private int  _length;
+
+        /** Constructor for given CharSequence or byte[] value and spill file (or null to keep in memory). */
+        StoredValue(Object aValue, SpillFile aSpillFile) throws IOException
+        {
+            // Get value bytes (chars as 2 bytes each, so any string round trips)
+            _string = aValue instanceof CharSequence;
+            byte[] bytes = _string ? getCharBytes((CharSequence) aValue) : (byte[]) aValue;
+
+            // Compress bytes
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (DeflaterOutputStream defStream = new DeflaterOutputStream(outStream, deflater)) {
+                defStream.write(bytes);
+            }
+            finally { deflater.end(); }
+            byte[] compressed = outStream.toByteArray();
+
+            // If spill file, write compressed bytes to it, otherwise keep them
+            if (aSpillFile != null) {
+                _offset = aSpillFile.write(compressed);
+                _length = compressed.length;
+                _spillFile = aSpillFile;
+            }
+            else _bytes = compressed;
+        }
+
+        /** Returns the value. */
+        Object getValue()
+        {
+            try {
+                // Get compressed bytes and decompress
+                byte[] compressed = _bytes != null ? _bytes : _spillFile.read(_offset, _length);
+                InputStream inStream = new InflaterInputStream(new ByteArrayInputStream(compressed));
+                ByteArrayOutputStream outStream = new ByteArrayOutputStream(compressed.length * 4);
+                byte[] buffer = new byte[8192];
+                for (int count = inStream.read(buffer); count > 0; count = inStream.read(buffer))
+                    outStream.write(buffer, 0, count);
+                byte[] bytes = outStream.toByteArray();
+
+                // Return String or bytes
+                return _string ? getString(bytes) : bytes;
+            }
+
+            // Rethrow exceptions (undo can't proceed without value)
+            catch (IOException e) { throw new UncheckedIOException(e); }
+        }
+
+        /** Returns the estimated memory size. */
+        long getMemorySize()  { return OBJECT_SIZE * 3 + (_bytes != null ? _bytes.length : 0); }
+
+        /** Tells spill file that this value is no longer used. */
+        void release()
+        {
+            if (_spillFile != null)
+                _spillFile.release(_length);
+            _spillFile = null;
+        }
+
+        /** Returns the chars of given string as bytes. */
+        private static byte[] getCharBytes(CharSequence aString)
+        {
+            byte[] bytes = new byte[aString.length() * 2];
+            for (int i = 0, iMax = aString.length(); i < iMax; i++) { char c = aString.charAt(i);
+                bytes[i * 2] = (byte) (c >> 8);
+                bytes[i * 2 + 1] = (byte) c;
+            }
+            return bytes;
+        }
+
+        /** Returns a string for given char bytes. */
+        private static String getString(byte[] theBytes)
+        {
+            char[] chars = new char[theBytes.length / 2];
+            for (int i = 0; i < chars.length; i++)
+                chars[i] = (char) ((theBytes[i * 2] & 0xff) << 8 | (theBytes[i * 2 + 1] & 0xff));
+            return new String(chars);
+        }
+    }
+
+    /**
+     * A temp file that stored values are appended to (and that tracks bytes still in use, so it can be compacted).
+     */
+    static class SpillFile {
+
+        // The file
+        private File  _file;
+
+        // The random access file
+        private RandomAccessFile  _raf;
+
+        // The number of bytes written and the number still in use
+        private long  _length, _liveBytes;
+
+        // Constant for min file size to compact
+        private static final int COMPACT_MIN_SIZE = 1024 * 1024;
+
+        /** Returns the random access file (creates temp file if needed). */
+        private RandomAccessFile getRAF() throws IOException
+        {
+            if (_raf != null) return _raf;
+            _file = File.createTempFile("SnapUndo", ".tmp");
+            _file.deleteOnExit();
+            return _raf = new RandomAccessFile(_file, "rw");
+        }
+
+        /** Appends given bytes and returns offset. */
+        synchronized long write(byte[] theBytes) throws IOException
+        {
+            RandomAccessFile raf = getRAF();
+            long offset = _length;
+            raf.seek(offset);
+            raf.write(theBytes);
+            _length += theBytes.length;
+            _liveBytes += theBytes.length;
+            return offset;
+        }
+
+        /** Marks given number of bytes as no longer used. */
+        synchronized void release(int aLength)  { _liveBytes -= aLength; }
+
+        /** Returns whether file is big enough and at least half dead, so it should be compacted. */
+        synchronized boolean isCompactNeeded()  { return _length >= COMPACT_MIN_SIZE && _liveBytes * 2 <= _length; }
+
+        /** Reads bytes at given offset. */
+        synchronized byte[] read(long anOffset, int aLength) throws IOException
+        {
+            byte[] bytes = new byte[aLength];
+            RandomAccessFile raf = getRAF();
+            raf.seek(anOffset);
+            raf.readFully(bytes);
+            return bytes;
+        }
+
+        /** Closes and deletes file. */
+        synchronized void delete()
+        {
+            try { if (_raf != null) _raf.close(); }
+            catch (IOException e) { System.err.println("Undoer.SpillFile.delete: " + e); }
+            if (_file != null)
+                _file.delete();
+            _raf = null; _file = null;
+            _length = _liveBytes = 0;
+        }
+    }
+
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import snap.gfx.Color;
 import snap.gfx.Font;
 import snap.view.Label;
 import snap.view.View;
+import snap.view.ViewEvent;
 import snap.view.ViewHost;
 import snap.view.ViewOwner;
 
@@ -48,6 +49,19 @@ public class StylerOwner extends ViewOwner {
         _styler = aStyler;
     }
 
+    /**
+     * Override to batch prop changes of styler client view, so a style change to multiple selected views reaches
+     * listeners (relayout, undo) as one batch.
+     */
+    @Override
+    protected void processEvent(ViewEvent anEvent)
+    {
+        View clientView = _styler != null ? _styler.getClientView() : null;
+        if (clientView != null)
+            clientView.runBatched(() -> super.processEvent(anEvent));
+        else super.processEvent(anEvent);
+    }
+
     /**
      * Returns the Collapser.
      */
@@ -87,6 +87,11 @@ public class AWTFontFile extends FontFile {
      */
     protected double charAdvanceImpl(char aChar)  { return _fontMetrics.charWidth(aChar)/1000d; }
 
+    /**
+     * Returns the advance for the given code point.
+     */
+    protected double codePointAdvanceImpl(int aCodePoint)  { return _fontMetrics.charWidth(aCodePoint)/1000d; }
+
     /**
      * Returns the bounds rect for glyphs in given string.
      */
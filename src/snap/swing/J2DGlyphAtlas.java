@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.swing;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+ * A cache of rasterized glyph runs packed into shared atlas images, so text can be drawn as one image blit per
+ * run (a TextBox token, table cell string, etc.). Runs are keyed by font, device size, device scale, subpixel x
+ * offset, char spacing, color and string. When all pages are full, the least recently used page is cleared and reused.
+ */
+public class J2DGlyphAtlas {
+
+    // The atlas pages
+    private List<Page>  _pages = new ArrayList<>();
+
+    // The cached glyph runs
+    private Map<GlyphKey,Glyph>  _glyphs = new HashMap<>();
+
+    // The derived AWT fonts for device sizes (most recently used)
+    private Map<String,java.awt.Font>  _fonts = new LinkedHashMap<String,java.awt.Font>(16, .75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String,java.awt.Font> anEntry)
+        {
+            return size() > MAX_FONTS;
+        }
+    };
+
+    // A key used for lookups (avoids allocation for cache hits)
+    private GlyphKey  _lookupKey = new GlyphKey();
+
+    // The use counter (used for page LRU)
+    private long  _useCount;
+
+    // The font render context for rasterizing
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+
+    // Constants for atlas configuration
+    public static final int PAGE_SIZE = 512;
+    public static final int MAX_PAGES = 8;
+    public static final int SUBPIXEL_STEPS = 4;
+    public static final int MAX_RUN_LENGTH = 64;
+    public static final double MAX_FONT_SIZE = 64;
+    public static final int MAX_FONTS = 64;
+
+    // The shared atlas
+    private static J2DGlyphAtlas  _shared;
+
+    /**
+     * Returns the shared atlas.
+     */
+    public static synchronized J2DGlyphAtlas getShared()
+    {
+        if (_shared != null) return _shared;
+        return _shared = new J2DGlyphAtlas();
+    }
+
+    /**
+     * Draws given string with given font, scale, char spacing and color at given origin (in device space).
+     * Returns false if string can't be drawn from atlas (caller should fall back to vector text).
+     */
+    public synchronized boolean drawString(Graphics2D aGfx, String aStr, snap.gfx.Font aFont, double aScale,
+        double aX, double aY, double aCharSpacing, int anARGB)
+    {
+        // If device size too large or string too long, return false
+        double devSize = aFont.getSize() * aScale;
+        if (devSize > MAX_FONT_SIZE || devSize <= 0 || aStr.length() > MAX_RUN_LENGTH)
+            return false;
+
+        // Get glyph run for string at pen subpixel offset
+        int penX = (int) Math.floor(aX);
+        int subpixel = (int) ((aX - penX) * SUBPIXEL_STEPS);
+        Glyph glyph = getGlyph(aFont, (float) devSize, aScale, subpixel, (float) aCharSpacing, anARGB, aStr);
+        if (glyph == null)
+            return false;
+
+        // Blit glyph run (if not empty)
+        if (glyph.width > 0) {
+            int dx = penX + glyph.originX, dy = (int) Math.round(aY) + glyph.originY;
+            aGfx.drawImage(glyph.page.image, dx, dy, dx + glyph.width, dy + glyph.height,
+                glyph.x, glyph.y, glyph.x + glyph.width, glyph.y + glyph.height, null);
+        }
+
+        // Return success
+        return true;
+    }
+
+    /**
+     * Returns the glyph run for given key values, rasterizing into atlas if needed.
+     */
+    private Glyph getGlyph(snap.gfx.Font aFont, float aSize, double aScale, int aSubpixel, float aCharSpacing,
+        int anARGB, String aStr)
+    {
+        // Get cached glyph
+        String fontName = aFont.getName();
+        _lookupKey.set(fontName, aSize, (float) aScale, aSubpixel, aCharSpacing, anARGB, aStr);
+        Glyph glyph = _glyphs.get(_lookupKey);
+        if (glyph != null) {
+            glyph.page.lastUse = ++_useCount;
+            return glyph;
+        }
+
+        // Get glyph vector (adjust glyph positions for char spacing)
+        java.awt.Font awtFont = getAwtFont(aFont, aSize);
+        GlyphVector glyphVector = awtFont.createGlyphVector(FRC, aStr);
+        if (aCharSpacing != 0 && glyphVector.getNumGlyphs() == aStr.length()) {
+            Point2D.Double point = new Point2D.Double();
+            for (int i = 0, iMax = aStr.length() - 1; i < iMax; i++) {
+                point.x += (aFont.charAdvance(aStr.charAt(i)) + aCharSpacing) * aScale;
+                glyphVector.setGlyphPosition(i + 1, point);
+            }
+        }
+
+        // Get glyph pixel bounds relative to origin (with 1 pixel pad)
+        double subX = aSubpixel / (double) SUBPIXEL_STEPS;
+        Rectangle bounds = glyphVector.getPixelBounds(FRC, (float) subX, 0);
+        int glyphW = bounds.width + 2, glyphH = bounds.height + 2;
+
+        // Create glyph and key
+        GlyphKey key = new GlyphKey();
+        key.set(fontName, aSize, (float) aScale, aSubpixel, aCharSpacing, anARGB, aStr);
+        glyph = new Glyph();
+        glyph.originX = bounds.x - 1;
+        glyph.originY = bounds.y - 1;
+
+        // If empty (whitespace), add with empty slot and return
+        if (bounds.isEmpty()) {
+            glyph.page = getPageForEmptyGlyph();
+            _glyphs.put(key, glyph);
+            return glyph;
+        }
+
+        // Allocate space in a page (if too big, return null)
+        if (!allocate(glyph, glyphW, glyphH))
+            return null;
+
+        // Rasterize glyph run into page slot
+        Graphics2D gfx = glyph.page.image.createGraphics();
+        gfx.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        gfx.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        gfx.clipRect(glyph.x, glyph.y, glyphW, glyphH);
+        gfx.setComposite(AlphaComposite.Src);
+        gfx.setColor(new java.awt.Color(0, true));
+        gfx.fillRect(glyph.x, glyph.y, glyphW, glyphH);
+        gfx.setComposite(AlphaComposite.SrcOver);
+        gfx.setColor(new java.awt.Color(anARGB, true));
+        gfx.drawGlyphVector(glyphVector, (float) (glyph.x - glyph.originX + subX), glyph.y - glyph.originY);
+        gfx.dispose();
+
+        // Add glyph and return
+        glyph.width = glyphW;
+        glyph.height = glyphH;
+        glyph.page.lastUse = ++_useCount;
+        _glyphs.put(key, glyph);
+        return glyph;
+    }
+
+    /**
+     * Allocates a slot of given size for glyph (evicts least recently used page if all are full).
+     */
+    private boolean allocate(Glyph aGlyph, int aW, int aH)
+    {
+        // If glyph too big for page, return false
+        if (aW > PAGE_SIZE || aH > PAGE_SIZE)
+            return false;
+
+        // Try existing pages
+        for (Page page : _pages)
+            if (page.allocate(aGlyph, aW, aH))
+                return true;
+
+        // Add new page if room
+        if (_pages.size() < MAX_PAGES) {
+            Page page = new Page();
+            _pages.add(page);
+            return page.allocate(aGlyph, aW, aH);
+        }
+
+        // Evict least recently used page and allocate from it
+        Page lruPage = _pages.get(0);
+        for (Page page : _pages)
+            if (page.lastUse < lruPage.lastUse)
+                lruPage = page;
+        evictPage(lruPage);
+        return lruPage.allocate(aGlyph, aW, aH);
+    }
+
+    /**
+     * Returns a page to associate with empty glyphs.
+     */
+    private Page getPageForEmptyGlyph()
+    {
+        if (_pages.isEmpty())
+            _pages.add(new Page());
+        return _pages.get(0);
+    }
+
+    /**
+     * Clears the given page and removes its glyphs.
+     */
+    private void evictPage(Page aPage)
+    {
+        _glyphs.values().removeIf(glyph -> glyph.page == aPage);
+        aPage.reset();
+    }
+
+    /**
+     * Returns the AWT font for given font and device size.
+     */
+    private java.awt.Font getAwtFont(snap.gfx.Font aFont, float aSize)
+    {
+        String key = aFont.getName() + ' ' + aSize;
+        java.awt.Font awtFont = _fonts.get(key);
+        if (awtFont == null) {
+            awtFont = AWT.snapToAwtFont(aFont).deriveFont(aSize);
+            _fonts.put(key, awtFont);
+        }
+        return awtFont;
+    }
+
+    /**
+     * A page of the atlas, packed with shelves.
+     */
+    private static class Page {
+
+        // The image
+        BufferedImage  image = new BufferedImage(PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        // The current shelf y, height and x
+        int  shelfY, shelfH, shelfX;
+
+        // The last use count
+        long  lastUse;
+
+        /** Allocates slot for glyph in this page (returns false if full). */
+        boolean allocate(Glyph aGlyph, int aW, int aH)
+        {
+            // If glyph doesn't fit on current shelf, start new shelf
+            if (shelfX + aW > PAGE_SIZE) {
+                shelfY += shelfH;
+                shelfX = 0;
+                shelfH = 0;
+            }
+
+            // If no room, return false
+            if (shelfY + aH > PAGE_SIZE)
+                return false;
+
+            // Allocate
+            aGlyph.page = this;
+            aGlyph.x = shelfX;
+            aGlyph.y = shelfY;
+            shelfX += aW;
+            shelfH = Math.max(shelfH, aH);
+            return true;
+        }
+
+        /** Resets page for reuse. */
+        void reset()
+        {
+            shelfX = shelfY = shelfH = 0;
+        }
+    }
+
+    /**
+     * A rasterized glyph run in a page.
+     */
+    private static class Glyph {
+
+        // The page and slot bounds
+        Page  page;
+        int  x, y, width, height;
+
+        // The offset of slot from pen origin
+        int  originX, originY;
+    }
+
+    /**
+     * A key for glyph run lookup.
+     */
+    private static class GlyphKey {
+
+        // The key values (scale is needed since glyph positions with char spacing are scaled)
+        String  fontName, str;
+        float  size, scale, charSpacing;
+        int  subpixel, argb;
+
+        /** Sets key values. */
+        void set(String aFontName, float aSize, float aScale, int aSubpixel, float aCharSpacing, int anARGB, String aStr)
+        {
+            fontName = aFontName; size = aSize; scale = aScale; subpixel = aSubpixel; charSpacing = aCharSpacing;
+            argb = anARGB; str = aStr;
+        }
+
+        /** Standard equals implementation. */
+        public boolean equals(Object anObj)
+        {
+            if (anObj == this) return true;
+            GlyphKey other = anObj instanceof GlyphKey ? (GlyphKey) anObj : null; if (other == null) return false;
+            return other.size == size && other.scale == scale && other.subpixel == subpixel && other.argb == argb &&
+                other.charSpacing == charSpacing && other.str.equals(str) && other.fontName.equals(fontName);
+        }
+
+        /** Standard hashCode implementation. */
+        public int hashCode()
+        {
+            int hash = str.hashCode();
+            hash = hash * 31 + fontName.hashCode();
+            hash = hash * 31 + Float.floatToIntBits(size);
+            hash = hash * 31 + Float.floatToIntBits(scale);
+            hash = hash * 31 + Float.floatToIntBits(charSpacing);
+            hash = hash * 31 + subpixel;
+            return hash * 31 + argb;
+        }
+    }
+}
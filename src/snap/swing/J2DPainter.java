@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Arrays;
@@ -31,6 +32,9 @@ public class J2DPainter extends Painter {
     // The graphics stack
     private Graphics2D[]  _gfxs = new Graphics2D[8];
     
+    // The font stack (parallel to graphics stack)
+    private Font[]  _fonts = new Font[8];
+
     // The size of graphics stack
     private int  _gsize;
 
@@ -40,6 +44,7 @@ public class J2DPainter extends Painter {
     public J2DPainter(Graphics aGr)
     {
         _gfx = (Graphics2D)aGr.create();
+        _gfx.setFont(AWT.snapToAwtFont(_font));
         setAntialiasing(true);
         setAntialiasingText(true);
         setFractionalMetrics(true);
@@ -145,6 +150,10 @@ public class J2DPainter extends Painter {
      */
     public void setFont(Font aFont)
     {
+        // If already set, just return (fonts are interned, so identity check is usually sufficient)
+        if (aFont == _font) return;
+
+        // Set font
         _gfx.setFont(AWT.snapToAwtFont(aFont));
         _font = aFont;
     }
@@ -198,6 +207,10 @@ public class J2DPainter extends Painter {
      */
     public void drawString(String aStr, double aX, double aY, double cs)
     {
+        // If glyph cache enabled, try glyph atlas
+        if (isGlyphCache() && !isPrinting() && drawStringWithGlyphAtlas(aStr, aX, aY, cs))
+            return;
+
         // Handle no char spacing
         if (cs == 0)
             _gfx.drawString(aStr, (float) aX, (float) aY);
@@ -224,6 +237,39 @@ public class J2DPainter extends Painter {
         }
     }
 
+    /**
+     * Draws string using shared glyph atlas. Returns false if not possible (non-color paint, rotated/skewed
+     * transform, large device font size), in which case caller should draw vector text.
+     */
+    protected boolean drawStringWithGlyphAtlas(String aStr, double aX, double aY, double cs)
+    {
+        // If paint isn't color, return false
+        java.awt.Paint paint = _gfx.getPaint();
+        if (!(paint instanceof java.awt.Color))
+            return false;
+
+        // If transform isn't translate + uniform scale, return false
+        AffineTransform xfm = _gfx.getTransform();
+        double scale = xfm.getScaleX();
+        if (xfm.getShearX() != 0 || xfm.getShearY() != 0 || scale <= 0 || scale != xfm.getScaleY())
+            return false;
+
+        // If scale is 1 and translation is integral, atlas pixels map to device pixels, so draw in user space
+        J2DGlyphAtlas atlas = J2DGlyphAtlas.getShared();
+        int argb = ((java.awt.Color) paint).getRGB();
+        double transX = xfm.getTranslateX(), transY = xfm.getTranslateY();
+        if (scale == 1 && transX == Math.rint(transX) && transY == Math.rint(transY))
+            return atlas.drawString(_gfx, aStr, getFont(), 1, aX, aY, cs, argb);
+
+        // Otherwise get device origin and draw with identity transform
+        double devX = aX * scale + transX;
+        double devY = aY * scale + transY;
+        _gfx.setTransform(new AffineTransform());
+        boolean didDraw = atlas.drawString(_gfx, aStr, getFont(), scale, devX, devY, cs, argb);
+        _gfx.setTransform(xfm);
+        return didDraw;
+    }
+
     /**
      * Return string bounds.
      */
@@ -372,8 +418,11 @@ public class J2DPainter extends Painter {
      */
     public void save()
     {
-        if (_gsize==_gfxs.length)
+        if (_gsize==_gfxs.length) {
             _gfxs = Arrays.copyOf(_gfxs, _gfxs.length*2);
+            _fonts = Arrays.copyOf(_fonts, _fonts.length*2);
+        }
+        _fonts[_gsize] = _font;
         _gfxs[_gsize++] = _gfx;
         _gfx = (Graphics2D) _gfx.create();
     }
@@ -384,6 +433,7 @@ public class J2DPainter extends Painter {
     public void restore()
     {
         _gfx = _gfxs[--_gsize];
+        _font = _fonts[_gsize];
     }
 
     /**
@@ -0,0 +1,503 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import snap.util.TaskMonitor;
+import snap.util.TaskRunner;
+import snap.view.ViewEnv;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only TextDoc backed by a memory-mapped file, for viewing files too large to load into TextLine buffers.
+ *
+ * The line index (byte and char offset of each line) is built in the background and published to the doc in blocks
+ * (in the event thread), so the first lines can be shown right away. TextLines are lightweight, created on demand and
+ * only decode their chars when asked. Only a bounded number of recently used lines (and their chars) are held.
+ */
+public class MappedTextDoc extends TextDoc {
+
+    // The file
+    private File  _file;
+
+    // The mapped file bytes
+    private MappedByteBuffer  _bytes;
+
+    // The charset (UTF-8 or any single byte charset, so newline bytes always end lines)
+    private Charset  _charset;
+
+    // The byte offsets and char offsets of published lines (arrays have one extra entry for end of last line)
+    private int[]  _lineByteStarts = new int[1];
+    private int[]  _lineCharStarts = new int[1];
+
+    // The number of published lines
+    private int  _lineCount;
+
+    // The index and length of the longest published line
+    private int  _longLineIndex, _longLineLength = -1;
+
+    // The placeholder line used until lines are published
+    private MappedTextLine  _emptyLine;
+
+    // Whether line index is complete
+    private boolean  _indexed;
+
+    // The runner building line index
+    private TaskRunner<Void>  _indexRunner;
+
+    // A cache of recently used lines (lines hold their decoded chars)
+    private Map<Integer,MappedTextLine>  _lineCache = new LinkedHashMap<Integer,MappedTextLine>(256, .75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer,MappedTextLine> anEntry)
+        {
+            return size() > LINE_CACHE_MAX;
+        }
+    };
+
+    // The number of bytes to index before lines are published to doc
+    private static final int INDEX_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    // The maximum number of lines to cache
+    private static final int LINE_CACHE_MAX = 2048;
+
+    /**
+     * Constructor for UTF-8 file.
+     */
+    public MappedTextDoc(File aFile) throws IOException
+    {
+        this(aFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor for given file and charset.
+     */
+    public MappedTextDoc(File aFile, Charset aCharset) throws IOException
+    {
+        super();
+
+        // Check charset
+        _charset = aCharset;
+        boolean utf8 = aCharset.equals(StandardCharsets.UTF_8);
+        if (!utf8 && aCharset.newEncoder().maxBytesPerChar() != 1)
+            throw new IllegalArgumentException("MappedTextDoc: Charset must be UTF-8 or single byte: " + aCharset);
+
+        // Map file (char indexes are int, so file is limited to 2GB)
+        _file = aFile;
+        try (RandomAccessFile raf = new RandomAccessFile(aFile, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("MappedTextDoc: File too large: " + aFile + " (" + size + " bytes)");
+            _bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        // Set lines to lazy list
+        _emptyLine = new MappedTextLine(this, 0, 0, 0);
+        _lines = new MappedLineList();
+    }
+
+    /**
+     * Override to suppress default line (lines come from file).
+     */
+    @Override
+    protected void addDefaultLine()  { }
+
+    /**
+     * Returns the file.
+     */
+    public File getFile()  { return _file; }
+
+    /**
+     * Returns the charset.
+     */
+    public Charset getCharset()  { return _charset; }
+
+    /**
+     * Returns whether the line index is complete.
+     */
+    public boolean isIndexed()  { return _indexed; }
+
+    /**
+     * Override to return true.
+     */
+    @Override
+    public boolean isReadOnly()  { return true; }
+
+    /**
+     * Builds the line index in the background, publishing lines to doc in event thread as they are found.
+     */
+    public TaskRunner<Void> startIndexing(TaskMonitor aMonitor)
+    {
+        // If already started, just return
+        if (_indexRunner != null) return _indexRunner;
+
+        // Create and start runner
+        _indexRunner = new TaskRunner<Void>(aMonitor != null ? aMonitor : TaskMonitor.NULL) {
+            public Void run()
+            {
+                buildIndex(this);
+                return null;
+            }
+        };
+        return _indexRunner.start();
+    }
+
+    /**
+     * Builds the line index in current thread (publishing blocks via ViewEnv.runLater).
+     */
+    protected void buildIndex(TaskMonitor aMonitor)
+    {
+        // Get bytes (duplicate so position is private to this thread)
+        ByteBuffer bytes = _bytes.duplicate();
+        int byteCount = bytes.limit();
+        aMonitor.startTasks(1);
+        aMonitor.beginTask("Indexing " + _file.getName(), byteCount);
+
+        // Create local index arrays
+        int[] byteStarts = new int[1024];
+        int[] charStarts = new int[1024];
+        int lineCount = 0;
+        int charIndex = 0;
+        int blockStart = 0;
+        int blockEnd = Math.min(INDEX_BLOCK_SIZE, byteCount);
+
+        // Create decoder and buffer to count line chars (decoded same as decodeBytes(), so counts match line strings)
+        CharsetDecoder decoder = createDecoder();
+        CharBuffer charBuffer = CharBuffer.allocate(8192);
+
+        // If empty file, just publish
+        if (byteCount == 0)
+            publishLines(byteStarts, charStarts, 0);
+
+        // Iterate over bytes
+        for (int i = 0; i < byteCount; i++) {
+
+            // If newline or end of file, count decoded line chars and add line
+            byte b = bytes.get(i);
+            if (b == '\n' || i + 1 == byteCount) {
+                bytes.limit(i + 1).position(byteStarts[lineCount]);
+                charIndex += getDecodedCharCount(decoder, bytes, charBuffer);
+                bytes.limit(byteCount);
+                if (lineCount + 2 > byteStarts.length) {
+                    byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+                    charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+                }
+                lineCount++;
+                byteStarts[lineCount] = i + 1;
+                charStarts[lineCount] = charIndex;
+            }
+
+            // If end of block, publish lines and update monitor
+            if (i + 1 == blockEnd) {
+                publishLines(byteStarts, charStarts, lineCount);
+                aMonitor.updateTask(blockEnd - blockStart);
+                if (aMonitor.isCancelled())
+                    return;
+                blockStart = blockEnd;
+                blockEnd = Math.min(blockEnd + INDEX_BLOCK_SIZE, byteCount);
+            }
+        }
+
+        // Finish
+        aMonitor.endTask();
+    }
+
+    /**
+     * Publishes given line index arrays to doc in event thread. Array entries below given count don't change once
+     * written, so arrays are shared with indexer.
+     */
+    private void publishLines(int[] byteStarts, int[] charStarts, int aLineCount)
+    {
+        boolean done = byteStarts[aLineCount] == _bytes.limit();
+        ViewEnv env = ViewEnv.getEnv();
+        if (env != null)
+            env.runLater(() -> setLineIndex(byteStarts, charStarts, aLineCount, done));
+        else setLineIndex(byteStarts, charStarts, aLineCount, done);
+    }
+
+    /**
+     * Sets the line index and fires chars change for new lines.
+     */
+    protected void setLineIndex(int[] byteStarts, int[] charStarts, int aLineCount, boolean isDone)
+    {
+        // If no new lines, just return
+        _indexed = isDone;
+        if (aLineCount <= _lineCount) return;
+
+        // Update longest line for new lines
+        for (int i = _lineCount; i < aLineCount; i++) {
+            int lineLength = charStarts[i + 1] - charStarts[i];
+            if (lineLength > _longLineLength) {
+                _longLineIndex = i;
+                _longLineLength = lineLength;
+            }
+        }
+
+        // Set new values
+        int oldLength = _length;
+        _lineByteStarts = byteStarts;
+        _lineCharStarts = charStarts;
+        _lineCount = aLineCount;
+        _length = charStarts[aLineCount];
+        _width = -1;
+
+        // Fire prop change for added chars
+        if (isPropChangeEnabled())
+            firePropChange(new TextDocUtils.CharsChange(this, null, new CharRange(oldLength, _length), oldLength));
+    }
+
+    /**
+     * Override to return published line count (always at least one).
+     */
+    @Override
+    public int getLineCount()  { return Math.max(_lineCount, 1); }
+
+    /**
+     * Override to return lazily created line.
+     */
+    @Override
+    public TextLine getLine(int anIndex)
+    {
+        // If no lines published, return empty line
+        if (_lineCount == 0) {
+            if (anIndex != 0)
+                throw new IndexOutOfBoundsException("Index " + anIndex + " beyond 1");
+            return _emptyLine;
+        }
+
+        // Check index
+        if (anIndex < 0 || anIndex >= _lineCount)
+            throw new IndexOutOfBoundsException("Index " + anIndex + " beyond " + _lineCount);
+
+        // Get line from cache (create if needed)
+        MappedTextLine line = _lineCache.get(anIndex);
+        if (line == null) {
+            int start = _lineCharStarts[anIndex];
+            int length = _lineCharStarts[anIndex + 1] - start;
+            line = new MappedTextLine(this, anIndex, start, length);
+            _lineCache.put(anIndex, line);
+        }
+        return line;
+    }
+
+    /**
+     * Override to find line with binary search of line index.
+     */
+    @Override
+    public TextLine getLineForCharIndex(int anIndex)
+    {
+        // Check bounds
+        if (anIndex < 0 || anIndex > length())
+            throw new IndexOutOfBoundsException("Index " + anIndex + " beyond " + length());
+        if (anIndex == length())
+            return getLineLast();
+
+        // Binary search char starts for last line start at or before index
+        int lineIndex = Arrays.binarySearch(_lineCharStarts, 0, _lineCount, anIndex);
+        if (lineIndex < 0)
+            lineIndex = -lineIndex - 2;
+        return getLine(lineIndex);
+    }
+
+    /**
+     * Override to only decode given range.
+     */
+    @Override
+    public CharSequence subSequence(int aStart, int anEnd)
+    {
+        StringBuilder sb = new StringBuilder(anEnd - aStart);
+        while (aStart < anEnd) {
+            TextLine line = getLineForCharIndex(aStart);
+            int lineStart = line.getStartCharIndex();
+            int end = Math.min(line.getEndCharIndex(), anEnd);
+            sb.append(line.subSequence(aStart - lineStart, end - lineStart));
+            aStart = end;
+        }
+        return sb;
+    }
+
+    /**
+     * Override to decode whole file.
+     */
+    @Override
+    public String getString()
+    {
+        return decodeBytes(0, _lineByteStarts[_lineCount]);
+    }
+
+    /**
+     * Override to return line with most chars (measuring every line would decode the whole file).
+     */
+    @Override
+    public TextLine getLineLongest()
+    {
+        // Get line (longest is tracked as lines are published) and make sure width is calculated (PrefWidth uses ivar)
+        TextLine longLine = getLine(_lineCount > 0 ? _longLineIndex : 0);
+        longLine.getWidth();
+        return longLine;
+    }
+
+    /**
+     * Returns the chars for given line (decoded from file).
+     */
+    protected String getLineChars(MappedTextLine aLine)
+    {
+        // If placeholder line, return empty string
+        if (aLine == _emptyLine) return "";
+
+        // Decode line bytes
+        int lineIndex = aLine.getIndex();
+        return decodeBytes(_lineByteStarts[lineIndex], _lineByteStarts[lineIndex + 1]);
+    }
+
+    /**
+     * Decodes given byte range of file.
+     */
+    private String decodeBytes(int aStart, int anEnd)
+    {
+        ByteBuffer bytes = _bytes.duplicate();
+        bytes.limit(anEnd).position(aStart);
+        try { return createDecoder().decode(bytes).toString(); }
+        catch (CharacterCodingException e) { throw new RuntimeException(e); }
+    }
+
+    /**
+     * Returns a decoder for charset that replaces malformed or unmappable input (so decoding never fails).
+     */
+    private CharsetDecoder createDecoder()
+    {
+        CharsetDecoder decoder = _charset.newDecoder();
+        decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return decoder;
+    }
+
+    /**
+     * Returns the number of chars given decoder produces for given bytes (decoded into given buffer in chunks).
+     */
+    private static int getDecodedCharCount(CharsetDecoder aDecoder, ByteBuffer theBytes, CharBuffer aBuffer)
+    {
+        // Reset decoder
+        aDecoder.reset();
+        int charCount = 0;
+        boolean flushing = false;
+
+        // Decode (then flush) into buffer until underflow, adding decoded chars of each chunk
+        while (true) {
+            CoderResult result = flushing ? aDecoder.flush(aBuffer) : aDecoder.decode(theBytes, aBuffer, true);
+            charCount += aBuffer.position();
+            aBuffer.clear();
+            if (result.isUnderflow()) {
+                if (flushing) break;
+                flushing = true;
+            }
+        }
+
+        // Return
+        return charCount;
+    }
+
+    /**
+     * Override to throw (read-only).
+     */
+    @Override
+    public void addChars(CharSequence theChars, TextStyle theStyle, int anIndex)
+    {
+        throw new UnsupportedOperationException("MappedTextDoc.addChars: Doc is read-only");
+    }
+
+    /**
+     * Override to throw (read-only).
+     */
+    @Override
+    public void removeChars(int aStart, int anEnd)
+    {
+        if (aStart == anEnd) return;
+        throw new UnsupportedOperationException("MappedTextDoc.removeChars: Doc is read-only");
+    }
+
+    /**
+     * Override to apply style to all lines (since plain text).
+     */
+    @Override
+    public void setDefaultStyle(TextStyle aStyle)
+    {
+        _defStyle = aStyle;
+        _emptyLine.setStyle(aStyle);
+        for (MappedTextLine line : _lineCache.values())
+            line.setStyle(aStyle);
+    }
+
+    /**
+     * Override to apply line style to created lines.
+     */
+    @Override
+    public void setDefaultLineStyle(TextLineStyle aLineStyle)
+    {
+        _defLineStyle = aLineStyle;
+        _emptyLine.setLineStyle(aLineStyle);
+        for (MappedTextLine line : _lineCache.values())
+            line.setLineStyle(aLineStyle);
+    }
+
+    /**
+     * Override since lines are managed by index.
+     */
+    @Override
+    protected void updateLines(int anIndex)  { }
+
+    /**
+     * Override to throw (mapped doc can't be cloned).
+     */
+    @Override
+    public TextDoc clone()
+    {
+        throw new UnsupportedOperationException("MappedTextDoc.clone: Not supported");
+    }
+
+    /**
+     * A List of lines that forwards to doc.
+     */
+    private class MappedLineList extends AbstractList<TextLine> {
+
+        public TextLine get(int anIndex)  { return getLine(anIndex); }
+
+        public int size()  { return getLineCount(); }
+    }
+
+    /**
+     * A CharSequence for a range of this doc that doesn't decode chars unless asked.
+     */
+    private class CharRange implements CharSequence {
+
+        // The range
+        private int  _start, _end;
+
+        /** Constructor. */
+        CharRange(int aStart, int anEnd)  { _start = aStart; _end = anEnd; }
+
+        public int length()  { return _end - _start; }
+
+        public char charAt(int anIndex)  { return MappedTextDoc.this.charAt(_start + anIndex); }
+
+        public CharSequence subSequence(int aStart, int anEnd)
+        {
+            return MappedTextDoc.this.subSequence(_start + aStart, _start + anEnd);
+        }
+
+        public String toString()  { return subSequence(0, length()).toString(); }
+    }
+}
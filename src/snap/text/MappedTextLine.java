@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+
+/**
+ * A read-only TextLine for MappedTextDoc that gets chars from doc on demand (and holds them while line is cached).
+ */
+public class MappedTextLine extends TextLine {
+
+    // The MappedTextDoc
+    private MappedTextDoc  _mappedDoc;
+
+    // The length of this line
+    private int  _length;
+
+    // The decoded chars of this line (decoded on demand)
+    private String  _string;
+
+    /**
+     * Constructor.
+     */
+    public MappedTextLine(MappedTextDoc aTextDoc, int anIndex, int aStartCharIndex, int aLength)
+    {
+        super(aTextDoc);
+        _mappedDoc = aTextDoc;
+        _index = anIndex;
+        _startCharIndex = aStartCharIndex;
+        _length = aLength;
+
+        // Configure run for length and default style
+        TextRun run = getRun(0);
+        run._length = aLength;
+        run._style = aTextDoc.getDefaultStyle();
+    }
+
+    /**
+     * Override to return length from index.
+     */
+    @Override
+    public int length()  { return _length; }
+
+    /**
+     * Override to get char from decoded line.
+     */
+    @Override
+    public char charAt(int anIndex)  { return getString().charAt(anIndex); }
+
+    /**
+     * Override to get chars from decoded line.
+     */
+    @Override
+    public CharSequence subSequence(int aStart, int anEnd)  { return getString().substring(aStart, anEnd); }
+
+    /**
+     * Override to search decoded line.
+     */
+    @Override
+    public int indexOf(String aStr, int aStart)  { return getString().indexOf(aStr, aStart); }
+
+    /**
+     * Override to return decoded line.
+     */
+    @Override
+    public String getString()
+    {
+        if (_string != null) return _string;
+        return _string = _mappedDoc.getLineChars(this);
+    }
+
+    /**
+     * Override to throw (read-only).
+     */
+    @Override
+    public void addChars(CharSequence theChars, TextStyle theStyle, int anIndex)
+    {
+        throw new UnsupportedOperationException("MappedTextLine.addChars: Line is read-only");
+    }
+
+    /**
+     * Override to throw (read-only).
+     */
+    @Override
+    public void removeChars(int aStart, int anEnd)
+    {
+        throw new UnsupportedOperationException("MappedTextLine.removeChars: Line is read-only");
+    }
+}
@@ -51,35 +51,60 @@ public class RichText extends TextDoc implements XMLArchiver.Archivable {
     @Override
     public void setStyle(TextStyle aStyle, int aStart, int anEnd)
     {
-        // Iterate over runs in range and set style
-        for (int textCharIndex = aStart; textCharIndex < anEnd; ) {
+        // Get shared style instance so run style checks are identity checks
+        aStyle = aStyle.intern();
+        beginPropChanges();
+        try {
+            // Iterate over runs in range and set style
+            RichTextLine lastLine = null;
+            for (int textCharIndex = aStart; textCharIndex < anEnd; ) {
+
+                // Get line and run
+                RichTextLine line = (RichTextLine) getLineForCharIndex(textCharIndex);
+                int lineStart = line.getStartCharIndex();
+                TextRun run = line.getRunForCharIndex(textCharIndex - lineStart);
+                if (textCharIndex - lineStart == run.getEndCharIndex())
+                    run = run.getNext();
+
+                // If moved to new line, merge runs in last line
+                if (line != lastLine) {
+                    if (lastLine != null)
+                        lastLine.mergeRuns();
+                    lastLine = line;
+                }
 
-            // Set style
-            RichTextLine line = (RichTextLine) getLineForCharIndex(textCharIndex);
-            int lineStart = line.getStartCharIndex();
-            TextRun run = getRunForCharIndex(textCharIndex);
-            if (textCharIndex - lineStart == run.getEndCharIndex())
-                run = run.getNext();
-
-            // If run is too large, trim to size
-            if (textCharIndex - lineStart > run.getStartCharIndex())
-                run = line.splitRunForCharIndex(run, textCharIndex - lineStart - run.getStartCharIndex());
-            if (anEnd - lineStart < run.getEndCharIndex())
-                line.splitRunForCharIndex(run, anEnd - lineStart - run.getStartCharIndex());
-
-            // Set style
-            TextStyle oldStyle = run.getStyle();
-            run.setStyle(aStyle);
-            textCharIndex = run.getEndCharIndex() + lineStart;
-
-            // Fire prop change
-            if (isPropChangeEnabled()) {
-                int runStart = run.getStartCharIndex() + lineStart, runEnd = run.getEndCharIndex() + lineStart;
-                PropChange pc = new TextDocUtils.StyleChange(this, oldStyle, aStyle, runStart, runEnd);
-                firePropChange(pc);
+                // If run already has style, just skip it
+                if (run.getStyle() == aStyle) {
+                    textCharIndex = run.getEndCharIndex() + lineStart;
+                    continue;
+                }
+
+                // If run is too large, trim to size
+                if (textCharIndex - lineStart > run.getStartCharIndex())
+                    run = line.splitRunForCharIndex(run, textCharIndex - lineStart - run.getStartCharIndex());
+                if (anEnd - lineStart < run.getEndCharIndex())
+                    line.splitRunForCharIndex(run, anEnd - lineStart - run.getStartCharIndex());
+
+                // Set style
+                TextStyle oldStyle = run.getStyle();
+                run.setStyle(aStyle);
+                int runStart = run.getStartCharIndex() + lineStart;
+                int runEnd = run.getEndCharIndex() + lineStart;
+                textCharIndex = runEnd;
+
+                // Fire prop change (sent with batch)
+                if (isPropChangeEnabled())
+                    firePropChange(new TextDocUtils.StyleChange(this, oldStyle, aStyle, runStart, runEnd));
             }
+
+
+            // Merge runs in last line
+            if (lastLine != null)
+                lastLine.mergeRuns();
         }
 
+        // Commit batch (sends changes) and reset width
+        finally { commitPropChanges(); }
         _width = -1;
     }
 
@@ -89,27 +114,35 @@ public class RichText extends TextDoc implements XMLArchiver.Archivable {
     @Override
     public void setStyleValue(String aKey, Object aValue, int aStart, int anEnd)
     {
-        // Iterate over lines in range and set attribute
-        while (aStart < anEnd) {
-
-            // Get line for start
-            TextLine line = getLineForCharIndex(aStart);
-            int lineStart = line.getStartCharIndex();
-
-            // Get run for start
-            int lineIndex = aStart - lineStart;
-            TextRun run = line.getRunForCharIndex(lineIndex);
-            if (lineIndex == run.getEndCharIndex())
-                run = run.getNext();
-            int runEnd = run.getEndCharIndex();
-
-            // Get run style and modify for given style key/value
-            TextStyle style = run.getStyle().copyFor(aKey, aValue);
-            setStyle(style, aStart, Math.min(runEnd + lineStart, anEnd));
+        // Batch so all run changes are sent as one batch
+        beginPropChanges();
+        try {
+            // Iterate over lines in range and set attribute
+            while (aStart < anEnd) {
+
+                // Get line for start
+                TextLine line = getLineForCharIndex(aStart);
+                int lineStart = line.getStartCharIndex();
+
+                // Get run for start
+                int lineIndex = aStart - lineStart;
+                TextRun run = line.getRunForCharIndex(lineIndex);
+                if (lineIndex == run.getEndCharIndex())
+                    run = run.getNext();
+                int runEnd = run.getEndCharIndex();
+
+                // Get run style and modify for given style key/value
+                TextStyle style = run.getStyle().copyFor(aKey, aValue);
+                setStyle(style, aStart, Math.min(runEnd + lineStart, anEnd));
+
+                // Reset start to run end
+                aStart = runEnd + lineStart;
+            }
 
-            // Reset start to run end
-            aStart = runEnd + lineStart;
         }
+
+        // Commit batch
+        finally { commitPropChanges(); }
     }
 
     /**
@@ -125,7 +158,7 @@ public class RichText extends TextDoc implements XMLArchiver.Archivable {
             TextLine line = getLine(i);
             TextLineStyle oldStyle = line.getLineStyle();
             line.setLineStyle(aStyle);
-            if (isPropChangeEnabled())
+            if (isPropChangeEnabled() && !aStyle.equals(oldStyle))
                 firePropChange(new TextDocUtils.LineStyleChange(this, oldStyle, aStyle, i));
         }
 
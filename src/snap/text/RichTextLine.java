@@ -2,6 +2,7 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.text;
+import java.util.Arrays;
 
 /**
  * A class to represent a line of text (for each newline) in RichText.
@@ -22,14 +23,19 @@ public class RichTextLine extends TextLine {
     @Override
     public void addChars(CharSequence theChars, TextStyle theStyle, int anIndex)
     {
-        // Get run at index for style and add length
+        // Get run at index for style (tokens are cleared if runs change) and add length
         TextRun run = getRunForCharIndexAndStyle(anIndex, theStyle);
-        run.addLength(theChars.length());
+        TextToken[] tokens = _tokens;
+        TextRun[] runs = _runs;
+        run.addLengthForChars(theChars, anIndex - run.getStartCharIndex());
 
         // Add chars
         _sb.insert(anIndex, theChars);
         updateRuns(run.getIndex());
         updateText();
+
+        // Update tokens for change
+        updateTokensForCharsChange(tokens, runs, anIndex, anIndex, anIndex + theChars.length());
     }
 
     /**
@@ -79,6 +85,8 @@ public class RichTextLine extends TextLine {
     {
         // If empty range, just return
         if (anEnd == aStart) return;
+        TextToken[] tokens = _tokens;
+        TextRun[] runs = _runs;
 
         // Iterate over effected runs and remove chars
         int end = anEnd;
@@ -99,7 +107,7 @@ public class RichTextLine extends TextLine {
 
             // Otherwise delete chars from run
             else {
-                run.addLength(start - end);
+                run.removeLengthForRange(start - runStart, end - runStart);
                 _sb.delete(start, end);
                 updateRuns(run.getIndex());
             }
@@ -108,6 +116,35 @@ public class RichTextLine extends TextLine {
             end = runStart;
         }
 
+        // Merge runs that became adjacent with same style
+        mergeRuns();
+        updateText();
+
+        // Update tokens for change
+        updateTokensForCharsChange(tokens, runs, aStart, anEnd, aStart);
+    }
+
+    /**
+     * Appends the given line to the end of this line.
+     */
+    @Override
+    protected void appendLine(TextLine aLine)
+    {
+        // Add chars
+        _sb.append(aLine._sb);
+
+        // Add runs
+        for (int i = 0, iMax = aLine.getRunCount(); i < iMax; i++) {
+            TextRun run = aLine.getRun(i);
+            TextRun run2 = run.clone();
+            run2._textLine = this;
+            addRun(run2, getRunCount());
+        }
+
+        // Merge runs at join if same style
+        mergeRuns();
+
+        // Update text (line length changed)
         updateText();
     }
 
@@ -126,6 +163,37 @@ public class RichTextLine extends TextLine {
         return remainder;
     }
 
+    /**
+     * Merges adjacent runs with identical style. Returns whether any runs were merged.
+     */
+    protected boolean mergeRuns()
+    {
+        // If less than two runs, just return
+        TextRun[] runs = _runs;
+        int runCount = runs.length;
+        if (runCount < 2) return false;
+
+        // Iterate over runs and fold each run into previous if style matches (styles are interned, so this is cheap)
+        TextRun[] newRuns = new TextRun[runCount];
+        newRuns[0] = runs[0];
+        int newCount = 1;
+        for (int i = 1; i < runCount; i++) {
+            TextRun run = runs[i];
+            TextRun lastRun = newRuns[newCount - 1];
+            if (run.getStyle().equals(lastRun.getStyle()))
+                lastRun.addLength(run.length());
+            else newRuns[newCount++] = run;
+        }
+
+        // If nothing merged, just return
+        if (newCount == runCount) return false;
+
+        // Set new runs and update
+        _runs = Arrays.copyOf(newRuns, newCount);
+        updateRuns(-1);
+        return true;
+    }
+
     /**
      * Standard clone implementation.
      */
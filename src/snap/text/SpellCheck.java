@@ -2,88 +2,93 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.text;
-//import com.wintertree.ssce.*;
 import java.util.*;
 
 /**
  * This class provides provides generic spell check API ideal for RM's needs. The abstraction should let us
- * plug in any spell check technology.
+ * plug in any spell check technology. Words are checked against the default SpellDictionary.
  */
 public class SpellCheck {
     
-//    // An object that can pull a word from a string
-//    static StringWordParser _parser = new StringWordParser(true);
-//
-//    // An object that can find the next misspelled word from a parser
-//    static SpellingSession  _speller;
-    
 /**
  * Returns the first misspelled word in a given string starting at the given index (or null or no misspelled words).
  */    
 public static Word getMisspelledWord(String aString, int anIndex)
 {
-//    // If given index is already beyond string bounds, just return null
-//    if(anIndex>=aString.length()) return null;
-//
-//    // Configure word parser for given string and index
-//    _parser.setText(aString);
-//    _parser.setCursor(anIndex);
-//
-//    // Get Speller, create new Word and declare variable for check result
-//    SpellingSession speller = getSpeller();
-//    Word word = new Word();
-//    int cr;
-//
-//    // Iterate over words
-//    while(((cr=speller.check(_parser, word._otherWord)) & SpellingSession.END_OF_TEXT_RSLT) == 0) {
-//
-//        // If misspelled, configure word and return
-//        if((cr & SpellingSession.MISSPELLED_WORD_RSLT) != 0) {
-//            word._start = _parser.getCursor();
-//            word._string = _parser.nextWord();
-//            word._end = word._start + word._string.length();
-//            return word;
-//        }
-//
-//        // Find next word
-//        _parser.nextWord();
-//    }
+    return getMisspelledWord(aString, anIndex, aString.length(), SpellDictionary.getDefault());
+}
+
+/**
+ * Returns the first misspelled word in given chars range using given dictionary (or null or no misspelled words).
+ */    
+public static Word getMisspelledWord(CharSequence theChars, int aStart, int anEnd, SpellDictionary aDict)
+{
+    // If dictionary is empty, just return null (nothing to check against)
+    if(aDict.getWordCount()==0) return null;
+
+    // Iterate over words
+    for(int start=getWordStart(theChars, aStart, anEnd); start<anEnd; start=getWordStart(theChars, start, anEnd)) {
+
+        // Get word end and advance past word
+        int end = getWordEnd(theChars, start, anEnd);
+        int wordStart = start; start = end;
+
+        // If word should be checked and is misspelled, return word
+        if(isCheckable(theChars, wordStart, end) && !aDict.isCorrect(theChars, wordStart, end)) {
+            Word word = new Word();
+            word._string = theChars.subSequence(wordStart, end).toString();
+            word._start = wordStart; word._end = end;
+            word._dict = aDict;
+            return word;
+        }
+    }
     
     // If no more misspelled words, return null
     return null;
 }
 
-///**
-// * Creates and returns a speller.
-// */
-//private static SpellingSession getSpeller()
-//{
-//    // If speller not created, create and set
-//    if(_speller==null) try {
-//
-//        // Set license key
-//        LicenseKey.setKey(0x80CD5259);
-//
-//        // Get lexicons
-//        InputStream is1 = SpellCheck.class.getResourceAsStream("/com/wintertree/ssceam.tlx");
-//        StreamTextLexicon lex1 = new StreamTextLexicon(is1);
-//        InputStream is2 = SpellCheck.class.getResourceAsStream("/com/wintertree/ssceam2.clx");
-//        CompressedLexicon lex2 = new CompressedLexicon(is2);
-//        InputStream is3 = SpellCheck.class.getResourceAsStream("/com/wintertree/tech.tlx");
-//        StreamTextLexicon lex3 = new StreamTextLexicon(is3);
-//
-//        // Get speller
-//        _speller = new SpellingSession();
-//
-//        // Set lexicons
-//        _speller.setLexicons(new Lexicon[] { lex1, lex2, lex3 });
-//
-//    // Catch exceptions
-//    } catch(Exception e) { e.printStackTrace(); }
-//
-//    // Return speller
-//    return _speller;
-//}
+/**
+ * Returns the start of next word at or after given index (or end if none).
+ */
+private static int getWordStart(CharSequence theChars, int anIndex, int anEnd)
+{
+    // If starting mid-word, skip to end of word
+    int index = anIndex;
+    if(index>0 && index<anEnd && Character.isLetterOrDigit(theChars.charAt(index-1)))
+        index = getWordEnd(theChars, index, anEnd);
+
+    // Skip non-letters
+    while(index<anEnd && !Character.isLetterOrDigit(theChars.charAt(index))) index++;
+    return index;
+}
+
+/**
+ * Returns the end of word at given index (letters/digits with internal apostrophes).
+ */
+private static int getWordEnd(CharSequence theChars, int anIndex, int anEnd)
+{
+    int index = anIndex;
+    while(index<anEnd) {
+        char c = theChars.charAt(index);
+        if(Character.isLetterOrDigit(c)) index++;
+        else if((c=='\'' || c=='\u2019') && index+1<anEnd && Character.isLetter(theChars.charAt(index+1))) index++;
+        else break;
+    }
+    return index;
+}
+
+/**
+ * Returns whether word should be checked (skips single chars, words with digits and all caps acronyms).
+ */
+private static boolean isCheckable(CharSequence theChars, int aStart, int anEnd)
+{
+    if(anEnd - aStart < 2) return false;
+    boolean allCaps = true;
+    for(int i=aStart; i<anEnd; i++) { char c = theChars.charAt(i);
+        if(Character.isDigit(c)) return false;
+        if(Character.isLowerCase(c)) allCaps = false; }
+    return !allCaps;
+}
 
 /**
  * An inner class to represent a misspelled word.
@@ -96,8 +101,8 @@ public static class Word {
     // The start/end index from original text
     int            _start, _end;
     
-    // I can't figure this out, but needed for WinterTree SpellingSession check()
-    StringBuffer   _otherWord = new StringBuffer();
+    // The dictionary used to check word
+    SpellDictionary _dict;
     
     /** Returns the string. */
     public String getString() { return _string; }
@@ -111,19 +116,12 @@ public static class Word {
     /** Returns a list of suggestions. */
     public List <String> getSuggestions()
     {
-        // Get speller, create suggestion set and fill with suggestions
-//        SpellingSession speller = getSpeller();
-//        SuggestionSet set = new SuggestionSet(8);
-//        speller.suggest(getString(), SpellingSession.MAX_SUGGEST_DEPTH, new EnglishPhoneticComparator(), set);
-        
-        // Create list and fill from suggestion set and return
-        List list = new ArrayList();
-//        for(Enumeration e=set.words(); e.hasMoreElements();) list.add(e.nextElement());
-        return list;
+        SpellDictionary dict = _dict!=null? _dict : SpellDictionary.getDefault();
+        return dict.getSuggestions(getString());
     }
     
     /** Returns string representation of word. */
     public String toString() { return "Misspelled word: " + (_string!=null? _string : ""); }
 }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact word dictionary for spell checking. Words are stored in a single char array and found with an
+ * open-addressing hash table of word indexes (no String per word). Suggestions come from a BK-tree (built on first
+ * request) that finds dictionary words within a small edit distance of a misspelled word.
+ */
+public class SpellDictionary {
+
+    // The chars of all words, concatenated
+    private char[]  _chars = new char[0];
+
+    // The start index of each word in chars (with extra entry for end of last word)
+    private int[]  _wordStarts = new int[1];
+
+    // The number of words
+    private int  _wordCount;
+
+    // The hash table of word index + 1 (zero is empty)
+    private int[]  _table = new int[16];
+
+    // The BK-tree first child, next sibling and distance to parent for each word (built on demand)
+    private int[]  _bkFirstChild, _bkNextSibling, _bkDist;
+
+    // The shared default dictionary
+    private static SpellDictionary  _default;
+
+    // The resource name of the default word list (one word per line)
+    private static final String DEFAULT_WORDS_RESOURCE = "SpellCheck_US.txt";
+
+    // The suffixes of regular inflections and max number of suffixes stripped from a word (makers -> maker -> make)
+    private static final String[] INFLECTION_SUFFIXES = { "'s", "s", "es", "ed", "ing", "er", "est", "ly", "ness" };
+    private static final int INFLECTION_DEPTH = 2;
+
+    // Constant for max suggestion distance and count
+    public static final int MAX_SUGGESTION_DISTANCE = 2;
+    public static final int MAX_SUGGESTION_COUNT = 8;
+
+    /**
+     * Constructor.
+     */
+    public SpellDictionary()  { }
+
+    /**
+     * Constructor for given words.
+     */
+    public SpellDictionary(Collection<String> theWords)
+    {
+        for (String word : theWords)
+            addWord(word);
+    }
+
+    /**
+     * Returns the number of words.
+     */
+    public int getWordCount()  { return _wordCount; }
+
+    /**
+     * Returns the word at given index.
+     */
+    public String getWord(int anIndex)
+    {
+        int start = _wordStarts[anIndex];
+        return new String(_chars, start, _wordStarts[anIndex + 1] - start);
+    }
+
+    /**
+     * Adds a word.
+     */
+    public synchronized void addWord(String aWord)
+    {
+        // If empty or already added, just return
+        int wordLen = aWord.length();
+        if (wordLen == 0 || getWordIndex(aWord, 0, wordLen) >= 0) return;
+
+        // Append chars (grow arrays as needed)
+        int start = _wordStarts[_wordCount];
+        if (start + wordLen > _chars.length)
+            _chars = Arrays.copyOf(_chars, Math.max(_chars.length * 2, start + wordLen));
+        aWord.getChars(0, wordLen, _chars, start);
+        if (_wordCount + 2 > _wordStarts.length)
+            _wordStarts = Arrays.copyOf(_wordStarts, Math.max(_wordStarts.length * 2, 16));
+        _wordStarts[++_wordCount] = start + wordLen;
+
+        // Add to hash table (grow if over half full)
+        if (_wordCount * 2 > _table.length)
+            rehash(_table.length * 2);
+        else addToTable(_wordCount - 1);
+
+        // Add to BK-tree if built
+        if (_bkFirstChild != null)
+            addToBKTree(_wordCount - 1);
+    }
+
+    /**
+     * Returns whether dictionary contains given chars exactly.
+     */
+    public synchronized boolean contains(CharSequence theChars, int aStart, int anEnd)
+    {
+        return getWordIndex(theChars, aStart, anEnd) >= 0;
+    }
+
+    /**
+     * Returns whether given word is spelled correctly, allowing capitalized and all caps forms of dictionary words
+     * and regular inflections (so word list only needs base forms).
+     */
+    public synchronized boolean isCorrect(CharSequence theChars, int aStart, int anEnd)
+    {
+        // If exact match, return true
+        if (getWordIndex(theChars, aStart, anEnd) >= 0)
+            return true;
+
+        // If not capitalized or all caps, check inflections
+        String word = theChars.subSequence(aStart, anEnd).toString();
+        if (!Character.isUpperCase(word.charAt(0)))
+            return isInflection(word, INFLECTION_DEPTH);
+
+        // Check lower case
+        String lower = word.toLowerCase();
+        if (getWordIndex(lower, 0, lower.length()) >= 0 || isInflection(lower, INFLECTION_DEPTH))
+            return true;
+
+        // If all caps, check capitalized
+        String cap = Character.toUpperCase(lower.charAt(0)) + lower.substring(1);
+        return getWordIndex(cap, 0, cap.length()) >= 0;
+    }
+
+    /**
+     * Returns whether given word is a regular inflection of a dictionary word (plural, past tense, -ing, -er, -est,
+     * -ly, -ness, possessive): Strips suffix and checks stem, stem + 'e', undoubled stem and 'i' to 'y' stem.
+     */
+    private boolean isInflection(String aWord, int aDepth)
+    {
+        // Iterate over suffixes
+        int wordLen = aWord.length();
+        for (String suffix : INFLECTION_SUFFIXES) {
+
+            // If word doesn't end with suffix or stem too short, just continue
+            int stemLen = wordLen - suffix.length();
+            if (stemLen < 2 || !aWord.endsWith(suffix))
+                continue;
+
+            // Check stem (walks, walked, walking)
+            String stem = aWord.substring(0, stemLen);
+            if (isWordOrInflection(stem, aDepth))
+                return true;
+
+            // If suffix starts with vowel, check stem + 'e' (baked, making, larger)
+            char stemLast = stem.charAt(stemLen - 1);
+            boolean vowelSuffix = "aeiou".indexOf(suffix.charAt(0)) >= 0;
+            if (vowelSuffix && isWordOrInflection(stem + 'e', aDepth))
+                return true;
+
+            // If doubled consonant, check undoubled stem (running, stopped, bigger)
+            if (vowelSuffix && stemLen > 2 && stemLast == stem.charAt(stemLen - 2) && "aeiou".indexOf(stemLast) < 0 &&
+                isWordOrInflection(stem.substring(0, stemLen - 1), aDepth))
+                return true;
+
+            // If stem ends with 'i', check with 'y' (carries, tried, happier, happily)
+            if (stemLast == 'i' && isWordOrInflection(stem.substring(0, stemLen - 1) + 'y', aDepth))
+                return true;
+        }
+
+        // Return not found
+        return false;
+    }
+
+    /**
+     * Returns whether given word is a dictionary word or (if depth allows) an inflection of one.
+     */
+    private boolean isWordOrInflection(String aWord, int aDepth)
+    {
+        if (getWordIndex(aWord, 0, aWord.length()) >= 0)
+            return true;
+        return aDepth > 1 && isInflection(aWord, aDepth - 1);
+    }
+
+    /**
+     * Returns suggestions for given word: dictionary words within MAX_SUGGESTION_DISTANCE edits, closest first.
+     */
+    public List<String> getSuggestions(String aWord)
+    {
+        // Match case of dictionary words
+        String word = aWord.toLowerCase();
+
+        // Search BK-tree for words within max distance
+        List<int[]> matches = new ArrayList<>();
+        synchronized (this) {
+
+            // Build tree if needed
+            if (_bkFirstChild == null)
+                buildBKTree();
+            if (_wordCount == 0)
+                return new ArrayList<>();
+
+            // Iterate over nodes: only children with edge distance within max of query distance can match
+            int[] stack = new int[64];
+            int stackSize = 0;
+            stack[stackSize++] = 0;
+            while (stackSize > 0) {
+                int node = stack[--stackSize];
+                int dist = getDistance(word, node);
+                if (dist <= MAX_SUGGESTION_DISTANCE)
+                    matches.add(new int[] { dist, node });
+                for (int child = _bkFirstChild[node]; child >= 0; child = _bkNextSibling[child]) {
+                    if (Math.abs(_bkDist[child] - dist) <= MAX_SUGGESTION_DISTANCE) {
+                        if (stackSize == stack.length)
+                            stack = Arrays.copyOf(stack, stackSize * 2);
+                        stack[stackSize++] = child;
+                    }
+                }
+            }
+        }
+
+        // Sort by distance (then word index, for stable results) and get words
+        matches.sort((m1, m2) -> m1[0] != m2[0] ? m1[0] - m2[0] : m1[1] - m2[1]);
+        boolean isCap = aWord.length() > 0 && Character.isUpperCase(aWord.charAt(0));
+        List<String> suggestions = new ArrayList<>();
+        for (int i = 0, iMax = Math.min(matches.size(), MAX_SUGGESTION_COUNT); i < iMax; i++) {
+            String sugg = getWord(matches.get(i)[1]);
+            if (isCap && sugg.length() > 0)
+                sugg = Character.toUpperCase(sugg.charAt(0)) + sugg.substring(1);
+            suggestions.add(sugg);
+        }
+
+        // Return
+        return suggestions;
+    }
+
+    /**
+     * Returns the index of given word or -1 if not found.
+     */
+    private int getWordIndex(CharSequence theChars, int aStart, int anEnd)
+    {
+        int mask = _table.length - 1;
+        for (int slot = hash(theChars, aStart, anEnd) & mask; ; slot = (slot + 1) & mask) {
+            int entry = _table[slot];
+            if (entry == 0)
+                return -1;
+            if (wordEquals(entry - 1, theChars, aStart, anEnd))
+                return entry - 1;
+        }
+    }
+
+    /**
+     * Returns whether word at given index equals given chars.
+     */
+    private boolean wordEquals(int anIndex, CharSequence theChars, int aStart, int anEnd)
+    {
+        int start = _wordStarts[anIndex];
+        int len = _wordStarts[anIndex + 1] - start;
+        if (len != anEnd - aStart)
+            return false;
+        for (int i = 0; i < len; i++)
+            if (_chars[start + i] != theChars.charAt(aStart + i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Adds word at given index to hash table.
+     */
+    private void addToTable(int anIndex)
+    {
+        int start = _wordStarts[anIndex], end = _wordStarts[anIndex + 1];
+        int mask = _table.length - 1;
+        int slot = hash(_chars, start, end) & mask;
+        while (_table[slot] != 0)
+            slot = (slot + 1) & mask;
+        _table[slot] = anIndex + 1;
+    }
+
+    /**
+     * Rebuilds hash table with given size.
+     */
+    private void rehash(int aSize)
+    {
+        _table = new int[aSize];
+        for (int i = 0; i < _wordCount; i++)
+            addToTable(i);
+    }
+
+    /**
+     * Builds the BK-tree for all words (word 0 is root).
+     */
+    private void buildBKTree()
+    {
+        int size = Math.max(_wordStarts.length, 1);
+        _bkFirstChild = new int[size];
+        _bkNextSibling = new int[size];
+        _bkDist = new int[size];
+        Arrays.fill(_bkFirstChild, -1);
+        Arrays.fill(_bkNextSibling, -1);
+        for (int i = 1; i < _wordCount; i++)
+            addToBKTree(i);
+    }
+
+    /**
+     * Adds the word at given index to BK-tree.
+     */
+    private void addToBKTree(int anIndex)
+    {
+        // Make sure arrays have room
+        if (anIndex >= _bkFirstChild.length) {
+            int oldLen = _bkFirstChild.length, newLen = Math.max(oldLen * 2, anIndex + 1);
+            _bkFirstChild = Arrays.copyOf(_bkFirstChild, newLen);
+            _bkNextSibling = Arrays.copyOf(_bkNextSibling, newLen);
+            _bkDist = Arrays.copyOf(_bkDist, newLen);
+            Arrays.fill(_bkFirstChild, oldLen, newLen, -1);
+            Arrays.fill(_bkNextSibling, oldLen, newLen, -1);
+        }
+        if (anIndex == 0) return;
+
+        // Walk down from root to node with no child at word's distance and add as child
+        String word = getWord(anIndex);
+        int node = 0;
+        while (true) {
+            int dist = getDistance(word, node);
+            int child = _bkFirstChild[node];
+            while (child >= 0 && _bkDist[child] != dist)
+                child = _bkNextSibling[child];
+            if (child < 0) {
+                _bkDist[anIndex] = dist;
+                _bkNextSibling[anIndex] = _bkFirstChild[node];
+                _bkFirstChild[node] = anIndex;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Returns the Levenshtein distance between given string and word at given index.
+     */
+    private int getDistance(String aStr, int anIndex)
+    {
+        int start = _wordStarts[anIndex];
+        int len1 = aStr.length(), len2 = _wordStarts[anIndex + 1] - start;
+        int[] prev = new int[len2 + 1], curr = new int[len2 + 1];
+        for (int j = 0; j <= len2; j++)
+            prev[j] = j;
+        for (int i = 1; i <= len1; i++) {
+            curr[0] = i;
+            char c1 = aStr.charAt(i - 1);
+            for (int j = 1; j <= len2; j++) {
+                int cost = c1 == _chars[start + j - 1] ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] swap = prev; prev = curr; curr = swap;
+        }
+        return prev[len2];
+    }
+
+    /**
+     * Returns hash for given chars.
+     */
+    private static int hash(CharSequence theChars, int aStart, int anEnd)
+    {
+        int hash = 0;
+        for (int i = aStart; i < anEnd; i++)
+            hash = hash * 31 + theChars.charAt(i);
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns hash for given chars.
+     */
+    private static int hash(char[] theChars, int aStart, int anEnd)
+    {
+        int hash = 0;
+        for (int i = aStart; i < anEnd; i++)
+            hash = hash * 31 + theChars[i];
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the shared default dictionary, loaded from bundled word list (empty if word list not available).
+     */
+    public static synchronized SpellDictionary getDefault()
+    {
+        if (_default != null) return _default;
+        return _default = loadDefault();
+    }
+
+    /**
+     * Loads the default dictionary.
+     */
+    private static SpellDictionary loadDefault()
+    {
+        SpellDictionary dict = new SpellDictionary();
+        InputStream inputStream = SpellDictionary.class.getResourceAsStream(DEFAULT_WORDS_RESOURCE);
+        if (inputStream == null)
+            return dict;
+        try { dict.addWords(inputStream); }
+        catch (IOException e) { System.err.println("SpellDictionary: Error loading words: " + e); }
+        return dict;
+    }
+
+    /**
+     * Adds words from given stream of text (one word per line).
+     */
+    public void addWords(InputStream anInputStream) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(anInputStream, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                if (line.length() > 0 && line.charAt(0) != '#')
+                    addWord(line);
+            }
+        }
+    }
+}
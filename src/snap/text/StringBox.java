@@ -320,7 +320,8 @@ public class StringBox extends RoundRect {
         // Get exact bounds around string glyphs for font
         Font font = getFont();
         String str = getString();
-        Rect bnds = str != null && str.length() > 0 ? font.getGlyphBounds(str) : Rect.ZeroRect;
+        double charSpacing = getStyle().getCharSpacing();
+        Rect bnds = StringMeasureCache.getGlyphBounds(str, font, charSpacing);
 
         // Get StringWidth from GlyphBounds
         _strWidth = Math.ceil(bnds.width);
@@ -346,7 +347,8 @@ public class StringBox extends RoundRect {
         // Get StringWidth for string + font (aka Advance)
         String str = getString();
         Font font = getFont();
-        _strWidth = Math.ceil(font.getStringAdvance(str));
+        double charSpacing = getStyle().getCharSpacing();
+        _strWidth = Math.ceil(StringMeasureCache.getStringAdvance(str, font, charSpacing));
 
         // Get Font Ascent, Descent, StringHeight (aka LineHeight)
         _ascent = Math.ceil(font.getAscent());
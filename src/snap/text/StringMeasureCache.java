@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import snap.geom.Rect;
+import snap.gfx.Font;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A shared LRU cache of string measurements (advance and glyph bounds) keyed by string, font and char spacing.
+ * Used by StringBox/StyledString (Label, StringView, ListCell, TableView cells) so repeated sizing of the same
+ * strings doesn't go back to font measurement.
+ *
+ * The cache is split into stripes (each an LRU with its own lock) so threads measuring different strings don't
+ * contend, and font measurement is done outside of locks.
+ */
+public class StringMeasureCache {
+
+    // Constant for max number of cached strings
+    public static final int MAX_ENTRIES = 4096;
+
+    // Constant for number of cache stripes (power of two)
+    private static final int STRIPE_COUNT = 16;
+
+    // The cache stripes
+    private static Stripe[]  _stripes = new Stripe[STRIPE_COUNT];
+
+    // Create stripes
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++)
+            _stripes[i] = new Stripe();
+    }
+
+    /**
+     * Returns the advance for given string, font and char spacing.
+     */
+    public static double getStringAdvance(String aStr, Font aFont, double aCharSpacing)
+    {
+        // Handle empty string
+        if (aStr == null || aStr.length() == 0) return 0;
+
+        // Get measure (if advance loaded, just return)
+        Measure measure = getMeasure(aStr, aFont, aCharSpacing);
+        double advance = measure.advance;
+        if (!Double.isNaN(advance))
+            return advance;
+
+        // Load advance (racing threads just calculate same value)
+        double adv = aFont.getStringAdvance(aStr);
+        return measure.advance = adv + aCharSpacing * (aStr.length() - 1);
+    }
+
+    /**
+     * Returns the glyph bounds for given string, font and char spacing (returned rect can be modified).
+     */
+    public static Rect getGlyphBounds(String aStr, Font aFont, double aCharSpacing)
+    {
+        // Handle empty string
+        if (aStr == null || aStr.length() == 0) return new Rect();
+
+        // Get measure (if glyph bounds loaded, just return copy)
+        Measure measure = getMeasure(aStr, aFont, aCharSpacing);
+        Rect glyphBounds = measure.glyphBounds;
+        if (glyphBounds != null)
+            return glyphBounds.clone();
+
+        // Load glyph bounds (racing threads just calculate same value)
+        Rect bnds = aFont.getGlyphBounds(aStr);
+        bnds.width += aCharSpacing * (aStr.length() - 1);
+        measure.glyphBounds = bnds;
+        return bnds.clone();
+    }
+
+    /**
+     * Returns the number of lookups found in cache.
+     */
+    public static long getHitCount()
+    {
+        long hitCount = 0;
+        for (Stripe stripe : _stripes)
+            hitCount += stripe._hitCount;
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups not found in cache.
+     */
+    public static long getMissCount()
+    {
+        long missCount = 0;
+        for (Stripe stripe : _stripes)
+            missCount += stripe._missCount;
+        return missCount;
+    }
+
+    /**
+     * Clears the cache and counters.
+     */
+    public static void clear()
+    {
+        for (Stripe stripe : _stripes)
+            stripe.clear();
+    }
+
+    /**
+     * Returns the cache measure for given values (creates it if missing).
+     */
+    private static Measure getMeasure(String aStr, Font aFont, double aCharSpacing)
+    {
+        int hash = Key.hashCode(aStr, aFont, aCharSpacing);
+        Stripe stripe = _stripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+        return stripe.getMeasure(aStr, aFont, aCharSpacing);
+    }
+
+    /**
+     * An LRU cache for a subset of keys, with its own lock.
+     */
+    private static class Stripe {
+
+        // The cached measurements
+        private Map<Key,Measure>  _cache = new LinkedHashMap<Key,Measure>(64, .75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key,Measure> anEntry)
+            {
+                return size() > MAX_ENTRIES / STRIPE_COUNT;
+            }
+        };
+
+        // A key used for lookups (avoids allocation for cache hits)
+        private Key  _lookupKey = new Key();
+
+        // The hit and miss counts
+        private volatile long  _hitCount, _missCount;
+
+        /** Returns the cache measure for given values (creates it if missing). */
+        synchronized Measure getMeasure(String aStr, Font aFont, double aCharSpacing)
+        {
+            // Get cached measure
+            _lookupKey.set(aStr, aFont, aCharSpacing);
+            Measure measure = _cache.get(_lookupKey);
+            if (measure != null) {
+                _hitCount++;
+                return measure;
+            }
+
+            // Create and add measure
+            _missCount++;
+            Key key = new Key();
+            key.set(aStr, aFont, aCharSpacing);
+            _cache.put(key, measure = new Measure());
+            return measure;
+        }
+
+        /** Clears the stripe cache and counters. */
+        synchronized void clear()
+        {
+            _cache.clear();
+            _hitCount = _missCount = 0;
+        }
+    }
+
+    /**
+     * A key for cache lookup.
+     */
+    private static class Key {
+
+        // The key values
+        String  str;
+        Font  font;
+        double  charSpacing;
+
+        /** Sets key values. */
+        void set(String aStr, Font aFont, double aCharSpacing)
+        {
+            str = aStr; font = aFont; charSpacing = aCharSpacing;
+        }
+
+        /** Standard equals implementation. */
+        public boolean equals(Object anObj)
+        {
+            if (anObj == this) return true;
+            Key other = anObj instanceof Key ? (Key) anObj : null; if (other == null) return false;
+            return other.charSpacing == charSpacing && other.str.equals(str) && other.font.equals(font);
+        }
+
+        /** Standard hashCode implementation. */
+        public int hashCode()  { return hashCode(str, font, charSpacing); }
+
+        /** Returns the hash code for given key values. */
+        static int hashCode(String aStr, Font aFont, double aCharSpacing)
+        {
+            int hash = aStr.hashCode();
+            hash = hash * 31 + aFont.hashCode();
+            return hash * 31 + Double.hashCode(aCharSpacing);
+        }
+    }
+
+    /**
+     * The cached measurements for a key (fields are written once, so racing readers at worst measure again).
+     */
+    private static class Measure {
+
+        // The advance
+        volatile double  advance = Double.NaN;
+
+        // The glyph bounds
+        volatile Rect  glyphBounds;
+    }
+}
@@ -204,7 +204,8 @@ public class StyledString implements Cloneable {
         // Get exact bounds around string glyphs for font
         Font font = getFont();
         String text = getString();
-        Rect bnds = text != null && text.length() > 0 ? font.getGlyphBounds(text) : Rect.ZeroRect;
+        double charSpacing = getStyle().getCharSpacing();
+        Rect bnds = StringMeasureCache.getGlyphBounds(text, font, charSpacing);
 
         // Get StringWidth from GlyphBounds
         _textWidth = Math.ceil(bnds.width);
@@ -223,7 +224,8 @@ public class StyledString implements Cloneable {
         // Get StringWidth for string + font (aka Advance)
         String text = getString();
         Font font = getFont();
-        _textWidth = text != null ? Math.ceil(font.getStringAdvance(text)) : 0;
+        double charSpacing = getStyle().getCharSpacing();
+        _textWidth = Math.ceil(StringMeasureCache.getStringAdvance(text, font, charSpacing));
 
         // Get Font Ascent, Descent, StringHeight (aka LineHeight)
         _ascent = Math.ceil(font.getAscent());
@@ -171,6 +171,15 @@ public class SubText extends TextDoc {
         return tokens;
     }
 
+    /**
+     * Override to use TextDoc tokenizer.
+     */
+    @Override
+    protected TextToken[] updateTokensForTextLine(TextLine aTextLine, TextToken[] theTokens, int aStart, int anOldEnd, int aNewEnd)
+    {
+        return _textDoc.updateTokensForTextLine(aTextLine, theTokens, aStart, anOldEnd, aNewEnd);
+    }
+
     /**
      * Called when textDoc does prop change.
      */
@@ -188,10 +197,11 @@ public class SubText extends TextDoc {
             CharSequence addChars = charsChange.getNewValue();
             CharSequence removeChars = charsChange.getOldValue();
 
-            // Forward to textDocDidAddChars or textDocDidRemoveChars
-            if (addChars != null)
+            // Forward to textDocDidRemoveChars and/or textDocDidAddChars
+            if (removeChars != null)
+                textDocDidRemoveChars(charIndex, removeChars);
+            if (addChars != null && addChars.length() > 0)
                 textDocDidAddChars(charIndex, addChars);
-            else textDocDidRemoveChars(charIndex, removeChars);
         }
     }
 
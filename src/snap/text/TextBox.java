@@ -50,14 +50,21 @@ public class TextBox {
     // The lines in this text
     private List<TextBoxLine>  _lines = new ArrayList<>();
 
+    // The offsets of line Index/StartCharIndex/YLocal values (so removing leading lines doesn't update every line)
+    protected int  _lineIndexBase, _charIndexBase;
+    protected double  _lineYBase;
+
     // Whether text box needs updating
     private boolean  _needsUpdate, _updating;
 
     // The update start/end char indexes in TextDoc
     private int _updateStartCharIndex, _updateFromEndCharIndex, _lastLen;
 
-    // A Listener to catch TextDoc PropChanges
-    private PropChangeListener  _textDocLsnr = pc -> textDocDidPropChange(pc);
+    // A Listener to catch TextDoc PropChanges (and batches of changes in one call)
+    private PropChangeListener  _textDocLsnr = new PropChangeListener.Batch() {
+        public void propertyChange(PropChange aPC)  { textDocDidPropChange(aPC); }
+        public void propertyChanges(List<PropChange> theChanges)  { textDocDidPropChanges(theChanges); }
+    };
 
     /**
      * Constructor.
@@ -457,6 +464,10 @@ public class TextBox {
         if (_needsUpdate && !_updating)
             update();
 
+        // If virtual layout, get line for TextDoc line
+        if (_lines instanceof TextBoxVirtualLines)
+            return ((TextBoxVirtualLines) _lines).getLineForCharIndex(anIndex);
+
         // Iterate over lines and return first that contains index
         for (TextBoxLine line : _lines)
             if (anIndex < line.getEndCharIndex())
@@ -487,6 +498,12 @@ public class TextBox {
     {
         TextBoxLine line = getLineCount() > 0 ? getLine(0) : null;
         if (line == null) return null;
+
+        // If virtual layout, get line for TextDoc longest line
+        if (_lines instanceof TextBoxVirtualLines)
+            return ((TextBoxVirtualLines) _lines).getLineLongest();
+
+        // Iterate over lines to find longest
         double lineW = line.getWidth();
         for (TextBoxLine ln : _lines)
             if (ln.getWidth() > lineW) {
@@ -504,13 +521,13 @@ public class TextBox {
         // Handle CharsChange: Update lines for old/new range
         if (aPC instanceof TextDocUtils.CharsChange) {
             TextDocUtils.CharsChange charsChange = (TextDocUtils.CharsChange) aPC;
-            CharSequence newVal = charsChange.getNewValue();
-            CharSequence oldVal = charsChange.getOldValue();
             int index = charsChange.getIndex();
-            if (oldVal != null)
-                textRemovedChars(index, index + oldVal.length());
-            if (newVal != null)
-                textAddedChars(index, index + newVal.length());
+            int oldEnd = charsChange.getOldEnd();
+            int newEnd = charsChange.getNewEnd();
+            if (oldEnd > index)
+                textRemovedChars(index, oldEnd);
+            if (newEnd > index)
+                textAddedChars(index, newEnd);
         }
 
         // Handle StyleChange
@@ -528,6 +545,42 @@ public class TextBox {
         }
     }
 
+    /**
+     * Updates lines for a batch of TextDoc changes (sent after all changes were applied).
+     */
+    protected void textDocDidPropChanges(List<PropChange> theChanges)
+    {
+        // If just one change, handle normally
+        if (theChanges.size() == 1) {
+            textDocDidPropChange(theChanges.get(0));
+            return;
+        }
+
+        // Get changed range in TextDoc (just return if none)
+        int[] changedRange = TextDocUtils.getChangedCharRange(getTextDoc(), theChanges);
+        if (changedRange == null) return;
+        int start = changedRange[0];
+        int end = changedRange[1];
+
+        // Get whether chars were removed or added
+        boolean charsRemoved = false, charsAdded = false;
+        for (PropChange change : theChanges) {
+            if (change instanceof TextDocUtils.CharsChange) {
+                TextDocUtils.CharsChange charsChange = (TextDocUtils.CharsChange) change;
+                charsRemoved |= charsChange.getOldEnd() > charsChange.getIndex();
+                charsAdded |= charsChange.getNewEnd() > charsChange.getIndex();
+            }
+        }
+
+        // Update lines for range (same as for one change)
+        if (charsRemoved)
+            textRemovedChars(start, end);
+        if (charsAdded)
+            textAddedChars(start, end);
+        else if (!charsRemoved)
+            textChangedChars(start, end);
+    }
+
     /**
      * Called when chars added to TextDoc to track range in box and text to be synchronized.
      */
@@ -625,36 +678,105 @@ public class TextBox {
         // Reset AlignY offset
         _alignedY = 0;
 
+        // If virtual layout, just replace lines (they are created on demand), otherwise update lines in range
+        if (isVirtualLayout()) {
+            _lines = new TextBoxVirtualLines(this);
+            _lineIndexBase = _charIndexBase = 0;
+            _lineYBase = 0;
+        }
+        else updateLinesForCharRange(aStartCharIndex, textBoxEndCharIndex, textDocEndCharIndex);
+
+        // Calculated aligned Y
+        if (_alignY != VPos.TOP) {
+            double textBoxW = getWidth();
+            double prefH = getPrefHeight(textBoxW);
+            double textBoxH = getHeight();
+            if (textBoxH > prefH)
+                _alignedY = _alignY.doubleValue() * (textBoxH - prefH);
+        }
+    }
+
+    /**
+     * Updates lines for given char start and an old/new char end (non-virtual layout).
+     */
+    protected void updateLinesForCharRange(int aStartCharIndex, int textBoxEndCharIndex, int textDocEndCharIndex)
+    {
+        // If switching from virtual layout, replace all lines
+        if (_lines instanceof TextBoxVirtualLines) {
+            _lines = new ArrayList<>();
+            aStartCharIndex = textBoxEndCharIndex = 0;
+            textDocEndCharIndex = length();
+        }
+
+        // If leading chars removed, try to just remove leading lines
+        if (aStartCharIndex == 0 && textDocEndCharIndex == 0 && removeLeadingLines(textBoxEndCharIndex))
+            return;
+
         // Get StartLine Index and startCharIndex
         int lineCount = getLineCount();
         TextBoxLine startLine = lineCount > 0 ? getLineForCharIndex(aStartCharIndex) : null;
         int startLineIndex = startLine != null ? startLine.getIndex() : 0;
         int startCharIndex = startLine != null ? startLine.getStartCharIndex() : aStartCharIndex;
 
-        // Remove lines for TextBox change range
+        // Remove lines for TextBox change range (if updating all lines, reset offsets)
         removeLinesForCharRange(aStartCharIndex, textBoxEndCharIndex);
+        if (startLineIndex == 0) {
+            _lineIndexBase = _charIndexBase = 0;
+            _lineYBase = 0;
+        }
 
         // Add lines for new range
         addLinesForCharRange(startLineIndex, startCharIndex, textDocEndCharIndex);
 
-        // Iterate over TextBoxLines from startLineIndex to end: Update lines Index, StartCharIndex and Y_Local
+        // Iterate over TextBoxLines from startLineIndex to end: Update lines Index, StartCharIndex and Y_Local (with offsets)
         int charIndex = startCharIndex;
         for (int i = startLineIndex, iMax = _lines.size(); i < iMax; i++) {
             TextBoxLine textBoxLine = getLine(i);
-            textBoxLine._index = i;
-            textBoxLine._startCharIndex = charIndex;
+            textBoxLine._index = i + _lineIndexBase;
+            textBoxLine._startCharIndex = charIndex + _charIndexBase;
             charIndex += textBoxLine.length();
             textBoxLine._yloc = -1;
         }
+    }
 
-        // Calculated aligned Y
-        if (_alignY != VPos.TOP) {
-            double textBoxW = getWidth();
-            double prefH = getPrefHeight(textBoxW);
-            double textBoxH = getHeight();
-            if (textBoxH > prefH)
-                _alignedY = _alignY.doubleValue() * (textBoxH - prefH);
-        }
+    /**
+     * Removes leading lines for chars removed from start of TextDoc up to given char index, by shifting offsets so
+     * remaining lines don't need update. Returns false if removed chars don't end at a TextDoc line start that is
+     * still in TextDoc or if line layout depends on line position.
+     */
+    protected boolean removeLeadingLines(int anEndCharIndex)
+    {
+        // If lines depend on position or TextBox doesn't start at TextDoc start, just return
+        if (isLinked() || _boundsPath != null || getStartCharIndex() != 0 || getLineCount() == 0)
+            return false;
+        if (anEndCharIndex <= 0 || anEndCharIndex >= getLineLast().getEndCharIndex())
+            return false;
+
+        // Get first remaining line - if not at start of TextDoc first line, just return
+        TextBoxLine endLine = getLineForCharIndex(anEndCharIndex);
+        if (endLine.getStartCharIndex() != anEndCharIndex || endLine._textLineStart != 0 ||
+                endLine.getTextLine() != getTextDoc().getLine(0))
+            return false;
+
+        // Remove lines before first remaining line and shift offsets
+        int endLineIndex = endLine.getIndex();
+        double endLineY = endLine.getYLocal();
+        _lines.subList(0, endLineIndex).clear();
+        _lineIndexBase += endLineIndex;
+        _charIndexBase += anEndCharIndex;
+        _lineYBase += endLineY;
+        return true;
+    }
+
+    /**
+     * Returns whether lines are created on demand for the visible range instead of laid out for whole text.
+     * This is done for MappedTextDoc (which can be huge) when lines don't wrap, so each TextBoxLine is a TextLine
+     * and all lines have the same height.
+     */
+    protected boolean isVirtualLayout()
+    {
+        return _text instanceof MappedTextDoc && !isWrapLines() && !isLinked() && _boundsPath == null &&
+                getStartCharIndex() == 0;
     }
 
     /**
@@ -740,11 +862,14 @@ public class TextBox {
         if (fontScale != 1)
             textTokenStyle = textTokenStyle.copyFor(textTokenStyle.getFont().scaleFont(fontScale));
 
-        // Get LineY, LineH
+        // Get LineY, LineH (for virtual layout, get LineY from index since lines have same advance)
         double lineY = getY();
-        TextBoxLine prevTextBoxLine = aLineIndex > 0 ? getLine(aLineIndex - 1) : null;
-        if (prevTextBoxLine != null)
+        if (_lines instanceof TextBoxVirtualLines)
+            lineY = ((TextBoxVirtualLines) _lines).getLineY(aLineIndex);
+        else if (aLineIndex > 0) {
+            TextBoxLine prevTextBoxLine = getLine(aLineIndex - 1);
             lineY = prevTextBoxLine.getY() + prevTextBoxLine.getLineAdvance();
+        }
         double lineH = textTokenStyle.getLineHeight(); // Should ask remaining tokens instead
 
         // Get TextBox.X for LineY
@@ -758,7 +883,7 @@ public class TextBox {
 
         // Create TextBoxLine
         TextBoxLine boxLine = new TextBoxLine(this, textTokenStyle, aTextLine, startCharIndex);
-        boxLine._yloc = lineY - getY();
+        boxLine._yloc = lineY - getY() + _lineYBase;
 
         // While next token is found, add to line
         while (textToken != null) {
@@ -777,11 +902,14 @@ public class TextBox {
                         continue;
                     }
 
-                    // If no tokens added to this line, split off last char and try again so there is at least 1 char
+                    // If no tokens added to this line, split off last char (or surrogate pair) and try again so there
+                    // is at least 1 char
                     if (boxLine.getTokenCount() == 0) {
-                        int tokenLength = textToken.getLength();
-                        if (tokenLength > 1) {
-                            textToken = textToken.copyToCharIndex(tokenLength - 1);
+                        int splitIndex = textToken.getLength() - 1;
+                        if (CharSequenceUtils.isInSurrogatePair(aTextLine, textToken.getStartCharIndex() + splitIndex))
+                            splitIndex--;
+                        if (splitIndex > 0) {
+                            textToken = textToken.copyToCharIndex(splitIndex);
                             continue;
                         }
                     }
@@ -926,7 +1054,8 @@ public class TextBox {
     {
         // Iterate over lines to add underline runs to list
         List<TextBoxRun> uruns = new ArrayList<>();
-        for (TextBoxLine line : getLines()) {
+        for (int i = getLineIndexForRect(aRect), iMax = getLineCount(); i < iMax; i++) {
+            TextBoxLine line = getLine(i);
 
             // If line above rect, continue, if below, break
             if (aRect != null) {
@@ -953,6 +1082,10 @@ public class TextBox {
         // If y less than zero, return null
         if (aY < 0) return null;
 
+        // If virtual layout, get line from y (lines have same advance)
+        if (getLines() instanceof TextBoxVirtualLines)
+            return ((TextBoxVirtualLines) _lines).getLineForY(aY);
+
         // Iterate over lines and return one that spans given y
         for (int i = 0, iMax = getLineCount(); i < iMax; i++) {
             TextBoxLine line = getLine(i);
@@ -964,6 +1097,16 @@ public class TextBox {
         return getLineLast();
     }
 
+    /**
+     * Returns the index of the first line to check for given rect (for virtual layout, first line that spans rect).
+     */
+    protected int getLineIndexForRect(Rect aRect)
+    {
+        if (aRect == null || !(getLines() instanceof TextBoxVirtualLines)) return 0;
+        TextBoxLine line = getLineForY(aRect.y);
+        return line != null ? line.getIndex() : 0;
+    }
+
     /**
      * Returns the character index for the given x/y point.
      */
@@ -1044,7 +1187,7 @@ public class TextBox {
         aPntr.clip(clip);
 
         // Iterate over lines
-        for (int i = 0, iMax = getLineCount(); i < iMax; i++) {
+        for (int i = getLineIndexForRect(clip), iMax = getLineCount(); i < iMax; i++) {
             TextBoxLine line = getLine(i);
             double lineY = line.getBaseline();
             if (line.getMaxY() < clip.getMinY()) continue;
@@ -1138,6 +1281,35 @@ public class TextBox {
         // Do normal layout
         if (!isTextOutOfBounds()) return;
 
+        // If simple layout, predict fit scale analytically and verify with real layout
+        if (_boundsPath == null && !isLinked() && !isHyphenate() && length() > 0) {
+
+            // Get predicted scale and set
+            TextBoxFitter textFitter = new TextBoxFitter(this);
+            double fontScale = textFitter.findFitScale();
+            setFontScale(fontScale);
+
+            // If prediction was off, step down a little until real layout fits
+            for (int i = 0; i < 8 && fontScale > 0 && isTextOutOfBounds(); i++) {
+                fontScale = Math.floor(fontScale * 97) / 100;
+                setFontScale(fontScale);
+            }
+
+            // If fits, just return
+            if (fontScale > 0 && !isTextOutOfBounds())
+                return;
+            setFontScale(1);
+        }
+
+        // Fall back to bisecting with full layouts
+        scaleTextToFitByLayout();
+    }
+
+    /**
+     * Scales font sizes of all text in TextBox to fit in bounds by bisecting FontScale with full layouts.
+     */
+    protected void scaleTextToFitByLayout()
+    {
         // Declare starting fontScale factor and dampening variables
         double fontScale;
         double textW = getWidth();
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import snap.util.MathUtils;
+
+/**
+ * A class to find the font scale that fits TextBox text in TextBox bounds without doing a full layout per guess.
+ * Token positions, widths and font metrics all scale linearly with font scale, so this class measures them once
+ * (unscaled) and predicts line breaks and line heights analytically for any scale.
+ *
+ * Only handles simple TextBoxes (no bounds path, linking or hyphenation) - TextBox verifies the result with a
+ * real layout.
+ */
+class TextBoxFitter {
+
+    // The TextBox
+    private TextBox  _textBox;
+
+    // The measured paragraphs
+    private Para[]  _paras;
+
+    /**
+     * Constructor.
+     */
+    public TextBoxFitter(TextBox aTextBox)
+    {
+        _textBox = aTextBox;
+
+        // Measure paragraphs (TextLines)
+        TextDoc textDoc = aTextBox.getTextDoc();
+        int lineCount = textDoc.getLineCount();
+        boolean addBlankLine = textDoc.getLine(lineCount - 1).isLastCharNewline();
+        _paras = new Para[addBlankLine ? lineCount + 1 : lineCount];
+        for (int i = 0; i < lineCount; i++)
+            _paras[i] = new Para(textDoc.getLine(i), false);
+        if (addBlankLine)
+            _paras[lineCount] = new Para(textDoc.getLine(lineCount - 1), true);
+    }
+
+    /**
+     * Returns the largest font scale (up to 1) predicted to fit text in TextBox bounds.
+     */
+    public double findFitScale()
+    {
+        // Bisect predicted fit (cheap, so use tight tolerance)
+        double fsLo = 0, fsHi = 1;
+        while (fsHi - fsLo > .001) {
+            double fontScale = (fsLo + fsHi) / 2;
+            if (isOutOfBounds(fontScale))
+                fsHi = fontScale;
+            else fsLo = fontScale;
+        }
+
+        // Return low (last known fit)
+        return fsLo;
+    }
+
+    /**
+     * Returns whether text is predicted to overflow TextBox bounds at given font scale.
+     */
+    public boolean isOutOfBounds(double aScale)
+    {
+        double boxW = _textBox.getWidth();
+        double boxH = _textBox.getHeight();
+        boolean wrap = _textBox.isWrapLines();
+
+        // Iterate over paragraphs and lay out lines analytically
+        double lineY = 0;
+        double lineMaxY = 0;
+        for (Para para : _paras) {
+
+            // Handle empty paragraph: Add one line for default metrics
+            int tokenCount = para.tokenX.length;
+            if (tokenCount == 0) {
+                lineMaxY = lineY + para.emptyHeight * aScale;
+                lineY += para.getLineAdvance(para.emptyAscent, para.emptyDescent, para.emptyLeading, aScale);
+                continue;
+            }
+
+            // Iterate over tokens and add lines
+            int tokenIndex = 0;
+            boolean firstLine = true;
+            while (tokenIndex < tokenCount) {
+
+                // Get line start
+                double indent = firstLine ? para.firstIndent : para.leftIndent;
+                double startX = para.tokenX[tokenIndex];
+                firstLine = false;
+
+                // Add tokens while they fit
+                double ascent = 0, descent = 0, leading = 0, lineW = 0;
+                int lineTokenCount = 0;
+                while (tokenIndex < tokenCount) {
+                    double tokenMaxX = indent + (para.tokenX[tokenIndex] - startX + para.tokenW[tokenIndex]) * aScale;
+                    if (wrap && tokenMaxX > boxW && lineTokenCount > 0)
+                        break;
+
+                    // If first token is too wide for line, it will be split by chars: add lines for extra chars
+                    if (wrap && tokenMaxX > boxW) {
+                        double availW = boxW - indent;
+                        if (availW <= 0) return true;
+                        int extraLines = (int) Math.ceil(para.tokenW[tokenIndex] * aScale / availW) - 1;
+                        double lineAdv = para.getLineAdvance(para.tokenAscent[tokenIndex], para.tokenDescent[tokenIndex],
+                            para.tokenLeading[tokenIndex], aScale);
+                        lineY += extraLines * lineAdv;
+                    }
+
+                    // Add token
+                    ascent = Math.max(ascent, para.tokenAscent[tokenIndex]);
+                    descent = Math.max(descent, para.tokenDescent[tokenIndex]);
+                    leading = Math.max(leading, para.tokenLeading[tokenIndex]);
+                    lineW = tokenMaxX;
+                    lineTokenCount++;
+                    tokenIndex++;
+                }
+
+                // If no wrap and line too wide, return true
+                if (!wrap && lineW > boxW)
+                    return true;
+
+                // Add line
+                lineMaxY = lineY + (ascent + descent) * aScale;
+                lineY += para.getLineAdvance(ascent, descent, leading, aScale);
+            }
+
+            // If already beyond bounds, return true
+            if (lineMaxY >= boxH)
+                return true;
+        }
+
+        // Return whether last line bottom is beyond bounds
+        return lineMaxY >= boxH;
+    }
+
+    /**
+     * The unscaled measurements for a TextLine.
+     */
+    private static class Para {
+
+        // The token x, width and font metrics (unscaled)
+        double[]  tokenX, tokenW, tokenAscent, tokenDescent, tokenLeading;
+
+        // The metrics for line with no tokens
+        double  emptyAscent, emptyDescent, emptyLeading, emptyHeight;
+
+        // The line style values
+        double  firstIndent, leftIndent, minHeight, maxHeight, spacingFactor, spacing;
+
+        /** Constructor. */
+        Para(TextLine aTextLine, boolean isBlankLine)
+        {
+            // Get line style values
+            TextLineStyle lineStyle = aTextLine.getLineStyle();
+            firstIndent = lineStyle.getFirstIndent();
+            leftIndent = lineStyle.getLeftIndent();
+            minHeight = lineStyle.getMinHeight();
+            maxHeight = lineStyle.getMaxHeight();
+            spacingFactor = lineStyle.getSpacingFactor();
+            spacing = lineStyle.getSpacing();
+
+            // Get empty line metrics from last run style
+            TextStyle lastStyle = aTextLine.getRunLast().getStyle();
+            emptyAscent = lastStyle.getAscent();
+            emptyDescent = lastStyle.getDescent();
+            emptyLeading = lastStyle.getLeading();
+            emptyHeight = emptyAscent + emptyDescent;
+
+            // Get tokens measurements
+            TextToken[] tokens = isBlankLine ? new TextToken[0] : aTextLine.getTokens();
+            int tokenCount = tokens.length;
+            tokenX = new double[tokenCount];
+            tokenW = new double[tokenCount];
+            tokenAscent = new double[tokenCount];
+            tokenDescent = new double[tokenCount];
+            tokenLeading = new double[tokenCount];
+            for (int i = 0; i < tokenCount; i++) {
+                TextToken token = tokens[i];
+                TextStyle style = token.getTextStyle();
+                tokenX[i] = token.getX();
+                tokenW[i] = token.getWidth();
+                tokenAscent[i] = style.getAscent();
+                tokenDescent[i] = style.getDescent();
+                tokenLeading[i] = style.getLeading();
+            }
+        }
+
+        /** Returns the line advance for given unscaled metrics and scale (as in TextBoxLine.resetSizes). */
+        double getLineAdvance(double anAscent, double aDescent, double aLeading, double aScale)
+        {
+            double lineAdvance = (anAscent + aDescent + aLeading) * aScale;
+            lineAdvance = MathUtils.clamp(lineAdvance, minHeight, maxHeight);
+            lineAdvance *= spacingFactor;
+            lineAdvance += spacing;
+            return lineAdvance;
+        }
+    }
+}
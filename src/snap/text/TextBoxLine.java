@@ -3,6 +3,7 @@
  */
 package snap.text;
 import snap.geom.HPos;
+import snap.util.CharSequenceUtils;
 import snap.util.CharSequenceX;
 import snap.util.MathUtils;
 import java.util.ArrayList;
@@ -73,17 +74,17 @@ public class TextBoxLine implements CharSequenceX {
     /**
      * Returns the index of this line in text.
      */
-    public int getIndex()  { return _index; }
+    public int getIndex()  { return _index - _textBox._lineIndexBase; }
 
     /**
      * Returns the start char index of this line in text.
      */
-    public int getStartCharIndex()  { return _startCharIndex; }
+    public int getStartCharIndex()  { return _startCharIndex - _textBox._charIndexBase; }
 
     /**
      * Returns the end char index of this line in text.
      */
-    public int getEndCharIndex()  { return _startCharIndex + _length; }
+    public int getEndCharIndex()  { return getStartCharIndex() + _length; }
 
     /**
      * Returns the length of this text line.
@@ -153,14 +154,15 @@ public class TextBoxLine implements CharSequenceX {
      */
     public double getYLocal()
     {
-        // If already set, just return
-        if (_yloc >= 0) return _yloc;
+        // If already set, just return (stored with TextBox offset)
+        if (_yloc >= 0) return _yloc - _textBox._lineYBase;
 
         // Get YLocal from last line. Need to fix this to not stack overflow for large text showing tail first.
         int index = getIndex();
         TextBoxLine lastLine = index > 0 ? _textBox.getLine(index - 1) : null;
-        _yloc = lastLine != null ? (lastLine.getYLocal() + lastLine.getLineAdvance()) : 0;
-        return _yloc;
+        double yloc = lastLine != null ? (lastLine.getYLocal() + lastLine.getLineAdvance()) : 0;
+        _yloc = yloc + _textBox._lineYBase;
+        return yloc;
     }
 
     /**
@@ -269,7 +271,7 @@ public class TextBoxLine implements CharSequenceX {
             if (c == '\t')
                 _widthAll = _textLine.getXForTabAtIndexAndX(_textLineStart + i, getX() + _widthAll) - getX();
             else if (c != '\n' && c != '\r')
-                _widthAll += lastTokenStyle.getCharAdvance(c);
+                _widthAll += lastTokenStyle.getCharAdvance(this, i);
         }
 
         // If justify, shift tokens in line (unless line has newline or is last line in RichText)
@@ -421,8 +423,8 @@ public class TextBoxLine implements CharSequenceX {
             char loopChar = charAt(charIndex);
             double charW = loopChar == '\t' ?
                 _textLine.getXForTabAtIndexAndX(_textLineStart + charIndex, charX) - charX :
-                textStyle.getCharAdvance(loopChar);
-            if (charX + charW / 2 > anX)
+                textStyle.getCharAdvance(this, charIndex);
+            if (charX + charW / 2 > anX && !CharSequenceUtils.isInSurrogatePair(this, charIndex))
                 return charIndex;
             charIndex++;
             charX += charW;
@@ -459,7 +461,7 @@ public class TextBoxLine implements CharSequenceX {
             char loopChar = charAt(i);
             if (loopChar == '\t')
                 charX = _textLine.getXForTabAtIndexAndX(_textLineStart + i, charX);
-            else charX += textStyle.getCharAdvance(loopChar) + textStyle.getCharSpacing();
+            else charX += textStyle.getCharAdvance(this, i) + textStyle.getCharSpacing();
         }
 
         // Return
@@ -471,7 +473,7 @@ public class TextBoxLine implements CharSequenceX {
      */
     public TextBoxLine getNext()
     {
-        int nextIndex = _index + 1;
+        int nextIndex = getIndex() + 1;
         return nextIndex < _textBox.getLineCount() ? _textBox.getLine(nextIndex) : null;
     }
 
@@ -480,7 +482,7 @@ public class TextBoxLine implements CharSequenceX {
      */
     public TextBoxLine getPrevious()
     {
-        int prevIndex = _index - 1;
+        int prevIndex = getIndex() - 1;
         return prevIndex >= 0 ? _textBox.getLine(prevIndex) : null;
     }
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import java.util.*;
+
+/**
+ * A List of TextBoxLines for TextBox virtual layout (huge MappedTextDoc with lines that don't wrap). Lines are created
+ * on demand (one for each TextLine, plus a blank line if text ends with newline) and recently used lines are cached.
+ */
+class TextBoxVirtualLines extends AbstractList<TextBoxLine> {
+
+    // The TextBox
+    private TextBox  _textBox;
+
+    // The cache of recently used lines
+    private Map<Integer,TextBoxLine>  _lineCache = new LinkedHashMap<Integer,TextBoxLine>(256, .75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer,TextBoxLine> anEntry)
+        {
+            return size() > LINES_MAX;
+        }
+    };
+
+    // The number of lines
+    private int  _size;
+
+    // The line advance for all lines
+    private double  _lineAdvance = -1;
+
+    // The maximum number of lines to cache
+    private static final int LINES_MAX = 1024;
+
+    /**
+     * Constructor.
+     */
+    TextBoxVirtualLines(TextBox aTextBox)
+    {
+        _textBox = aTextBox;
+        TextDoc textDoc = aTextBox.getTextDoc();
+        int textLineCount = textDoc.getLineCount();
+        TextLine lastLine = textDoc.getLine(textLineCount - 1);
+        _size = lastLine.isLastCharNewline() ? textLineCount + 1 : textLineCount;
+    }
+
+    /**
+     * Returns the line Y for given line index (lines have same advance).
+     */
+    double getLineY(int anIndex)
+    {
+        double lineY = _textBox.getY();
+        return anIndex > 0 ? lineY + anIndex * getLineAdvance() : lineY;
+    }
+
+    /**
+     * Returns the line for given char index.
+     */
+    TextBoxLine getLineForCharIndex(int anIndex)
+    {
+        TextDoc textDoc = _textBox.getTextDoc();
+        if (anIndex < 0 || anIndex > textDoc.length())
+            throw new IndexOutOfBoundsException("Index " + anIndex + " beyond " + textDoc.length());
+        if (anIndex == textDoc.length())
+            return get(_size - 1);
+        return get(textDoc.getLineForCharIndex(anIndex).getIndex());
+    }
+
+    /**
+     * Returns the line that spans given y.
+     */
+    TextBoxLine getLineForY(double aY)
+    {
+        int lineIndex = Math.min((int) Math.max((aY - _textBox.getAlignedY()) / getLineAdvance(), 0), _size - 1);
+        TextBoxLine line = get(lineIndex);
+        return aY >= line.getMaxY() && lineIndex + 1 < _size ? get(lineIndex + 1) : line;
+    }
+
+    /**
+     * Returns the longest line (TextDoc longest line, since lines don't wrap).
+     */
+    TextBoxLine getLineLongest()
+    {
+        return get(_textBox.getTextDoc().getLineLongest().getIndex());
+    }
+
+    /**
+     * Returns the line advance for all lines.
+     */
+    private double getLineAdvance()
+    {
+        if (_lineAdvance >= 0) return _lineAdvance;
+        return _lineAdvance = get(0).getLineAdvance();
+    }
+
+    /**
+     * Returns the line at given index.
+     */
+    public TextBoxLine get(int anIndex)
+    {
+        // Get cached line
+        TextBoxLine line = _lineCache.get(anIndex);
+        if (line != null)
+            return line;
+
+        // Check index
+        if (anIndex < 0 || anIndex >= _size)
+            throw new IndexOutOfBoundsException("Index " + anIndex + " beyond " + _size);
+
+        // Get TextLine and start char index (blank line after trailing newline starts at end of last TextLine)
+        TextDoc textDoc = _textBox.getTextDoc();
+        int textLineCount = textDoc.getLineCount();
+        TextLine textLine = textDoc.getLine(Math.min(anIndex, textLineCount - 1));
+        int startCharIndex = anIndex < textLineCount ? 0 : textLine.length();
+
+        // Create line, configure, add to cache and return
+        line = _textBox.createTextBoxLine(textLine, startCharIndex, anIndex);
+        line._index = anIndex;
+        line._startCharIndex = textLine.getStartCharIndex() + startCharIndex;
+        _lineCache.put(anIndex, line);
+        return line;
+    }
+
+    /**
+     * Returns the number of lines.
+     */
+    public int size()  { return _size; }
+}
@@ -4,6 +4,7 @@
 package snap.text;
 import snap.geom.HPos;
 import snap.gfx.Font;
+import snap.props.PropChange;
 import snap.props.PropObject;
 import snap.util.CharSequenceUtils;
 import snap.util.CharSequenceX;
@@ -42,6 +43,9 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
     // The width of the rich text
     protected double  _width = -1;
 
+    // The offsets of line Index/StartCharIndex values (so removing leading lines doesn't update every line)
+    protected int  _lineIndexBase, _charIndexBase;
+
     // Constants for properties
     public static final String Chars_Prop = "Chars";
     public static final String Style_Prop = "Style";
@@ -69,6 +73,11 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
      */
     public boolean isRichText()  { return false; }
 
+    /**
+     * Returns whether this text is read-only (can't be edited).
+     */
+    public boolean isReadOnly()  { return false; }
+
     /**
      * Returns the source for the current text content.
      */
@@ -258,6 +267,17 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
         // If PropChangeEnabled, get chars to be deleted
         CharSequence removedChars = isPropChangeEnabled() ? subSequence(aStart, anEnd) : null;
 
+        // If range is whole lines (and not whole text), remove lines in one pass so lines are only updated once
+        TextLine startLine = getLineForCharIndex(aStart);
+        TextLine endLine = anEnd < length() ? getLineForCharIndex(anEnd) : null;
+        if (aStart == startLine.getStartCharIndex() && endLine != null && anEnd == endLine.getStartCharIndex()) {
+            removeLines(startLine.getIndex(), endLine.getIndex());
+            if (removedChars != null)
+                firePropChange(new TextDocUtils.CharsChange(this, removedChars, null, aStart));
+            _width = -1;
+            return;
+        }
+
         // Delete lines/chars for range
         int end = anEnd;
         while (end > aStart) {
@@ -447,6 +467,29 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
         return line;
     }
 
+    /**
+     * Removes the lines in given range of line indexes (updates lines only once, or not at all for leading lines).
+     */
+    protected void removeLines(int aStartIndex, int anEndIndex)
+    {
+        // If removing leading lines (but not all), just shift index offsets so remaining lines don't need update
+        int removeLength = aStartIndex == 0 && anEndIndex < _lines.size() ? getLine(anEndIndex).getStartCharIndex() : -1;
+
+        // Remove lines
+        List<TextLine> lines = _lines.subList(aStartIndex, anEndIndex);
+        for (TextLine line : lines)
+            line._textDoc = null;
+        lines.clear();
+
+        // Update offsets or lines
+        if (removeLength >= 0) {
+            _lineIndexBase += anEndIndex;
+            _charIndexBase += removeLength;
+            _length -= removeLength;
+        }
+        else updateLines(aStartIndex - 1);
+    }
+
     /**
      * Creates a new TextLine for use in this text.
      */
@@ -520,10 +563,19 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
      */
     public TextLine getLineForCharIndex(int anIndex)
     {
-        // Iterate over lines and return line containing char index
-        for (TextLine line : _lines)
-            if (anIndex < line.getEndCharIndex())
-                return line;
+        // Binary search for first line that ends after char index
+        int lo = 0, hi = _lines.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_lines.get(mid).getEndCharIndex() <= anIndex)
+                lo = mid + 1;
+            else hi = mid;
+        }
+
+        // If found, return line
+        TextLine line = _lines.get(lo);
+        if (anIndex < line.getEndCharIndex())
+            return line;
 
         // If index of text end, return last
         if (anIndex == length())
@@ -691,20 +743,32 @@ public class TextDoc extends PropObject implements CharSequenceX, Cloneable {
         return TextToken.createTokensForTextLine(aTextLine);
     }
 
+    /**
+     * Returns tokens for TextLine updated from given tokens for chars change (chars from start to old end were
+     * replaced by chars from start to new end).
+     * Subclasses that override createTokensForTextLine() can override to return null, to have tokens recreated.
+     */
+    protected TextToken[] updateTokensForTextLine(TextLine aTextLine, TextToken[] theTokens, int aStart, int anOldEnd, int aNewEnd)
+    {
+        return TextToken.updateTokensForTextLine(aTextLine, theTokens, aStart, anOldEnd, aNewEnd);
+    }
+
     /**
      * Updates Lines (Index, Start) from index line to text end.
      */
     protected void updateLines(int anIndex)
     {
-        // Get BaseLine and length at end of BaseLine
+        // Get BaseLine and length at end of BaseLine (if updating all lines, reset offsets)
         TextLine baseLine = anIndex >= 0 ? getLine(anIndex) : null;
         _length = baseLine != null ? baseLine.getEndCharIndex() : 0;
+        if (baseLine == null)
+            _lineIndexBase = _charIndexBase = 0;
 
-        // Iterate over lines beyond BaseLine and update Index, Start, Length and Y
+        // Iterate over lines beyond BaseLine and update Index, Start, Length and Y (stored with offsets)
         for (int i = anIndex + 1, iMax = _lines.size(); i < iMax; i++) {
             TextLine line = getLine(i);
-            line._index = i;
-            line._startCharIndex = _length;
+            line._index = i + _lineIndexBase;
+            line._startCharIndex = _length + _charIndexBase;
             _length += line.length();
         }
     }
@@ -1,11 +1,68 @@
 package snap.text;
 import snap.props.PropChange;
+import java.util.List;
 
 /**
  * Utility methods to support TextDoc.
  */
 public class TextDocUtils {
 
+    /**
+     * Returns the char range changed by given TextDoc changes (in order, as sent by a batch after all were applied), in
+     * doc coordinates after changes: Start is min change start (chars before aren't moved by any change) and end is at
+     * min distance from doc end of change ends at the time of each change (chars after aren't moved either).
+     */
+    public static int[] getChangedCharRange(TextDoc aTextDoc, List<PropChange> theChanges)
+    {
+        // Iterate over changes from last to first, tracking the length change of following changes
+        int docLength = aTextDoc.length();
+        int start = docLength, fromEnd = docLength;
+        int lengthDelta = 0;
+        boolean charsChanged = false;
+        for (int i = theChanges.size() - 1; i >= 0; i--) {
+            PropChange change = theChanges.get(i);
+
+            // Get change range (in coordinates at time of change)
+            int changeStart, changeEnd;
+            if (change instanceof CharsChange) {
+                CharsChange charsChange = (CharsChange) change;
+                changeStart = charsChange.getIndex();
+                changeEnd = charsChange.getNewEnd();
+            }
+            else if (change instanceof StyleChange) {
+                StyleChange styleChange = (StyleChange) change;
+                changeStart = styleChange.getStart();
+                changeEnd = styleChange.getEnd();
+            }
+
+            // Handle LineStyleChange: If following chars changes could have moved line, just return whole doc
+            else if (change instanceof LineStyleChange) {
+                if (charsChanged)
+                    return new int[] { 0, docLength };
+                TextLine textLine = aTextDoc.getLine(change.getIndex());
+                changeStart = textLine.getStartCharIndex();
+                changeEnd = textLine.getEndCharIndex();
+            }
+            else continue;
+
+            // Extend range
+            start = Math.min(start, changeStart);
+            fromEnd = Math.min(fromEnd, docLength - lengthDelta - changeEnd);
+
+            // If chars change, add length change
+            if (change instanceof CharsChange) {
+                CharsChange charsChange = (CharsChange) change;
+                lengthDelta += charsChange.getNewEnd() - charsChange.getOldEnd();
+                charsChanged = true;
+            }
+        }
+
+        // Return range (or null if no text changes)
+        if (start > docLength - fromEnd)
+            return null;
+        return new int[] { start, docLength - fromEnd };
+    }
+
     /**
      * A property change event for addChars/removeChars.
      */
@@ -31,6 +88,20 @@ public class TextDocUtils {
             else textDoc.addChars((CharSequence) newValue, null, index);
         }
 
+        /** Returns the end of changed range before change. */
+        public int getOldEnd()
+        {
+            CharSequence oldVal = getOldValue();
+            return getIndex() + (oldVal != null ? oldVal.length() : 0);
+        }
+
+        /** Returns the end of changed range after change. */
+        public int getNewEnd()
+        {
+            CharSequence newVal = getNewValue();
+            return getIndex() + (newVal != null ? newVal.length() : 0);
+        }
+
         public PropChange merge(PropChange anEvent)
         {
             TextDoc textDoc = (TextDoc) getSource();
@@ -70,6 +141,9 @@ public class TextDocUtils {
             TextDoc textDoc = (TextDoc) getSource();
             textDoc.setStyle((TextStyle) newVal, _start, _end);
         }
+
+        /** Override to never merge (each change has its own range). */
+        public PropChange merge(PropChange anEvent)  { return null; }
     }
 
     /**
@@ -3,6 +3,7 @@
  */
 package snap.text;
 import snap.geom.Path;
+import snap.geom.Rect;
 import snap.geom.Shape;
 import snap.gfx.Color;
 import snap.gfx.Painter;
@@ -18,6 +19,9 @@ import snap.view.*;
  */
 public class TextEditor extends TextArea {
 
+    // The spell checker
+    private TextSpellChecker  _spellChecker;
+
     /**
      * Sets whether TextEditor is showing and focused.
      */
@@ -118,7 +122,7 @@ public class TextEditor extends TextArea {
 
         // If spell checking, get path for misspelled words and draw
         if (isSpellChecking() && length()>0) {
-            Shape spath = getSpellingPath();
+            Shape spath = getSpellingPath(aPntr.getClipBounds());
             if(spath!=null) {
                 aPntr.setColor(Color.RED); aPntr.setStroke(Stroke.StrokeDash1);
                 aPntr.draw(spath);
@@ -131,60 +135,82 @@ public class TextEditor extends TextArea {
     }
 
     /**
-     * Returns a path for misspelled word underlining.
+     * Returns a path for misspelled word underlining in visible rect.
      */
     public Shape getSpellingPath()
     {
-        // Get text box and text string and path object
+        return getSpellingPath(getVisRect());
+    }
+
+    /**
+     * Returns a path for misspelled word underlining for lines in given rect (all lines if null).
+     */
+    public Shape getSpellingPath(Rect aRect)
+    {
+        // Get text box, spell checker and path object
         TextBox textBox = getTextBox();
-        String string = textBox.getString();
+        TextSpellChecker spellChecker = getSpellChecker();
         Path spellingPath = new Path();
+        int selStart = getSelStart();
 
-        // Iterate over text
-        for (SpellCheck.Word word = SpellCheck.getMisspelledWord(string, 0); word != null;
-             word = SpellCheck.getMisspelledWord(string, word.getEnd())) {
+        // Get first line in rect
+        TextBoxLine startLine = aRect != null ? textBox.getLineForY(aRect.y) : null;
+        int startLineIndex = startLine != null ? startLine.getIndex() : 0;
 
-            // Get word bounds
-            int wordStart = word.getStart();
-            if (wordStart >= textBox.getEndCharIndex())
+        // Iterate over text box lines (stop at first line below rect)
+        for (int i = startLineIndex, iMax = textBox.getLineCount(); i < iMax; i++) {
+            TextBoxLine textBoxLine = textBox.getLine(i);
+            if (aRect != null && textBoxLine.getY() >= aRect.getMaxY())
                 break;
-            int wordEnd = word.getEnd();
-            if (wordEnd > textBox.getEndCharIndex())
-                wordEnd = textBox.getEndCharIndex();
-
-            // If text editor selection starts in word bounds, just continue - they are still working on this word
-            int selStart = getSelStart();
-            if (wordStart <= selStart && selStart <= wordEnd)
-                continue;
-
-            // Get the selection's start line index and end line index
-            int startLineIndex = textBox.getLineForCharIndex(wordStart).getIndex();
-            int endLineIndex = textBox.getLineForCharIndex(wordEnd).getIndex();
-
-            // Iterate over selected lines
-            for (int i = startLineIndex; i <= endLineIndex; i++) {
-                TextBoxLine textBoxLine = textBox.getLine(i);
-
-                // Get the bounds of line
-                double lineX = textBoxLine.getX();
-                double lineMaxX = textBoxLine.getMaxX();
-                double lineBaseY = textBoxLine.getBaseline() + 3;
-
-                // If starting line, adjust x1 for starting character
-                if (i == startLineIndex)
-                    lineX = textBoxLine.getXForCharIndex(wordStart - textBoxLine.getStartCharIndex() - textBox.getStartCharIndex());
-
-                // If ending line, adjust x2 for ending character
-                if (i == endLineIndex)
-                    lineMaxX = textBoxLine.getXForCharIndex(wordEnd - textBoxLine.getStartCharIndex() - textBox.getStartCharIndex());
-
-                // Append rect for line to path
-                spellingPath.moveTo(lineX, lineBaseY);
-                spellingPath.lineTo(lineMaxX, lineBaseY);
+
+            // Get misspelled ranges for text line (ranges are checked in background and are line relative)
+            int[] ranges = spellChecker.getMisspelledRanges(textBoxLine.getTextLine());
+            int lineStart = textBoxLine.getTextLineStart();
+            int lineEnd = lineStart + textBoxLine.length();
+            double lineBaseY = textBoxLine.getBaseline() + 3;
+
+            // Iterate over ranges
+            for (int j = 0; j < ranges.length; j += 2) {
+
+                // Get word bounds in text box line (skip if outside line)
+                int wordStart = Math.max(ranges[j], lineStart);
+                int wordEnd = Math.min(ranges[j + 1], lineEnd);
+                if (wordStart >= wordEnd)
+                    continue;
+
+                // If text editor selection starts in word bounds, just continue - they are still working on this word
+                int boxWordStart = textBoxLine.getStartCharIndex() + ranges[j] - lineStart;
+                int boxWordEnd = textBoxLine.getStartCharIndex() + ranges[j + 1] - lineStart;
+                if (boxWordStart <= selStart && selStart <= boxWordEnd)
+                    continue;
+
+                // Append underline for word to path
+                double wordX = textBoxLine.getXForCharIndex(wordStart - lineStart);
+                double wordMaxX = textBoxLine.getXForCharIndex(wordEnd - lineStart);
+                spellingPath.moveTo(wordX, lineBaseY);
+                spellingPath.lineTo(wordMaxX, lineBaseY);
             }
         }
 
         // Return path
         return spellingPath;
     }
+
+    /**
+     * Returns the spell checker for text (creates it if needed).
+     */
+    public TextSpellChecker getSpellChecker()
+    {
+        // If spell checker for current text, just return
+        TextDoc textDoc = getTextBox().getTextDoc();
+        if (_spellChecker != null && _spellChecker.getTextDoc() == textDoc)
+            return _spellChecker;
+
+        // Dispose old, create new and return
+        if (_spellChecker != null)
+            _spellChecker.dispose();
+        _spellChecker = new TextSpellChecker(textDoc);
+        _spellChecker.setListener(() -> repaint());
+        return _spellChecker;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,660 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import snap.props.PropChange;
+import snap.props.PropChangeListener;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class finds (and replaces) a literal string or regex in a TextDoc, reading chars from TextLines as it goes
+ * instead of getting the doc string. Literal search uses Boyer-Moore-Horspool (or a plain scan when ignoring case,
+ * since case mappings can match chars a shift table wouldn't know). Regex search runs the Matcher directly on the doc
+ * chars, so matches can span lines.
+ *
+ * It can also keep an index of all matches (for highlighting), which is updated incrementally as the doc changes.
+ */
+public class TextFinder {
+
+    // The TextDoc
+    private TextDoc  _textDoc;
+
+    // The search string
+    private String  _findString = "";
+
+    // Whether search string is regex
+    private boolean  _regex;
+
+    // Whether search ignores case
+    private boolean  _ignoreCase;
+
+    // The doc chars
+    private DocChars  _chars;
+
+    // The BMH shift tables for forward and backward search (null if ignoring case)
+    private int[]  _shifts, _backShifts;
+
+    // The regex pattern
+    private Pattern  _pattern;
+
+    // The regex matcher for doc chars (reused for every find)
+    private Matcher  _matcher;
+
+    // The match index (starts and ends, sorted)
+    private int[]  _matchStarts, _matchEnds;
+
+    // The number of matches in index
+    private int  _matchCount;
+
+    // Whether match index is tracking doc changes
+    private boolean  _trackMatches;
+
+    // A listener for TextDoc changes (gets batches of changes in one call)
+    private PropChangeListener  _textDocLsnr = new PropChangeListener.Batch() {
+        public void propertyChange(PropChange aPC)  { textDocDidPropChange(aPC); }
+        public void propertyChanges(List<PropChange> theChanges)  { textDocDidPropChanges(theChanges); }
+    };
+
+    // The shift table size (chars are hashed by low bits)
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    /**
+     * Constructor.
+     */
+    public TextFinder(TextDoc aTextDoc)
+    {
+        _textDoc = aTextDoc;
+        _chars = new DocChars(aTextDoc);
+    }
+
+    /**
+     * Returns the TextDoc.
+     */
+    public TextDoc getTextDoc()  { return _textDoc; }
+
+    /**
+     * Returns the search string.
+     */
+    public String getFindString()  { return _findString; }
+
+    /**
+     * Returns whether search string is regex.
+     */
+    public boolean isRegex()  { return _regex; }
+
+    /**
+     * Returns whether search ignores case.
+     */
+    public boolean isIgnoreCase()  { return _ignoreCase; }
+
+    /**
+     * Sets the search string, whether it is a regex and whether search ignores case.
+     */
+    public void setFindString(String aString, boolean isRegex, boolean ignoreCase)
+    {
+        // If already set, just return
+        String str = aString != null ? aString : "";
+        if (str.equals(_findString) && isRegex == _regex && ignoreCase == _ignoreCase) return;
+
+        // Set values
+        _findString = str;
+        _regex = isRegex;
+        _ignoreCase = ignoreCase;
+
+        // Reset search tables
+        _shifts = _backShifts = null;
+        _pattern = null;
+        _matcher = null;
+        if (_regex && str.length() > 0) {
+            int flags = Pattern.MULTILINE | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            _pattern = Pattern.compile(str, flags);
+            _matcher = _pattern.matcher(_chars);
+        }
+        else if (str.length() > 0 && !ignoreCase)
+            createShiftTables();
+
+        // Reset match index
+        _matchStarts = _matchEnds = null;
+        _matchCount = 0;
+    }
+
+    /**
+     * Returns the next match range at or after given char index (or null if not found).
+     */
+    public int[] findNext(int anIndex)
+    {
+        // If no search string, just return
+        if (_findString.length() == 0) return null;
+        _chars.reset();
+
+        // Handle regex (find() resets matcher, so it sees current doc length)
+        if (_pattern != null)
+            return anIndex <= _chars.length() && _matcher.find(anIndex) ? new int[] { _matcher.start(), _matcher.end() } : null;
+
+        // Handle literal
+        int index = indexOfLiteral(anIndex);
+        return index >= 0 ? new int[] { index, index + _findString.length() } : null;
+    }
+
+    /**
+     * Returns the previous match range that ends at or before given char index (or null if not found).
+     */
+    public int[] findPrevious(int anIndex)
+    {
+        // If no search string, just return
+        if (_findString.length() == 0) return null;
+        _chars.reset();
+
+        // Handle regex: Get last match that ends at or before index (so matches are same as forward)
+        if (_pattern != null) {
+
+            // If tracking match index, use it
+            if (_trackMatches) {
+                int matchIndex = getMatchIndexForCharIndex(anIndex) - 1;
+                return matchIndex >= 0 ? new int[] { _matchStarts[matchIndex], _matchEnds[matchIndex] } : null;
+            }
+
+            // Otherwise find matches forward (so a find doesn't start tracking doc changes)
+            int[] lastMatch = null;
+            for (int[] match = findNext(0); match != null && match[1] <= anIndex; ) {
+                lastMatch = match;
+                int next = match[1] > match[0] ? match[1] : match[1] + 1;
+                match = next <= _textDoc.length() ? findNext(next) : null;
+            }
+            return lastMatch;
+        }
+
+        // Handle literal
+        int index = lastIndexOfLiteral(anIndex - _findString.length());
+        return index >= 0 ? new int[] { index, index + _findString.length() } : null;
+    }
+
+    /**
+     * Returns the number of matches in TextDoc (and starts tracking doc changes to keep match index updated).
+     */
+    public int getMatchCount()
+    {
+        if (_matchStarts == null)
+            createMatchIndex();
+        return _matchCount;
+    }
+
+    /**
+     * Returns the start char index of match at given index.
+     */
+    public int getMatchStart(int anIndex)  { return _matchStarts[anIndex]; }
+
+    /**
+     * Returns the end char index of match at given index.
+     */
+    public int getMatchEnd(int anIndex)  { return _matchEnds[anIndex]; }
+
+    /**
+     * Returns the index of the first match that ends after given char index (or match count if none).
+     */
+    public int getMatchIndexForCharIndex(int charIndex)
+    {
+        getMatchCount();
+        int lo = 0, hi = _matchCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_matchEnds[mid] <= charIndex)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Replaces all matches with given string as one edit to TextDoc (in a batch, so there is one chars change and one
+     * relayout). For plain text, matches on the same line are replaced with one replaceChars() of the line segment
+     * that holds them. For rich text, matches are replaced individually to keep the styles of the text between them.
+     * Regex replacement strings can reference groups with $n. Returns the number of replacements.
+     */
+    public int replaceAll(String aString)
+    {
+        // If no search string, just return
+        if (_findString.length() == 0) return 0;
+        _chars.reset();
+
+        // Find all matches (can't use match index since it could be stale if not tracking)
+        int[] starts = new int[16], ends = new int[16];
+        String[] replacements = _pattern != null ? new String[16] : null;
+        int count = 0;
+        for (int next = 0, docLength = _textDoc.length(); next <= docLength; ) {
+
+            // Find next match (if regex, get replacement for match with group references)
+            int start, end;
+            String replacement = null;
+            if (_pattern != null) {
+                if (!_matcher.find(next)) break;
+                start = _matcher.start();
+                end = _matcher.end();
+                replacement = getRegexReplacement(_matcher, aString);
+            }
+            else {
+                start = indexOfLiteral(next);
+                if (start < 0) break;
+                end = start + _findString.length();
+            }
+
+            // Add match
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                if (replacements != null)
+                    replacements = Arrays.copyOf(replacements, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            if (replacements != null)
+                replacements[count] = replacement;
+            count++;
+
+            // Get next index (if empty match, skip a char)
+            next = end > start ? end : end + 1;
+        }
+
+        // If no matches, just return
+        if (count == 0) return 0;
+
+        // Replace segments from end so indexes stay valid (rich text segment is just match, plain text segment is
+        // matches up to line break)
+        boolean isRichText = _textDoc.isRichText();
+        StringBuilder sb = new StringBuilder();
+        _textDoc.beginPropChanges();
+        try {
+            for (int segEnd = count - 1; segEnd >= 0; ) {
+
+                // Get first match of segment
+                int segStart = segEnd;
+                while (!isRichText && segStart > 0 && !isLineBreakInRange(ends[segStart - 1], starts[segStart]))
+                    segStart--;
+
+                // Build replacement for segment
+                sb.setLength(0);
+                for (int i = segStart; i <= segEnd; i++) {
+                    if (i > segStart)
+                        sb.append(_chars, ends[i - 1], starts[i]);
+                    sb.append(replacements != null ? replacements[i] : aString);
+                }
+
+                // Replace segment and move to previous
+                _textDoc.replaceChars(sb.toString(), null, starts[segStart], ends[segEnd]);
+                _chars.reset();
+                segEnd = segStart - 1;
+            }
+        }
+
+        // Commit batch
+        finally { _textDoc.commitPropChanges(); }
+        return count;
+    }
+
+    /**
+     * Returns whether there is a line break char in given range of doc chars.
+     */
+    private boolean isLineBreakInRange(int aStart, int anEnd)
+    {
+        for (int i = aStart; i < anEnd; i++) {
+            char c = _chars.charAt(i);
+            if (c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the replacement string for current regex match, with $n group references and backslash escapes.
+     */
+    private static String getRegexReplacement(Matcher aMatcher, String aString)
+    {
+        // If no special chars, just return string
+        if (aString.indexOf('$') < 0 && aString.indexOf('\\') < 0)
+            return aString;
+
+        // Iterate over chars and expand group references and escapes
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0, iMax = aString.length(); i < iMax; i++) {
+            char c = aString.charAt(i);
+            if (c == '\\' && i + 1 < iMax)
+                sb.append(aString.charAt(++i));
+            else if (c == '$' && i + 1 < iMax && Character.isDigit(aString.charAt(i + 1))) {
+                int group = aString.charAt(++i) - '0';
+                String groupStr = group <= aMatcher.groupCount() ? aMatcher.group(group) : null;
+                if (groupStr != null)
+                    sb.append(groupStr);
+            }
+            else sb.append(c);
+        }
+
+        // Return
+        return sb.toString();
+    }
+
+    /**
+     * Stops tracking TextDoc changes for match index.
+     */
+    public void dispose()
+    {
+        if (_trackMatches)
+            _textDoc.removePropChangeListener(_textDocLsnr);
+        _trackMatches = false;
+        _matchStarts = _matchEnds = null;
+        _matchCount = 0;
+    }
+
+    /**
+     * Creates BMH shift tables for literal search.
+     */
+    private void createShiftTables()
+    {
+        // Get pattern length
+        String pattern = _findString;
+        int patternLen = pattern.length();
+
+        // Create forward table: shift for char is distance from its last occurrence (excluding last char) to end
+        _shifts = new int[SHIFT_TABLE_SIZE];
+        Arrays.fill(_shifts, patternLen);
+        for (int i = 0; i < patternLen - 1; i++)
+            setShift(_shifts, pattern.charAt(i), patternLen - 1 - i);
+
+        // Create backward table: shift for char is distance from its first occurrence (excluding first char) to start
+        _backShifts = new int[SHIFT_TABLE_SIZE];
+        Arrays.fill(_backShifts, patternLen);
+        for (int i = patternLen - 1; i > 0; i--)
+            setShift(_backShifts, pattern.charAt(i), i);
+    }
+
+    /**
+     * Sets the shift for given char to min of current and given value.
+     */
+    private static void setShift(int[] theShifts, char aChar, int aShift)
+    {
+        int index = aChar % SHIFT_TABLE_SIZE;
+        theShifts[index] = Math.min(theShifts[index], aShift);
+    }
+
+    /**
+     * Returns the index of literal find string at or after given index using Boyer-Moore-Horspool (or shift of one
+     * char if ignoring case).
+     */
+    private int indexOfLiteral(int anIndex)
+    {
+        String pattern = _findString;
+        int patternLen = pattern.length();
+        int lastIndex = _chars.length() - patternLen;
+
+        // Iterate over windows
+        for (int start = Math.max(anIndex, 0); start <= lastIndex; ) {
+
+            // Compare from end of window
+            int i = patternLen - 1;
+            while (i >= 0 && isCharMatch(_chars.charAt(start + i), pattern.charAt(i)))
+                i--;
+            if (i < 0)
+                return start;
+
+            // Shift by table value for last char in window
+            if (_shifts == null) { start++; continue; }
+            char lastChar = _chars.charAt(start + patternLen - 1);
+            start += _shifts[lastChar % SHIFT_TABLE_SIZE];
+        }
+
+        // Return not found
+        return -1;
+    }
+
+    /**
+     * Returns the index of literal find string at or before given index using Boyer-Moore-Horspool backwards (or shift
+     * of one char if ignoring case).
+     */
+    private int lastIndexOfLiteral(int anIndex)
+    {
+        String pattern = _findString;
+        int patternLen = pattern.length();
+
+        // Iterate over windows (backwards)
+        for (int start = Math.min(anIndex, _chars.length() - patternLen); start >= 0; ) {
+
+            // Compare from start of window
+            int i = 0;
+            while (i < patternLen && isCharMatch(_chars.charAt(start + i), pattern.charAt(i)))
+                i++;
+            if (i == patternLen)
+                return start;
+
+            // Shift by table value for first char in window
+            if (_backShifts == null) { start--; continue; }
+            char firstChar = _chars.charAt(start);
+            start -= _backShifts[firstChar % SHIFT_TABLE_SIZE];
+        }
+
+        // Return not found
+        return -1;
+    }
+
+    /**
+     * Returns whether given text char matches given pattern char.
+     */
+    private boolean isCharMatch(char textChar, char patternChar)
+    {
+        if (textChar == patternChar)
+            return true;
+        return _ignoreCase && (Character.toLowerCase(textChar) == Character.toLowerCase(patternChar) ||
+                Character.toUpperCase(textChar) == Character.toUpperCase(patternChar));
+    }
+
+    /**
+     * Creates the match index for whole doc and starts tracking doc changes.
+     */
+    private void createMatchIndex()
+    {
+        // Create arrays
+        _matchStarts = new int[16];
+        _matchEnds = new int[16];
+        _matchCount = 0;
+
+        // Add matches for doc
+        addMatchesForRange(0, _textDoc.length(), 0);
+
+        // Start tracking doc changes
+        if (!_trackMatches) {
+            _textDoc.addPropChangeListener(_textDocLsnr);
+            _trackMatches = true;
+        }
+    }
+
+    /**
+     * Finds matches that start in given range and inserts them at given match index. Stops at match that would
+     * overlap the match already at that index.
+     */
+    private int addMatchesForRange(int aStart, int anEnd, int aMatchIndex)
+    {
+        // If no search string, just return
+        if (_findString.length() == 0) return 0;
+
+        // Get limit for match end (start of next kept match)
+        int endLimit = aMatchIndex < _matchCount ? _matchStarts[aMatchIndex] : Integer.MAX_VALUE;
+        int matchIndex = aMatchIndex;
+
+        // Iterate over matches in range
+        for (int[] match = findNext(aStart); match != null && match[0] < anEnd && match[1] <= endLimit; ) {
+
+            // Insert match
+            if (_matchCount == _matchStarts.length) {
+                _matchStarts = Arrays.copyOf(_matchStarts, _matchCount * 2);
+                _matchEnds = Arrays.copyOf(_matchEnds, _matchCount * 2);
+            }
+            System.arraycopy(_matchStarts, matchIndex, _matchStarts, matchIndex + 1, _matchCount - matchIndex);
+            System.arraycopy(_matchEnds, matchIndex, _matchEnds, matchIndex + 1, _matchCount - matchIndex);
+            _matchStarts[matchIndex] = match[0];
+            _matchEnds[matchIndex] = match[1];
+            _matchCount++;
+            matchIndex++;
+
+            // Find next (if empty match, skip a char)
+            int next = match[1] > match[0] ? match[1] : match[1] + 1;
+            match = next <= _textDoc.length() ? findNext(next) : null;
+        }
+
+        // Return number of matches added
+        return matchIndex - aMatchIndex;
+    }
+
+    /**
+     * Called when TextDoc changes to update match index for changed range.
+     */
+    protected void textDocDidPropChange(PropChange aPC)
+    {
+        // If not CharsChange or no index, just return
+        if (!(aPC instanceof TextDocUtils.CharsChange) || _matchStarts == null) return;
+        _chars.reset();
+
+        // Get change range and length delta
+        TextDocUtils.CharsChange charsChange = (TextDocUtils.CharsChange) aPC;
+        int start = charsChange.getIndex();
+        int oldEnd = charsChange.getOldEnd();
+        int newEnd = charsChange.getNewEnd();
+        int delta = newEnd - oldEnd;
+
+        // Get rescan range: Extend by pattern length for literal, or to surrounding lines for regex
+        int docLength = _textDoc.length();
+        int scanStart, scanEnd;
+        if (_pattern == null) {
+            scanStart = Math.max(start - _findString.length(), 0);
+            scanEnd = Math.min(newEnd + _findString.length(), docLength);
+        }
+        else {
+            TextLine startLine = _textDoc.getLineForCharIndex(start);
+            TextLine startLinePrev = startLine.getPrevious();
+            scanStart = startLinePrev != null ? startLinePrev.getStartCharIndex() : startLine.getStartCharIndex();
+            TextLine endLine = _textDoc.getLineForCharIndex(newEnd);
+            TextLine endLineNext = endLine.getNext();
+            scanEnd = endLineNext != null ? endLineNext.getEndCharIndex() : endLine.getEndCharIndex();
+        }
+
+        // Get first match that could be affected (ends after rescan start, in old coordinates)
+        int removeStart = getMatchIndexForCharIndex(scanStart);
+        if (removeStart < _matchCount)
+            scanStart = Math.min(scanStart, _matchStarts[removeStart]);
+
+        // Get first match after change (starts at or after old end + context), shift these by delta
+        int oldScanEnd = scanEnd - delta;
+        int removeEnd = removeStart;
+        while (removeEnd < _matchCount && _matchStarts[removeEnd] < oldScanEnd)
+            removeEnd++;
+        for (int i = removeEnd; i < _matchCount; i++) {
+            _matchStarts[i] += delta;
+            _matchEnds[i] += delta;
+        }
+
+        // Remove affected matches
+        int removeCount = removeEnd - removeStart;
+        System.arraycopy(_matchStarts, removeEnd, _matchStarts, removeStart, _matchCount - removeEnd);
+        System.arraycopy(_matchEnds, removeEnd, _matchEnds, removeStart, _matchCount - removeEnd);
+        _matchCount -= removeCount;
+
+        // Rescan range (starting after last kept match)
+        int rescanStart = removeStart > 0 ? Math.max(scanStart, _matchEnds[removeStart - 1]) : scanStart;
+        addMatchesForRange(rescanStart, scanEnd, removeStart);
+    }
+
+    /**
+     * Called when TextDoc has batch of prop changes (sent after all changes were applied): If more than one chars
+     * change, just clears match index so it is recreated when next asked for.
+     */
+    protected void textDocDidPropChanges(List<PropChange> theChanges)
+    {
+        // If no index, just return
+        if (_matchStarts == null) return;
+
+        // Get chars changes (if just one, handle normally)
+        int charsChangeCount = 0;
+        PropChange charsChange = null;
+        for (PropChange change : theChanges) {
+            if (change instanceof TextDocUtils.CharsChange) {
+                charsChange = change;
+                charsChangeCount++;
+            }
+        }
+        if (charsChangeCount <= 1) {
+            if (charsChange != null)
+                textDocDidPropChange(charsChange);
+            return;
+        }
+
+        // Clear match index
+        _matchStarts = _matchEnds = null;
+        _matchCount = 0;
+    }
+
+    /**
+     * A CharSequence for TextDoc that reads chars from lines, caching the current line for sequential access.
+     */
+    private static class DocChars implements CharSequence {
+
+        // The TextDoc
+        private TextDoc  _textDoc;
+
+        // The current line and its char range
+        private TextLine  _line;
+        private int  _lineStart, _lineEnd;
+
+        /** Constructor. */
+        DocChars(TextDoc aTextDoc)  { _textDoc = aTextDoc; }
+
+        /** Returns length. */
+        public int length()  { return _textDoc.length(); }
+
+        /** Returns char at index (from cached line if possible). */
+        public char charAt(int anIndex)
+        {
+            if (_line == null || anIndex < _lineStart || anIndex >= _lineEnd)
+                setLineForCharIndex(anIndex);
+            return _line.charAt(anIndex - _lineStart);
+        }
+
+        /** Returns sub sequence. */
+        public CharSequence subSequence(int aStart, int anEnd)
+        {
+            return _textDoc.subSequence(aStart, anEnd);
+        }
+
+        /** Sets the current line for given char index (checking neighbors first, then binary search). */
+        private void setLineForCharIndex(int anIndex)
+        {
+            // Check next and previous line
+            TextLine line = _line != null && _line.getTextDoc() == _textDoc ?
+                (anIndex >= _lineEnd ? _line.getNext() : _line.getPrevious()) : null;
+
+            // If not there, do binary search
+            if (line == null || anIndex < line.getStartCharIndex() || anIndex >= line.getEndCharIndex()) {
+                if (anIndex < 0 || anIndex >= _textDoc.length())
+                    throw new IndexOutOfBoundsException("Index " + anIndex + " beyond " + _textDoc.length());
+                int lo = 0, hi = _textDoc.getLineCount() - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (_textDoc.getLine(mid).getStartCharIndex() <= anIndex)
+                        lo = mid;
+                    else hi = mid - 1;
+                }
+                line = _textDoc.getLine(lo);
+            }
+
+            // Set line
+            _line = line;
+            _lineStart = line.getStartCharIndex();
+            _lineEnd = line.getEndCharIndex();
+        }
+
+        /** Clears cached line (after doc change). */
+        void reset()  { _line = null; }
+
+        /** Returns string. */
+        public String toString()  { return _textDoc.getString(); }
+    }
+}
@@ -8,6 +8,7 @@
  * ================================================================== */
 package snap.text;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import snap.util.*;
 import snap.web.WebURL;
@@ -25,16 +26,37 @@ import snap.web.WebURL;
  */
 public class TextHyphenDict {
     
-    // Current array of states
-    ArrayList            _states = new ArrayList();
+    // The compiled trie: transitions for state i are at TransStarts[i] to TransStarts[i+1], sorted by char
+    int                  _transStarts[];
+    char                 _transChars[];
+    int                  _transTargets[];
+    
+    // The fallback state for each state (-1 for none)
+    int                  _fallbacks[];
+    
+    // The match digits for state i are at MatchStarts[i] to MatchStarts[i+1] in MatchDigits
+    int                  _matchStarts[];
+    byte                 _matchDigits[];
+    
+    // Scratch buffer for hyphen levels of current word
+    private byte         _levels[] = new byte[64];
     
     // Shared instance
     static TextHyphenDict    _shared;
     
-    /** Create an instance based on the given filename. Reads and parses the given file into internal storage. */
+    // The compiled dict file name and magic number
+    static final String  COMPILED_NAME = "TextHyphenDict_US.bin";
+    static final int     COMPILED_MAGIC = 0x48595048;
+    
+    /** Create an instance from compiled dict resource (or from parsing source dict if compiled not available). */
     public TextHyphenDict()
     {
-        try { loadHyphenDict(); }
+        try {
+            WebURL url = WebURL.getURL(getClass(), COMPILED_NAME);
+            byte bytes[] = url!=null? SnapUtils.getBytes(url) : null;
+            if(bytes!=null) readCompiled(bytes);
+            else compile(loadHyphenDict());
+        }
         catch(Exception e) { e.printStackTrace(); }
     }
     
@@ -45,7 +67,7 @@ public class TextHyphenDict {
     public int getHyphen(CharSequence anInput, int aStart, int anEnd)
     {
         // If there are only a few characters before line end, just bail
-        if(anEnd-aStart<3)
+        if(anEnd-aStart<3 || _transStarts==null)
             return -1;
 
         // Find word end
@@ -58,50 +80,54 @@ public class TextHyphenDict {
         if(wordEnd-aStart<=2)
             return -1;
         
-        // Get word
-        String word = anInput.subSequence(aStart, wordEnd).toString();
-        
         // Return
-        int hyphen = getHyphen(word, wordEnd - aStart);
+        int hyphen = getHyphen(anInput, aStart, wordEnd, wordEnd - aStart);
         return hyphen>0? (aStart + hyphen) : -1;
-            
-        // Get Hyphens and bail if null
-        //int hyphens[] = getHyphens(word); if(hyphens==null) return -1;
-        // If hyphen prior to lineEnd, return it
-        //for(int i=hyphens.length-1; i>=0; i--) if(start + hyphens[i]<lineEnd) return start + hyphens[i];
-        // If no hyphens before lineEnd: return -1;
     }
     
+    /** Returns the last hyphen before given line end for given word. */
     public int getHyphen(String aWord, int lineEnd)
     {
-        // Returns a string buffer for word with hyphen data inserted
-        StringBuffer hyphens = getHyphensBuffer(aWord);
-
-        // Added this code to return hyphen index instead of hyphen array below
+        return getHyphen(aWord, 0, aWord.length(), lineEnd);
+    }
+    
+    /** Returns the last hyphen before given line end (relative to word start) for word in given char range. */
+    private synchronized int getHyphen(CharSequence theChars, int aStart, int anEnd, int lineEnd)
+    {
+        // Fill levels for word
+        byte levels[] = getLevels(theChars, aStart, anEnd);
+        if(levels==null)
+            return -1;
+        
+        // Return index after last odd level before line end
         for(int i=lineEnd-2; i>0; i--)
-            if((hyphens.charAt(i)&1)!=0)
+            if((levels[i]&1)!=0)
                 return i+1;
-        
-        // 
         return -1;        
     }
     
     public int[] getHyphens(String aWord)
     {
-        // Returns a string buffer for word with hyphen data inserted
-        StringBuffer hyphens = getHyphensBuffer(aWord);
+        // Get hyphen levels for word (copied, since levels array is reused)
+        int wordLen = aWord.length();
+        byte levels[];
+        synchronized (this) {
+            levels = getLevels(aWord, 0, wordLen);
+            if(levels==null) return null;
+            levels = Arrays.copyOf(levels, wordLen);
+        }
 
         // count the number of hyphens
         int nHyphens = 0;
-        for(int i=0; i<hyphens.length(); i++)
-            if((hyphens.charAt(i)&1) != 0)
+        for(int i=0; i<wordLen; i++)
+            if((levels[i]&1) != 0)
                 nHyphens++;
         
         // convert into an array of integers        
         if(nHyphens > 0) {
             int[] hypos = new int[nHyphens];
-            for(int i=0, hno=0; i<hyphens.length(); i++)
-                if((hyphens.charAt(i)&1) != 0)
+            for(int i=0, hno=0; i<wordLen; i++)
+                if((levels[i]&1) != 0)
                     hypos[hno++] = i+1;
             
             // Return hyphens
@@ -112,84 +138,192 @@ public class TextHyphenDict {
         return null;
     }
     
-    /** Perform hyphenation on a word. Fills in the word's hyphenationPositions array. */
+    /** Returns a string buffer of hyphen digits for given word. */
     public StringBuffer getHyphensBuffer(String aWord)
     {
-        // Get word as lowercase 
-        String lcword = aWord.toLowerCase();
-        int nulen = lcword.length()+3;
-        
-        StringBuffer prepWord = new StringBuffer(nulen);
-        prepWord.append('.');
-        prepWord.append(lcword);
-        prepWord.append('.');
-        
-        StringBuffer hyphens = mkBuffer(nulen,'0');
-        
-        HyphenState state = (HyphenState)_states.get(0);
-        
-        // Iterate over word characters
-        NEXT_LETTER: for(int i=0;i<prepWord.length();i++) {
+        int wordLen = aWord.length();
+        StringBuffer hyphens = mkBuffer(wordLen, '0');
+        synchronized (this) {
+            byte levels[] = getLevels(aWord, 0, wordLen);
+            for(int i=0; levels!=null && i<wordLen; i++)
+                hyphens.setCharAt(i, (char)('0' + levels[i]));
+        }
+        return hyphens;
+    }
+    
+    /**
+     * Perform hyphenation on word in given char range, returning hyphen levels (odd level after char means hyphen).
+     * Walks compiled trie with reused levels array, so doesn't allocate. Caller must synchronize on this dict.
+     */
+    private byte[] getLevels(CharSequence theChars, int aStart, int anEnd)
+    {
+        // If no dict, just return
+        if(_transStarts==null) return null;
+        
+        // Get word length and prepared word length (word wrapped in '.' chars)
+        int wordLen = anEnd - aStart;
+        int prepLen = wordLen + 2;
+        int levelsLen = wordLen + 3;
+        if(_levels.length<levelsLen)
+            _levels = new byte[Math.max(levelsLen, _levels.length*2)];
+        byte levels[] = _levels;
+        Arrays.fill(levels, 0, levelsLen, (byte)0);
+        
+        // Iterate over prepared word characters
+        int state = 0;
+        NEXT_LETTER: for(int i=0; i<prepLen; i++) {
             
             // Get current character
-            char ch = prepWord.charAt(i);
+            char ch = i==0 || i==prepLen-1? '.' : Character.toLowerCase(theChars.charAt(aStart + i - 1));
             
-            // Iterate?
-            TRANS_LOOP: while(true) {
+            // Find transition for char from state (or state fallbacks)
+            while(true) {
                 
-                // Null state?
-                if(state == null) {
-                    state = (HyphenState)_states.get(0);
+                // No state: reset to root and go to next letter
+                if(state<0) {
+                    state = 0;
                     continue NEXT_LETTER;
                 }
                 
-                // Iterate?
-                for(int k = 0; k < state.getNumTrans(); k++) {
-                    HyphenTrans trans = state.getTrans(k);
-                    if(trans.ch == ch) {
-                        state = trans.newState;
-                        break TRANS_LOOP;
-                    }
+                // Look for transition
+                int trans = findTrans(state, ch);
+                if(trans>=0) {
+                    state = _transTargets[trans];
+                    break;
                 }
                 
-                // State?
-                state = state.fallbackState;
-            }
-            
-            // If match
-            if(state.match != null) {
-                
-                // Get match length and offset
-                int ml = state.match.length();
-                int offset = i + 1 - ml;
-                
-                // Iterate?
-                for(int k = 0; k < ml; k++)
-                    if(hyphens.charAt(offset + k) < state.match.charAt(k))
-                        hyphens.setCharAt(offset + k, state.match.charAt(k));
+                // Otherwise fall back
+                state = _fallbacks[state];
             }
             
+            // If match, apply max of match digits to levels ending at this char
+            int matchStart = _matchStarts[state], matchEnd = _matchStarts[state+1];
+            int offset = i + 1 - (matchEnd - matchStart);
+            for(int k=matchStart; k<matchEnd; k++, offset++)
+                if(offset>=0 && levels[offset]<_matchDigits[k])
+                    levels[offset] = _matchDigits[k];
         }
         
-        // Iterate?
-        for(int i=0; i<prepWord.length() - 4; i++)
-            hyphens.setCharAt(i, hyphens.charAt(i + 1));
-        
-        // Set char
-        hyphens.setCharAt(0, '0');
-        
-        // Iterate
-        for(int i=prepWord.length()-4; i<lcword.length(); i++)
-            hyphens.setCharAt(i, '0');
+        // Shift levels to remove leading '.' and clear first and last two
+        for(int i=0; i<prepLen-4; i++)
+            levels[i] = levels[i+1];
+        levels[0] = 0;
+        for(int i=Math.max(prepLen-4, 0); i<wordLen; i++)
+            levels[i] = 0;
+        return levels;
+    }
+    
+    /** Returns the index of transition for given state and char (or -1). */
+    private int findTrans(int aState, char aChar)
+    {
+        int lo = _transStarts[aState], hi = _transStarts[aState+1] - 1;
+        while(lo<=hi) {
+            int mid = (lo + hi) >>> 1;
+            char midChar = _transChars[mid];
+            if(midChar<aChar) lo = mid + 1;
+            else if(midChar>aChar) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+    
+    /** Compiles given parsed states into trie arrays. */
+    private void compile(List <HyphenState> theStates)
+    {
+        // Map states to indexes
+        int stateCount = theStates.size();
+        Map <HyphenState,Integer> indexes = new HashMap<>(stateCount*2);
+        for(int i=0; i<stateCount; i++)
+            indexes.put(theStates.get(i), i);
+        
+        // Count transitions and match digits
+        int transCount = 0, matchCount = 0;
+        for(HyphenState state : theStates) {
+            transCount += state.getNumTrans();
+            if(state.match!=null) matchCount += state.match.length();
+        }
         
-        // Set length
-        hyphens.setLength(lcword.length());
+        // Create arrays
+        _transStarts = new int[stateCount+1]; _transChars = new char[transCount]; _transTargets = new int[transCount];
+        _fallbacks = new int[stateCount];
+        _matchStarts = new int[stateCount+1]; _matchDigits = new byte[matchCount];
         
-        return hyphens;
+        // Fill arrays
+        int transIndex = 0, matchIndex = 0;
+        for(int i=0; i<stateCount; i++) {
+            HyphenState state = theStates.get(i);
+            
+            // Add transitions sorted by char
+            _transStarts[i] = transIndex;
+            List <HyphenTrans> transList = new ArrayList<>(state.trans);
+            transList.sort((t1, t2) -> Character.compare(t1.ch, t2.ch));
+            for(HyphenTrans trans : transList) {
+                _transChars[transIndex] = trans.ch;
+                _transTargets[transIndex++] = indexes.get(trans.newState);
+            }
+            
+            // Add fallback
+            _fallbacks[i] = state.fallbackState!=null? indexes.get(state.fallbackState) : -1;
+            
+            // Add match digits
+            _matchStarts[i] = matchIndex;
+            for(int k=0; state.match!=null && k<state.match.length(); k++)
+                _matchDigits[matchIndex++] = (byte)(state.match.charAt(k) - '0');
+        }
+        _transStarts[stateCount] = transIndex;
+        _matchStarts[stateCount] = matchIndex;
+    }
+    
+    /** Writes compiled trie to given stream. */
+    public void writeCompiled(OutputStream anOS) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(anOS));
+        out.writeInt(COMPILED_MAGIC);
+        out.writeInt(_fallbacks.length); out.writeInt(_transChars.length); out.writeInt(_matchDigits.length);
+        for(int v : _transStarts) out.writeInt(v);
+        for(char v : _transChars) out.writeChar(v);
+        for(int v : _transTargets) out.writeInt(v);
+        for(int v : _fallbacks) out.writeInt(v);
+        for(int v : _matchStarts) out.writeInt(v);
+        out.write(_matchDigits);
+        out.flush();
+    }
+    
+    /** Reads compiled trie from given bytes (with bulk buffer gets). */
+    private void readCompiled(byte theBytes[]) throws IOException
+    {
+        // Check magic number and get counts
+        ByteBuffer buf = ByteBuffer.wrap(theBytes);
+        if(buf.getInt()!=COMPILED_MAGIC)
+            throw new IOException("TextHyphenDict: Invalid compiled dict");
+        int stateCount = buf.getInt(), transCount = buf.getInt(), matchCount = buf.getInt();
+        
+        // Read arrays
+        _transStarts = new int[stateCount+1]; buf.asIntBuffer().get(_transStarts); buf.position(buf.position() + (stateCount+1)*4);
+        _transChars = new char[transCount]; buf.asCharBuffer().get(_transChars); buf.position(buf.position() + transCount*2);
+        _transTargets = new int[transCount]; buf.asIntBuffer().get(_transTargets); buf.position(buf.position() + transCount*4);
+        _fallbacks = new int[stateCount]; buf.asIntBuffer().get(_fallbacks); buf.position(buf.position() + stateCount*4);
+        _matchStarts = new int[stateCount+1]; buf.asIntBuffer().get(_matchStarts); buf.position(buf.position() + (stateCount+1)*4);
+        _matchDigits = new byte[matchCount]; buf.get(_matchDigits);
     }
-   
-    /** Loads hyphen dict from source. */
-    private void loadHyphenDict() throws IOException
+    
+    /** Compiles source dict and writes to given file (run at build time to generate compiled dict resource). */
+    public static void main(String args[]) throws IOException
+    {
+        TextHyphenDict dict = new TextHyphenDict(false);
+        File file = new File(args[0], "snap/text/" + COMPILED_NAME);
+        file.getParentFile().mkdirs();
+        try(OutputStream out = new FileOutputStream(file)) { dict.writeCompiled(out); }
+    }
+    
+    /** Create an instance by parsing source dict. */
+    private TextHyphenDict(boolean unused) throws IOException
+    {
+        compile(loadHyphenDict());
+    }
+    
+    /** Loads hyphen dict from source and returns parsed states. */
+    private List <HyphenState> loadHyphenDict() throws IOException
     {
         // Get bytes for aSource
         byte bytes[] = SnapUtils.getBytes(WebURL.getURL(getClass(), "TextHyphenDict_US.dic"));
@@ -216,9 +350,10 @@ public class TextHyphenDict {
         HashMap hashmap = new HashMap();
         
         // create the first one.
+        List <HyphenState> states = new ArrayList<>();
         HyphenState hs = new HyphenState();
         hashmap.put("", hs);
-        _states.add(hs);
+        states.add(hs);
         
         String buf;
         while((buf=bufferedReader.readLine()) != null) {
@@ -252,7 +387,7 @@ public class TextHyphenDict {
             if (found == null) {
                 state = new HyphenState();
                 hashmap.put(word.toString(), state);
-                _states.add(state);
+                states.add(state);
             }
             state.setMatch(pattern.toString());
             
@@ -266,7 +401,7 @@ public class TextHyphenDict {
                 if(found == null) {
                     state = new HyphenState();
                     hashmap.put(word.toString(), state);
-                    _states.add(state);
+                    states.add(state);
                 }
                 HyphenTrans ht = new HyphenTrans();
                 ht.ch = ch;
@@ -291,6 +426,8 @@ public class TextHyphenDict {
             }
         }
         
+        // Return states
+        return states;
     }
     
     /** Create a StringBuffer of the specified length and fill it with a character */
@@ -312,7 +449,7 @@ public class TextHyphenDict {
         HyphenState fallbackState = null;
         
         // trans list
-        private ArrayList trans = new ArrayList();
+        private ArrayList <HyphenTrans> trans = new ArrayList<>();
         
         /** Getter for property match. */
         public String getMatch() { return match; }
@@ -328,7 +465,7 @@ public class TextHyphenDict {
         
         public void addTrans(HyphenTrans trans) { this.trans.add(trans); }
         
-        public HyphenTrans getTrans(int index) { return (HyphenTrans)trans.get(index); }
+        public HyphenTrans getTrans(int index) { return trans.get(index); }
         
         public int getNumTrans() { return trans.size(); }
     }
@@ -4,6 +4,7 @@
 package snap.text;
 import snap.geom.HPos;
 import snap.util.ArrayUtils;
+import snap.util.CharSequenceUtils;
 import snap.util.CharSequenceX;
 import snap.util.SnapUtils;
 
@@ -87,17 +88,17 @@ public class TextLine implements CharSequenceX, Cloneable {
     /**
      * Returns the start char index of this line in text.
      */
-    public int getStartCharIndex()  { return _startCharIndex; }
+    public int getStartCharIndex()  { return _textDoc != null ? _startCharIndex - _textDoc._charIndexBase : _startCharIndex; }
 
     /**
      * Returns the end char index of this line in text.
      */
-    public int getEndCharIndex()  { return _startCharIndex + length(); }
+    public int getEndCharIndex()  { return getStartCharIndex() + length(); }
 
     /**
      * Returns the index of this line in text.
      */
-    public int getIndex()  { return _index; }
+    public int getIndex()  { return _textDoc != null ? _index - _textDoc._lineIndexBase : _index; }
 
     /**
      * Returns the number of runs for this line.
@@ -133,12 +134,17 @@ public class TextLine implements CharSequenceX, Cloneable {
     public void addChars(CharSequence theChars, TextStyle theStyle, int anIndex)
     {
         // Add length to run
+        TextToken[] tokens = _tokens;
+        TextRun[] runs = _runs;
         TextRun run = getRun(0);
-        run.addLength(theChars.length());
+        run.addLengthForChars(theChars, anIndex);
 
         // Add chars
         _sb.insert(anIndex, theChars);
         updateText();
+
+        // Update tokens for change
+        updateTokensForCharsChange(tokens, runs, anIndex, anIndex, anIndex + theChars.length());
     }
 
     /**
@@ -147,12 +153,17 @@ public class TextLine implements CharSequenceX, Cloneable {
     public void removeChars(int aStart, int anEnd)
     {
         // Remove length from run
+        TextToken[] tokens = _tokens;
+        TextRun[] runs = _runs;
         TextRun run = getRun(0);
-        run.addLength(aStart - anEnd);
+        run.removeLengthForRange(aStart, anEnd);
 
         // Remove chars
         _sb.delete(aStart, anEnd);
         updateText();
+
+        // Update tokens for change
+        updateTokensForCharsChange(tokens, runs, aStart, anEnd, aStart);
     }
 
     /**
@@ -268,16 +279,13 @@ public class TextLine implements CharSequenceX, Cloneable {
      */
     protected void appendLine(TextLine aLine)
     {
-        // Add chars
+        // Add chars and length to run
         _sb.append(aLine._sb);
+        TextRun run = getRun(0);
+        run.addLength(aLine.length());
 
-        // Add runs
-        for (int i = 0, iMax = aLine.getRunCount(); i < iMax; i++) {
-            TextRun run = aLine.getRun(i);
-            TextRun run2 = run.clone();
-            run2._textLine = this;
-            addRun(run2, getRunCount());
-        }
+        // Update text (line length changed)
+        updateText();
     }
 
     /**
@@ -309,7 +317,7 @@ public class TextLine implements CharSequenceX, Cloneable {
             char loopChar = charAt(i);
             if (loopChar == '\t' || loopChar == '\r' || loopChar == '\n')
                 break;
-            charsW += textStyle.getCharAdvance(loopChar) + textStyle.getCharSpacing();
+            charsW += textStyle.getCharAdvance(this, i) + textStyle.getCharSpacing();
             if (tabType == TextLineStyle.TAB_DECIMAL && loopChar == '.')
                 break;
         }
@@ -339,6 +347,19 @@ public class TextLine implements CharSequenceX, Cloneable {
         return _tokens = tokens;
     }
 
+    /**
+     * Updates given tokens (from before chars change) for chars change, so only tokens touching change are re-split.
+     * Leaves tokens to be recreated if runs changed or TextDoc can't update tokens.
+     */
+    protected void updateTokensForCharsChange(TextToken[] oldTokens, TextRun[] oldRuns, int aStart, int anOldEnd, int aNewEnd)
+    {
+        // If no old tokens or runs were added/removed, just return
+        if (oldTokens == null || oldRuns != _runs) return;
+
+        // Update tokens via TextDoc (can return null to recreate)
+        _tokens = _textDoc.updateTokensForTextLine(this, oldTokens, aStart, anOldEnd, aNewEnd);
+    }
+
     /**
      * Creates the tokens (via TextDoc.createTokensForTextLine() to provide another hook).
      */
@@ -398,7 +419,7 @@ public class TextLine implements CharSequenceX, Cloneable {
             char loopChar = charAt(i);
             if (loopChar == '\t')
                 charX = getXForTabAtIndexAndX(i, charX);
-            else charX += textStyle.getCharAdvance(loopChar) + charSpacing;
+            else charX += textStyle.getCharAdvance(this, i) + charSpacing;
         }
 
         // Return
@@ -442,10 +463,10 @@ public class TextLine implements CharSequenceX, Cloneable {
         // Iterate over chars and return first char that contains given X
         while (charIndex < lineLength) {
             char loopChar = charAt(charIndex);
-            double charW = textStyle.getCharAdvance(loopChar) + charSpacing;
+            double charW = textStyle.getCharAdvance(this, charIndex) + charSpacing;
             if (loopChar == '\t')
                 charW = getXForTabAtIndexAndX(charIndex, charX) - charX;
-            if (charX + charW / 2 > anX)
+            if (charX + charW / 2 > anX && !CharSequenceUtils.isInSurrogatePair(this, charIndex))
                 return charIndex;
             charIndex++;
             charX += charW;
@@ -464,7 +485,7 @@ public class TextLine implements CharSequenceX, Cloneable {
      */
     public TextLine getNext()
     {
-        int nextIndex = _index + 1;
+        int nextIndex = getIndex() + 1;
         return _textDoc != null && nextIndex < _textDoc.getLineCount() ? _textDoc.getLine(nextIndex) : null;
     }
 
@@ -473,7 +494,7 @@ public class TextLine implements CharSequenceX, Cloneable {
      */
     public TextLine getPrevious()
     {
-        int prevIndex = _index - 1;
+        int prevIndex = getIndex() - 1;
         return _textDoc != null && prevIndex >= 0 ? _textDoc.getLine(prevIndex) : null;
     }
 
@@ -567,8 +588,9 @@ public class TextLine implements CharSequenceX, Cloneable {
         try { clone = (TextLine) super.clone(); }
         catch (Exception e) { throw new RuntimeException(e); }
 
-        // Clone StringBuffer, Runs
+        // Clone StringBuffer, Runs (tokens reference this line, so clear them)
         clone._sb = new StringBuffer(_sb);
+        clone._tokens = null;
         if (_runs != null) {
             clone._runs = _runs.clone();
             for (int i = 0; i < _runs.length; i++) {
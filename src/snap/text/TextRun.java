@@ -64,7 +64,7 @@ public class TextRun implements CharSequenceX, Cloneable {
      */
     protected void setStyle(TextStyle aStyle)
     {
-        _style = aStyle;
+        _style = aStyle != null ? aStyle.intern() : null;
         _width = -1;
         _textLine._width = -1;
         _textLine._tokens = null;
@@ -128,10 +128,9 @@ public class TextRun implements CharSequenceX, Cloneable {
 
         // Calculate
         double width = 0;
-        int len = length();
-        while (len - 1 > 0 && Character.isWhitespace(charAt(len - 1))) len--;
-        for (int i = anIndex; i < len; i++)
-            width += _style.getCharAdvance(charAt(i));
+        int len = getWidthLength();
+        if (anIndex < len)
+            width = _style.getFont().measureRun(this, anIndex, len, null);
         if (len - anIndex > 1)
             width += (len - anIndex - 1) * getCharSpacing();
 
@@ -139,6 +138,102 @@ public class TextRun implements CharSequenceX, Cloneable {
         return width;
     }
 
+    /**
+     * Returns the number of chars measured for width (trailing whitespace is excluded, but at least one char).
+     */
+    private int getWidthLength()
+    {
+        int len = length();
+        while (len - 1 > 0 && Character.isWhitespace(charAt(len - 1))) len--;
+        return len;
+    }
+
+    /**
+     * Adds length for given chars inserted at given index (called before line chars are inserted).
+     * Updates cached width by measuring just the new chars (and chars adjoining them) when possible.
+     */
+    protected void addLengthForChars(CharSequence theChars, int anIndex)
+    {
+        // If width cached and run ends with measured char, get width change
+        double width = _width;
+        int widthLen = getWidthLength();
+        int charsLen = theChars.length();
+        if (width >= 0 && widthLen > 0 && !Character.isWhitespace(charAt(widthLen - 1))) {
+
+            // If chars inserted before trailing whitespace, add their width
+            if (anIndex < widthLen)
+                width += getWidthChangeForCharsChange(anIndex, anIndex, theChars);
+
+            // Otherwise, add width of trailing whitespace before chars and chars up to last non-whitespace (if any)
+            else {
+                int charsWidthLen = charsLen;
+                while (charsWidthLen > 0 && Character.isWhitespace(theChars.charAt(charsWidthLen - 1))) charsWidthLen--;
+                if (charsWidthLen > 0) {
+                    StringBuilder sb = new StringBuilder().append(this, widthLen, anIndex).append(theChars, 0, charsWidthLen);
+                    width += getWidthChangeForCharsChange(widthLen, widthLen, sb);
+                }
+            }
+        }
+        else width = -1;
+
+        // Update length and width
+        _length += charsLen;
+        _width = width;
+    }
+
+    /**
+     * Removes length for given char range (called before line chars are removed).
+     * Updates cached width by measuring just the removed chars (and chars adjoining them) when possible.
+     */
+    protected void removeLengthForRange(int aStart, int anEnd)
+    {
+        // If width cached and run ends with measured char, get width change
+        double width = _width;
+        int widthLen = getWidthLength();
+        if (width >= 0 && widthLen > 0 && !Character.isWhitespace(charAt(widthLen - 1))) {
+
+            // If chars removed before last measured char, subtract their width
+            if (anEnd < widthLen)
+                width += getWidthChangeForCharsChange(aStart, anEnd, "");
+
+            // Otherwise, subtract width from new last non-whitespace char (if any)
+            else {
+                int newWidthLen = aStart;
+                while (newWidthLen > 0 && Character.isWhitespace(charAt(newWidthLen - 1))) newWidthLen--;
+                if (newWidthLen > 0 && newWidthLen < widthLen)
+                    width += getWidthChangeForCharsChange(newWidthLen, widthLen, "");
+                else if (newWidthLen == 0)
+                    width = -1;
+            }
+        }
+        else width = -1;
+
+        // Update length and width
+        _length -= anEnd - aStart;
+        _width = width;
+    }
+
+    /**
+     * Returns the width change for replacing given measured char range with given chars. Measures the chars adjoining
+     * the range before and after, so kerning at range boundaries is included.
+     */
+    private double getWidthChangeForCharsChange(int aStart, int anEnd, CharSequence theChars)
+    {
+        // Get range expanded to adjoining measured chars
+        int start = Math.max(aStart - 1, 0);
+        int end = Math.min(anEnd + 1, getWidthLength());
+
+        // Get new chars for expanded range
+        StringBuilder sb = new StringBuilder(end - start + theChars.length());
+        sb.append(this, start, aStart).append(theChars).append(this, anEnd, end);
+
+        // Return new width minus old width (plus char spacing for chars count change)
+        Font font = _style.getFont();
+        double oldWidth = start < end ? font.measureRun(this, start, end, null) : 0;
+        double newWidth = font.measureRun(sb, 0, sb.length(), null);
+        return newWidth - oldWidth + (theChars.length() - (anEnd - aStart)) * getCharSpacing();
+    }
+
     /**
      * Adds length to grow this run (negative value reduces it).
      */
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.text;
+import snap.props.PropChange;
+import snap.props.PropChangeListener;
+import snap.util.TaskRunner;
+import snap.view.ViewEnv;
+import java.util.*;
+
+/**
+ * A class to spell check a TextDoc incrementally in the background.
+ *
+ * Misspelled word ranges are kept per TextLine. When chars change, only the changed lines are marked dirty. Lines
+ * are checked when first asked for (usually when painted), by a background runner working on a snapshot of the line
+ * strings, and results are published in the event thread (results for lines edited in the meantime are dropped).
+ * Asking for ranges never blocks: lines not yet checked just have no ranges until the listener is notified.
+ */
+public class TextSpellChecker {
+
+    // The TextDoc
+    private TextDoc  _textDoc;
+
+    // The dictionary
+    private SpellDictionary  _dict;
+
+    // The check state for each line
+    private Map<TextLine,LineState>  _lineStates = new WeakHashMap<>();
+
+    // The lines waiting to be checked
+    private Set<TextLine>  _dirtyLines = Collections.newSetFromMap(new WeakHashMap<>());
+
+    // The current check runner
+    private TaskRunner<?>  _runner;
+
+    // A runnable to call when ranges are published
+    private Runnable  _listener;
+
+    // The TextDoc listener (gets batches of changes in one call)
+    private PropChangeListener  _textDocLsnr = new PropChangeListener.Batch() {
+        public void propertyChange(PropChange aPC)  { textDocDidPropChange(aPC); }
+        public void propertyChanges(List<PropChange> theChanges)  { textDocDidPropChanges(theChanges); }
+    };
+
+    // The maximum number of lines to check per runner
+    private static final int MAX_LINES_PER_RUN = 256;
+
+    // A shared empty ranges array
+    private static final int[] NO_RANGES = new int[0];
+
+    /**
+     * Constructor for given TextDoc and default dictionary.
+     */
+    public TextSpellChecker(TextDoc aTextDoc)
+    {
+        this(aTextDoc, SpellDictionary.getDefault());
+    }
+
+    /**
+     * Constructor for given TextDoc and dictionary.
+     */
+    public TextSpellChecker(TextDoc aTextDoc, SpellDictionary aDict)
+    {
+        _textDoc = aTextDoc;
+        _dict = aDict;
+        _textDoc.addPropChangeListener(_textDocLsnr);
+    }
+
+    /**
+     * Returns the TextDoc.
+     */
+    public TextDoc getTextDoc()  { return _textDoc; }
+
+    /**
+     * Returns the dictionary.
+     */
+    public SpellDictionary getDictionary()  { return _dict; }
+
+    /**
+     * Sets a runnable to call (in event thread) when new misspelled ranges are available.
+     */
+    public void setListener(Runnable aRun)  { _listener = aRun; }
+
+    /**
+     * Returns misspelled word ranges in given line as start/end pairs (line relative). If line hasn't been checked
+     * since last change, returns no ranges and schedules check.
+     */
+    public int[] getMisspelledRanges(TextLine aTextLine)
+    {
+        // Get state (if checked, return ranges)
+        LineState lineState = _lineStates.get(aTextLine);
+        if (lineState != null && lineState.ranges != null)
+            return lineState.ranges;
+
+        // Schedule check
+        if (lineState == null)
+            _lineStates.put(aTextLine, new LineState());
+        _dirtyLines.add(aTextLine);
+        checkDirtyLinesLater();
+        return NO_RANGES;
+    }
+
+    /**
+     * Stops listening to TextDoc and clears results.
+     */
+    public void dispose()
+    {
+        _textDoc.removePropChangeListener(_textDocLsnr);
+        if (_runner != null)
+            _runner.cancel();
+        _runner = null;
+        _lineStates.clear();
+        _dirtyLines.clear();
+    }
+
+    /**
+     * Called when TextDoc has prop change.
+     */
+    protected void textDocDidPropChange(PropChange aPC)
+    {
+        // Only care about chars changes
+        if (!(aPC instanceof TextDocUtils.CharsChange)) return;
+        TextDocUtils.CharsChange charsChange = (TextDocUtils.CharsChange) aPC;
+
+        // Get changed range in current text (removes just affect line at index)
+        int startCharIndex = charsChange.getIndex();
+        int endCharIndex = charsChange.getNewEnd();
+        endCharIndex = Math.min(endCharIndex, _textDoc.length());
+        startCharIndex = Math.min(startCharIndex, endCharIndex);
+
+        // Invalidate lines in range
+        invalidateLines(startCharIndex, endCharIndex);
+    }
+
+    /**
+     * Called when TextDoc has batch of prop changes (sent after all changes were applied).
+     */
+    protected void textDocDidPropChanges(List<PropChange> theChanges)
+    {
+        // Only care about chars changes
+        List<PropChange> charsChanges = new ArrayList<>();
+        for (PropChange change : theChanges)
+            if (change instanceof TextDocUtils.CharsChange)
+                charsChanges.add(change);
+
+        // Invalidate lines in changed range
+        int[] changedRange = TextDocUtils.getChangedCharRange(_textDoc, charsChanges);
+        if (changedRange != null)
+            invalidateLines(changedRange[0], changedRange[1]);
+    }
+
+    /**
+     * Marks lines in given char range as needing check (lines not previously asked for are checked when asked).
+     */
+    private void invalidateLines(int startCharIndex, int endCharIndex)
+    {
+        TextLine startLine = _textDoc.getLineForCharIndex(startCharIndex);
+        TextLine endLine = _textDoc.getLineForCharIndex(endCharIndex);
+        for (int i = startLine.getIndex(), iMax = endLine.getIndex(); i <= iMax; i++)
+            invalidateLine(_textDoc.getLine(i));
+    }
+
+    /**
+     * Marks line as needing check if it has been asked for.
+     */
+    private void invalidateLine(TextLine aTextLine)
+    {
+        LineState lineState = _lineStates.get(aTextLine);
+        if (lineState == null) return;
+        lineState.version++;
+        lineState.ranges = null;
+        _dirtyLines.add(aTextLine);
+        checkDirtyLinesLater();
+    }
+
+    /**
+     * Starts a background check of dirty lines (if not already running).
+     */
+    private void checkDirtyLinesLater()
+    {
+        // If runner active or no dirty lines, just return
+        if (_runner != null || _dirtyLines.isEmpty()) return;
+
+        // Snapshot line strings and versions
+        List<LineCheck> lineChecks = new ArrayList<>();
+        for (Iterator<TextLine> iter = _dirtyLines.iterator(); iter.hasNext() && lineChecks.size() < MAX_LINES_PER_RUN; ) {
+            TextLine textLine = iter.next();
+            iter.remove();
+            LineState lineState = _lineStates.get(textLine);
+            if (lineState != null && textLine.getTextDoc() == _textDoc)
+                lineChecks.add(new LineCheck(textLine, lineState.version, textLine.getString()));
+        }
+        if (lineChecks.isEmpty()) return;
+
+        // If no event thread (headless), just check now
+        ViewEnv viewEnv = ViewEnv.getEnv();
+        if (viewEnv == null) {
+            checkLines(lineChecks);
+            publishLineChecks(lineChecks);
+            return;
+        }
+
+        // Create and start runner: Check lines in background and publish in event thread
+        TaskRunner<Void> runner = new TaskRunner<Void>() {
+            public Void run()
+            {
+                checkLines(lineChecks);
+                return null;
+            }
+            public void success(Void aResult)
+            {
+                viewEnv.runLater(() -> { if (_runner == this) publishLineChecks(lineChecks); });
+            }
+            public void failure(Exception e)
+            {
+                viewEnv.runLater(() -> { if (_runner == this) _runner = null; });
+            }
+        };
+        runner.setName("TextSpellChecker");
+        _runner = runner;
+        runner.start();
+    }
+
+    /**
+     * Finds misspelled ranges for given line checks.
+     */
+    private void checkLines(List<LineCheck> theLineChecks)
+    {
+        for (LineCheck lineCheck : theLineChecks) {
+            String str = lineCheck.string;
+            int[] ranges = NO_RANGES;
+            int count = 0;
+            for (SpellCheck.Word word = SpellCheck.getMisspelledWord(str, 0, str.length(), _dict); word != null;
+                 word = SpellCheck.getMisspelledWord(str, word.getEnd(), str.length(), _dict)) {
+                if (count + 2 > ranges.length)
+                    ranges = Arrays.copyOf(ranges, Math.max(ranges.length * 2, 8));
+                ranges[count++] = word.getStart();
+                ranges[count++] = word.getEnd();
+            }
+            lineCheck.ranges = count < ranges.length ? Arrays.copyOf(ranges, count) : ranges;
+        }
+    }
+
+    /**
+     * Publishes given line checks (in event thread) and starts next check, if needed.
+     */
+    private void publishLineChecks(List<LineCheck> theLineChecks)
+    {
+        // Set ranges for lines unchanged since snapshot
+        for (LineCheck lineCheck : theLineChecks) {
+            LineState lineState = _lineStates.get(lineCheck.textLine);
+            if (lineState != null && lineState.version == lineCheck.version)
+                lineState.ranges = lineCheck.ranges;
+        }
+
+        // Clear runner and check remaining lines
+        _runner = null;
+        checkDirtyLinesLater();
+
+        // Notify listener
+        if (_listener != null)
+            _listener.run();
+    }
+
+    /**
+     * The check state for a line.
+     */
+    private static class LineState {
+
+        // The misspelled ranges (null if not checked since last change)
+        int[]  ranges;
+
+        // The change version
+        int  version;
+    }
+
+    /**
+     * A snapshot of a line to check in background.
+     */
+    private static class LineCheck {
+
+        // The line, version and string at snapshot time
+        TextLine  textLine;
+        int  version;
+        String  string;
+
+        // The misspelled ranges found
+        int[]  ranges;
+
+        /** Constructor. */
+        LineCheck(TextLine aTextLine, int aVersion, String aString)
+        {
+            textLine = aTextLine; version = aVersion; string = aString;
+        }
+    }
+}
@@ -2,7 +2,9 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.text;
+import java.lang.ref.WeakReference;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import snap.gfx.Border;
 import snap.gfx.Color;
@@ -37,6 +39,15 @@ public class TextStyle implements Cloneable {
     
     // The text border (outline)
     private Border  _border;
+
+    // Whether this style is the shared instance from the intern table
+    private boolean  _interned;
+
+    // The cached hash code
+    private int  _hashCode;
+
+    // The table of interned styles
+    private static final Map<TextStyle,WeakReference<TextStyle>>  _internTable = new WeakHashMap<>();
     
     // Constants for style attribute keys
     public static final String FONT_KEY = "Font";
@@ -49,8 +60,8 @@ public class TextStyle implements Cloneable {
     public static final String FORMAT_KEY = "Format";
     
     // Constants for default text styles
-    public static final TextStyle DEFAULT = new TextStyle();
-    public static final TextStyle MONOSPACE_DEFAULT = new TextStyle(new Font("Consolas", 12));
+    public static final TextStyle DEFAULT = new TextStyle().intern();
+    public static final TextStyle MONOSPACE_DEFAULT = new TextStyle(new Font("Consolas", 12)).intern();
 
     // Constant for Link attributes
     private static final TextStyle DEFAULT_LINK_STYLE = DEFAULT.copyFor(COLOR_KEY, Color.BLUE).copyFor(UNDERLINE_KEY, 1);
@@ -122,6 +133,11 @@ public class TextStyle implements Cloneable {
      */
     public double getCharAdvance(char aChar)  { return getFont().charAdvance(aChar); }
 
+    /**
+     * Returns the char advance for the char at given index (surrogate pair advance goes to high surrogate).
+     */
+    public double getCharAdvance(CharSequence theChars, int anIndex)  { return getFont().charAdvance(theChars, anIndex); }
+
     /**
      * Returns the max distance above the baseline for this run font.
      */
@@ -154,6 +170,8 @@ public class TextStyle implements Cloneable {
     {
         if (anObj == this) return true;
         TextStyle other = anObj instanceof TextStyle ? (TextStyle) anObj : null; if (other == null) return false;
+        if (_interned && other._interned) return false;
+        if (_hashCode != 0 && other._hashCode != 0 && _hashCode != other._hashCode) return false;
         if (!SnapUtils.equals(other.getFont(), getFont())) return false;
         if (!SnapUtils.equals(other.getColor(), getColor())) return false;
         if (!SnapUtils.equals(other.getFormat(), getFormat())) return false;
@@ -170,7 +188,42 @@ public class TextStyle implements Cloneable {
      */
     public int hashCode()
     {
-        return getFont() != null ? getFont().hashCode() : 0;
+        // If already calculated, just return
+        if (_hashCode != 0) return _hashCode;
+
+        // Combine attribute hash codes (Border and TextFormat skipped - they don't override hashCode)
+        int hash = _font != null ? _font.hashCode() : 0;
+        hash = hash * 31 + (_color != null ? _color.hashCode() : 0);
+        hash = hash * 31 + _underline;
+        hash = hash * 31 + _scripting;
+        hash = hash * 31 + Double.hashCode(_charSpacing);
+        hash = hash * 31 + (_link != null ? _link.hashCode() : 0);
+        return _hashCode = hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Returns whether this style is the shared instance for its attributes.
+     */
+    public boolean isInterned()  { return _interned; }
+
+    /**
+     * Returns the shared instance for this style's attributes, so equal styles can be compared by identity.
+     */
+    public TextStyle intern()
+    {
+        // If already interned, just return
+        if (_interned) return this;
+
+        // Get shared instance from table (or make this the shared instance)
+        synchronized (_internTable) {
+            WeakReference<TextStyle> ref = _internTable.get(this);
+            TextStyle style = ref != null ? ref.get() : null;
+            if (style != null)
+                return style;
+            _interned = true;
+            _internTable.put(this, new WeakReference<>(this));
+            return this;
+        }
     }
 
     /**
@@ -181,6 +234,7 @@ public class TextStyle implements Cloneable {
         TextStyle clone = null;
         try { clone = (TextStyle) super.clone(); }
         catch(CloneNotSupportedException e) { }
+        clone._interned = false;
         return clone;
     }
 
@@ -209,8 +263,8 @@ public class TextStyle implements Cloneable {
                 clone.setValue(key, obj);
         }
 
-        // Return
-        return clone;
+        // Return shared instance
+        return clone.intern();
     }
 
     /**
@@ -220,7 +274,7 @@ public class TextStyle implements Cloneable {
     {
         TextStyle clone = clone();
         clone.setValue(aKey, aValue);
-        return clone;
+        return clone.intern();
     }
 
     /**
@@ -231,7 +285,7 @@ public class TextStyle implements Cloneable {
         TextStyle clone = clone();
         for (Map.Entry entry : aMap.entrySet())
             clone.setValue((String)entry.getKey(), entry.getValue());
-        return clone;
+        return clone.intern();
     }
 
     /**
@@ -239,6 +293,11 @@ public class TextStyle implements Cloneable {
      */
     protected void setValue(String aKey, Object aValue)
     {
+        // If interned, complain (shared instances can't change)
+        if (_interned)
+            throw new IllegalStateException("TextStyle.setValue: Can't modify interned style");
+        _hashCode = 0;
+
         if (aKey.equals(FONT_KEY))
             _font = (Font) aValue;
         else if (aKey.equals(COLOR_KEY))
@@ -158,11 +158,11 @@ public class TextToken implements Cloneable {
         TextStyle runStyle = _textRun.getStyle();
         double charSpacing = runStyle.getCharSpacing();
 
-        // Iterate over chars
+        // Measure chars and add spacing
         double tokenW = 0;
-        for (int i = startCharIndex; i < endCharIndex; i++) {
-            char loopChar = _textLine.charAt(i);
-            tokenW += runStyle.getCharAdvance(loopChar) + charSpacing;
+        if (startCharIndex < endCharIndex) {
+            tokenW = runStyle.getFont().measureRun(_textLine, startCharIndex, endCharIndex, null);
+            tokenW += charSpacing * (endCharIndex - startCharIndex);
         }
 
         // If TrimCharSpacing, remove extra spacing
@@ -243,6 +243,17 @@ public class TextToken implements Cloneable {
         return copy;
     }
 
+    /**
+     * Shifts token char indexes by given amount (for chars change before token) and clears X.
+     */
+    protected void shiftCharIndex(int aDelta)
+    {
+        _startCharIndex += aDelta;
+        _endCharIndex += aDelta;
+        _endAllCharIndex += aDelta;
+        _x = -1;
+    }
+
     /**
      * Returns whether token can be split.
      */
@@ -316,21 +327,84 @@ public class TextToken implements Cloneable {
      */
     public static TextToken[] createTokensForTextLine(TextLine aTextLine)
     {
-        // Loop vars
         List<TextToken> tokens = new ArrayList<>();
-        int tokenStart = 0;
-        int lineLength = aTextLine.length();
+        addTokensForLineRange(aTextLine, 0, aTextLine.length(), tokens);
+        return tokens.toArray(new TextToken[0]);
+    }
+
+    /**
+     * Returns tokens updated from given tokens for chars change (chars from start to old end were replaced by chars
+     * from start to new end). Only tokens touching the change are recreated - tokens after are shifted.
+     */
+    public static TextToken[] updateTokensForTextLine(TextLine aTextLine, TextToken[] theTokens, int aStart, int anOldEnd, int aNewEnd)
+    {
+        // Get index of first token touching change (including trailing whitespace)
+        int tokenCount = theTokens.length;
+        int lo = 0, hi = tokenCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (theTokens[mid]._endAllCharIndex < aStart)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        int firstIndex = lo;
+
+        // Get index of first token after change
+        int afterIndex = firstIndex;
+        while (afterIndex < tokenCount && theTokens[afterIndex]._startCharIndex <= anOldEnd)
+            afterIndex++;
+
+        // Create tokens for chars from end of previous token to start of next token
+        int delta = aNewEnd - anOldEnd;
+        int rangeStart = firstIndex > 0 ? theTokens[firstIndex - 1]._endAllCharIndex : 0;
+        int rangeEnd = afterIndex < tokenCount ? theTokens[afterIndex]._startCharIndex + delta : aTextLine.length();
+        List<TextToken> rangeTokens = new ArrayList<>();
+        addTokensForLineRange(aTextLine, rangeStart, rangeEnd, rangeTokens);
+
+        // Get tokens array with previous tokens (reuse given array if token count didn't change)
+        int rangeCount = rangeTokens.size();
+        int newCount = firstIndex + rangeCount + tokenCount - afterIndex;
+        TextToken[] tokens = theTokens;
+        if (newCount != tokenCount) {
+            tokens = new TextToken[newCount];
+            System.arraycopy(theTokens, 0, tokens, 0, firstIndex);
+        }
+
+        // Add range tokens and shifted following tokens (previous tokens keep X, since change is after them)
+        for (int i = 0; i < rangeCount; i++) {
+            TextToken token = tokens[firstIndex + i] = rangeTokens.get(i);
+            token._index = firstIndex + i;
+        }
+        for (int i = afterIndex, j = firstIndex + rangeCount; i < tokenCount; i++, j++) {
+            TextToken token = tokens[j] = theTokens[i];
+            token.shiftCharIndex(delta);
+            token._index = j;
+        }
+
+        // Return
+        return tokens;
+    }
+
+    /**
+     * Adds tokens for given char range in line (range should start at token or run start and end at token start).
+     */
+    private static void addTokensForLineRange(TextLine aTextLine, int aStart, int anEnd, List<TextToken> theTokens)
+    {
+        // Loop vars
+        int tokenStart = aStart;
 
         // Get Run info
-        TextRun run = aTextLine.getRun(0);
+        TextRun run = aTextLine.getRunForCharIndex(aStart);
         int runEnd = run.getEndCharIndex();
 
-        // Iterate over line chars
-        while (tokenStart < lineLength) {
+        // Iterate over range chars
+        while (tokenStart < anEnd) {
 
             // Find token start: Skip past whitespace
             while (tokenStart < runEnd && Character.isWhitespace(aTextLine.charAt(tokenStart)))
                 tokenStart++;
+            if (tokenStart >= anEnd)
+                break;
 
             // Find token end: Skip to first non-whitespace char
             int tokenEnd = tokenStart;
@@ -340,19 +414,16 @@ public class TextToken implements Cloneable {
             // If chars found, create/add token
             if (tokenStart < tokenEnd) {
                 TextToken token = new TextToken(aTextLine, tokenStart, tokenEnd, run);
-                tokens.add(token);
+                theTokens.add(token);
                 tokenStart = tokenEnd;
             }
 
-            // If at RunEnd but not LineEnd, update Run info with next run
-            if (tokenStart == runEnd && tokenStart < lineLength) {
+            // If at RunEnd but not range end, update Run info with next run
+            if (tokenStart == runEnd && tokenStart < anEnd) {
                 run = run.getNext();
                 runEnd = run.getEndCharIndex();
             }
         }
-
-        // Return
-        return tokens.toArray(new TextToken[0]);
     }
 
     /**
@@ -385,7 +456,7 @@ public class TextToken implements Cloneable {
                 char loopChar = aTextLine.charAt(charIndex);
                 if (loopChar == '\t')
                     tokenX = aTextLine.getXForTabAtIndexAndX(charIndex, tokenX);
-                else tokenX += runStyle.getCharAdvance(loopChar) + charSpacing;
+                else tokenX += runStyle.getCharAdvance(aTextLine, charIndex) + charSpacing;
                 charIndex++;
             }
 
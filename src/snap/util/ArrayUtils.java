@@ -5,12 +5,18 @@ package snap.util;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 /**
  * A collection of array utility methods.
  */
 public class ArrayUtils {
 
+    // Constants for content hash: Min length to hash in parallel and chunk size
+    private static final int HASH_PARALLEL_MIN = 1024 * 1024;
+    private static final int HASH_CHUNK_SIZE = 256 * 1024;
+
     /**
      * Returns the length of a given object array (or zero, if null).
      */
@@ -257,6 +263,37 @@ public class ArrayUtils {
         return true;
     }
 
+    /**
+     * Returns a fast content hash for given bytes: Length in high 32 bits and CRC32 in low 32 bits. Large arrays are
+     * hashed in chunks in parallel (low bits are then CRC32 of chunk CRCs). Equal bytes always have equal hashes.
+     */
+    public static long getContentHash(byte[] theBytes)
+    {
+        // Handle small arrays (or TeaVM): Just return length + CRC32
+        int length = theBytes.length;
+        if (length < HASH_PARALLEL_MIN || SnapUtils.isTeaVM) {
+            CRC32 crc = new CRC32();
+            crc.update(theBytes, 0, length);
+            return (long) length << 32 | crc.getValue();
+        }
+
+        // Get CRC32 of each chunk in parallel
+        int chunkCount = (length + HASH_CHUNK_SIZE - 1) / HASH_CHUNK_SIZE;
+        long[] chunkCRCs = IntStream.range(0, chunkCount).parallel().mapToLong(i -> {
+            CRC32 crc = new CRC32();
+            int start = i * HASH_CHUNK_SIZE;
+            crc.update(theBytes, start, Math.min(HASH_CHUNK_SIZE, length - start));
+            return crc.getValue();
+        }).toArray();
+
+        // Get CRC32 of chunk CRCs and return with length
+        CRC32 crc = new CRC32();
+        for (long chunkCRC : chunkCRCs)
+            for (int i = 0; i < 4; i++)
+                crc.update((int) (chunkCRC >>> (i * 8)));
+        return (long) length << 32 | crc.getValue();
+    }
+
     /**
      * Returns whether two float arrays are equal.
      */
@@ -81,6 +81,15 @@ public class CharSequenceUtils {
         return isLineEndChar(theChars.charAt(anIndex));
     }
 
+    /**
+     * Returns whether the index in the given char sequence is between the chars of a surrogate pair.
+     */
+    public static boolean isInSurrogatePair(CharSequence theChars, int anIndex)
+    {
+        return anIndex > 0 && anIndex < theChars.length() && Character.isLowSurrogate(theChars.charAt(anIndex)) &&
+            Character.isHighSurrogate(theChars.charAt(anIndex - 1));
+    }
+
     /**
      * Returns whether a char is a newline char.
      */
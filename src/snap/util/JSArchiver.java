@@ -64,7 +64,7 @@ public class JSArchiver {
     public Object readSource(Object aSource)
     {
         JSValue node = aSource instanceof JSValue ? (JSValue)aSource :
-            new JSParser().readSource(aSource);
+            JSReader.readSource(aSource);
         return readNode(node);
     }
 
@@ -73,7 +73,7 @@ public class JSArchiver {
      */
     public Object readString(String aString)
     {
-        JSValue node = new JSParser().readString(aString);
+        JSValue node = JSReader.readString(aString);
         return readNode(node);
     }
 
@@ -3,7 +3,6 @@
  */
 package snap.util;
 import snap.parse.*;
-import snap.web.*;
 
 /**
  * A JSONParser subclass (with handlers).
@@ -31,18 +30,25 @@ public class JSParser extends Parser {
     }
 
     /**
-     * Reads JSON from a source.
+     * Reads JSON from a source (uses streaming JSReader).
      */
     public JSValue readSource(Object aSource)
     {
-        WebURL url = WebURL.getURL(aSource);
-        return readString(url.getText());
+        return JSReader.readSource(aSource);
     }
 
     /**
-     * Returns a KeyChain for given string.
+     * Reads JSON from a string (uses streaming JSReader).
      */
     public JSValue readString(String aString)
+    {
+        return JSReader.readString(aString);
+    }
+
+    /**
+     * Parses JSON from a string with grammar.
+     */
+    public JSValue parseString(String aString)
     {
         // Parse string
         try { return parse(aString).getCustomNode(JSValue.class); }
@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.util;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A streaming pull reader for JSON: Reads tokens one at a time from a Reader (or string) with a small buffer, so large
+ * documents don't need to be loaded as text or run through generic parser. Also builds JSValue trees directly.
+ *
+ * Call nextToken() to get next token (and getString(), getNumber() or getBoolean() for its value) or skipValue() to
+ * skip next value. Accepts same JSON as JSParser.
+ */
+public class JSReader {
+
+    // The reader (null if reading from string)
+    private Reader  _reader;
+
+    // The char buffer, the index of next char in buffer and the number of chars in buffer
+    private char[]  _buf;
+    private int  _pos, _limit;
+
+    // The number of chars read before buffer (for error char index)
+    private long  _bufStart;
+
+    // The string value of last Key or String token
+    private String  _string;
+
+    // The value of last String, Number, Boolean or Null token
+    private Object  _value;
+
+    // The state for each open container (top level is index 0)
+    private int[]  _states = new int[32];
+
+    // The number of open containers
+    private int  _depth;
+
+    // A string builder for strings with escapes or across buffer ends
+    private StringBuilder  _sb = new StringBuilder();
+
+    // Constants for token types
+    public enum Token { BeginObject, EndObject, BeginArray, EndArray, Key, String, Number, Boolean, Null, EndDocument }
+
+    // Constants for states
+    private static final int DOC_START = 0, DOC_END = 1, OBJECT_START = 2, OBJECT_KEY = 3, OBJECT_VALUE = 4;
+    private static final int ARRAY_START = 5, ARRAY_VALUE = 6;
+
+    // Constant for buffer size
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Constructor for given reader.
+     */
+    public JSReader(Reader aReader)
+    {
+        _reader = aReader;
+        _buf = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for given input stream (UTF-8).
+     */
+    public JSReader(InputStream anInputStream)
+    {
+        this(new InputStreamReader(anInputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Constructor for given string.
+     */
+    public JSReader(String aString)
+    {
+        _buf = aString.toCharArray();
+        _limit = _buf.length;
+    }
+
+    /**
+     * Returns the next token.
+     */
+    public Token nextToken() throws IOException
+    {
+        // Clear values and get next non-whitespace char
+        _string = null;
+        _value = null;
+        int c = skipWhiteSpace();
+
+        // Handle state
+        switch (_states[_depth]) {
+
+            // Handle document start: Read value
+            case DOC_START:
+                _states[_depth] = DOC_END;
+                return readValueToken(c);
+
+            // Handle document end: Return EndDocument
+            case DOC_END:
+                if (c >= 0)
+                    throw error("Unexpected char after value: " + (char) c);
+                return Token.EndDocument;
+
+            // Handle object start: Return EndObject or read Key
+            case OBJECT_START:
+                if (c == '}')
+                    return endContainer(Token.EndObject);
+                return readKeyToken(c);
+
+            // Handle object after key: Read colon and value
+            case OBJECT_KEY:
+                if (c != ':')
+                    throw error("Expected ':'");
+                _pos++;
+                _states[_depth] = OBJECT_VALUE;
+                return readValueToken(skipWhiteSpace());
+
+            // Handle object after value: Return EndObject or read comma and Key
+            case OBJECT_VALUE:
+                if (c == '}')
+                    return endContainer(Token.EndObject);
+                if (c != ',')
+                    throw error("Expected ',' or '}'");
+                _pos++;
+                return readKeyToken(skipWhiteSpace());
+
+            // Handle array start: Return EndArray or read value
+            case ARRAY_START:
+                if (c == ']')
+                    return endContainer(Token.EndArray);
+                _states[_depth] = ARRAY_VALUE;
+                return readValueToken(c);
+
+            // Handle array after value: Return EndArray or read comma and value
+            case ARRAY_VALUE:
+                if (c == ']')
+                    return endContainer(Token.EndArray);
+                if (c != ',')
+                    throw error("Expected ',' or ']'");
+                _pos++;
+                return readValueToken(skipWhiteSpace());
+
+            // Default
+            default: throw new IllegalStateException("JSReader: Invalid state");
+        }
+    }
+
+    /**
+     * Returns the string of last Key or String token.
+     */
+    public String getString()  { return _string; }
+
+    /**
+     * Returns the value of last String, Number, Boolean or Null token.
+     */
+    public Object getValue()  { return _value; }
+
+    /**
+     * Returns the number of last Number token.
+     */
+    public Number getNumber()  { return (Number) _value; }
+
+    /**
+     * Returns the boolean of last Boolean token.
+     */
+    public boolean getBoolean()  { return _value == Boolean.TRUE; }
+
+    /**
+     * Returns the number of open objects and arrays.
+     */
+    public int getDepth()  { return _depth; }
+
+    /**
+     * Skips the next value (including all its children if object or array).
+     */
+    public void skipValue() throws IOException
+    {
+        int depth = _depth;
+        Token token = nextToken();
+        if (token == Token.Key)
+            token = nextToken();
+        if (token == Token.BeginObject || token == Token.BeginArray)
+            while (_depth > depth)
+                nextToken();
+    }
+
+    /**
+     * Reads the next value as a JSValue tree.
+     */
+    public JSValue readValue() throws IOException
+    {
+        Token token = nextToken();
+        if (token == Token.Key)
+            token = nextToken();
+        return readValue(token);
+    }
+
+    /**
+     * Reads a JSValue tree for value starting with given token.
+     */
+    private JSValue readValue(Token aToken) throws IOException
+    {
+        switch (aToken) {
+
+            // Handle Object: Read pairs
+            case BeginObject: {
+                JSObject objectJS = new JSObject();
+                for (Token token = nextToken(); token != Token.EndObject; token = nextToken()) {
+                    String key = _string;
+                    objectJS.setValue(key, readValue(nextToken()));
+                }
+                return objectJS;
+            }
+
+            // Handle Array: Read values
+            case BeginArray: {
+                JSArray arrayJS = new JSArray();
+                for (Token token = nextToken(); token != Token.EndArray; token = nextToken())
+                    arrayJS.addValue(readValue(token));
+                return arrayJS;
+            }
+
+            // Handle String, Number, Boolean, Null
+            case String: case Number: case Boolean: case Null:
+                return new JSValue(_value);
+
+            // Handle anything else
+            default: throw error("Expected value");
+        }
+    }
+
+    /**
+     * Reads a value token starting with given char.
+     */
+    private Token readValueToken(int c) throws IOException
+    {
+        switch (c) {
+
+            // Handle Object and Array
+            case '{': _pos++; return beginContainer(OBJECT_START, Token.BeginObject);
+            case '[': _pos++; return beginContainer(ARRAY_START, Token.BeginArray);
+
+            // Handle String
+            case '"':
+                _value = _string = readString();
+                return Token.String;
+
+            // Handle Boolean and Null
+            case 't': readLiteral("true"); _value = Boolean.TRUE; return Token.Boolean;
+            case 'f': readLiteral("false"); _value = Boolean.FALSE; return Token.Boolean;
+            case 'n': readLiteral("null"); return Token.Null;
+
+            // Handle Number
+            case '-': case '+': case '.': case '0': case '1': case '2': case '3': case '4': case '5': case '6':
+            case '7': case '8': case '9':
+                _value = readNumber();
+                return Token.Number;
+
+            // Handle end of input and anything else
+            case -1: throw error("Unexpected end of input");
+            default: throw error("Unexpected char: " + (char) c);
+        }
+    }
+
+    /**
+     * Reads a key token starting with given char.
+     */
+    private Token readKeyToken(int c) throws IOException
+    {
+        if (c != '"')
+            throw error("Expected key string");
+        _string = readString();
+        _states[_depth] = OBJECT_KEY;
+        return Token.Key;
+    }
+
+    /**
+     * Pushes a container with given state and returns given token.
+     */
+    private Token beginContainer(int aState, Token aToken)
+    {
+        if (++_depth == _states.length)
+            _states = Arrays.copyOf(_states, _depth * 2);
+        _states[_depth] = aState;
+        return aToken;
+    }
+
+    /**
+     * Pops current container (after closing char) and returns given token.
+     */
+    private Token endContainer(Token aToken)
+    {
+        _pos++;
+        _depth--;
+        return aToken;
+    }
+
+    /**
+     * Reads a string (starting at quote) and returns it with escapes converted.
+     */
+    private String readString() throws IOException
+    {
+        // Fast path: If string ends in buffer without escapes, return chars in buffer
+        int start = ++_pos;
+        for (int i = start; i < _limit; i++) {
+            char c = _buf[i];
+            if (c == '"') {
+                _pos = i + 1;
+                return new String(_buf, start, i - start);
+            }
+            if (c == '\\')
+                break;
+        }
+
+        // Slow path: Append chars (and converted escapes) to string builder until closing quote
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        while (true) {
+            if (_pos == _limit && !fill())
+                throw error("Unterminated string");
+            char c = _buf[_pos++];
+            if (c == '"')
+                break;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            // Handle escape
+            if (_pos == _limit && !fill())
+                throw error("Unterminated string");
+            char esc = _buf[_pos++];
+            switch (esc) {
+                case '"': case '\\': case '/': sb.append(esc); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u': {
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (_pos == _limit && !fill())
+                            throw error("Unterminated string");
+                        int digit = Character.digit(_buf[_pos++], 16);
+                        if (digit < 0)
+                            throw error("Invalid unicode escape");
+                        value = value * 16 + digit;
+                    }
+                    sb.append((char) value);
+                    break;
+                }
+                default: throw error("Invalid escape: \\" + esc);
+            }
+        }
+
+        // Return string
+        return sb.toString();
+    }
+
+    /**
+     * Reads a number and returns Double (or BigDecimal if it can't be a Double).
+     */
+    private Number readNumber() throws IOException
+    {
+        // Get number chars
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        while (_pos < _limit || fill()) {
+            char c = _buf[_pos];
+            if (c >= '0' && c <= '9' || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E') {
+                sb.append(c);
+                _pos++;
+            }
+            else break;
+        }
+
+        // Return number
+        String str = sb.toString();
+        try { return Double.valueOf(str); }
+        catch (NumberFormatException e) {
+            try { return new BigDecimal(str); }
+            catch (NumberFormatException e2) { throw error("Invalid number: " + str); }
+        }
+    }
+
+    /**
+     * Reads given literal chars.
+     */
+    private void readLiteral(String aLiteral) throws IOException
+    {
+        for (int i = 0, iMax = aLiteral.length(); i < iMax; i++) {
+            if (_pos == _limit && !fill() || _buf[_pos] != aLiteral.charAt(i))
+                throw error("Expected " + aLiteral);
+            _pos++;
+        }
+    }
+
+    /**
+     * Skips whitespace and returns next char (without consuming it) or -1 if at end of input.
+     */
+    private int skipWhiteSpace() throws IOException
+    {
+        while (_pos < _limit || fill()) {
+            char c = _buf[_pos];
+            if (!Character.isWhitespace(c))
+                return c;
+            _pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Fills buffer from reader. Returns false if at end of input.
+     */
+    private boolean fill() throws IOException
+    {
+        if (_reader == null) return false;
+        _bufStart += _limit;
+        _pos = _limit = 0;
+        int count = _reader.read(_buf);
+        while (count == 0)
+            count = _reader.read(_buf);
+        if (count < 0) {
+            _reader = null;
+            return false;
+        }
+        _limit = count;
+        return true;
+    }
+
+    /**
+     * Returns an exception for given message at current char index.
+     */
+    private IOException error(String aMessage)
+    {
+        return new IOException("JSReader: " + aMessage + " at char " + (_bufStart + _pos));
+    }
+
+    /**
+     * Reads a JSValue tree from given source (prints error and returns null if not found or invalid).
+     */
+    public static JSValue readSource(Object aSource)
+    {
+        // Get stream for source (file and URL sources are streamed, not loaded)
+        InputStream inputStream = SnapUtils.getInputStream(aSource);
+        if (inputStream == null) return null;
+
+        // Read value (close stream if opened here)
+        try { return new JSReader(inputStream).readValue(); }
+        catch (IOException e) { e.printStackTrace(); }
+        finally {
+            if (inputStream != aSource)
+                try { inputStream.close(); } catch (IOException ignore) { }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a JSValue tree from given string (prints error and returns null if invalid).
+     */
+    public static JSValue readString(String aString)
+    {
+        try { return new JSReader(aString).readValue(); }
+        catch (IOException e) { e.printStackTrace(); }
+        return null;
+    }
+}
@@ -3,7 +3,6 @@
  */
 package snap.util;
 import java.util.*;
-import snap.web.WebURL;
 
 /**
  * Represents a node in a JSON tree.
@@ -105,9 +104,6 @@ public class JSValue {
      */
     public static JSValue readSource(Object aSource)
     {
-        WebURL url = WebURL.getURL(aSource);
-        JSParser parser = new JSParser();
-        String text = url.getText();
-        return parser.readString(text);
+        return JSReader.readSource(aSource);
     }
 }
\ No newline at end of file
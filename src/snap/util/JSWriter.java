@@ -2,11 +2,12 @@
  * Copyright (c) 2010, ReportMill Software. All rights reserved.
  */
 package snap.util;
+import java.io.*;
 import java.util.Collection;
 import java.util.Map;
 
 /**
- * Writes a JSON to string.
+ * Writes a JSON to string (or streams it to a Writer).
  */
 public class JSWriter {
 
@@ -21,6 +22,15 @@ public class JSWriter {
     
     // Whether writer compacts JSON (no indent or newline)
     private boolean  _compacted = false;
+
+    // The writer to stream to (while writing)
+    private Writer  _writer;
+
+    // The chunk for copying chars to writer
+    private char[]  _chunk;
+
+    // The buffer length at which buffer is written to writer
+    private static final int CHUNK_SIZE = 8192;
     
     /**
      * Returns the current indent.
@@ -81,6 +91,22 @@ public class JSWriter {
         return append(sb, null, aNode);
     }
 
+    /**
+     * Writes given JSON node to given writer: Writes buffer to writer in chunks instead of building whole string.
+     */
+    public void write(JSValue aNode, Writer aWriter) throws IOException
+    {
+        StringBuffer sb = new StringBuffer(CHUNK_SIZE + 1024);
+        _writer = aWriter;
+        try {
+            append(sb, null, aNode);
+            writeBuffer(sb);
+            aWriter.flush();
+        }
+        catch (UncheckedIOException e) { throw e.getCause(); }
+        finally { _writer = null; }
+    }
+
     /**
      * Returns a string buffer for given JSON node.
      */
@@ -91,7 +117,7 @@ public class JSWriter {
 
             // Append key + colon + space
             if (_quoteKeys)
-                aSB.append('"').append(aKey).append('"').append(':').append(' ');
+                appendString(aSB, aKey).append(':').append(' ');
             else aSB.append(aKey).append(':').append(' ');
         }
 
@@ -132,6 +158,7 @@ public class JSWriter {
             String key = keys[i];
             JSValue child = keyValues.get(key);
             append(aSB, key, child);
+            writeBufferIfFull(aSB);
 
             // If has next, append separator and whitespace
             if (i + 1 < iMax) {
@@ -169,6 +196,7 @@ public class JSWriter {
             // Append item
             JSValue item = arrayJS.getValue(i);
             append(aSB, null, item);
+            writeBufferIfFull(aSB);
 
             // If has next, append separator
             boolean hasNext = i+1 < count;
@@ -194,23 +222,8 @@ public class JSWriter {
         Object value = valueJS.getValue();
 
         // Handle String
-        if (value instanceof String) {
-            String string = (String) value;
-            aSB.append('"');
-            for (int i = 0, iMax = string.length(); i < iMax; i++) {
-                char c = string.charAt(i);
-                if (c=='"' || c=='\\' || c=='/') aSB.append('\\').append(c);
-                else if (c=='\b') aSB.append("\\b");
-                else if (c=='\f') aSB.append("\\f");
-                else if (c=='\n') aSB.append("\\n");
-                else if (c=='\r') aSB.append("\\r");
-                else if (c=='\t') aSB.append("\\t");
-                else if (Character.isISOControl(c))
-                    System.err.println("JSONWriter.append: Tried to print control char in string: " + string);
-                else aSB.append(c);
-            }
-            aSB.append('"');
-        }
+        if (value instanceof String)
+            appendString(aSB, (String) value);
 
         // Handle Number
         else if (value instanceof Number) {
@@ -231,6 +244,27 @@ public class JSWriter {
         return aSB;
     }
 
+    /**
+     * Appends the given string to StringBuffer as quoted string with escapes.
+     */
+    protected StringBuffer appendString(StringBuffer aSB, String aString)
+    {
+        aSB.append('"');
+        for (int i = 0, iMax = aString.length(); i < iMax; i++) {
+            char c = aString.charAt(i);
+            if (c=='"' || c=='\\' || c=='/') aSB.append('\\').append(c);
+            else if (c=='\b') aSB.append("\\b");
+            else if (c=='\f') aSB.append("\\f");
+            else if (c=='\n') aSB.append("\\n");
+            else if (c=='\r') aSB.append("\\r");
+            else if (c=='\t') aSB.append("\\t");
+            else if (Character.isISOControl(c))
+                System.err.println("JSONWriter.append: Tried to print control char in string: " + aString);
+            else aSB.append(c);
+        }
+        return aSB.append('"');
+    }
+
     /**
      * Appends newline and indent.
      */
@@ -254,13 +288,39 @@ public class JSWriter {
         return aSB;
     }
 
+    /**
+     * Writes buffer to writer and clears it, if streaming and buffer has a chunk.
+     */
+    private void writeBufferIfFull(StringBuffer aSB)
+    {
+        if (_writer == null || aSB.length() < CHUNK_SIZE) return;
+        try { writeBuffer(aSB); }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    /**
+     * Writes buffer to writer and clears it.
+     */
+    private void writeBuffer(StringBuffer aSB) throws IOException
+    {
+        int length = aSB.length();
+        if (_chunk == null || _chunk.length < length)
+            _chunk = new char[Math.max(length, CHUNK_SIZE * 2)];
+        aSB.getChars(0, length, _chunk, 0);
+        _writer.write(_chunk, 0, length);
+        aSB.setLength(0);
+    }
+
     /**
      * Writes the given JSON object to given file path.
      */
     public void writeJSON(JSValue aNode, String aPath)
     {
-        String json = getString(aNode);
-        SnapUtils.writeBytes(StringUtils.getBytes(json), aPath);
+        File file = FileUtils.getFile(aPath);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"))) {
+            write(aNode, writer);
+        }
+        catch (IOException e) { throw new RuntimeException(e); }
     }
 
     /**
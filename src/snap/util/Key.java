@@ -3,17 +3,32 @@
  */
 package snap.util;
 import java.io.File;
+import java.lang.invoke.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * This class provides an optimized convenience for getting named values from arbitrary objects.
  */
 public class Key {
 
-    // A map of getter class maps for encountered classes (each map has an entry with getter for encountered keys)
+    // The accessor maps for encountered classes (each map has accessors for encountered keys) - null on TeaVM
+    private static ClassValue<Map<String,KeyAccessor>>  _classAccessors = SnapUtils.isTeaVM ? null : new ClassValue<Map<String,KeyAccessor>>() {
+        protected Map<String,KeyAccessor> computeValue(Class<?> aClass)  { return new ConcurrentHashMap<>(); }
+    };
+
+    // A map of getter class maps for encountered classes, for TeaVM (no ClassValue)
     private static Map _getterClasses = new Hashtable(10);
 
+    // Whether accessors use getter/setter functions generated with LambdaMetafactory (not available on TeaVM)
+    private static boolean  _useFunctions = !SnapUtils.isTeaVM;
+
+    // Whether to use original lookup (synchronized accessor map and reflective invoke), for benchmarks
+    private static boolean  _baselineLookup;
+
     /**
      * This is interface is implemented by objects that can get key values themselves.
      */
@@ -193,7 +208,32 @@ public class Key {
     /**
      * Returns the accessor object for a given object (class) and key.
      */
-    public synchronized static KeyAccessor getAccessor(Object anObj, String aKey)
+    public static KeyAccessor getAccessor(Object anObj, String aKey)
+    {
+        // If no ClassValue (or baseline lookup), use synchronized version
+        if (_classAccessors == null || _baselineLookup)
+            return getAccessorSync(anObj, aKey);
+
+        // Get accessor map for object class and accessor (lock free if already created)
+        Map<String,KeyAccessor> classMap = _classAccessors.get(anObj.getClass());
+        KeyAccessor accessor = classMap.get(aKey);
+
+        // If accessor not found, create and add (if another thread beat us to it, use theirs)
+        if (accessor == null) {
+            accessor = new KeyAccessor(anObj, aKey);
+            KeyAccessor accessor2 = classMap.putIfAbsent(aKey, accessor);
+            if (accessor2 != null)
+                accessor = accessor2;
+        }
+
+        // Return accessor
+        return accessor;
+    }
+
+    /**
+     * Returns the accessor object for a given object (class) and key (for TeaVM).
+     */
+    private synchronized static KeyAccessor getAccessorSync(Object anObj, String aKey)
     {
         // Get accessor class map for object class (if null, create and add)
         Map classMap = (Map)_getterClasses.get(anObj.getClass());
@@ -209,6 +249,11 @@ public class Key {
         return accessor;
     }
 
+    /**
+     * Sets whether to use original lookup path (synchronized accessor map and reflective invoke), for benchmarks.
+     */
+    static void setBaselineLookup(boolean aValue)  { _baselineLookup = aValue; }
+
     /**
      * Returns the key in a standard format (strip is/get prefix and start with capital letter).
      */
@@ -263,6 +308,10 @@ public class Key {
         // The method, if type is Method
         Method    _setMethod;
 
+        // The getter and setter functions for get/set methods (null if not available)
+        Function<Object,Object>  _getter;
+        BiConsumer<Object,Object>  _setter;
+
         // The field, if type is Field
         //Field     _field;
 
@@ -290,9 +339,13 @@ public class Key {
             if (anObj instanceof Enum) {
                 _type = Type.Enum; return; }
 
-            // Try to find get method
+            // Try to find get method (and create getter function)
             if (getGetMethod()!=null) {
-                _type = Type.Methods; return; }
+                _type = Type.Methods;
+                if (_getMethodArgs.length==0)
+                    _getter = createGetter(_getMethod);
+                return;
+            }
 
             // See if object has field (ivar)
             //try { _field = anObj.getClass().getField(_rawKey); if (_field!=null) { _type = Type.Field; return; } }
@@ -323,6 +376,22 @@ public class Key {
                 // Handle TYPE_METHODS
                 case Methods:
 
+                    // If getter function available, use it
+                    if (_getter!=null) {
+                        try { return _getter.apply(anObj); }
+
+                        // If class turned out to be inaccessible or unloadable for function, stop using function
+                        catch(LinkageError e) { _getter = null; }
+
+                        // Catch anything else (method threw) and complain
+                        catch(Throwable e) {
+                            String name = _getMethod.getName(), cname = anObj.getClass().getName();
+                            System.err.println("Key: ITException evaluating key " + name + " on object of class " + cname);
+                            e.printStackTrace();
+                            return null;
+                        }
+                    }
+
                     // Invoke method
                     try { return _getMethod.invoke(anObj, _getMethodArgs); }
 
@@ -451,7 +520,13 @@ public class Key {
             else if (List.class.isAssignableFrom(methodClass))
                 value = aValue;
 
-            // Invoke set method
+            // Invoke setter function if value fits arg class (wrap exceptions as Method.invoke would), otherwise invoke
+            // set method (which converts primitives or throws IllegalArgumentException for wrong type value)
+            if (_setter!=null && isArgValue(methodClass, value)) {
+                try { _setter.accept(anObj, value); return; }
+                catch(LinkageError e) { _setter = null; }
+                catch(RuntimeException e) { throw new InvocationTargetException(e); }
+            }
             method.invoke(anObj, value);
         }
 
@@ -471,16 +546,96 @@ public class Key {
                 throw new NoSuchMethodException(_class.getName() + '.' + "get" + _key);
 
             // Get arg class
-            Class argClass = getMethod.getReturnType();
+            Class<?> argClass = getMethod.getReturnType();
 
-            // Try to get a method of the same name, with no arguments
-            try { return _setMethod = ClassUtils.getMethodOrThrow(_class, key, argClass); }
+            // Try to get a method of the same name, with no arguments (and create setter function)
+            try {
+                Method setMethod = ClassUtils.getMethodOrThrow(_class, key, argClass);
+                _setter = createSetter(setMethod);
+                return _setMethod = setMethod;
+            }
             catch(Exception e) { _setMethod = _nullMethod; throw e; }
         }
     }
 
+    /** Returns a Function that calls given get method, generated with LambdaMetafactory (or null if not possible). */
+    @SuppressWarnings("unchecked")
+    private static Function<Object,Object> createGetter(Method aMethod)
+    {
+        // If functions not available, method returns void or method classes not visible to Key, just return
+        if (!_useFunctions || _baselineLookup || aMethod.getReturnType()==void.class || !isMethodVisible(aMethod)) return null;
+
+        // Get handle for method and generate function (boxes primitive return value)
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(aMethod);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+            return (Function<Object,Object>) site.getTarget().invoke();
+        }
+
+        // If method not accessible (or static, etc.), return null so method is invoked reflectively
+        catch(Throwable e) { return null; }
+    }
+
+    /** Returns a BiConsumer that calls given set method, generated with LambdaMetafactory (or null if not possible). */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object,Object> createSetter(Method aMethod)
+    {
+        // If functions not available or method classes not visible to Key, just return
+        if (!_useFunctions || _baselineLookup || !isMethodVisible(aMethod)) return null;
+
+        // Get handle for method and generate function (unboxes primitive arg value)
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(aMethod);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class), handle,
+                handle.type().wrap().changeReturnType(void.class));
+            return (BiConsumer<Object,Object>) site.getTarget().invoke();
+        }
+
+        // If method not accessible (or static, etc.), return null so method is invoked reflectively
+        catch(Throwable e) { return null; }
+    }
+
+    /**
+     * Returns whether method declaring class, return type and parameter types are visible from Key class loader
+     * (functions are defined there and can't resolve classes from child loaders, like plugins or user classes).
+     */
+    private static boolean isMethodVisible(Method aMethod)
+    {
+        if (!isClassVisible(aMethod.getDeclaringClass()) || !isClassVisible(aMethod.getReturnType()))
+            return false;
+        for (Class<?> paramClass : aMethod.getParameterTypes())
+            if (!isClassVisible(paramClass))
+                return false;
+        return true;
+    }
+
+    /** Returns whether given class is visible from Key class loader. */
+    private static boolean isClassVisible(Class<?> aClass)
+    {
+        // Get base class (for arrays) - if primitive or same loader as Key, return true
+        while (aClass.isArray()) aClass = aClass.getComponentType();
+        ClassLoader classLoader = aClass.getClassLoader(), keyLoader = Key.class.getClassLoader();
+        if (aClass.isPrimitive() || classLoader==null || classLoader==keyLoader) return true;
+
+        // Return whether Key class loader resolves class name to same class
+        try { return Class.forName(aClass.getName(), false, keyLoader)==aClass; }
+        catch(Throwable e) { return false; }
+    }
+
+    /** Returns whether given value can be passed to setter function for given arg class without conversion. */
+    private static boolean isArgValue(Class<?> aClass, Object aValue)
+    {
+        if (aClass.isPrimitive())
+            return aValue != null && MethodType.methodType(aClass).wrap().returnType().isInstance(aValue);
+        return aValue == null || aClass.isInstance(aValue);
+    }
+
     /** Class.getMethod wrapper to isolate call to one place. */
-    private static Method getMethod(Class aClass, String aName, Class ... theClasses)
+    private static Method getMethod(Class<?> aClass, String aName, Class<?> ... theClasses)
     {
         try { return ClassUtils.getMethodOrThrow(aClass, aName, theClasses); }
         catch(NoSuchMethodException e) { return null; }
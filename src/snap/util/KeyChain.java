@@ -16,6 +16,16 @@ public class KeyChain {
     // Possible children of key chain
     private Object  _children;
 
+    // The compiled evaluator (null if not yet compiled) and the number of evaluations before compile
+    private KeyChainEvaluator  _evaluator;
+    private int  _evalCount;
+
+    // Whether key chains are compiled to evaluators (MethodHandles aren't available on TeaVM)
+    private static boolean  _compileEnabled = !SnapUtils.isTeaVM;
+
+    // The number of evaluations before a key chain is compiled (so one-off key chains just use interpreter)
+    private static final int COMPILE_THRESHOLD = 2;
+
     // The KeyChain parser
     private static KeyChainParser  _parser = new KeyChainParser();
 
@@ -26,10 +36,10 @@ public class KeyChain {
     private static FunctionHandler  _functionHandler;
 
     // A thread local to vend per assignment maps
-    private static ThreadLocal<Map>  _assTL = new ThreadLocal() {
-        public Object initialValue()
+    private static ThreadLocal<Map<String,Object>>  _assTL = new ThreadLocal<Map<String,Object>>() {
+        public Map<String,Object> initialValue()
         {
-            return new HashMap();
+            return new HashMap<>();
         }
     };
 
@@ -104,7 +114,7 @@ public class KeyChain {
     /**
      * Returns a thread-local assignments map.
      */
-    public static Map getAssignments()
+    public static Map<String,Object> getAssignments()
     {
         return _assTL.get();
     }
@@ -191,6 +201,9 @@ public class KeyChain {
      */
     public void addChild(Object child)
     {
+        // Clear evaluator
+        _evaluator = null;
+
         // If first child, just set Children to point to it
         if (_children == null)
             _children = child;
@@ -264,6 +277,11 @@ public class KeyChain {
         // If object is null, just return null
         if (anObj == null) return null;
 
+        // If compiled evaluator available, use it
+        KeyChainEvaluator evaluator = aKeyChain.getEvaluator();
+        if (evaluator != null)
+            return evaluator.getValue(aRoot, anObj);
+
         // If list, use aggregator
         if (anObj instanceof List) {
             List list = (List) anObj;
@@ -277,6 +295,27 @@ public class KeyChain {
         return getValueImpl(aRoot, anObj, aKeyChain);
     }
 
+    /**
+     * Returns the compiled evaluator for this key chain (compiles after a few evaluations, returns null until then).
+     */
+    private KeyChainEvaluator getEvaluator()
+    {
+        if (!_compileEnabled) return null;
+        if (_evaluator != null) return _evaluator;
+        if (++_evalCount < COMPILE_THRESHOLD) return null;
+        return _evaluator = KeyChainEvaluator.compile(this);
+    }
+
+    /**
+     * Returns whether key chains are compiled to evaluators.
+     */
+    public static boolean isCompileEnabled()  { return _compileEnabled; }
+
+    /**
+     * Sets whether key chains are compiled to evaluators (otherwise they are always interpreted).
+     */
+    public static void setCompileEnabled(boolean aValue)  { _compileEnabled = aValue; }
+
     /**
      * Returns the result of evaluating the given key chain on the given object.
      * Broken out so objects can implement custom getKeyChainValue but still have access to default implementation.
@@ -400,7 +439,7 @@ public class KeyChain {
     /**
      * Returns the sum of the two given objects (assumed to be strings or numbers).
      */
-    private static Object add(Object obj1, Object obj2)
+    static Object add(Object obj1, Object obj2)
     {
         // If strings, do string concat (accounting for nulls)
         if (obj1 instanceof String || obj2 instanceof String)
@@ -530,7 +569,12 @@ public class KeyChain {
      */
     public static boolean getBoolValue(Object anObj, Object aKeyChain)
     {
-        return SnapUtils.boolValue(getValue(anObj, aKeyChain));
+        // If compiled evaluator available, use it (avoids boxing for compare and logical ops)
+        KeyChain keyChain = getKeyChain(aKeyChain);
+        KeyChainEvaluator evaluator = anObj != null && _compileEnabled ? keyChain._evaluator : null;
+        if (evaluator != null)
+            return evaluator.getBoolValue(anObj, anObj);
+        return SnapUtils.boolValue(getValue(anObj, keyChain));
     }
 
     /**
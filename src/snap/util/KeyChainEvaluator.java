@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.util;
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * A compiled form of a KeyChain: Evaluates the same as KeyChain.getValueImpl(), but with the expression tree turned
+ * into evaluator nodes once and keys read with MethodHandles instead of KeyAccessor and Method.invoke().
+ *
+ * Each key node has an inline cache for the last receiver class, with getter handles typed for that class. Receivers
+ * that can't use a getter (Map, Enum, Key.Get, etc.) and key nodes that see too many classes use Key.getValue(), and
+ * ops that aren't compiled (function calls) use the interpreter. Primitive getters can be read as doubles, so compares,
+ * mod and negate don't box them and math ops go straight to BigDecimal.
+ */
+abstract class KeyChainEvaluator {
+
+    // The key chain
+    protected KeyChain  _keyChain;
+
+    // Method types for getter handles
+    private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType DOUBLE_GETTER = MethodType.methodType(double.class, Object.class);
+    private static final MethodType BOOLEAN_GETTER = MethodType.methodType(boolean.class, Object.class);
+
+    // Constant for the max number of receiver classes a key node links to before it just uses Key.getValue()
+    private static final int MAX_LINK_COUNT = 8;
+
+    /**
+     * Constructor.
+     */
+    protected KeyChainEvaluator(KeyChain aKeyChain)
+    {
+        _keyChain = aKeyChain;
+    }
+
+    /**
+     * Returns the value for given root and object (same as KeyChain.getValue()).
+     */
+    public final Object getValue(Object aRoot, Object anObj)
+    {
+        // If object is null, just return null
+        if (anObj == null) return null;
+
+        // If list, try list then first item
+        if (anObj instanceof List) {
+            List<?> list = (List<?>) anObj;
+            Object value = getValueImpl(aRoot, anObj);
+            if (value == null && list.size() > 0)
+                value = getValueImpl(aRoot, list.get(0));
+            return value;
+        }
+
+        // Return value
+        return getValueImpl(aRoot, anObj);
+    }
+
+    /**
+     * Returns the value for given root and (non-null) object.
+     */
+    protected abstract Object getValueImpl(Object aRoot, Object anObj);
+
+    /**
+     * Returns the value as boolean for given root and object.
+     */
+    public final boolean getBoolValue(Object aRoot, Object anObj)
+    {
+        if (anObj == null) return false;
+        if (anObj instanceof List)
+            return SnapUtils.boolValue(getValue(aRoot, anObj));
+        return getBoolValueImpl(aRoot, anObj);
+    }
+
+    /**
+     * Returns the value as boolean for given root and (non-null, non-list) object.
+     */
+    protected boolean getBoolValueImpl(Object aRoot, Object anObj)
+    {
+        return SnapUtils.boolValue(getValueImpl(aRoot, anObj));
+    }
+
+    /**
+     * Returns whether value for given object is known to be a number that can be read with getDoubleValue().
+     */
+    protected boolean isDouble(Object anObj)  { return false; }
+
+    /**
+     * Returns the value as a primitive double (only valid if isDouble() is true for object).
+     */
+    protected double getDoubleValue(Object aRoot, Object anObj)
+    {
+        return SnapUtils.doubleValue(getValue(aRoot, anObj));
+    }
+
+    /**
+     * Returns the given double value of this node as BigDecimal (as MathUtils would).
+     */
+    protected BigDecimal getBigDecimal(double aValue)  { return new BigDecimal(aValue); }
+
+    /**
+     * Returns an evaluator for given KeyChain.
+     */
+    public static KeyChainEvaluator compile(KeyChain aKeyChain)
+    {
+        switch (aKeyChain.getOp()) {
+            case Literal: return new LiteralNode(aKeyChain);
+            case Add: case Subtract: case Multiply: case Divide: case Mod: return new MathNode(aKeyChain);
+            case Negate: return new NegateNode(aKeyChain);
+            case GreaterThan: case LessThan: case Equal: case NotEqual: case GreaterThanOrEqual: case LessThanOrEqual:
+                return new CompareNode(aKeyChain);
+            case Not: return new NotNode(aKeyChain);
+            case And: case Or: return new LogicalNode(aKeyChain);
+            case Key: return new KeyNode(aKeyChain);
+            case ArrayIndex: return new ArrayIndexNode(aKeyChain);
+            case Chain: return new ChainNode(aKeyChain);
+            case Conditional: return new ConditionalNode(aKeyChain);
+            case Assignment: return new AssignmentNode(aKeyChain);
+            default: return new InterpretNode(aKeyChain);
+        }
+    }
+
+    /**
+     * Returns an evaluator for given KeyChain child.
+     */
+    private static KeyChainEvaluator compileChild(KeyChain aKeyChain, int anIndex)
+    {
+        return compile(aKeyChain.getChildKeyChain(anIndex));
+    }
+
+    /**
+     * Literal node.
+     */
+    private static class LiteralNode extends KeyChainEvaluator {
+
+        // The value, and value as BigDecimal and double (if BigDecimal)
+        private Object  _value;
+        private BigDecimal  _bigDecimal;
+        private double  _double;
+
+        /** Constructor. */
+        LiteralNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _value = aKeyChain.getValue();
+            if (_value instanceof BigDecimal) {
+                _bigDecimal = (BigDecimal) _value;
+                _double = _bigDecimal.doubleValue();
+            }
+        }
+
+        /** Override to return value. */
+        protected Object getValueImpl(Object aRoot, Object anObj)  { return _value; }
+
+        /** Override to return true for number. */
+        protected boolean isDouble(Object anObj)  { return _bigDecimal != null && anObj != null; }
+
+        /** Override to return double. */
+        protected double getDoubleValue(Object aRoot, Object anObj)  { return _double; }
+
+        /** Override to return BigDecimal value. */
+        protected BigDecimal getBigDecimal(double aValue)  { return _bigDecimal; }
+    }
+
+    /**
+     * Math op node: Add, Subtract, Multiply, Divide, Mod.
+     */
+    private static class MathNode extends KeyChainEvaluator {
+
+        // The op and operands
+        private KeyChain.Op  _op;
+        private KeyChainEvaluator  _left, _right;
+
+        /** Constructor. */
+        MathNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _op = aKeyChain.getOp();
+            _left = compileChild(aKeyChain, 0);
+            _right = compileChild(aKeyChain, 1);
+        }
+
+        /** Override to do math. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            // If both operands are numbers, do math without boxing
+            if (_left.isDouble(anObj) && _right.isDouble(anObj)) {
+                double d1 = _left.getDoubleValue(aRoot, anObj);
+                double d2 = _right.getDoubleValue(aRoot, anObj);
+                if (_op == KeyChain.Op.Mod)
+                    return MathUtils.mod(d1, d2);
+                try { return getValueBigDecimal(_left.getBigDecimal(d1), _right.getBigDecimal(d2)); }
+                catch (Exception e) { return getValueDouble(d1, d2); }
+            }
+
+            // Get value of operands
+            Object o1 = _left.getValue(aRoot, anObj);
+            Object o2 = _right.getValue(aRoot, anObj);
+
+            // If non-numeric operand values (except add), just return
+            if (!(o1 instanceof Number && o2 instanceof Number) && _op != KeyChain.Op.Add) return null;
+
+            // Handle Math ops: Add, Subtract, Multiply, Divide, Mod
+            switch (_op) {
+                case Add: return KeyChain.add(o1, o2);
+                case Subtract: return MathUtils.subtract((Number) o1, (Number) o2);
+                case Multiply: return MathUtils.multiply((Number) o1, (Number) o2);
+                case Divide: return MathUtils.divide((Number) o1, (Number) o2);
+                default: return MathUtils.mod(SnapUtils.doubleValue(o1), SnapUtils.doubleValue(o2));
+            }
+        }
+
+        /** Returns the result of op on BigDecimals (as MathUtils does). */
+        private Number getValueBigDecimal(BigDecimal d1, BigDecimal d2)
+        {
+            switch (_op) {
+                case Add: return d1.add(d2);
+                case Subtract: return d1.subtract(d2);
+                case Multiply: return d1.multiply(d2);
+                default: return d1.divide(d2, 16, BigDecimal.ROUND_HALF_DOWN);
+            }
+        }
+
+        /** Returns the result of op on doubles (as MathUtils does if BigDecimal fails). */
+        private Number getValueDouble(double d1, double d2)
+        {
+            switch (_op) {
+                case Add: return d1 + d2;
+                case Subtract: return d1 - d2;
+                case Multiply: return d1 * d2;
+                default:
+                    if (d2 == 0)
+                        return d1 >= 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+                    return d1 / d2;
+            }
+        }
+    }
+
+    /**
+     * Negate node.
+     */
+    private static class NegateNode extends KeyChainEvaluator {
+
+        // The operand
+        private KeyChainEvaluator  _operand;
+
+        /** Constructor. */
+        NegateNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _operand = compileChild(aKeyChain, 0);
+        }
+
+        /** Override to negate. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            // If operand is primitive number, negate without boxing
+            if (_operand.isDouble(anObj) && !(_operand instanceof LiteralNode))
+                return new BigDecimal(-_operand.getDoubleValue(aRoot, anObj));
+
+            // Get operand and negate
+            Object o1 = _operand.getValue(aRoot, anObj);
+            return o1 instanceof Number ? MathUtils.negate((Number) o1) : null;
+        }
+    }
+
+    /**
+     * Compare node: GreaterThan, LessThan, Equal, NotEqual, GreaterThanOrEqual, LessThanOrEqual.
+     */
+    private static class CompareNode extends KeyChainEvaluator {
+
+        // The op and operands
+        private KeyChain.Op  _op;
+        private KeyChainEvaluator  _left, _right;
+
+        /** Constructor. */
+        CompareNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _op = aKeyChain.getOp();
+            _left = compileChild(aKeyChain, 0);
+            _right = compileChild(aKeyChain, 1);
+        }
+
+        /** Override to return boolean. */
+        protected Object getValueImpl(Object aRoot, Object anObj)  { return getBoolValueImpl(aRoot, anObj); }
+
+        /** Override to compare. */
+        protected boolean getBoolValueImpl(Object aRoot, Object anObj)
+        {
+            // Get order: If both operands are numbers, compare doubles (as Sort.Compare does), otherwise use Sort
+            int order;
+            if (_left.isDouble(anObj) && _right.isDouble(anObj)) {
+                double d1 = _left.getDoubleValue(aRoot, anObj);
+                double d2 = _right.getDoubleValue(aRoot, anObj);
+                order = d1 < d2 ? Sort.ORDER_ASCEND : d1 > d2 ? Sort.ORDER_DESCEND : Sort.ORDER_SAME;
+            }
+            else {
+                Object o1 = _left.getValue(aRoot, anObj);
+                Object o2 = _right.getValue(aRoot, anObj);
+                order = Sort.Compare(o1, o2);
+            }
+
+            // Handle binary compare ops
+            switch (_op) {
+                case GreaterThan: return order == Sort.ORDER_DESCEND;
+                case LessThan: return order == Sort.ORDER_ASCEND;
+                case Equal: return order == Sort.ORDER_SAME;
+                case NotEqual: return order != Sort.ORDER_SAME;
+                case GreaterThanOrEqual: return order != Sort.ORDER_ASCEND;
+                default: return order != Sort.ORDER_DESCEND;
+            }
+        }
+    }
+
+    /**
+     * Not node.
+     */
+    private static class NotNode extends KeyChainEvaluator {
+
+        // The operand
+        private KeyChainEvaluator  _operand;
+
+        /** Constructor. */
+        NotNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _operand = compileChild(aKeyChain, 0);
+        }
+
+        /** Override to return boolean. */
+        protected Object getValueImpl(Object aRoot, Object anObj)  { return getBoolValueImpl(aRoot, anObj); }
+
+        /** Override to return not operand. */
+        protected boolean getBoolValueImpl(Object aRoot, Object anObj)  { return !_operand.getBoolValue(aRoot, anObj); }
+    }
+
+    /**
+     * Logical node: And, Or (both operands are always evaluated, as in interpreter).
+     */
+    private static class LogicalNode extends KeyChainEvaluator {
+
+        // Whether op is And
+        private boolean  _and;
+
+        // The operands
+        private KeyChainEvaluator  _left, _right;
+
+        /** Constructor. */
+        LogicalNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _and = aKeyChain.getOp() == KeyChain.Op.And;
+            _left = compileChild(aKeyChain, 0);
+            _right = compileChild(aKeyChain, 1);
+        }
+
+        /** Override to return boolean. */
+        protected Object getValueImpl(Object aRoot, Object anObj)  { return getBoolValueImpl(aRoot, anObj); }
+
+        /** Override to do And/Or. */
+        protected boolean getBoolValueImpl(Object aRoot, Object anObj)
+        {
+            boolean b1 = _left.getBoolValue(aRoot, anObj);
+            boolean b2 = _right.getBoolValue(aRoot, anObj);
+            return _and ? (b1 && b2) : (b1 || b2);
+        }
+    }
+
+    /**
+     * Key node: Gets value with getter handles cached for last receiver class.
+     */
+    private static class KeyNode extends KeyChainEvaluator {
+
+        // The key
+        private String  _key;
+
+        // The inline cache (getters for last receiver class)
+        private Link  _link;
+
+        // The number of times node was linked
+        private int  _linkCount;
+
+        /** Constructor. */
+        KeyNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _key = aKeyChain.getValueString();
+
+            // If key is special, don't link
+            if (_key == null || _key.equals("this") || _key.equals("idHashCode"))
+                _linkCount = MAX_LINK_COUNT;
+        }
+
+        /** Override to get value with getter or Key. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            Link link = getLink(anObj);
+            Object value = link != null ? link.get(anObj) : Key.getValue(anObj, _key);
+            if (value == null)
+                value = KeyChain.getAssignments().get(_key);
+            return value;
+        }
+
+        /** Override to get boolean with boolean getter. */
+        protected boolean getBoolValueImpl(Object aRoot, Object anObj)
+        {
+            Link link = getLink(anObj);
+            if (link != null && link._boolGetter != null)
+                return link.getBool(anObj);
+            return super.getBoolValueImpl(aRoot, anObj);
+        }
+
+        /** Override to return true if linked to number getter for object class. */
+        protected boolean isDouble(Object anObj)
+        {
+            Link link = _link;
+            return anObj != null && link != null && link._class == anObj.getClass() && link._doubleGetter != null;
+        }
+
+        /** Override to get double with double getter. */
+        protected double getDoubleValue(Object aRoot, Object anObj)
+        {
+            Link link = _link;
+            if (link != null && link._class == anObj.getClass() && link._doubleGetter != null)
+                return link.getDouble(anObj);
+            return super.getDoubleValue(aRoot, anObj);
+        }
+
+        /** Returns the link for object class (or null if object should use Key.getValue()). */
+        private Link getLink(Object anObj)
+        {
+            // If cached link is for object class, return it
+            Link link = _link;
+            Class<?> cls = anObj.getClass();
+            if (link != null && link._class == cls)
+                return link._getter != null ? link : null;
+
+            // If linked too many times, just return null
+            if (_linkCount >= MAX_LINK_COUNT)
+                return null;
+
+            // Create link for class and return
+            _linkCount++;
+            _link = link = new Link(anObj, _key);
+            return link._getter != null ? link : null;
+        }
+    }
+
+    /**
+     * The getter handles for a receiver class and key.
+     */
+    private static class Link {
+
+        // The receiver class
+        private Class<?>  _class;
+
+        // The getter method
+        private Method  _method;
+
+        // The getter (null if class should use Key.getValue()) and primitive getters (if getter returns primitive)
+        private MethodHandle  _getter, _doubleGetter, _boolGetter;
+
+        /** Constructor. */
+        Link(Object anObj, String aKey)
+        {
+            // Get class (just return if object gets keys itself)
+            _class = anObj.getClass();
+            if (anObj instanceof Key.Get) return;
+
+            // Get accessor (just return if not method)
+            Key.KeyAccessor accessor = Key.getAccessor(anObj, aKey);
+            if (accessor._type != Key.KeyAccessor.Type.Methods) return;
+
+            // Get handle for method (with key arg for valueForKey) and create getters for receiver
+            _method = accessor._getMethod;
+            try {
+                MethodHandle handle = MethodHandles.lookup().unreflect(_method);
+                if (accessor._getMethodArgs.length > 0)
+                    handle = MethodHandles.insertArguments(handle, 1, accessor._getMethodArgs);
+                Class<?> returnType = handle.type().returnType();
+                if (returnType == boolean.class)
+                    _boolGetter = handle.asType(BOOLEAN_GETTER);
+                else if (returnType.isPrimitive() && returnType != char.class && returnType != void.class)
+                    _doubleGetter = handle.asType(DOUBLE_GETTER);
+                _getter = handle.asType(OBJECT_GETTER);
+            }
+
+            // If method can't be a handle (not accessible, static, etc.), use Key.getValue()
+            catch (Exception e) { _getter = _doubleGetter = _boolGetter = null; }
+        }
+
+        /** Returns value for object. */
+        Object get(Object anObj)
+        {
+            try { return (Object) _getter.invokeExact(anObj); }
+            catch (Throwable t) { complain(anObj, t); return null; }
+        }
+
+        /** Returns double value for object. */
+        double getDouble(Object anObj)
+        {
+            try { return (double) _doubleGetter.invokeExact(anObj); }
+            catch (Throwable t) { complain(anObj, t); return Double.NaN; }
+        }
+
+        /** Returns boolean value for object. */
+        boolean getBool(Object anObj)
+        {
+            try { return (boolean) _boolGetter.invokeExact(anObj); }
+            catch (Throwable t) { complain(anObj, t); return false; }
+        }
+
+        /** Prints getter exception (as KeyAccessor does for InvocationTargetException). */
+        private void complain(Object anObj, Throwable t)
+        {
+            String name = _method.getName(), cname = anObj.getClass().getName();
+            System.err.println("Key: ITException evaluating key " + name + " on object of class " + cname);
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * ArrayIndex node.
+     */
+    private static class ArrayIndexNode extends KeyChainEvaluator {
+
+        // The array and index
+        private KeyChainEvaluator  _array, _index;
+
+        /** Constructor. */
+        ArrayIndexNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _array = compileChild(aKeyChain, 0);
+            _index = compileChild(aKeyChain, 1);
+        }
+
+        /** Override to get list item. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            Object o1 = _array.getValue(anObj, anObj);
+            if (!(o1 instanceof List)) return null;
+            int index = SnapUtils.intValue(_index.getValue(aRoot, aRoot));
+            return ListUtils.get((List<?>) o1, index);
+        }
+    }
+
+    /**
+     * Chain node.
+     */
+    private static class ChainNode extends KeyChainEvaluator {
+
+        // The links of chain
+        private KeyChainEvaluator[]  _nodes;
+
+        /** Constructor. */
+        ChainNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _nodes = new KeyChainEvaluator[aKeyChain.getChildCount()];
+            for (int i = 0; i < _nodes.length; i++)
+                _nodes[i] = compileChild(aKeyChain, i);
+        }
+
+        /** Override to evaluate each node on value of previous. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            Object value = anObj;
+            for (KeyChainEvaluator node : _nodes)
+                value = node.getValue(aRoot, value);
+            return value;
+        }
+    }
+
+    /**
+     * Conditional node.
+     */
+    private static class ConditionalNode extends KeyChainEvaluator {
+
+        // The condition, true expression and false expression (can be null)
+        private KeyChainEvaluator  _cond, _trueExpr, _falseExpr;
+
+        /** Constructor. */
+        ConditionalNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _cond = compileChild(aKeyChain, 0);
+            _trueExpr = compileChild(aKeyChain, 1);
+            if (aKeyChain.getChildCount() == 3)
+                _falseExpr = compileChild(aKeyChain, 2);
+        }
+
+        /** Override to evaluate condition then expression. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            if (_cond.getBoolValue(aRoot, anObj))
+                return _trueExpr.getValue(aRoot, anObj);
+            return _falseExpr != null ? _falseExpr.getValue(aRoot, anObj) : null;
+        }
+    }
+
+    /**
+     * Assignment node.
+     */
+    private static class AssignmentNode extends KeyChainEvaluator {
+
+        // The key and value
+        private String  _key;
+        private KeyChainEvaluator  _value;
+
+        /** Constructor. */
+        AssignmentNode(KeyChain aKeyChain)
+        {
+            super(aKeyChain);
+            _key = aKeyChain.getChildString(0);
+            _value = compileChild(aKeyChain, 1);
+        }
+
+        /** Override to put value in assignments. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            Object value = _value.getValue(aRoot, anObj);
+            KeyChain.getAssignments().put(_key, value);
+            return "";
+        }
+    }
+
+    /**
+     * A node that just uses interpreter (for function calls).
+     */
+    private static class InterpretNode extends KeyChainEvaluator {
+
+        /** Constructor. */
+        InterpretNode(KeyChain aKeyChain)  { super(aKeyChain); }
+
+        /** Override to use interpreter. */
+        protected Object getValueImpl(Object aRoot, Object anObj)
+        {
+            return KeyChain.getValueImpl(aRoot, anObj, _keyChain);
+        }
+    }
+}
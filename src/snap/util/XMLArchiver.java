@@ -3,6 +3,7 @@
  */
 package snap.util;
 
+import java.io.InputStream;
 import java.util.*;
 
 import snap.web.WebURL;
@@ -45,6 +46,9 @@ public class XMLArchiver {
     // Archiver manages archival of shared BLOBs external to normal element hierarchy
     private List<Resource> _resources = new ArrayList<>();
 
+    // A map of content hash to resource (resources with same hash are linked by Resource.NextSameHash)
+    private Map<Long, Resource> _resourceIndex = new HashMap<>();
+
     // The map of classes for unarchival
     private Map<String, Class> _classMap;
 
@@ -201,6 +205,15 @@ public class XMLArchiver {
         return readFromXML(xml);
     }
 
+    /**
+     * Returns a root object unarchived from an XML stream (read with streaming XMLReader).
+     */
+    public Object readFromXMLStream(InputStream anInputStream)
+    {
+        XMLElement xml = XMLElement.readFromXMLStream(anInputStream);
+        return readFromXML(xml);
+    }
+
     /**
      * Returns a root object unarchived from the XML source (a File, String path, InputStream, URL, byte[], etc.).
      * You can also provide a root object to be read "into", and an owner that the object is being read "for".
@@ -591,11 +604,11 @@ public class XMLArchiver {
     }
 
     /**
-     * Returns the list of optional resources associated with this archiver.
+     * Returns the list of optional resources associated with this archiver (unmodifiable - use addResource()).
      */
     public List<Resource> getResources()
     {
-        return _resources;
+        return Collections.unmodifiableList(_resources);
     }
 
     /**
@@ -623,17 +636,40 @@ public class XMLArchiver {
     public String addResource(byte bytes[], String aName)
     {
         // If resource has already been added, just return it's name
-        for (int i = 0, iMax = _resources.size(); i < iMax; i++)
-            if (getResource(i).equals(bytes))
-                return getResource(i).getName();
+        long hash = ArrayUtils.getContentHash(bytes);
+        Resource resource = getResourceForBytes(bytes, hash);
+        if (resource != null)
+            return resource.getName();
 
-        // If new resource, add it
-        _resources.add(new Resource(bytes, aName));
+        // If new resource, add it and add to index
+        Resource newResource = new Resource(bytes, aName);
+        _resources.add(newResource);
+        addResourceToIndex(newResource, hash);
 
         // Return given name
         return aName;
     }
 
+    /**
+     * Returns the resource with given bytes and content hash (or null).
+     */
+    private Resource getResourceForBytes(byte bytes[], long aHash)
+    {
+        // Iterate over resources with same hash and return first with same bytes
+        for (Resource resource = _resourceIndex.get(aHash); resource != null; resource = resource._nextSameHash)
+            if (resource.equals(bytes))
+                return resource;
+        return null;
+    }
+
+    /**
+     * Adds a resource to index for given content hash.
+     */
+    private void addResourceToIndex(Resource aResource, long aHash)
+    {
+        aResource._nextSameHash = _resourceIndex.put(aHash, aResource);
+    }
+
     /**
      * Reads resources from <resource> elements in given xml (top-level) element, converts from ASCII encoding and
      * adds to archiver.
@@ -682,6 +718,9 @@ public class XMLArchiver {
         // The resource name
         String _name;
 
+        // The next resource in archiver index with same content hash
+        Resource _nextSameHash;
+
         // Returns resource bytes
         public byte[] getBytes()
         {
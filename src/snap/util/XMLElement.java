@@ -3,6 +3,8 @@
  */
 package snap.util;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -39,8 +41,8 @@ public class XMLElement implements Cloneable {
     // Whether element should ignore case when asking for attributes/elements by name
     private boolean  _ignoreCase;
 
-    // A shared XMLParser
-    private static XMLParser  _xmlParser;
+    // The buffer length at which write buffer is written to stream
+    private static final int WRITE_CHUNK_SIZE = 8192;
 
     /**
      * Creates a new element.
@@ -772,8 +774,30 @@ public class XMLElement implements Cloneable {
      */
     public byte[] getBytes()
     {
-        String str = getString();
-        return StringUtils.getBytes(str, "UTF-8");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try { write(outputStream); }
+        catch (IOException e) { throw new RuntimeException(e); }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes XML for this element to given stream (UTF-8, same as getBytes()): Writes buffer to stream in chunks
+     * instead of building whole string.
+     */
+    public void write(OutputStream anOS) throws IOException
+    {
+        Writer writer = new OutputStreamWriter(anOS, StandardCharsets.UTF_8);
+        ChunkWriter chunkWriter = new ChunkWriter(writer);
+        StringBuffer sb = new StringBuffer(WRITE_CHUNK_SIZE + 1024);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        try { write(sb, null, 0, "  ", chunkWriter); }
+        catch (UncheckedIOException e) { throw e.getCause(); }
+
+        // Trim trailing whitespace (same as getString()), write remaining chars and flush
+        while (sb.length() > 0 && Character.isWhitespace(sb.charAt(sb.length() - 1)))
+            sb.setLength(sb.length() - 1);
+        chunkWriter.write(sb);
+        writer.flush();
     }
 
     /**
@@ -788,6 +812,14 @@ public class XMLElement implements Cloneable {
      * Writes the element to the given string buffer using the given indent level and indent string.
      */
     public void write(StringBuffer aSB, String aNameSpace, int indent, String indentStr)
+    {
+        write(aSB, aNameSpace, indent, indentStr, null);
+    }
+
+    /**
+     * Writes the element to the given string buffer, writing buffer to given chunk writer (if set) when full.
+     */
+    private void write(StringBuffer aSB, String aNameSpace, int indent, String indentStr, ChunkWriter aWriter)
     {
         // Append indentation
         for (int i = 0; i < indent; i++) aSB.append(indentStr);
@@ -852,8 +884,11 @@ public class XMLElement implements Cloneable {
         // Append child element value
         else {
             aSB.append(">\n");
-            for (int i = 0, iMax = size(); i < iMax; i++)
-                get(i).write(aSB, getNamespace(), indent + 1, indentStr);
+            for (int i = 0, iMax = size(); i < iMax; i++) {
+                get(i).write(aSB, getNamespace(), indent + 1, indentStr, aWriter);
+                if (aWriter != null && aSB.length() >= WRITE_CHUNK_SIZE)
+                    aWriter.writeUnchecked(aSB);
+            }
             for (int i = 0; i < indent; i++) aSB.append(indentStr);
             aSB.append("</");
             aSB.append(getFullName());
@@ -898,31 +933,34 @@ public class XMLElement implements Cloneable {
     /**
      * Returns XML loaded from aSource (File, String path, InputStream or whatever).
      */
-    public static synchronized XMLElement readFromXMLSource(Object aSource)
+    public static XMLElement readFromXMLSource(Object aSource)
     {
         // If source is xml element, just return it
         //if (aSource instanceof XMLElement) return (XMLElement) aSource;
         if (aSource instanceof byte[])
             return readFromXMLBytes((byte[]) aSource);
 
-        // Create and return new element from source
-        if (_xmlParser == null) _xmlParser = new XMLParser();
+        // Get stream for source (file and URL sources are streamed, not loaded)
+        InputStream inputStream = SnapUtils.getInputStream(aSource);
+        if (inputStream == null) {
+            System.err.println("XMLElement.readFromXMLSource: Couldn't load text from source: " + aSource);
+            return null;
+        }
 
-        // Parse from XML source and return
-        try { return _xmlParser.parseXMLFromSource(aSource); }
-        catch (Throwable t) { throw new RuntimeException(t); }
+        // Read from stream (close stream if opened here) and return
+        try { return readFromXMLStream(inputStream); }
+        finally {
+            if (inputStream != aSource)
+                try { inputStream.close(); } catch (IOException ignore) { }
+        }
     }
 
     /**
      * Returns XML loaded from XML String.
      */
-    public static synchronized XMLElement readFromXMLString(String aString)
+    public static XMLElement readFromXMLString(String aString)
     {
-        // Create and return new element from source
-        if (_xmlParser == null) _xmlParser = new XMLParser();
-
-        // Parse from XML source and return
-        try { return _xmlParser.parseXMLFromString(aString); }
+        try { return new XMLReader(aString).readDocument(); }
         catch (Throwable t) { throw new RuntimeException(t); }
     }
 
@@ -931,7 +969,48 @@ public class XMLElement implements Cloneable {
      */
     public static XMLElement readFromXMLBytes(byte[] theBytes)
     {
-        String xmlString = new String(theBytes);
-        return readFromXMLString(xmlString);
+        return readFromXMLStream(new ByteArrayInputStream(theBytes));
+    }
+
+    /**
+     * Returns XML loaded from XML stream (read with streaming XMLReader, so text isn't loaded first).
+     */
+    public static XMLElement readFromXMLStream(InputStream anInputStream)
+    {
+        try { return new XMLReader(new InputStreamReader(anInputStream)).readDocument(); }
+        catch (Throwable t) { throw new RuntimeException(t); }
+    }
+
+    /**
+     * A class to write XML buffer chunks to a Writer (with a reusable char array).
+     */
+    private static class ChunkWriter {
+
+        // The writer
+        private Writer  _writer;
+
+        // The chars to copy buffer to
+        private char[]  _chars = new char[WRITE_CHUNK_SIZE * 2];
+
+        /** Constructor. */
+        ChunkWriter(Writer aWriter)  { _writer = aWriter; }
+
+        /** Writes given buffer chars and clears buffer. */
+        void write(StringBuffer aSB) throws IOException
+        {
+            int length = aSB.length();
+            if (length > _chars.length)
+                _chars = new char[length];
+            aSB.getChars(0, length, _chars, 0);
+            _writer.write(_chars, 0, length);
+            aSB.setLength(0);
+        }
+
+        /** Writes given buffer chars and clears buffer (IOExceptions wrapped as unchecked). */
+        void writeUnchecked(StringBuffer aSB)
+        {
+            try { write(aSB); }
+            catch (IOException e) { throw new UncheckedIOException(e); }
+        }
     }
 }
\ No newline at end of file
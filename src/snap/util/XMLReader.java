@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2010, ReportMill Software. All rights reserved.
+ */
+package snap.util;
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A streaming pull reader for XML: Reads events (element start, text, element end) one at a time from a Reader (or
+ * string) with a small buffer, so large documents don't need to be loaded as text or run through generic parser.
+ * Also builds XMLElement trees directly (same as XMLParser).
+ *
+ * Call next() to get next event (and getName(), getAttributeValue() or getText() for its values), skipElement() to
+ * skip current element or readElement() to read current element as XMLElement. Prolog, processing instructions,
+ * DOCTYPE and comments are skipped.
+ */
+public class XMLReader {
+
+    // The reader (null if reading from string or at end)
+    private Reader  _reader;
+
+    // The char buffer, the index of next char in buffer and the number of chars in buffer
+    private char[]  _buf;
+    private int  _pos, _limit;
+
+    // The number of chars read before buffer (for error char index)
+    private long  _bufStart;
+
+    // The element name of last StartElement or EndElement event
+    private String  _name;
+
+    // The attribute names and values of last StartElement event
+    private String[]  _attrNames = new String[8], _attrValues = new String[8];
+    private int  _attrCount;
+
+    // The text of last Text event and whether it was CDATA
+    private String  _text;
+    private boolean  _cdata;
+
+    // The names of open elements
+    private String[]  _openNames = new String[32];
+
+    // The number of open elements
+    private int  _depth;
+
+    // Whether last start tag was empty (so next event is its EndElement)
+    private boolean  _emptyElement;
+
+    // A string builder for text
+    private StringBuilder  _sb = new StringBuilder();
+
+    // Constants for events
+    public enum Event { StartElement, Text, EndElement, EndDocument }
+
+    // Constant for buffer size
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Constructor for given reader.
+     */
+    public XMLReader(Reader aReader)
+    {
+        _reader = aReader;
+        _buf = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for given string.
+     */
+    public XMLReader(String aString)
+    {
+        _buf = aString.toCharArray();
+        _limit = _buf.length;
+    }
+
+    /**
+     * Returns the next event.
+     */
+    public Event next() throws IOException
+    {
+        // Clear values
+        _text = null;
+        _cdata = false;
+
+        // If last start tag was empty, return its end
+        if (_emptyElement) {
+            _emptyElement = false;
+            _attrCount = 0;
+            _name = _openNames[--_depth];
+            return Event.EndElement;
+        }
+
+        // Iterate till event found
+        while (true) {
+
+            // If at end, return EndDocument
+            if (!ensure(1)) {
+                if (_depth > 0)
+                    throw error("Unexpected end of input (expected closing tag " + _openNames[_depth - 1] + ")");
+                return Event.EndDocument;
+            }
+
+            // Handle text: Return text (skip text outside root element)
+            if (_buf[_pos] != '<') {
+                _text = readChars('<', false);
+                if (_depth == 0) continue;
+                return Event.Text;
+            }
+
+            // Handle prolog/processing instruction and comment: skip
+            if (isNext("<?")) { skipPast("?>"); continue; }
+            if (isNext("<!--")) { skipPast("-->"); continue; }
+
+            // Handle CDATA: Return text
+            if (isNext("<![CDATA[")) {
+                _pos += "<![CDATA[".length();
+                _text = readCData();
+                _cdata = true;
+                return Event.Text;
+            }
+
+            // Handle DOCTYPE (or other declaration): Skip
+            if (isNext("<!")) { skipDeclaration(); continue; }
+
+            // Handle end tag
+            if (isNext("</")) {
+                _pos += 2;
+                _name = readName();
+                skipWhiteSpace();
+                readChar('>');
+                if (_depth == 0 || !_name.equals(_openNames[_depth - 1]))
+                    throw error("Unexpected closing tag " + _name);
+                _depth--;
+                _attrCount = 0;
+                return Event.EndElement;
+            }
+
+            // Handle start tag
+            _pos++;
+            readStartTag();
+            return Event.StartElement;
+        }
+    }
+
+    /**
+     * Returns the element name of last StartElement or EndElement event.
+     */
+    public String getName()  { return _name; }
+
+    /**
+     * Returns the number of attributes of last StartElement event.
+     */
+    public int getAttributeCount()  { return _attrCount; }
+
+    /**
+     * Returns the attribute name at given index.
+     */
+    public String getAttributeName(int anIndex)  { return _attrNames[anIndex]; }
+
+    /**
+     * Returns the attribute value at given index.
+     */
+    public String getAttributeValue(int anIndex)  { return _attrValues[anIndex]; }
+
+    /**
+     * Returns the attribute value for given name (or null).
+     */
+    public String getAttributeValue(String aName)
+    {
+        for (int i = 0; i < _attrCount; i++)
+            if (_attrNames[i].equals(aName))
+                return _attrValues[i];
+        return null;
+    }
+
+    /**
+     * Returns the text of last Text event.
+     */
+    public String getText()  { return _text; }
+
+    /**
+     * Returns whether last Text event was CDATA.
+     */
+    public boolean isCData()  { return _cdata; }
+
+    /**
+     * Returns the number of open elements.
+     */
+    public int getDepth()  { return _depth; }
+
+    /**
+     * Skips the rest of current element (call after StartElement).
+     */
+    public void skipElement() throws IOException
+    {
+        int depth = _depth;
+        while (_depth >= depth)
+            next();
+    }
+
+    /**
+     * Reads the rest of current element as an XMLElement (call after StartElement).
+     */
+    public XMLElement readElement() throws IOException
+    {
+        // Create element with name and attributes
+        boolean isEmptyTag = _emptyElement;
+        XMLElement xml = new XMLElement(_name);
+        for (int i = 0; i < _attrCount; i++)
+            xml.addAttribute(new XMLAttribute(_attrNames[i], _attrValues[i]));
+
+        // Read children and text till end (text only matters until first child element)
+        String text = null, cdata = null;
+        for (Event event = next(); event != Event.EndElement; event = next()) {
+            if (event == Event.StartElement)
+                xml.addElement(readElement());
+            else if (xml.getElementCount() > 0)
+                continue;
+            else if (_cdata)
+                cdata = _text;
+            else text = text != null ? text + _text : _text;
+        }
+
+        // If no child elements, set value: CDATA, text or empty string (if not empty tag)
+        if (xml.getElementCount() == 0 && !isEmptyTag)
+            xml.setValue(cdata != null ? cdata : text != null ? text : "");
+        return xml;
+    }
+
+    /**
+     * Reads the root element of document (or null if none).
+     */
+    public XMLElement readDocument() throws IOException
+    {
+        for (Event event = next(); event != Event.EndDocument; event = next())
+            if (event == Event.StartElement)
+                return readElement();
+        return null;
+    }
+
+    /**
+     * Reads start tag name and attributes (after '<').
+     */
+    private void readStartTag() throws IOException
+    {
+        // Read name and push
+        _name = readName();
+        if (_depth == _openNames.length)
+            _openNames = Arrays.copyOf(_openNames, _depth * 2);
+        _openNames[_depth++] = _name;
+
+        // Read attributes
+        _attrCount = 0;
+        while (true) {
+            skipWhiteSpace();
+            if (!ensure(1))
+                throw error("Unexpected end of input in tag " + _name);
+
+            // Handle tag end
+            char c = _buf[_pos];
+            if (c == '>') {
+                _pos++;
+                _emptyElement = false;
+                return;
+            }
+            if (c == '/') {
+                _pos++;
+                readChar('>');
+                _emptyElement = true;
+                return;
+            }
+
+            // Read attribute name, equals and quoted value
+            String attrName = readName();
+            skipWhiteSpace();
+            readChar('=');
+            skipWhiteSpace();
+            if (!ensure(1) || _buf[_pos] != '"' && _buf[_pos] != '\'')
+                throw error("Expected quoted attribute value");
+            char quote = _buf[_pos++];
+            String attrValue = readChars(quote, true);
+
+            // Add attribute
+            if (_attrCount == _attrNames.length) {
+                _attrNames = Arrays.copyOf(_attrNames, _attrCount * 2);
+                _attrValues = Arrays.copyOf(_attrValues, _attrCount * 2);
+            }
+            _attrNames[_attrCount] = attrName;
+            _attrValues[_attrCount++] = attrValue;
+        }
+    }
+
+    /**
+     * Reads a name.
+     */
+    private String readName() throws IOException
+    {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        while (ensure(1)) {
+            char c = _buf[_pos];
+            if (Character.isWhitespace(c) || c == '>' || c == '/' || c == '=' || c == '<' || c == '?')
+                break;
+            sb.append(c);
+            _pos++;
+        }
+        if (sb.length() == 0)
+            throw error("Expected name");
+        return sb.toString();
+    }
+
+    /**
+     * Reads chars until given end char (consumed if requested), decoding entity references.
+     */
+    private String readChars(char anEndChar, boolean consumeEnd) throws IOException
+    {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        while (true) {
+
+            // Make sure there are chars (if at end, return if end char not required)
+            if (!ensure(1)) {
+                if (consumeEnd)
+                    throw error("Expected " + anEndChar);
+                break;
+            }
+
+            // Append run of plain chars
+            int start = _pos;
+            while (_pos < _limit && _buf[_pos] != anEndChar && _buf[_pos] != '&')
+                _pos++;
+            sb.append(_buf, start, _pos - start);
+            if (_pos == _limit)
+                continue;
+
+            // Handle end char
+            if (_buf[_pos] == anEndChar) {
+                if (consumeEnd)
+                    _pos++;
+                break;
+            }
+
+            // Handle entity reference
+            readReference(sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads an entity reference (at '&') and appends its char (or the reference, if unknown).
+     */
+    private void readReference(StringBuilder aSB) throws IOException
+    {
+        // Get reference chars up to ';' (if not found, just append '&')
+        ensure(12);
+        int end = _pos + 1;
+        while (end < _limit && end - _pos < 12 && _buf[end] != ';')
+            end++;
+        if (end == _limit || _buf[end] != ';') {
+            aSB.append('&');
+            _pos++;
+            return;
+        }
+        String ref = new String(_buf, _pos + 1, end - _pos - 1);
+
+        // Get char for reference
+        int ch = -1;
+        switch (ref) {
+            case "amp": ch = '&'; break;
+            case "lt": ch = '<'; break;
+            case "gt": ch = '>'; break;
+            case "quot": ch = '"'; break;
+            case "apos": ch = '\''; break;
+            default:
+                try {
+                    if (ref.startsWith("#x") || ref.startsWith("#X")) ch = Integer.parseInt(ref.substring(2), 16);
+                    else if (ref.startsWith("#")) ch = Integer.parseInt(ref.substring(1));
+                }
+                catch (NumberFormatException e) { ch = -1; }
+        }
+
+        // Append char (or reference if unknown) and skip reference
+        if (ch >= 0 && ch <= Character.MAX_CODE_POINT)
+            aSB.appendCodePoint(ch);
+        else aSB.append(_buf, _pos, end + 1 - _pos);
+        _pos = end + 1;
+    }
+
+    /**
+     * Reads CDATA chars (after "<![CDATA[") through "]]>".
+     */
+    private String readCData() throws IOException
+    {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        while (true) {
+            if (!ensure(1))
+                throw error("Unterminated CDATA");
+            char c = _buf[_pos];
+            if (c == ']' && isNext("]]>")) {
+                _pos += 3;
+                return sb.toString();
+            }
+            sb.append(c);
+            _pos++;
+        }
+    }
+
+    /**
+     * Skips chars through given string.
+     */
+    private void skipPast(String aStr) throws IOException
+    {
+        while (!isNext(aStr)) {
+            if (!ensure(1))
+                throw error("Expected " + aStr);
+            _pos++;
+        }
+        _pos += aStr.length();
+    }
+
+    /**
+     * Skips a declaration (like DOCTYPE) through closing '>', including any internal subset in brackets.
+     */
+    private void skipDeclaration() throws IOException
+    {
+        int bracketDepth = 0;
+        while (true) {
+            if (!ensure(1))
+                throw error("Unterminated declaration");
+            char c = _buf[_pos++];
+            if (c == '[') bracketDepth++;
+            else if (c == ']') bracketDepth--;
+            else if (c == '>' && bracketDepth <= 0)
+                return;
+        }
+    }
+
+    /**
+     * Reads given char (or throws error).
+     */
+    private void readChar(char aChar) throws IOException
+    {
+        if (!ensure(1) || _buf[_pos] != aChar)
+            throw error("Expected '" + aChar + "'");
+        _pos++;
+    }
+
+    /**
+     * Skips whitespace.
+     */
+    private void skipWhiteSpace() throws IOException
+    {
+        while (ensure(1) && Character.isWhitespace(_buf[_pos]))
+            _pos++;
+    }
+
+    /**
+     * Returns whether given string is next.
+     */
+    private boolean isNext(String aStr) throws IOException
+    {
+        int length = aStr.length();
+        if (!ensure(length))
+            return false;
+        for (int i = 0; i < length; i++)
+            if (_buf[_pos + i] != aStr.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Makes sure buffer has given number of chars after current position (reading more if needed). Returns false if
+     * input doesn't have that many chars.
+     */
+    private boolean ensure(int aCount) throws IOException
+    {
+        while (_limit - _pos < aCount) {
+
+            // If no reader, return false
+            if (_reader == null)
+                return false;
+
+            // Move remaining chars to buffer start
+            if (_pos > 0) {
+                System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+                _bufStart += _pos;
+                _limit -= _pos;
+                _pos = 0;
+            }
+
+            // Read more chars
+            int count = _reader.read(_buf, _limit, _buf.length - _limit);
+            if (count < 0) {
+                _reader = null;
+                return false;
+            }
+            _limit += count;
+        }
+        return true;
+    }
+
+    /**
+     * Returns an exception for given message at current char index.
+     */
+    private IOException error(String aMessage)
+    {
+        return new IOException("XMLReader: " + aMessage + " at char " + (_bufStart + _pos));
+    }
+}
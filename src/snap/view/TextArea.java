@@ -167,6 +167,10 @@ public class TextArea extends View {
         if (aTextDoc != null)
             aTextDoc.addPropChangeListener(_textDocPropLsnr);
 
+        // If TextDoc is read-only, make not editable
+        if (aTextDoc != null && aTextDoc.isReadOnly())
+            setEditable(false);
+
         // Reset selection (to line end if single-line, otherwise text start)
         int selIndex = getLineCount() == 1 && length() < 40 ? length() : 0;
         setSel(selIndex);
@@ -216,6 +220,10 @@ public class TextArea extends View {
     {
         if (aValue == isEditable()) return;
 
+        // If TextDoc is read-only, just return
+        if (aValue && getTextDoc() != null && getTextDoc().isReadOnly())
+            return;
+
         firePropChange(Editable_Prop, _editable, _editable = aValue);
 
         // If editable, set some related attributes
@@ -738,6 +746,10 @@ public class TextArea extends View {
      */
     public void setSelStyleValue(String aKey, Object aValue)
     {
+        // If TextDoc is read-only, just return
+        if (getTextDoc().isReadOnly())
+            return;
+
         // If selection is zero length, just modify input style
         if (isSelEmpty() && isRichText()) {
             TextStyle selStyle = getSelStyleImpl();
@@ -768,6 +780,8 @@ public class TextArea extends View {
     public void setSelLineStyleValue(String aKey, Object aValue)
     {
         TextDoc textDoc = getTextDoc();
+        if (textDoc.isReadOnly())
+            return;
         textDoc.setLineStyleValue(aKey, aValue, getSelStart(), getSelEnd());
     }
 
@@ -836,6 +850,10 @@ public class TextArea extends View {
         if (strLen == 0 && aStart == anEnd)
             return;
 
+        // If TextDoc is read-only, just return
+        if (getTextDoc().isReadOnly())
+            return;
+
         // If change is not adjacent to last change, call UndoerSaveChanges
         if ((strLen > 0 && aStart != _lastReplaceIndex) || (strLen == 0 && anEnd != _lastReplaceIndex))
             undoerSaveChanges();
@@ -862,6 +880,28 @@ public class TextArea extends View {
         _lastReplaceIndex = aStart + strLen;
     }
 
+    /**
+     * Replaces all matches of given TextFinder with given string as a single undoable edit.
+     */
+    public int replaceAll(TextFinder aFinder, String aString)
+    {
+        // Save previous changes, so replace gets its own undo
+        undoerSaveChanges();
+
+        // Replace all and save changes
+        int count = aFinder.replaceAll(aString);
+        if (count > 0) {
+            Undoer undoer = getUndoer();
+            if (undoer != null)
+                undoer.setUndoTitle("Replace All");
+            undoerSaveChanges();
+            setSel(Math.min(getSelStart(), length()));
+        }
+
+        // Return
+        return count;
+    }
+
     /**
      * Replaces the current selection with the given TextDoc.
      */
@@ -1542,6 +1582,10 @@ public class TextArea extends View {
         Undoer undoer = getUndoer();
         if (undoer == null || !undoer.isEnabled()) return;
 
+        // If TextDoc is read-only, just return
+        if (getTextDoc().isReadOnly())
+            return;
+
         // If PlainText Style_Prop or LineStyle_Prop, just return
         String propName = anEvent.getPropName();
         if (!isRichText() && (propName == TextDoc.Style_Prop || propName == TextDoc.LineStyle_Prop))
@@ -100,6 +100,15 @@ public class CodeDoc extends TextDoc {
         return tokens.toArray(new TextToken[0]);
     }
 
+    /**
+     * Override to recreate tokens, since code tokens depend on whole line (and previous line).
+     */
+    @Override
+    protected TextToken[] updateTokensForTextLine(TextLine aTextLine, TextToken[] theTokens, int aStart, int anOldEnd, int aNewEnd)
+    {
+        return null;
+    }
+
     /**
      * Returns the next token.
      */
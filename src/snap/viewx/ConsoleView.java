@@ -4,7 +4,9 @@
 package snap.viewx;
 import java.util.*;
 import snap.gfx.Color;
+import snap.props.Undoer;
 import snap.text.RichText;
+import snap.text.TextDoc;
 import snap.text.TextStyle;
 import snap.util.*;
 import snap.view.*;
@@ -26,6 +28,18 @@ public class ConsoleView extends TextArea {
     // The prompt
     private String  _prompt;
 
+    // The maximum number of lines to keep in console (0 for unlimited)
+    private int  _maxLineCount;
+
+    // Output appended from other threads, waiting to be flushed to text in event thread
+    private StringBuilder  _pendingOutput = new StringBuilder();
+
+    // Whether a flush of pending output is queued
+    private boolean  _flushQueued;
+
+    // Constants for properties
+    public static final String MaxLineCount_Prop = "MaxLineCount";
+
     /**
      * Creates new ConsoleView.
      */
@@ -54,6 +68,21 @@ public class ConsoleView extends TextArea {
             append(getPrompt());
     }
 
+    /**
+     * Returns the maximum number of lines to keep in console (0 for unlimited).
+     */
+    public int getMaxLineCount()  { return _maxLineCount; }
+
+    /**
+     * Sets the maximum number of lines to keep in console (0 for unlimited).
+     */
+    public void setMaxLineCount(int aValue)
+    {
+        if (aValue == _maxLineCount) return;
+        firePropChange(MaxLineCount_Prop, _maxLineCount, _maxLineCount = Math.max(aValue, 0));
+        trimToMaxLineCount(true);
+    }
+
     /**
      * Returns the location of the end of the last text appended to console.
      */
@@ -131,9 +160,98 @@ public class ConsoleView extends TextArea {
     }
 
     /**
-     * Appends a string.
+     * Appends a string. If called from outside the event thread, string is queued and flushed with any other
+     * pending output in a single replaceChars in the event thread.
+     */
+    public void append(String aString)
+    {
+        // If no string, just return
+        if (aString == null || aString.length() == 0) return;
+
+        // If not event thread, add to pending output and queue flush (if not already queued)
+        ViewEnv env = getEnv();
+        if (env != null && !env.isEventThread()) {
+            synchronized (_pendingOutput) {
+                _pendingOutput.append(aString);
+                if (_flushQueued) return;
+                _flushQueued = true;
+            }
+            env.runLater(() -> flushPendingOutput());
+            return;
+        }
+
+        // Otherwise, flush any pending output with string
+        flushPendingOutput(aString);
+    }
+
+    /**
+     * Adds any output appended from other threads to text.
+     */
+    protected void flushPendingOutput()
+    {
+        flushPendingOutput(null);
+    }
+
+    /**
+     * Adds any output appended from other threads to text, followed by given string.
      */
-    public void append(String aString)  { addChars(aString); }
+    private void flushPendingOutput(String aString)
+    {
+        // Get pending output (plus given string) and clear
+        String str;
+        synchronized (_pendingOutput) {
+            if (aString != null)
+                _pendingOutput.append(aString);
+            str = _pendingOutput.toString();
+            _pendingOutput.setLength(0);
+            _flushQueued = false;
+        }
+
+        // Add chars and trim
+        if (str.length() > 0) {
+            addChars(str);
+            trimToMaxLineCount(false);
+        }
+    }
+
+    /**
+     * Removes lines from start of text if LineCount is beyond MaxLineCount. Unless forced, lines are only removed
+     * once the overflow reaches an eighth of MaxLineCount, so leading lines are evicted in blocks instead of once
+     * per append.
+     */
+    protected void trimToMaxLineCount(boolean doForce)
+    {
+        // If no max or not over, just return
+        int maxLineCount = getMaxLineCount();
+        TextDoc textDoc = getTextDoc();
+        int lineCount = textDoc.getLineCount();
+        if (maxLineCount <= 0 || lineCount <= maxLineCount)
+            return;
+
+        // If not forced and overflow less than slack, just return
+        int overflow = lineCount - maxLineCount;
+        if (!doForce && overflow < Math.max(maxLineCount / 8, 1))
+            return;
+
+        // Get char count for overflow lines
+        int removeLen = textDoc.getLine(overflow).getStartCharIndex();
+        int selStart = getSelStart();
+        int selEnd = getSelEnd();
+
+        // Remove chars without undo (offsets in undo history would be wrong anyway)
+        Undoer undoer = getUndoer();
+        if (undoer != null) {
+            undoer.disable();
+            undoer.reset();
+        }
+        textDoc.removeChars(0, removeLen);
+        if (undoer != null)
+            undoer.enable();
+
+        // Shift input location and selection
+        _inputLoc = Math.max(_inputLoc - removeLen, 0);
+        setSel(Math.max(selStart - removeLen, 0), Math.max(selEnd - removeLen, 0));
+    }
 
     /**
      * Override to update input location.
@@ -95,7 +95,7 @@ public class ScanPane extends ViewOwner {
         public void write(int b)
         {
             super.write(b);
-            _scanView.addChars(String.valueOf(Character.valueOf((char)b)));
+            _scanView.append(String.valueOf((char) b));
         }
 
         /** Override to send to ScanView. */
@@ -103,7 +103,7 @@ public class ScanPane extends ViewOwner {
         {
             super.write(buf, off, len);
             String str = new String(buf, off, len);
-            _scanView.addChars(str);
+            _scanView.append(str);
         }
     }
 
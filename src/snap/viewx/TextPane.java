@@ -7,6 +7,7 @@ import snap.gfx.Font;
 import snap.gfx.Image;
 import snap.text.TextBoxLine;
 import snap.text.TextDoc;
+import snap.text.TextFinder;
 import snap.text.TextSel;
 import snap.util.SnapUtils;
 import snap.view.*;
@@ -25,6 +26,9 @@ public class TextPane extends ViewOwner {
     // Whether text pane text is modified
     private boolean  _textModified;
 
+    // The TextFinder for find
+    private TextFinder  _finder;
+
     /**
      * Returns the TextArea.
      */
@@ -247,25 +251,28 @@ public class TextPane extends ViewOwner {
         // Set String Value in FindText (if needed)
         setViewValue("FindText", aString);
 
-        // Get search string and find in text
+        // Get finder for text and set search string
         TextArea tarea = getTextArea();
-        String string = aString;
-        if (ignoreCase) string = string.toLowerCase();
-        String text = tarea.getText();
-        if (ignoreCase) text = text.toLowerCase();
+        TextDoc textDoc = tarea.getTextDoc();
+        if (_finder == null || _finder.getTextDoc() != textDoc) {
+            if (_finder != null)
+                _finder.dispose();
+            _finder = new TextFinder(textDoc);
+        }
+        _finder.setFindString(aString, false, ignoreCase);
 
-        // Get index of search
+        // Get match for search
         int sstart = tarea.getSelStart(), send = tarea.getSelEnd();
-        int index = isNext ? text.indexOf(string, send) : text.lastIndexOf(string, Math.max(sstart - 1, 0));
+        int[] match = isNext ? _finder.findNext(send) : _finder.findPrevious(Math.max(sstart, 0));
 
-        // If index not found, beep and try again from start
-        if (index < 0) {
+        // If match not found, beep and try again from start
+        if (match == null) {
             beep();
-            index = isNext ? text.indexOf(string) : text.lastIndexOf(string, text.length());
+            match = isNext ? _finder.findNext(0) : _finder.findPrevious(textDoc.length());
         }
 
         // If index found, select text and focus
-        if (index >= 0) tarea.setSel(index, index + string.length());
+        if (match != null) tarea.setSel(match[0], match[1]);
     }
 
     /**
@@ -4,7 +4,7 @@
 package snap.web;
 import java.util.*;
 import snap.util.JSValue;
-import snap.util.JSParser;
+import snap.util.JSReader;
 import snap.web.HTTPRequest.Header;
 
 /**
@@ -144,9 +144,7 @@ public class HTTPResponse {
     public JSValue getJSON()
     {
         String text = getText(); if (text == null) return null;
-        JSParser parser = new JSParser();
-        JSValue json = parser.readString(text);
-        return json;
+        return JSReader.readString(text);
     }
 
     /**
@@ -5,7 +5,7 @@ package snap.web;
 import java.util.List;
 import snap.util.FilePathUtils;
 import snap.util.JSValue;
-import snap.util.JSParser;
+import snap.util.JSReader;
 
 /**
  * The response.
@@ -308,9 +308,7 @@ public class WebResponse {
     public JSValue getJSON()
     {
         String text = getText(); if (text == null) return null;
-        JSParser parser = new JSParser();
-        JSValue json = parser.readString(text);
-        return json;
+        return JSReader.readString(text);
     }
 
     /**
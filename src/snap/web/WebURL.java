@@ -8,6 +8,7 @@ import snap.util.URLUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -395,7 +396,15 @@ public class WebURL {
      */
     public InputStream getInputStream()
     {
-        return new ByteArrayInputStream(getBytes());
+        // Handle File or URL: Open stream directly so content isn't loaded first
+        if (!SnapUtils.isTeaVM && (_src instanceof File || _src instanceof URL)) {
+            try { return _src instanceof File ? new FileInputStream((File) _src) : ((URL) _src).openStream(); }
+            catch (IOException e) { return null; }
+        }
+
+        // Otherwise get bytes
+        byte[] bytes = getBytes();
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
     }
 
     /**